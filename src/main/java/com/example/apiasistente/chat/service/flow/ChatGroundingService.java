@@ -376,8 +376,8 @@ public class ChatGroundingService {
         StringBuilder sb = new StringBuilder(max * 180);
         for (int i = 0; i < max; i++) {
             RagService.ScoredChunk entry = scored.get(i);
-            String title = entry.chunk().getDocument().getTitle();
-            String snippet = collapseSpaces(entry.chunk().getText());
+            String title = entry.chunk().documentTitle();
+            String snippet = collapseSpaces(entry.chunk().text());
             if (snippet.length() > 120) {
                 snippet = snippet.substring(0, 120) + "...";
             }
@@ -117,14 +117,14 @@ public class ChatHistoryService {
         // Persistimos todos los chunks devueltos para trazabilidad posterior del turno.
         List<ChatMessageSource> links = new ArrayList<>(scored.size());
         for (RagService.ScoredChunk scoredChunk : scored) {
-            if (scoredChunk == null || scoredChunk.chunk() == null || scoredChunk.chunk().getDocument() == null) {
+            if (scoredChunk == null || scoredChunk.chunk() == null || scoredChunk.chunk().documentId() == null) {
                 continue;
             }
             ChatMessageSource link = new ChatMessageSource();
             link.setMessage(assistantMsg);
-            link.setSourceChunkId(scoredChunk.chunk().getId());
-            link.setSourceDocumentId(scoredChunk.chunk().getDocument().getId());
-            link.setSourceDocumentTitle(scoredChunk.chunk().getDocument().getTitle());
+            link.setSourceChunkId(scoredChunk.chunk().chunkId());
+            link.setSourceDocumentId(scoredChunk.chunk().documentId());
+            link.setSourceDocumentTitle(scoredChunk.chunk().documentTitle());
             link.setSourceSnippet(scoredChunk.effectiveText());
             link.setScore(scoredChunk.score());
             links.add(link);
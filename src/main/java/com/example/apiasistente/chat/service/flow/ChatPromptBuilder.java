@@ -109,8 +109,8 @@ public class ChatPromptBuilder {
             for (int i = 0; i < scored.size(); i++) {
                 RagService.ScoredChunk scoredChunk = scored.get(i);
                 sb.append("\n[S").append(i + 1).append("] ")
-                        .append("doc=\"").append(scoredChunk.chunk().getDocument().getTitle()).append("\" ")
-                        .append("(chunk ").append(scoredChunk.chunk().getChunkIndex()).append(") ")
+                        .append("doc=\"").append(scoredChunk.chunk().documentTitle()).append("\" ")
+                        .append("(chunk ").append(scoredChunk.chunk().chunkIndex()).append(") ")
                         .append("score=").append(String.format(Locale.US, "%.3f", scoredChunk.score()))
                         .append("\n")
                         .append(scoredChunk.effectiveText())
@@ -4,21 +4,20 @@ import com.example.apiasistente.chat.service.ChatModelSelector;
 import com.example.apiasistente.chat.service.ChatPromptSignals;
 import com.example.apiasistente.chat.service.ChatTurnPlanner;
 import com.example.apiasistente.shared.ai.OllamaClient;
+import com.example.apiasistente.shared.cache.TinyLfuCache;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.text.Normalizer;
-import java.time.Instant;
+import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.regex.Pattern;
 
 /**
@@ -51,11 +50,17 @@ public class ChatRagDecisionEngine {
             Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE
     );
 
+    private static final String CACHE_NAME = "chat-rag-decision";
+    // Record, enum y entrada del cache: se suma al peso de clave y razon.
+    private static final long CACHE_ENTRY_OVERHEAD_BYTES = 128L;
+    private static final long DEFAULT_CACHE_MAX_BYTES = 1_048_576L;
+    // Peso medio supuesto al convertir el antiguo `max-cache-entries`: 500 entradas ~ 1 MiB por defecto.
+    private static final long LEGACY_ENTRY_BYTES = 2_048L;
+
     private final OllamaClient ollama;
     private final ChatModelSelector modelSelector;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, CachedLlmAssessment> cache = new ConcurrentHashMap<>();
-    private final ConcurrentLinkedDeque<String> cacheOrder = new ConcurrentLinkedDeque<>();
+    private final TinyLfuCache<String, LlmAssessment> cache;
 
     @Value("${chat.rag-decision.enabled:true}")
     private boolean decisionEnabled;
@@ -81,15 +86,42 @@ public class ChatRagDecisionEngine {
     @Value("${chat.rag-decision.min-answer-chars:140}")
     private int minAnswerChars;
 
-    @Value("${chat.rag-decision.cache-ttl-ms:3600000}")
-    private long cacheTtlMs;
-
-    @Value("${chat.rag-decision.max-cache-entries:500}")
-    private int maxCacheEntries;
-
-    public ChatRagDecisionEngine(OllamaClient ollama, ChatModelSelector modelSelector) {
+    public ChatRagDecisionEngine(OllamaClient ollama,
+                                 ChatModelSelector modelSelector,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${chat.rag-decision.cache-ttl-ms:3600000}") long cacheTtlMs,
+                                 @Value("${chat.rag-decision.cache-max-bytes:0}") long cacheMaxBytes,
+                                 @Value("${chat.rag-decision.max-cache-entries:0}") int legacyMaxCacheEntries) {
         this.ollama = ollama;
         this.modelSelector = modelSelector;
+        this.cache = new TinyLfuCache<>(
+                CACHE_NAME,
+                Math.max(32L * CACHE_ENTRY_OVERHEAD_BYTES, resolveCacheMaxBytes(cacheMaxBytes, legacyMaxCacheEntries)),
+                Duration.ofMillis(Math.max(5_000L, cacheTtlMs)),
+                (key, assessment) -> (long) (key.length() + assessment.reason().length()) * Character.BYTES
+                        + CACHE_ENTRY_OVERHEAD_BYTES,
+                meterRegistry
+        );
+    }
+
+    /**
+     * Tope en bytes del cache: `cache-max-bytes` si viene; si no, el antiguo `max-cache-entries` convertido
+     * (para no ignorar overrides anteriores al cambio a bytes); si no, 1 MiB.
+     */
+    static long resolveCacheMaxBytes(long cacheMaxBytes, int legacyMaxCacheEntries) {
+        if (cacheMaxBytes > 0) {
+            return cacheMaxBytes;
+        }
+        if (legacyMaxCacheEntries > 0) {
+            long converted = legacyMaxCacheEntries * LEGACY_ENTRY_BYTES;
+            log.warn(
+                    "chat.rag-decision.max-cache-entries={} esta obsoleto; se usa como cache-max-bytes={}. Define chat.rag-decision.cache-max-bytes.",
+                    legacyMaxCacheEntries,
+                    converted
+            );
+            return converted;
+        }
+        return DEFAULT_CACHE_MAX_BYTES;
     }
 
     /**
@@ -223,9 +255,9 @@ public class ChatRagDecisionEngine {
                                               ChatTurnPlanner.TurnPlan turnPlan,
                                               boolean hasDocumentMedia) {
         String cacheKey = buildCacheKey(userText, turnPlan, hasDocumentMedia);
-        CachedLlmAssessment cached = readCache(cacheKey);
+        LlmAssessment cached = readCache(cacheKey);
         if (cached != null) {
-            return cached.assessment().withCacheHit(true);
+            return cached.withCacheHit(true);
         }
 
         if (!llmAssessmentEnabled) {
@@ -469,44 +501,18 @@ public class ChatRagDecisionEngine {
         return objectMapper.readTree(payload);
     }
 
-    private CachedLlmAssessment readCache(String key) {
+    private LlmAssessment readCache(String key) {
         if (!hasText(key)) {
             return null;
         }
-        CachedLlmAssessment cached = cache.get(key);
-        if (cached == null) {
-            return null;
-        }
-        if (cached.expiresAt().isBefore(Instant.now())) {
-            cache.remove(key);
-            cacheOrder.remove(key);
-            return null;
-        }
-        return cached;
+        return cache.get(key);
     }
 
     private void writeCache(String key, LlmAssessment assessment) {
         if (!hasText(key) || assessment == null) {
             return;
         }
-        cache.put(key, new CachedLlmAssessment(
-                assessment,
-                Instant.now().plusMillis(Math.max(5_000L, cacheTtlMs))
-        ));
-        cacheOrder.remove(key);
-        cacheOrder.addLast(key);
-        evictCacheIfNeeded();
-    }
-
-    private void evictCacheIfNeeded() {
-        int maxEntries = Math.max(32, maxCacheEntries);
-        while (cache.size() > maxEntries) {
-            String oldest = cacheOrder.pollFirst();
-            if (oldest == null) {
-                return;
-            }
-            cache.remove(oldest);
-        }
+        cache.put(key, assessment);
     }
 
     private String buildCacheKey(String userText,
@@ -675,6 +681,4 @@ public class ChatRagDecisionEngine {
         }
     }
 
-    private record CachedLlmAssessment(LlmAssessment assessment, Instant expiresAt) {
-    }
 }
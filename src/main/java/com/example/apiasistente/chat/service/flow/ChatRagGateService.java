@@ -4,6 +4,7 @@ import com.example.apiasistente.chat.service.ChatPromptSignals;
 import com.example.apiasistente.chat.service.ChatTurnPlanner;
 import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
 import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import com.example.apiasistente.rag.service.RagCorpusEpochService;
 import com.example.apiasistente.rag.service.RagService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -14,7 +15,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Compuerta barata antes del retrieval RAG.
@@ -40,6 +40,7 @@ public class ChatRagGateService {
     private final KnowledgeDocumentRepository documentRepository;
     private final KnowledgeChunkRepository chunkRepository;
     private final ChatRagDecisionEngine decisionEngine;
+    private final RagCorpusEpochService corpusEpochService;
 
     @Value("${chat.rag-gate.enabled:true}")
     private boolean gateEnabled;
@@ -53,18 +54,19 @@ public class ChatRagGateService {
     @Value("${chat.rag-gate.max-probe-terms:3}")
     private int maxProbeTerms;
 
-    // Cache del tamano del corpus por lista de owners: evita 2 COUNT queries por turno.
-    // TTL corto (30s) porque los documentos cambian poco durante una sesion de chat.
-    private static final long CORPUS_CACHE_TTL_MS = 30_000L;
-    private record CorpusCacheEntry(long docs, long chunks, long expiresAt) {}
-    private final ConcurrentHashMap<String, CorpusCacheEntry> corpusCache = new ConcurrentHashMap<>();
+    // Tamano del corpus compartido: evita 2 COUNT queries por turno. Vale mientras no cambie el epoch del
+    // corpus, asi una ingesta se ve en el siguiente turno y sin cambios no se repite la consulta.
+    private record CorpusCacheEntry(long docs, long chunks, long epoch) {}
+    private volatile CorpusCacheEntry corpusCache;
 
     public ChatRagGateService(KnowledgeDocumentRepository documentRepository,
                               KnowledgeChunkRepository chunkRepository,
-                              ChatRagDecisionEngine decisionEngine) {
+                              ChatRagDecisionEngine decisionEngine,
+                              RagCorpusEpochService corpusEpochService) {
         this.documentRepository = documentRepository;
         this.chunkRepository = chunkRepository;
         this.decisionEngine = decisionEngine;
+        this.corpusEpochService = corpusEpochService;
     }
 
     /**
@@ -100,17 +102,18 @@ public class ChatRagGateService {
         }
 
         // Cache de tamano del corpus compartido (sin filtro de propietario).
-        long now = System.currentTimeMillis();
-        CorpusCacheEntry cached = corpusCache.get("shared");
+        // El epoch se lee antes de contar: si avanza entre medias, la entrada ya nace invalida.
+        long epoch = corpusEpochService.current();
+        CorpusCacheEntry cached = corpusCache;
         long activeDocuments;
         long activeChunks;
-        if (cached != null && cached.expiresAt() > now) {
+        if (cached != null && cached.epoch() == epoch) {
             activeDocuments = cached.docs();
             activeChunks = cached.chunks();
         } else {
             activeDocuments = documentRepository.countByActiveTrue();
             activeChunks = chunkRepository.countActive();
-            corpusCache.put("shared", new CorpusCacheEntry(activeDocuments, activeChunks, now + CORPUS_CACHE_TTL_MS));
+            corpusCache = new CorpusCacheEntry(activeDocuments, activeChunks, epoch);
         }
 
         // Si no hay corpus activo, no tiene sentido pagar la latencia del embedding.
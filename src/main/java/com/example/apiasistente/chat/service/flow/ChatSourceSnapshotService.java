@@ -73,13 +73,13 @@ public class ChatSourceSnapshotService {
 
         List<SourceSnapshot> snapshots = new ArrayList<>(scored.size());
         for (com.example.apiasistente.rag.service.RagService.ScoredChunk scoredChunk : scored) {
-            if (scoredChunk == null || scoredChunk.chunk() == null || scoredChunk.chunk().getDocument() == null) {
+            if (scoredChunk == null || scoredChunk.chunk() == null || scoredChunk.chunk().documentId() == null) {
                 continue;
             }
             snapshots.add(new SourceSnapshot(
-                    scoredChunk.chunk().getId(),
-                    scoredChunk.chunk().getDocument().getId(),
-                    scoredChunk.chunk().getDocument().getTitle(),
+                    scoredChunk.chunk().chunkId(),
+                    scoredChunk.chunk().documentId(),
+                    scoredChunk.chunk().documentTitle(),
                     scoredChunk.effectiveText(),
                     scoredChunk.score()
             ));
@@ -0,0 +1,56 @@
+package com.example.apiasistente.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estrategia de chunking por `source` del documento.
+ *
+ * Estrategias: `fixed` (ventana de `rag.chunk.size` con `rag.chunk.overlap`), `sentence` y `line`
+ * (chunking por contenido ajustado a fin de frase/parrafo o a fin de linea). El tamano objetivo
+ * del chunking por contenido es `rag.chunk.size`, acotado por `min-size` y `max-size`.
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.chunking")
+public class RagChunkingProperties {
+
+    private String defaultStrategy = "fixed";
+    private Map<String, String> sources = new LinkedHashMap<>();
+    private int minSize = 350;
+    private int maxSize = 1400;
+
+    public String getDefaultStrategy() {
+        return defaultStrategy;
+    }
+
+    public void setDefaultStrategy(String defaultStrategy) {
+        this.defaultStrategy = defaultStrategy;
+    }
+
+    public Map<String, String> getSources() {
+        return sources;
+    }
+
+    public void setSources(Map<String, String> sources) {
+        this.sources = sources;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.apiasistente.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Parametros del grafo HNSW y de la politica de segmentos del indice vectorial del RAG.
+ *
+ * - `m` y `beamWidth` se aplican al construir el grafo (segmentos nuevos y merges).
+ * - `mergeFactor` y `maxSegmentMb` gobiernan los merges automaticos de Lucene.
+ * - `optimize*` controla el compactado en horas valle: solo corre sin busquedas recientes.
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.vector.hnsw")
+public class RagVectorHnswProperties {
+
+    private int m = 16;
+    private int beamWidth = 100;
+    private int mergeFactor = 10;
+    private double maxSegmentMb = 5120;
+    private boolean optimizeEnabled = true;
+    private long optimizeIdleMs = 120000;
+    private int optimizeMinSegments = 8;
+    private int optimizeMaxSegments = 1;
+
+    public int getM() {
+        return m;
+    }
+
+    public void setM(int m) {
+        this.m = m;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public void setBeamWidth(int beamWidth) {
+        this.beamWidth = beamWidth;
+    }
+
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    public void setMergeFactor(int mergeFactor) {
+        this.mergeFactor = mergeFactor;
+    }
+
+    public double getMaxSegmentMb() {
+        return maxSegmentMb;
+    }
+
+    public void setMaxSegmentMb(double maxSegmentMb) {
+        this.maxSegmentMb = maxSegmentMb;
+    }
+
+    public boolean isOptimizeEnabled() {
+        return optimizeEnabled;
+    }
+
+    public void setOptimizeEnabled(boolean optimizeEnabled) {
+        this.optimizeEnabled = optimizeEnabled;
+    }
+
+    public long getOptimizeIdleMs() {
+        return optimizeIdleMs;
+    }
+
+    public void setOptimizeIdleMs(long optimizeIdleMs) {
+        this.optimizeIdleMs = optimizeIdleMs;
+    }
+
+    public int getOptimizeMinSegments() {
+        return optimizeMinSegments;
+    }
+
+    public void setOptimizeMinSegments(int optimizeMinSegments) {
+        this.optimizeMinSegments = optimizeMinSegments;
+    }
+
+    public int getOptimizeMaxSegments() {
+        return optimizeMaxSegments;
+    }
+
+    public void setOptimizeMaxSegments(int optimizeMaxSegments) {
+        this.optimizeMaxSegments = optimizeMaxSegments;
+    }
+}
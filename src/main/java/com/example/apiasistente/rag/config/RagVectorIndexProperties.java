@@ -0,0 +1,61 @@
+package com.example.apiasistente.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Parametros del indice vectorial del RAG (`rag.vector.*`): directorio, arranque, commit, rebuild,
+ * codec, busqueda y store mapeado. El grafo HNSW y los merges van aparte en `RagVectorHnswProperties`.
+ *
+ * - Los valores por defecto son los mismos que documenta `application.yml`.
+ * - Los ticks de `@Scheduled` (`refresh-interval-ms`, `commit.interval-ms`) se leen en la propia anotacion.
+ */
+@ConfigurationProperties(prefix = "rag.vector")
+public record RagVectorIndexProperties(
+        @DefaultValue("data/rag-hnsw") String indexDir,
+        @DefaultValue("auto") String directory,
+        @DefaultValue("true") boolean rebuildOnStartup,
+        @DefaultValue("catch-up") String startupMode,
+        @DefaultValue("900000") long catchUpOverlapMs,
+        @DefaultValue Commit commit,
+        @DefaultValue Rebuild rebuild,
+        @DefaultValue Codec codec,
+        @DefaultValue Search search,
+        @DefaultValue Store store
+) {
+
+    /**
+     * `group` agrupa los commits durables por intervalo o volumen; `immediate` hace commit por escritura.
+     */
+    public record Commit(@DefaultValue("group") String mode,
+                         @DefaultValue("33554432") long maxPendingBytes) {
+    }
+
+    /**
+     * Lectores de `vectors` e indexadores de la generacion sombra; `indexThreads` 0 = la mitad de los nucleos.
+     */
+    public record Rebuild(@DefaultValue("2") int fetchThreads,
+                          @DefaultValue("0") int indexThreads) {
+    }
+
+    /**
+     * `float32`, `int8` o `int4`; en modo cuantizado se re-puntua con `rescoreOversample` candidatos por hit.
+     */
+    public record Codec(@DefaultValue("float32") String mode,
+                        @DefaultValue("true") boolean rescore,
+                        @DefaultValue("3") int rescoreOversample) {
+    }
+
+    /**
+     * `threads` 0 = un hilo por nucleo, 1 = secuencial.
+     */
+    public record Search(@DefaultValue("0") int threads,
+                         @DefaultValue("false") boolean shardByOwner) {
+    }
+
+    /**
+     * Directorio del store mapeado de embeddings; vacio = desactivado.
+     */
+    public record Store(@DefaultValue("data/rag-vectors") String dir) {
+    }
+}
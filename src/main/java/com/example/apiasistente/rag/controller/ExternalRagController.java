@@ -1,26 +1,37 @@
 package com.example.apiasistente.rag.controller;
 
 import com.example.apiasistente.rag.dto.MemoryRequest;
+import com.example.apiasistente.rag.dto.RagIngestJobDto;
 import com.example.apiasistente.rag.dto.UpsertDocumentRequest;
 import com.example.apiasistente.rag.dto.UpsertDocumentResponse;
 import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.service.RagBulkIngestService;
+import com.example.apiasistente.rag.service.RagIngestJobService;
 import com.example.apiasistente.rag.service.RagService;
+import com.example.apiasistente.rag.service.RagStreamIngestService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
 
 /**
  * API externa del RAG para integraciones con API key.
@@ -36,9 +47,18 @@ public class ExternalRagController {
     private static final Logger log = LoggerFactory.getLogger(ExternalRagController.class);
 
     private final RagService ragService;
-
-    public ExternalRagController(RagService ragService) {
+    private final RagBulkIngestService bulkIngestService;
+    private final RagIngestJobService ingestJobService;
+    private final RagStreamIngestService streamIngestService;
+
+    public ExternalRagController(RagService ragService,
+                                 RagBulkIngestService bulkIngestService,
+                                 RagIngestJobService ingestJobService,
+                                 RagStreamIngestService streamIngestService) {
         this.ragService = ragService;
+        this.bulkIngestService = bulkIngestService;
+        this.ingestJobService = ingestJobService;
+        this.streamIngestService = streamIngestService;
     }
 
     @PostMapping("/documents")
@@ -51,7 +71,41 @@ public class ExternalRagController {
     public List<UpsertDocumentResponse> upsertBatch(@Valid @RequestBody List<UpsertDocumentRequest> reqs,
                                                     Principal principal) {
         resolveUsername(principal);
-        return mapUpsertResponsesSafe(reqs, req -> toUpsertResponse(upsertWithOptionalMetadata(RagService.GLOBAL_OWNER, req)));
+        return upsertBulk(RagService.GLOBAL_OWNER, reqs);
+    }
+
+    /**
+     * Ingesta en streaming para documentos que no caben en un JSON: el cuerpo se chunkea y embebe mientras llega.
+     * NDJSON: primera linea `{"title","source","tags","url"}`, despues lineas `{"text": "..."}` que se concatenan.
+     */
+    @PostMapping(path = "/documents/stream", consumes = "application/x-ndjson")
+    public UpsertDocumentResponse upsertStreamNdjson(InputStream body, Principal principal) {
+        resolveUsername(principal);
+        return toUpsertResponse(streamIngestService.ingestNdjson(
+                RagService.GLOBAL_OWNER,
+                new InputStreamReader(body, StandardCharsets.UTF_8)
+        ));
+    }
+
+    /**
+     * Igual que la variante NDJSON, con el texto plano como cuerpo y la metadata en la query.
+     */
+    @PostMapping(path = "/documents/stream", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public UpsertDocumentResponse upsertStreamText(@RequestParam String title,
+                                                   @RequestParam(required = false) String source,
+                                                   @RequestParam(required = false) String tags,
+                                                   @RequestParam(required = false) String url,
+                                                   InputStream body,
+                                                   Principal principal) {
+        resolveUsername(principal);
+        return toUpsertResponse(streamIngestService.ingestText(
+                RagService.GLOBAL_OWNER,
+                title,
+                source,
+                tags,
+                url,
+                new InputStreamReader(body, StandardCharsets.UTF_8)
+        ));
     }
 
     @PostMapping("/users/{externalUserId}/documents")
@@ -68,10 +122,28 @@ public class ExternalRagController {
                                                                    @Valid @RequestBody List<UpsertDocumentRequest> reqs,
                                                                    Principal principal) {
         resolveUsername(principal);
-        return mapUpsertResponsesSafe(
-                reqs,
-                req -> toUpsertResponse(upsertWithOptionalMetadata(RagService.GLOBAL_OWNER, req))
-        );
+        return upsertBulk(RagService.GLOBAL_OWNER, reqs);
+    }
+
+    /**
+     * Variante asincrona del batch: responde 202 con el id del job y se consulta en `/jobs/{jobId}`.
+     * Con la cola llena responde 429.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<RagIngestJobDto> submitJob(@Valid @RequestBody List<UpsertDocumentRequest> reqs,
+                                                     Principal principal) {
+        String username = resolveUsername(principal);
+        RagIngestJobDto job = ingestJobService.submit(RagService.GLOBAL_OWNER, username, toBulkDocuments(reqs));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/ext/rag/jobs/" + job.id()))
+                .body(job);
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public RagIngestJobDto jobStatus(@PathVariable String jobId, Principal principal) {
+        String username = resolveUsername(principal);
+        return ingestJobService.find(jobId, username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Job de ingesta no encontrado."));
     }
 
     @PostMapping("/memory")
@@ -138,20 +210,33 @@ public class ExternalRagController {
     }
 
     /**
-     * Procesa cada documento de forma aislada: un fallo en un item no cancela el resto.
+     * Ingesta bulk con resultado por documento: un fallo en un item no cancela el resto.
      * Los items fallidos se omiten del resultado; el caller recibe los que sí se ingresaron.
+     * Sin source/tags/url el core cae a "api", igual que el camino legacy de `upsertDocument`.
      */
-    private List<UpsertDocumentResponse> mapUpsertResponsesSafe(List<UpsertDocumentRequest> requests,
-                                                                Function<UpsertDocumentRequest, UpsertDocumentResponse> mapper) {
+    private List<UpsertDocumentResponse> upsertBulk(String owner, List<UpsertDocumentRequest> requests) {
         List<UpsertDocumentResponse> results = new ArrayList<>(requests.size());
-        for (UpsertDocumentRequest req : requests) {
-            try {
-                results.add(mapper.apply(req));
-            } catch (Exception e) {
-                log.warn("ext_rag batch_item_fail title='{}' cause={}", req.getTitle(), e.getMessage());
+        for (RagBulkIngestService.BulkItemResult outcome : bulkIngestService.upsertBatch(owner, toBulkDocuments(requests))) {
+            if (outcome.succeeded()) {
+                results.add(toUpsertResponse(outcome.document()));
+            } else {
+                log.warn("ext_rag batch_item_fail title='{}' cause={}", outcome.title(), outcome.error());
             }
         }
         return results;
     }
 
+    private List<RagBulkIngestService.BulkDocument> toBulkDocuments(List<UpsertDocumentRequest> requests) {
+        return requests.stream()
+                .map(req -> new RagBulkIngestService.BulkDocument(
+                        req.getTitle(),
+                        req.getContent(),
+                        req.getSource(),
+                        req.getTags(),
+                        req.getUrl(),
+                        mapChunks(req)
+                ))
+                .toList();
+    }
+
 }
@@ -4,6 +4,7 @@ import com.example.apiasistente.rag.dto.MemoryRequest;
 import com.example.apiasistente.rag.dto.RagContextStatsDto;
 import com.example.apiasistente.rag.dto.UpsertDocumentRequest;
 import com.example.apiasistente.rag.dto.UpsertDocumentResponse;
+import com.example.apiasistente.rag.service.RagBulkIngestService;
 import com.example.apiasistente.rag.service.RagService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
@@ -31,9 +32,11 @@ public class RagApiController {
     private static final Logger log = LoggerFactory.getLogger(RagApiController.class);
 
     private final RagService ragService;
+    private final RagBulkIngestService bulkIngestService;
 
-    public RagApiController(RagService ragService) {
+    public RagApiController(RagService ragService, RagBulkIngestService bulkIngestService) {
         this.ragService = ragService;
+        this.bulkIngestService = bulkIngestService;
     }
 
     @PostMapping("/documents")
@@ -44,13 +47,13 @@ public class RagApiController {
 
     @PostMapping("/documents/batch")
     public List<UpsertDocumentResponse> upsertBatch(@Valid @RequestBody List<UpsertDocumentRequest> reqs) {
+        var outcomes = bulkIngestService.upsertBatch(RagService.GLOBAL_OWNER, reqs.stream().map(this::toBulkDocument).toList());
         List<UpsertDocumentResponse> results = new ArrayList<>(reqs.size());
-        for (var r : reqs) {
-            try {
-                var doc = upsertWithOptionalMetadata(RagService.GLOBAL_OWNER, r);
-                results.add(new UpsertDocumentResponse(doc.getId(), doc.getTitle()));
-            } catch (Exception e) {
-                log.warn("rag_batch_item_fail title='{}' cause={}", r.getTitle(), e.getMessage());
+        for (var outcome : outcomes) {
+            if (outcome.succeeded()) {
+                results.add(new UpsertDocumentResponse(outcome.document().getId(), outcome.document().getTitle()));
+            } else {
+                log.warn("rag_batch_item_fail title='{}' cause={}", outcome.title(), outcome.error());
             }
         }
         return results;
@@ -73,13 +76,13 @@ public class RagApiController {
                                                            Principal principal) {
         String target = normalizePathUser(username);
         enforceSameUser(principal, target);
+        var outcomes = bulkIngestService.upsertBatch(RagService.GLOBAL_OWNER, reqs.stream().map(this::toBulkDocument).toList());
         List<UpsertDocumentResponse> results = new ArrayList<>(reqs.size());
-        for (var r : reqs) {
-            try {
-                var doc = upsertWithOptionalMetadata(RagService.GLOBAL_OWNER, r);
-                results.add(new UpsertDocumentResponse(doc.getId(), doc.getTitle()));
-            } catch (Exception e) {
-                log.warn("rag_batch_user_item_fail user='{}' title='{}' cause={}", target, r.getTitle(), e.getMessage());
+        for (var outcome : outcomes) {
+            if (outcome.succeeded()) {
+                results.add(new UpsertDocumentResponse(outcome.document().getId(), outcome.document().getTitle()));
+            } else {
+                log.warn("rag_batch_user_item_fail user='{}' title='{}' cause={}", target, outcome.title(), outcome.error());
             }
         }
         return results;
@@ -104,22 +107,36 @@ public class RagApiController {
                                                                                               UpsertDocumentRequest req) {
         // Siempre usa el camino estructurado para que los docs manuales tengan la misma
         // metadata que los del scraper: source visible, tags indexables por la gate probe.
-        // Si el cliente no manda source, usamos "manual" en lugar de "api" para que sea
-        // legible en el panel y no quede como un campo técnico sin significado.
-        String source = (req.getSource() != null && !req.getSource().isBlank())
-                ? req.getSource()
-                : "manual";
         return ragService.upsertStructuredDocumentForOwner(
                 owner,
                 req.getTitle(),
                 req.getContent(),
-                source,
+                sourceOrManual(req),
                 req.getTags(),
                 req.getUrl(),
                 mapChunks(req)
         );
     }
 
+    private RagBulkIngestService.BulkDocument toBulkDocument(UpsertDocumentRequest req) {
+        return new RagBulkIngestService.BulkDocument(
+                req.getTitle(),
+                req.getContent(),
+                sourceOrManual(req),
+                req.getTags(),
+                req.getUrl(),
+                mapChunks(req)
+        );
+    }
+
+    /**
+     * Si el cliente no manda source, usamos "manual" en lugar de "api" para que sea
+     * legible en el panel y no quede como un campo técnico sin significado.
+     */
+    private static String sourceOrManual(UpsertDocumentRequest req) {
+        return (req.getSource() != null && !req.getSource().isBlank()) ? req.getSource() : "manual";
+    }
+
     private com.example.apiasistente.rag.entity.KnowledgeDocument storeMemoryWithOptionalMetadata(String owner,
                                                                                                   MemoryRequest req) {
         if ((req.getSource() == null || req.getSource().isBlank()) && (req.getTags() == null || req.getTags().isBlank())) {
@@ -0,0 +1,22 @@
+package com.example.apiasistente.rag.dto;
+
+import java.time.Instant;
+
+/**
+ * Progreso del ultimo rebuild del indice HNSW (o del que esta en curso).
+ *
+ * Responsabilidad:
+ * - Permitir seguir desde la consola un rebuild con indice sombra sin leer logs.
+ * - Exponer el throughput real (vectores/s) para dimensionar hilos de lectura e indexado.
+ */
+public record RagIndexRebuildStatusDto(
+        boolean running,
+        String trigger,
+        String phase,
+        Instant startedAt,
+        Instant finishedAt,
+        long totalVectors,
+        long indexedVectors,
+        double vectorsPerSecond
+) {
+}
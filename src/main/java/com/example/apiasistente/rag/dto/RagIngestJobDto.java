@@ -0,0 +1,32 @@
+package com.example.apiasistente.rag.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Estado de un job de ingesta asincrona.
+ *
+ * Responsabilidad:
+ * - Exponer progreso, errores y el resultado de cada documento sin filtrar la entidad JPA.
+ * - `documents` va vacio en la respuesta de alta; se rellena al consultar el job.
+ */
+public record RagIngestJobDto(
+        String id,
+        String status,
+        int totalDocuments,
+        int processedDocuments,
+        int failedDocuments,
+        double progress,
+        String lastError,
+        Instant createdAt,
+        Instant startedAt,
+        Instant finishedAt,
+        List<Document> documents
+) {
+
+    /**
+     * Resultado de un documento del job; `documentId` es la version activa si se ingirio.
+     */
+    public record Document(int index, String title, String status, Long documentId, String error) {
+    }
+}
@@ -45,6 +45,7 @@ public record RagOpsStatusDto(
         String lastDeleteSummary,
         Instant lastIndexAt,
         String lastIndexSummary,
+        RagIndexRebuildStatusDto indexRebuild,
         List<RagOpsEventDto> recentEvents
 ) {
     public RagOpsStatusDto {
@@ -0,0 +1,26 @@
+package com.example.apiasistente.rag.dto;
+
+/**
+ * Proyeccion inmutable de un chunk recuperado y su documento.
+ *
+ * Solo lleva las columnas que consumen prompt, fuentes y snapshots: retrieval no carga entidades gestionadas
+ * ni las arrastra por el turno de chat. `segmentOffsets` son las fronteras de frase calculadas al ingerir
+ * (null en chunks antiguos).
+ */
+public record RetrievedChunkDto(
+        Long chunkId,
+        Long documentId,
+        String documentTitle,
+        String owner,
+        int chunkIndex,
+        String text,
+        byte[] segmentOffsets
+) {
+    public RetrievedChunkDto {
+        text = text == null ? "" : text;
+    }
+
+    public RetrievedChunkDto(Long chunkId, Long documentId, String documentTitle, String owner, int chunkIndex, String text) {
+        this(chunkId, documentId, documentTitle, owner, chunkIndex, text, null);
+    }
+}
@@ -69,6 +69,10 @@ public class KnowledgeChunk {
     @Column(length = 1000)
     private String tags;
 
+    // Fronteras de frase/parrafo precalculadas al ingerir (formato de `SentenceSegmenter`); null en filas antiguas.
+    @Column(name = "segment_offsets", columnDefinition = "BLOB")
+    private byte[] segmentOffsets;
+
     // Compatibilidad temporal con tests/mocks antiguos.
     @Transient
     private String embeddingJson;
@@ -150,6 +154,14 @@ public class KnowledgeChunk {
         this.tags = tags;
     }
 
+    public byte[] getSegmentOffsets() {
+        return segmentOffsets;
+    }
+
+    public void setSegmentOffsets(byte[] segmentOffsets) {
+        this.segmentOffsets = segmentOffsets;
+    }
+
     /**
      * Campo legado solo para compatibilidad con tests antiguos.
      * En la nueva estructura el embedding vive en la capa de vectores.
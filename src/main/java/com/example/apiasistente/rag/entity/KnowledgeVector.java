@@ -20,6 +20,8 @@ import java.time.Instant;
  * - Esta tabla actua como respaldo y base para reconstruir el indice HNSW.
  * - El retrieval normal consulta el indice HNSW, no esta tabla.
  * - La clave primaria coincide con chunk_id para mantener el mapping 1:1 simple.
+ * - El embedding se guarda en binario float32 (`embedding_bin`, ver `EmbeddingCodec`). `embedding_json`
+ *   solo queda en filas antiguas hasta que `RagVectorBinaryMigrationService` las convierte.
  *
  * Responsabilidad:
  * - Ser la fuente durable de reconstruccion del indice vectorial.
@@ -43,12 +45,19 @@ public class KnowledgeVector {
     @JoinColumn(name = "chunk_id")
     private KnowledgeChunk chunk;
 
-    @Column(name = "embedding_json", columnDefinition = "LONGTEXT", nullable = false)
+    @Column(name = "embedding_json", columnDefinition = "LONGTEXT")
     private String embeddingJson;
 
+    @Column(name = "embedding_bin", columnDefinition = "MEDIUMBLOB")
+    private byte[] embeddingBin;
+
     @Column(nullable = false)
     private int dimension;
 
+    // Modelo que genero el embedding; null en filas anteriores a la reutilizacion por hash.
+    @Column(name = "embedding_model", length = 160)
+    private String embeddingModel;
+
     @Column(nullable = false)
     private Instant createdAt = Instant.now();
 
@@ -79,6 +88,14 @@ public class KnowledgeVector {
         this.embeddingJson = embeddingJson;
     }
 
+    public byte[] getEmbeddingBin() {
+        return embeddingBin;
+    }
+
+    public void setEmbeddingBin(byte[] embeddingBin) {
+        this.embeddingBin = embeddingBin;
+    }
+
     public int getDimension() {
         return dimension;
     }
@@ -87,6 +104,14 @@ public class KnowledgeVector {
         this.dimension = dimension;
     }
 
+    public String getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    public void setEmbeddingModel(String embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
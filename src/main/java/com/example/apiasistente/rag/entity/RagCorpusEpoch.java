@@ -0,0 +1,53 @@
+package com.example.apiasistente.rag.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Epoch persistido del corpus RAG: una sola fila cuyo contador solo crece.
+ *
+ * Flujo actual:
+ * - Cada ingesta, borrado, poda o reset lo incrementa en la misma transaccion que cambia el corpus.
+ * - `RagCorpusEpochService` lo mantiene en memoria para lecturas O(1) y lo recarga al arrancar.
+ * - Los caches que dependen del corpus guardan el epoch con el que se calcularon en vez de depender de un TTL.
+ */
+@Entity
+@Table(name = "rag_corpus_epoch")
+public class RagCorpusEpoch {
+
+    public static final long SINGLETON_ID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private long epoch;
+
+    @Column(nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    protected RagCorpusEpoch() {
+    }
+
+    public RagCorpusEpoch(long epoch) {
+        this.id = SINGLETON_ID;
+        this.epoch = epoch;
+        this.updatedAt = Instant.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.apiasistente.rag.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Job de ingesta asincrona: un lote de documentos aceptado por la API y procesado en segundo plano.
+ *
+ * Flujo actual:
+ * - Se crea en QUEUED junto con un `RagIngestJobItem` por documento, en la misma transaccion.
+ * - Los contadores avanzan por tramos mientras corre; al terminar queda en SUCCEEDED, PARTIAL o FAILED.
+ * - Lo procesa la instancia que tiene el lease (`leaseOwner` hasta `leaseUntil`) y lo renueva mientras
+ *   lo tenga en cola o en curso; otra instancia solo lo adopta cuando el lease ha caducado.
+ */
+@Entity
+@Table(
+        name = "rag_ingest_job",
+        indexes = {
+                @Index(name = "idx_rag_ingest_job_status", columnList = "status,createdAt")
+        }
+)
+public class RagIngestJob {
+
+    // UUID: el id se entrega al cliente y no debe ser enumerable.
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false, length = 120)
+    private String owner;
+
+    @Column(nullable = false, length = 120)
+    private String requestedBy;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 24)
+    private RagIngestJobStatus status = RagIngestJobStatus.QUEUED;
+
+    @Column(nullable = false)
+    private int totalDocuments;
+
+    @Column(nullable = false)
+    private int processedDocuments;
+
+    @Column(nullable = false)
+    private int failedDocuments;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(nullable = false)
+    private Instant createdAt = Instant.now();
+
+    @Column
+    private Instant startedAt;
+
+    @Column
+    private Instant finishedAt;
+
+    @Column(nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    // Id de la instancia que tiene el job; null en jobs terminados.
+    @Column(length = 36)
+    private String leaseOwner;
+
+    @Column
+    private Instant leaseUntil;
+
+    @PrePersist
+    public void prePersist() {
+        Instant now = Instant.now();
+        if (createdAt == null) {
+            createdAt = now;
+        }
+        updatedAt = now;
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        updatedAt = Instant.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public String getRequestedBy() {
+        return requestedBy;
+    }
+
+    public void setRequestedBy(String requestedBy) {
+        this.requestedBy = requestedBy;
+    }
+
+    public RagIngestJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(RagIngestJobStatus status) {
+        this.status = status;
+    }
+
+    public int getTotalDocuments() {
+        return totalDocuments;
+    }
+
+    public void setTotalDocuments(int totalDocuments) {
+        this.totalDocuments = totalDocuments;
+    }
+
+    public int getProcessedDocuments() {
+        return processedDocuments;
+    }
+
+    public void setProcessedDocuments(int processedDocuments) {
+        this.processedDocuments = processedDocuments;
+    }
+
+    public int getFailedDocuments() {
+        return failedDocuments;
+    }
+
+    public void setFailedDocuments(int failedDocuments) {
+        this.failedDocuments = failedDocuments;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public Instant getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(Instant leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+}
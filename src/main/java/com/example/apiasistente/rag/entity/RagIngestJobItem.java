@@ -0,0 +1,116 @@
+package com.example.apiasistente.rag.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+/**
+ * Documento de un job de ingesta con su resultado.
+ *
+ * Importante:
+ * - `payload` guarda el documento tal como llego (JSON) para poder reanudar tras un reinicio;
+ *   se vacia en cuanto el item tiene resultado para no duplicar el corpus en esta tabla.
+ */
+@Entity
+@Table(
+        name = "rag_ingest_job_item",
+        indexes = {
+                @Index(name = "idx_rag_ingest_item_job", columnList = "jobId,itemIndex")
+        }
+)
+public class RagIngestJobItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 36)
+    private String jobId;
+
+    @Column(nullable = false)
+    private int itemIndex;
+
+    @Column(length = 200)
+    private String title;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 24)
+    private RagIngestJobItemStatus status = RagIngestJobItemStatus.PENDING;
+
+    @Column
+    private Long documentId;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String payload;
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public int getItemIndex() {
+        return itemIndex;
+    }
+
+    public void setItemIndex(int itemIndex) {
+        this.itemIndex = itemIndex;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public RagIngestJobItemStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(RagIngestJobItemStatus status) {
+        this.status = status;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.apiasistente.rag.entity;
+
+/**
+ * Resultado de un documento dentro de un job de ingesta.
+ */
+public enum RagIngestJobItemStatus {
+    PENDING,
+    CREATED,
+    UNCHANGED,
+    FAILED
+}
@@ -0,0 +1,16 @@
+package com.example.apiasistente.rag.entity;
+
+/**
+ * Estado de un job de ingesta asincrona.
+ */
+public enum RagIngestJobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    PARTIAL,
+    FAILED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == PARTIAL || this == FAILED;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.apiasistente.rag.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Marca durable de un vector eliminado del corpus.
+ *
+ * Flujo actual:
+ * - Se escribe en la misma transaccion que borra la fila de `vectors`.
+ * - Al arrancar, el catch-up del indice HNSW aplica solo los borrados posteriores a su watermark,
+ *   sin tener que comparar el indice entero contra la BD.
+ * - Las marcas anteriores al watermark ya commiteado se purgan.
+ */
+@Entity
+@Table(
+        name = "vector_tombstones",
+        indexes = {
+                @Index(name = "idx_vector_tombstones_deleted_at", columnList = "deletedAt")
+        }
+)
+public class VectorTombstone {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "chunk_id", nullable = false)
+    private Long chunkId;
+
+    @Column(nullable = false)
+    private Instant deletedAt = Instant.now();
+
+    protected VectorTombstone() {
+    }
+
+    public VectorTombstone(Long chunkId) {
+        this.chunkId = chunkId;
+    }
+
+    @PrePersist
+    public void prePersist() {
+        if (deletedAt == null) {
+            deletedAt = Instant.now();
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getChunkId() {
+        return chunkId;
+    }
+
+    public Instant getDeletedAt() {
+        return deletedAt;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.apiasistente.rag.repository;
 
+import com.example.apiasistente.rag.dto.RetrievedChunkDto;
 import com.example.apiasistente.rag.entity.KnowledgeChunk;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -7,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -23,15 +25,24 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
 
     /**
      * Carga chunks junto a su documento para el tramo final del retrieval.
+     * Proyeccion con solo las columnas necesarias: sin entidades en el contexto de persistencia ni dirty checking.
      */
     @Query("""
-        select c
+        select new com.example.apiasistente.rag.dto.RetrievedChunkDto(
+            c.id,
+            d.id,
+            d.title,
+            d.owner,
+            c.chunkIndex,
+            c.text,
+            c.segmentOffsets
+        )
         from KnowledgeChunk c
-        join fetch c.document d
+        join c.document d
         where d.active = true
           and c.id in :ids
     """)
-    List<KnowledgeChunk> findActiveWithDocumentByIdIn(@Param("ids") List<Long> ids);
+    List<RetrievedChunkDto> findActiveViewsByIdIn(@Param("ids") Collection<Long> ids);
 
     /**
      * Variante sin filtrar estado usada por mantenimiento y borrado duro.
@@ -46,6 +57,11 @@ public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk,
 
     void deleteByDocument_Id(Long documentId);
 
+    /** Borrado en una sentencia, sin cargar entidades: para documentos con muchos chunks. */
+    @Modifying
+    @Query("delete from KnowledgeChunk c where c.document.id = :documentId")
+    int deleteAllByDocumentId(@Param("documentId") Long documentId);
+
     @Query("select c.id from KnowledgeChunk c where c.document.id = :docId")
     List<Long> findIdsByDocumentId(@Param("docId") Long docId);
 
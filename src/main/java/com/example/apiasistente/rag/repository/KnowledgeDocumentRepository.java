@@ -20,6 +20,21 @@ public interface KnowledgeDocumentRepository extends JpaRepository<KnowledgeDocu
 
     Optional<KnowledgeDocument> findFirstByOwnerAndTitleIgnoreCaseAndActiveTrue(String owner, String title);
 
+    /** Version activa de varios titulos de un owner en una sola consulta (ingesta bulk). */
+    @Query("""
+        select d
+        from KnowledgeDocument d
+        where d.active = true
+          and d.owner = :owner
+          and lower(d.title) in :titles
+    """)
+    List<KnowledgeDocument> findActiveByOwnerAndLowerTitleIn(@Param("owner") String owner,
+                                                             @Param("titles") Collection<String> titles);
+
+    /** Versiones a medio ingerir por streaming que quedaron huerfanas (huella con prefijo de staging). */
+    List<KnowledgeDocument> findByActiveFalseAndContentFingerprintStartingWithAndCreatedAtBefore(String prefix,
+                                                                                                 Instant createdBefore);
+
     long countByActiveTrue();
 
     long countByOwnerAndActiveTrue(String owner);
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
 
@@ -16,39 +17,80 @@ import java.util.List;
  */
 public interface KnowledgeVectorRepository extends JpaRepository<KnowledgeVector, Long> {
 
-    interface VectorPayloadView {
-        Long getChunkId();
-        String getEmbeddingJson();
-    }
-
     interface IndexedVectorView {
         Long getChunkId();
         String getOwner();
+        // Null en filas ya migradas a binario.
         String getEmbeddingJson();
+        // Embedding float32 en el formato de `EmbeddingCodec`; null en filas aun sin migrar.
+        byte[] getEmbeddingBin();
+        // Texto del chunk para el campo BM25 del indice.
+        String getText();
+    }
+
+    interface ReusableVectorView {
+        String getHash();
+        // El hash puede venir del cliente: el texto confirma que el embedding corresponde al chunk nuevo.
+        String getText();
+        byte[] getEmbeddingBin();
     }
 
+    /**
+     * Embeddings guardados para chunks con esos hashes y generados con `model` (apoyado en `idx_chunks_hash`).
+     * Las versiones archivadas ya no tienen vectores, asi que solo aparecen chunks vigentes.
+     */
     @Query("""
-        select v.chunkId as chunkId, v.embeddingJson as embeddingJson
+        select c.hash as hash, c.text as text, v.embeddingBin as embeddingBin
         from KnowledgeVector v
-        where v.chunkId in :chunkIds
+        join v.chunk c
+        where c.hash in :hashes
+          and v.embeddingModel = :model
+          and v.embeddingBin is not null
     """)
-    List<VectorPayloadView> findPayloadByChunkIds(@Param("chunkIds") Collection<Long> chunkIds);
+    List<ReusableVectorView> findReusableByHashes(@Param("hashes") Collection<String> hashes,
+                                                  @Param("model") String model);
 
     /**
-     * Paginacion por cursor (afterChunkId) para evitar el coste O(offset) de OFFSET en corpus grandes.
-     * Pasar afterChunkId=null para obtener la primera pagina.
+     * Paginacion por cursor (afterChunkId) dentro del rango `(afterChunkId, upToChunkId]`.
+     * Evita el coste O(offset) de OFFSET en corpus grandes y permite repartir el rebuild del indice
+     * entre varios lectores, cada uno con su propio tramo de chunk_id.
      */
     @Query("""
-        select v.chunkId as chunkId, v.chunk.document.owner as owner, v.embeddingJson as embeddingJson
+        select v.chunkId as chunkId, v.chunk.document.owner as owner, v.embeddingJson as embeddingJson,
+               v.embeddingBin as embeddingBin, v.chunk.text as text
         from KnowledgeVector v
         where v.chunk.document.active = true
+          and v.chunkId > :afterChunkId
+          and v.chunkId <= :upToChunkId
+        order by v.chunkId asc
+    """)
+    List<IndexedVectorView> findActiveIndexPageInRange(@Param("afterChunkId") long afterChunkId,
+                                                       @Param("upToChunkId") long upToChunkId,
+                                                       Pageable pageable);
+
+    @Query("select max(v.chunkId) from KnowledgeVector v")
+    Long findMaxChunkId();
+
+    /**
+     * Misma paginacion por cursor, acotada a vectores creados desde `since`.
+     * La usa el catch-up incremental del indice al arrancar: el coste depende de lo escrito tras el
+     * ultimo commit del indice, no del tamano del corpus (apoyado en `idx_vectors_created_at`).
+     */
+    @Query("""
+        select v.chunkId as chunkId, v.chunk.document.owner as owner, v.embeddingJson as embeddingJson,
+               v.embeddingBin as embeddingBin, v.chunk.text as text
+        from KnowledgeVector v
+        where v.chunk.document.active = true
+          and v.createdAt >= :since
           and (:afterChunkId is null or v.chunkId > :afterChunkId)
         order by v.chunkId asc
     """)
-    List<IndexedVectorView> findActiveIndexPageCursor(@Param("afterChunkId") Long afterChunkId, Pageable pageable);
+    List<IndexedVectorView> findActiveIndexPageCreatedSince(@Param("since") Instant since,
+                                                            @Param("afterChunkId") Long afterChunkId,
+                                                            Pageable pageable);
 
     @Query("""
-        select coalesce(sum(length(v.embeddingJson)), 0)
+        select coalesce(sum(length(v.embeddingJson)), 0) + coalesce(sum(length(v.embeddingBin)), 0)
         from KnowledgeVector v
         join v.chunk c
         join c.document d
@@ -65,8 +107,57 @@ public interface KnowledgeVectorRepository extends JpaRepository<KnowledgeVector
     """)
     long countActive();
 
+    /**
+     * Vectores activos con chunk_id hasta el tope dado: el catch-up compara contra una foto fija
+     * y no contra escrituras que siguen entrando mientras corre.
+     */
+    @Query("""
+        select count(v)
+        from KnowledgeVector v
+        join v.chunk c
+        join c.document d
+        where d.active = true
+          and v.chunkId <= :maxChunkId
+    """)
+    long countActiveUpTo(@Param("maxChunkId") long maxChunkId);
+
     void deleteByChunkIdIn(Collection<Long> chunkIds);
 
+    /**
+     * Fecha los vectores de un documento con su activacion: el catch-up del indice filtra por `created_at`
+     * y los vectores escritos en staging llevan la hora de su ventana, anterior a ese instante.
+     */
+    @Modifying
+    @Query("""
+        update KnowledgeVector v
+        set v.createdAt = :createdAt
+        where v.chunkId in (select c.id from KnowledgeChunk c where c.document.id = :documentId)
+    """)
+    int updateCreatedAtByDocumentId(@Param("documentId") Long documentId, @Param("createdAt") Instant createdAt);
+
+    @Modifying
+    @Query("""
+        delete from KnowledgeVector v
+        where v.chunkId in (select c.id from KnowledgeChunk c where c.document.id = :documentId)
+    """)
+    int deleteAllByDocumentId(@Param("documentId") Long documentId);
+
+    /**
+     * Vectores de un documento por cursor de chunk_id, sin filtrar `active`: la ingesta en streaming
+     * los indexa al activar la version.
+     */
+    @Query("""
+        select v.chunkId as chunkId, v.chunk.document.owner as owner, v.embeddingJson as embeddingJson,
+               v.embeddingBin as embeddingBin, v.chunk.text as text
+        from KnowledgeVector v
+        where v.chunk.document.id = :documentId
+          and v.chunkId > :afterChunkId
+        order by v.chunkId asc
+    """)
+    List<IndexedVectorView> findIndexPageByDocumentId(@Param("documentId") Long documentId,
+                                                      @Param("afterChunkId") long afterChunkId,
+                                                      Pageable pageable);
+
     @Transactional
     @Modifying
     @Query(value = "TRUNCATE TABLE vectors", nativeQuery = true)
@@ -0,0 +1,28 @@
+package com.example.apiasistente.rag.repository;
+
+import com.example.apiasistente.rag.entity.RagCorpusEpoch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Repositorio del epoch del corpus. El incremento es un UPDATE atomico en BD: dos instancias que ingieren a la
+ * vez nunca pierden un avance.
+ */
+public interface RagCorpusEpochRepository extends JpaRepository<RagCorpusEpoch, Long> {
+
+    @Modifying
+    @Query("""
+        update RagCorpusEpoch e
+        set e.epoch = e.epoch + 1, e.updatedAt = :now
+        where e.id = :id
+    """)
+    int increment(@Param("id") Long id, @Param("now") Instant now);
+
+    @Query("select e.epoch from RagCorpusEpoch e where e.id = :id")
+    Optional<Long> findEpoch(@Param("id") Long id);
+}
@@ -0,0 +1,59 @@
+package com.example.apiasistente.rag.repository;
+
+import com.example.apiasistente.rag.entity.RagIngestJobItem;
+import com.example.apiasistente.rag.entity.RagIngestJobItemStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Repositorio de los documentos de cada job de ingesta.
+ */
+public interface RagIngestJobItemRepository extends JpaRepository<RagIngestJobItem, Long> {
+
+    interface ItemStatusView {
+        int getItemIndex();
+        String getTitle();
+        RagIngestJobItemStatus getStatus();
+        Long getDocumentId();
+        String getError();
+    }
+
+    /**
+     * Estado por documento para el polling del job, sin `payload`: los items pendientes aun guardan
+     * el documento entero y cada consulta de estado lo arrastraria.
+     */
+    @Query("""
+        select i.itemIndex as itemIndex, i.title as title, i.status as status,
+               i.documentId as documentId, i.error as error
+        from RagIngestJobItem i
+        where i.jobId = :jobId
+        order by i.itemIndex asc
+    """)
+    List<ItemStatusView> findStatusViewsByJobId(@Param("jobId") String jobId);
+
+    /**
+     * Resultado de un item y libera su `payload`. UPDATE directo: los items que llegan del worker estan
+     * desasociados (el claim del lease limpia el contexto) y `saveAll` haria un SELECT + merge por cada uno.
+     */
+    @Modifying
+    @Query("""
+        update RagIngestJobItem i
+        set i.status = :status, i.documentId = :documentId, i.error = :error, i.payload = null
+        where i.jobId = :jobId
+          and i.itemIndex = :itemIndex
+    """)
+    int recordOutcome(@Param("jobId") String jobId,
+                      @Param("itemIndex") int itemIndex,
+                      @Param("status") RagIngestJobItemStatus status,
+                      @Param("documentId") Long documentId,
+                      @Param("error") String error);
+
+    List<RagIngestJobItem> findByJobIdAndStatusOrderByItemIndexAsc(String jobId,
+                                                                   RagIngestJobItemStatus status,
+                                                                   Pageable pageable);
+}
@@ -0,0 +1,62 @@
+package com.example.apiasistente.rag.repository;
+
+import com.example.apiasistente.rag.entity.RagIngestJob;
+import com.example.apiasistente.rag.entity.RagIngestJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repositorio de los jobs de ingesta asincrona.
+ * El lease se toma y se renueva con UPDATE condicionales: dos instancias nunca procesan el mismo job a la vez.
+ */
+public interface RagIngestJobRepository extends JpaRepository<RagIngestJob, String> {
+
+    /**
+     * Jobs sin terminar cuyo lease no tiene nadie o ya caduco (su instancia murio o se reinicio).
+     */
+    @Query("""
+        select j.id
+        from RagIngestJob j
+        where j.status in :statuses
+          and (j.leaseUntil is null or j.leaseUntil < :now)
+        order by j.createdAt asc
+    """)
+    List<String> findClaimableIds(@Param("statuses") Collection<RagIngestJobStatus> statuses,
+                                  @Param("now") Instant now);
+
+    /**
+     * Toma el lease si es propio, libre o caducado. Devuelve 1 si la instancia se queda el job.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("""
+        update RagIngestJob j
+        set j.leaseOwner = :instanceId, j.leaseUntil = :leaseUntil
+        where j.id = :id
+          and j.status in :statuses
+          and (j.leaseOwner = :instanceId or j.leaseUntil is null or j.leaseUntil < :now)
+    """)
+    int claim(@Param("id") String id,
+              @Param("instanceId") String instanceId,
+              @Param("statuses") Collection<RagIngestJobStatus> statuses,
+              @Param("now") Instant now,
+              @Param("leaseUntil") Instant leaseUntil);
+
+    @Modifying
+    @Query("""
+        update RagIngestJob j
+        set j.leaseUntil = :leaseUntil
+        where j.id in :ids
+          and j.leaseOwner = :instanceId
+          and j.status in :statuses
+    """)
+    int renewLeases(@Param("ids") Collection<String> ids,
+                    @Param("instanceId") String instanceId,
+                    @Param("statuses") Collection<RagIngestJobStatus> statuses,
+                    @Param("leaseUntil") Instant leaseUntil);
+}
@@ -0,0 +1,29 @@
+package com.example.apiasistente.rag.repository;
+
+import com.example.apiasistente.rag.entity.VectorTombstone;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repositorio de marcas de borrado usadas por el catch-up incremental del indice HNSW.
+ */
+public interface VectorTombstoneRepository extends JpaRepository<VectorTombstone, Long> {
+
+    @Query("""
+        select distinct t.chunkId
+        from VectorTombstone t
+        where t.deletedAt >= :since
+    """)
+    List<Long> findChunkIdsDeletedSince(@Param("since") Instant since);
+
+    @Transactional
+    @Modifying
+    @Query("delete from VectorTombstone t where t.deletedAt < :before")
+    int deleteOlderThan(@Param("before") Instant before);
+}
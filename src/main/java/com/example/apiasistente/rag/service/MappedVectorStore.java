@@ -0,0 +1,519 @@
+package com.example.apiasistente.rag.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fichero de embeddings fuera del heap, mapeado en memoria, para rerank y mantenimiento.
+ *
+ * Layout little-endian: cabecera de `HEADER_BYTES` (`magic`, version, dimension, marca de cierre limpio,
+ * registros escritos) y registros de tamano fijo `[chunkId:int64][dimension x float32]`. Solo se anade al final:
+ * - un upsert escribe un registro nuevo y marca el anterior con chunkId = -1 (lapida);
+ * - un borrado solo escribe la lapida;
+ * - `compact()` reescribe los registros vivos en un fichero nuevo y lo sustituye con un rename atomico.
+ * Nunca se trunca un fichero mapeado: vaciarlo crea uno nuevo y desenlaza el viejo, asi una vista
+ * entregada antes no puede acabar leyendo paginas que ya no existen.
+ * Por eso necesita un sistema que permita desenlazar y reemplazar ficheros mapeados: en Windows no se abre.
+ *
+ * Las lecturas devuelven vistas `FloatBuffer` de solo lectura sobre el mapeo: no copian floats al heap.
+ * Una vista sigue siendo valida tras una lapida o un compactado (apunta al mapeo anterior, que el GC
+ * libera cuando nadie la referencia). En el heap solo queda el indice chunkId -> slot (12 bytes por vector).
+ *
+ * No hace fsync por escritura: si el proceso no cerro limpio, la marca de cabecera lo delata y el
+ * propietario debe repoblar el fichero desde su fuente durable antes de marcarlo listo.
+ */
+final class MappedVectorStore implements AutoCloseable {
+
+    static final String FILE_NAME = "vectors.f32";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final int MAGIC = 0x52564631; // "RVF1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int OFFSET_DIMENSIONS = 8;
+    private static final int OFFSET_CLEAN = 12;
+    private static final int OFFSET_RECORDS = 16;
+    private static final long TOMBSTONE = -1L;
+    private static final long MAX_REGION_BYTES = 64L << 20;
+
+    private final Path file;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongIntMap slots = new LongIntMap();
+
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private int dimensions;
+    private int recordBytes;
+    private int regionRecords;
+    private int nextSlot;
+    private int deadSlots;
+    private volatile boolean ready;
+
+    private MappedVectorStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Abre (o crea) el fichero en `dir`. Si el ultimo cierre fue limpio reconstruye el indice de slots
+     * recorriendo los registros y queda listo; si no, lo vacia y queda pendiente de repoblar.
+     */
+    static MappedVectorStore open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        MappedVectorStore store = new MappedVectorStore(dir.resolve(FILE_NAME));
+        Files.deleteIfExists(store.compactFile());
+        store.mapFile();
+        store.load();
+        return store;
+    }
+
+    boolean ready() {
+        return ready;
+    }
+
+    /**
+     * Se llama cuando el contenido ya refleja la fuente durable (tras repoblar).
+     */
+    void markReady() {
+        ready = true;
+    }
+
+    /**
+     * Deja de servir vistas hasta la siguiente repoblacion (p. ej. tras un fallo de escritura).
+     */
+    void invalidate() {
+        ready = false;
+    }
+
+    int dimensions() {
+        lock.readLock().lock();
+        try {
+            return dimensions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int deadSlots() {
+        lock.readLock().lock();
+        try {
+            return deadSlots;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long fileBytes() {
+        lock.readLock().lock();
+        try {
+            return HEADER_BYTES + (long) nextSlot * recordBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserta o reemplaza el vector del chunk. Un vector de otra dimension que la del fichero lo vacia
+     * y lo deja pendiente de repoblar: el modelo de embeddings cambio y el contenido ya no sirve.
+     */
+    void put(long chunkId, float[] vector) throws IOException {
+        write(chunkId, vector, true);
+    }
+
+    /**
+     * Como `put`, pero no pisa un vector ya presente. La repoblacion lo usa para no sobrescribir
+     * escrituras vivas que llegaron mientras recorria la fuente.
+     */
+    void putIfAbsent(long chunkId, float[] vector) throws IOException {
+        write(chunkId, vector, false);
+    }
+
+    void delete(Collection<Long> chunkIds) {
+        if (chunkIds == null || chunkIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long chunkId : chunkIds) {
+                if (chunkId == null) {
+                    continue;
+                }
+                int slot = slots.remove(chunkId);
+                if (slot >= 0) {
+                    markDead(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Vacia el fichero sin cambiar su estado de listo (un reset del corpus deja el store coherente).
+     */
+    void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            truncate(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Vista de solo lectura del vector, o null si no esta. No copia: lee directamente del mapeo.
+     */
+    FloatBuffer view(long chunkId) {
+        lock.readLock().lock();
+        try {
+            int slot = slots.get(chunkId);
+            if (slot < 0) {
+                return null;
+            }
+            MappedByteBuffer region = regions.get(slot / regionRecords);
+            int offset = (slot % regionRecords) * recordBytes + Long.BYTES;
+            return region.slice(offset, dimensions * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer()
+                    .asReadOnlyBuffer();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reescribe solo los registros vivos en un fichero nuevo y lo sustituye de forma atomica.
+     * Las escrituras esperan durante la copia; las vistas ya entregadas siguen leyendo el mapeo viejo.
+     */
+    void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (deadSlots == 0 || recordBytes == 0) {
+                return;
+            }
+            Path target = compactFile();
+            long[] keys = slots.keys();
+            Arrays.sort(keys);
+            try (FileChannel out = FileChannel.open(target,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                writeHeader(head, dimensions, keys.length, true);
+                out.write(head, 0);
+                long position = HEADER_BYTES;
+                for (long chunkId : keys) {
+                    int slot = slots.get(chunkId);
+                    MappedByteBuffer region = regions.get(slot / regionRecords);
+                    ByteBuffer record = region.slice((slot % regionRecords) * recordBytes, recordBytes);
+                    while (record.hasRemaining()) {
+                        position += out.write(record, position);
+                    }
+                }
+                out.force(true);
+            }
+            // El original se marca limpio antes de soltarlo: si el rename falla se recarga tal cual.
+            boolean wasReady = ready;
+            header.putInt(OFFSET_CLEAN, 1);
+            channel.close();
+            try {
+                Files.move(target, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(target);
+                mapFile();
+                load();
+                ready = wasReady;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marca el cierre limpio tras volcar a disco: el siguiente arranque reutiliza el fichero tal cual.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel == null || !channel.isOpen()) {
+                return;
+            }
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+            if (ready) {
+                header.putInt(OFFSET_CLEAN, 1);
+                header.force();
+            }
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(long chunkId, float[] vector, boolean replace) throws IOException {
+        if (vector == null || vector.length == 0 || chunkId < 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (dimensions != vector.length) {
+                if (dimensions != 0) {
+                    ready = false;
+                }
+                truncate(vector.length);
+            }
+            int previous = slots.get(chunkId);
+            if (previous >= 0 && !replace) {
+                return;
+            }
+            int slot = nextSlot;
+            MappedByteBuffer region = region(slot / regionRecords);
+            int offset = (slot % regionRecords) * recordBytes;
+            region.putLong(offset, chunkId);
+            region.slice(offset + Long.BYTES, vector.length * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer()
+                    .put(vector);
+            nextSlot++;
+            header.putInt(OFFSET_RECORDS, nextSlot);
+            slots.put(chunkId, slot);
+            if (previous >= 0) {
+                markDead(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markDead(int slot) {
+        regions.get(slot / regionRecords).putLong((slot % regionRecords) * recordBytes, TOMBSTONE);
+        deadSlots++;
+    }
+
+    private void mapFile() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void load() throws IOException {
+        regions.clear();
+        slots.clear();
+        nextSlot = 0;
+        deadSlots = 0;
+
+        boolean valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+        boolean clean = valid && header.getInt(OFFSET_CLEAN) == 1;
+        int storedDimensions = valid ? header.getInt(OFFSET_DIMENSIONS) : 0;
+        if (!clean || storedDimensions <= 0) {
+            ready = false;
+            truncate(0);
+            return;
+        }
+        layout(storedDimensions);
+        long records = Math.min(header.getInt(OFFSET_RECORDS), (channel.size() - HEADER_BYTES) / recordBytes);
+        for (int slot = 0; slot < records; slot++) {
+            long chunkId = region(slot / regionRecords).getLong((slot % regionRecords) * recordBytes);
+            nextSlot = slot + 1;
+            if (chunkId == TOMBSTONE) {
+                deadSlots++;
+                continue;
+            }
+            int previous = slots.put(chunkId, slot);
+            if (previous >= 0) {
+                deadSlots++;
+            }
+        }
+        header.putInt(OFFSET_RECORDS, nextSlot);
+        // A partir de aqui un corte sin close() deja la marca a 0 y obliga a repoblar.
+        header.putInt(OFFSET_CLEAN, 0);
+        header.force();
+        ready = true;
+    }
+
+    private void truncate(int newDimensions) throws IOException {
+        regions.clear();
+        slots.clear();
+        nextSlot = 0;
+        deadSlots = 0;
+        if (channel.size() > HEADER_BYTES) {
+            channel.close();
+            Files.delete(file);
+            mapFile();
+        }
+        writeHeader(header, newDimensions, 0, false);
+        layout(newDimensions);
+    }
+
+    private void layout(int newDimensions) {
+        dimensions = newDimensions;
+        recordBytes = newDimensions == 0 ? 0 : Long.BYTES + newDimensions * Float.BYTES;
+        regionRecords = recordBytes == 0 ? 1 : (int) Math.max(1L, MAX_REGION_BYTES / recordBytes);
+    }
+
+    /**
+     * Regiones de tamano fijo (multiplo del registro, <= 64 MiB): un registro nunca cruza dos mapeos.
+     * `map` en READ_WRITE amplia el fichero si la region cae mas alla del final.
+     */
+    private MappedByteBuffer region(int index) throws IOException {
+        while (regions.size() <= index) {
+            long start = HEADER_BYTES + (long) regions.size() * regionRecords * recordBytes;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, start, (long) regionRecords * recordBytes);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            regions.add(region);
+        }
+        return regions.get(index);
+    }
+
+    private static void writeHeader(ByteBuffer target, int dimensions, int records, boolean clean) {
+        target.order(ByteOrder.LITTLE_ENDIAN);
+        target.putInt(0, MAGIC);
+        target.putInt(4, VERSION);
+        target.putInt(OFFSET_DIMENSIONS, dimensions);
+        target.putInt(OFFSET_CLEAN, clean ? 1 : 0);
+        target.putInt(OFFSET_RECORDS, records);
+    }
+
+    private Path compactFile() {
+        return file.resolveSibling(FILE_NAME + COMPACT_SUFFIX);
+    }
+
+    /**
+     * Mapa abierto long -> int con sondeo lineal y borrado por desplazamiento: sin cajas `Long`/`Integer`
+     * ni nodos por entrada. Devuelve -1 cuando la clave no existe.
+     */
+    private static final class LongIntMap {
+
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(1024);
+        private int[] values = new int[1024];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long current = keys[i];
+                if (current == EMPTY) {
+                    return -1;
+                }
+                if (current == key) {
+                    return values[i];
+                }
+            }
+        }
+
+        int put(long key, int value) {
+            if ((size + 1) * 4L > keys.length * 3L) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long current = keys[i];
+                if (current == EMPTY) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return -1;
+                }
+                if (current == key) {
+                    int previous = values[i];
+                    values[i] = value;
+                    return previous;
+                }
+            }
+        }
+
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            int removed = values[i];
+            // Desplaza hacia atras las claves del mismo racimo para no dejar huecos en la sonda.
+            int gap = i;
+            for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = EMPTY;
+            size--;
+            return removed;
+        }
+
+        long[] keys() {
+            long[] out = new long[size];
+            int n = 0;
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    out[n++] = key;
+                }
+            }
+            return out;
+        }
+
+        void clear() {
+            keys = newKeys(1024);
+            values = new int[1024];
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(capacity);
+            values = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] out = new long[capacity];
+            Arrays.fill(out, EMPTY);
+            return out;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import com.example.apiasistente.rag.util.VectorMath;
+import com.example.apiasistente.shared.ai.OllamaClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ingesta bulk para los endpoints `documents/batch`.
+ *
+ * Flujo:
+ * 1. Prepara y calcula la huella de todos los documentos antes de tocar Ollama o la BD.
+ * 2. Los agrupa en lotes acotados por chunks; un titulo repetido en la peticion abre lote nuevo para que
+ *    la segunda version vea a la primera como activa, igual que en la ingesta uno a uno.
+ * 3. Por lote: una consulta de versiones activas, se saltan los documentos sin cambios y los chunks del resto
+ *    se embeben juntos en peticiones acotadas por chunks y caracteres, salvo los que ya tienen vector guardado
+ *    (`RagChunkEmbeddingService`) o repiten texto dentro del lote.
+ * 4. `RagBulkIngestWriter` escribe el lote en una transaccion con JDBC batch y un solo `indexBatch`.
+ *
+ * Importante:
+ * - El resultado es por documento y en el orden de entrada: un documento que falla no arrastra a los demas.
+ *   Si falla una peticion de embeddings compartida, sus documentos se reintentan uno a uno; si falla la escritura
+ *   del lote, se reescribe documento a documento.
+ * - Metricas en `apiasistente.rag.bulk.*`, con documentos/s y chunks/s de la ultima ejecucion.
+ */
+@Service
+public class RagBulkIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagBulkIngestService.class);
+    private static final String NAME_DOCUMENTS = "apiasistente.rag.bulk.documents";
+    private static final String NAME_CHUNKS = "apiasistente.rag.bulk.chunks";
+    private static final String NAME_DURATION = "apiasistente.rag.bulk.duration";
+    private static final String NAME_DOCUMENTS_RATE = "apiasistente.rag.bulk.documents.rate";
+    private static final String NAME_CHUNKS_RATE = "apiasistente.rag.bulk.chunks.rate";
+
+    private final RagService ragService;
+    private final KnowledgeDocumentRepository docRepo;
+    private final RagBulkIngestWriter writer;
+    private final OllamaClient ollama;
+    private final RagChunkEmbeddingService chunkEmbeddings;
+    private final int maxBatchChunks;
+    private final int embedRequestChunks;
+    private final int embedRequestChars;
+
+    private final Counter createdDocuments;
+    private final Counter unchangedDocuments;
+    private final Counter failedDocuments;
+    private final Counter embeddedChunks;
+    private final Counter unchangedChunks;
+    private final Timer duration;
+    private final AtomicReference<Double> lastDocumentsPerSecond = new AtomicReference<>(0.0);
+    private final AtomicReference<Double> lastChunksPerSecond = new AtomicReference<>(0.0);
+
+    public RagBulkIngestService(RagService ragService,
+                                KnowledgeDocumentRepository docRepo,
+                                RagBulkIngestWriter writer,
+                                OllamaClient ollama,
+                                RagChunkEmbeddingService chunkEmbeddings,
+                                MeterRegistry meterRegistry,
+                                @Value("${rag.bulk.max-batch-chunks:256}") int maxBatchChunks,
+                                @Value("${rag.bulk.embed-request-chunks:64}") int embedRequestChunks,
+                                @Value("${rag.bulk.embed-request-chars:120000}") int embedRequestChars) {
+        this.ragService = ragService;
+        this.docRepo = docRepo;
+        this.writer = writer;
+        this.ollama = ollama;
+        this.chunkEmbeddings = chunkEmbeddings;
+        this.maxBatchChunks = Math.max(1, maxBatchChunks);
+        this.embedRequestChunks = Math.max(1, embedRequestChunks);
+        this.embedRequestChars = Math.max(1, embedRequestChars);
+
+        this.createdDocuments = meterRegistry.counter(NAME_DOCUMENTS, "result", "created");
+        this.unchangedDocuments = meterRegistry.counter(NAME_DOCUMENTS, "result", "unchanged");
+        this.failedDocuments = meterRegistry.counter(NAME_DOCUMENTS, "result", "failed");
+        this.embeddedChunks = meterRegistry.counter(NAME_CHUNKS, "result", "embedded");
+        this.unchangedChunks = meterRegistry.counter(NAME_CHUNKS, "result", "unchanged");
+        this.duration = Timer.builder(NAME_DURATION).register(meterRegistry);
+        Gauge.builder(NAME_DOCUMENTS_RATE, lastDocumentsPerSecond, AtomicReference::get)
+                .description("Documentos/s de la ultima ingesta bulk")
+                .register(meterRegistry);
+        Gauge.builder(NAME_CHUNKS_RATE, lastChunksPerSecond, AtomicReference::get)
+                .description("Chunks/s de la ultima ingesta bulk")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ingiere los documentos para `owner` y devuelve un resultado por documento, en el orden de entrada.
+     */
+    public List<BulkItemResult> upsertBatch(String owner, List<BulkDocument> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return List.of();
+        }
+        long startedAt = System.nanoTime();
+        BulkItemResult[] results = new BulkItemResult[documents.size()];
+
+        List<Item> batch = new ArrayList<>();
+        Set<String> batchTitles = new HashSet<>();
+        int batchChunks = 0;
+        for (int i = 0; i < documents.size(); i++) {
+            BulkDocument document = documents.get(i);
+            RagService.PreparedDocument prepared;
+            try {
+                prepared = ragService.prepareDocument(
+                        owner,
+                        document.title(),
+                        document.content(),
+                        document.source(),
+                        document.tags(),
+                        document.referenceUrl(),
+                        document.chunks()
+                );
+            } catch (Exception e) {
+                results[i] = BulkItemResult.failed(document == null ? null : document.title(), e);
+                continue;
+            }
+
+            String titleKey = RagBulkIngestWriter.titleKey(prepared.title());
+            int chunks = prepared.chunks().size();
+            if (!batch.isEmpty() && (batchTitles.contains(titleKey) || batchChunks + chunks > maxBatchChunks)) {
+                ingestBatch(batch, results);
+                batch.clear();
+                batchTitles.clear();
+                batchChunks = 0;
+            }
+            batch.add(new Item(i, prepared));
+            batchTitles.add(titleKey);
+            batchChunks += chunks;
+        }
+        if (!batch.isEmpty()) {
+            ingestBatch(batch, results);
+        }
+
+        long elapsedNanos = System.nanoTime() - startedAt;
+        recordRun(results, elapsedNanos);
+        return Arrays.asList(results);
+    }
+
+    private void ingestBatch(List<Item> batch, BulkItemResult[] results) {
+        String owner = batch.get(0).prepared().owner();
+        Set<String> titles = new LinkedHashSet<>();
+        for (Item item : batch) {
+            titles.add(RagBulkIngestWriter.titleKey(item.prepared().title()));
+        }
+        Map<String, String> activeFingerprints = new HashMap<>();
+        for (KnowledgeDocument doc : docRepo.findActiveByOwnerAndLowerTitleIn(owner, titles)) {
+            activeFingerprints.putIfAbsent(
+                    RagBulkIngestWriter.titleKey(doc.getTitle()),
+                    Objects.toString(doc.getContentFingerprint(), "").trim()
+            );
+        }
+
+        List<Item> changed = new ArrayList<>();
+        for (Item item : batch) {
+            String active = activeFingerprints.get(RagBulkIngestWriter.titleKey(item.prepared().title()));
+            if (!item.prepared().fingerprint().equals(active)) {
+                changed.add(item);
+            }
+        }
+        Map<Integer, List<float[]>> embeddings = embed(changed, results);
+
+        List<RagBulkIngestWriter.PendingDocument> pending = new ArrayList<>(batch.size());
+        List<Item> writable = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            if (results[item.index()] != null) {
+                continue;
+            }
+            pending.add(new RagBulkIngestWriter.PendingDocument(item.prepared(), embeddings.get(item.index())));
+            writable.add(item);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<RagBulkIngestWriter.WrittenDocument> written = writer.write(owner, pending);
+            for (int i = 0; i < writable.size(); i++) {
+                results[writable.get(i).index()] = succeeded(writable.get(i), written.get(i));
+            }
+        } catch (Exception batchError) {
+            log.warn("rag_bulk batch_write_fail docs={} cause={}; se reintenta por documento", pending.size(), batchError.getMessage());
+            for (int i = 0; i < writable.size(); i++) {
+                Item item = writable.get(i);
+                try {
+                    RagBulkIngestWriter.WrittenDocument written = writer.write(owner, List.of(pending.get(i))).get(0);
+                    results[item.index()] = succeeded(item, written);
+                } catch (Exception e) {
+                    results[item.index()] = BulkItemResult.failed(item.prepared().title(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Embebe los chunks de todos los documentos cambiados en peticiones compartidas.
+     * Los textos con vector guardado se reutilizan y los repetidos entre documentos del lote se embeben una vez.
+     * Devuelve los embeddings normalizados por indice de entrada; los que no se pudieron embeber quedan en `results`.
+     */
+    private Map<Integer, List<float[]>> embed(List<Item> changed, BulkItemResult[] results) {
+        Map<Integer, List<float[]>> embeddings = new HashMap<>();
+        if (changed.isEmpty()) {
+            return embeddings;
+        }
+        List<RagService.PreparedChunkInput> allChunks = new ArrayList<>();
+        for (Item item : changed) {
+            allChunks.addAll(item.prepared().chunks());
+        }
+        Map<String, float[]> resolved = new HashMap<>(chunkEmbeddings.findReusable(allChunks));
+        Set<String> missing = new LinkedHashSet<>();
+        for (RagService.PreparedChunkInput chunk : allChunks) {
+            if (!resolved.containsKey(chunk.text())) {
+                missing.add(chunk.text());
+            }
+        }
+
+        List<String> texts = new ArrayList<>();
+        int chars = 0;
+        for (String text : missing) {
+            if (!texts.isEmpty() && (texts.size() >= embedRequestChunks || chars + text.length() > embedRequestChars)) {
+                embedRequest(texts, resolved);
+                texts.clear();
+                chars = 0;
+            }
+            texts.add(text);
+            chars += text.length();
+        }
+        if (!texts.isEmpty()) {
+            embedRequest(texts, resolved);
+        }
+        chunkEmbeddings.recordUsage(allChunks, missing);
+
+        for (Item item : changed) {
+            List<String> pending = item.prepared().chunks().stream()
+                    .map(RagService.PreparedChunkInput::text)
+                    .filter(text -> !resolved.containsKey(text))
+                    .distinct()
+                    .toList();
+            if (!pending.isEmpty()) {
+                // La peticion compartida fallo: lo que le falta a este documento se embebe aparte,
+                // para que un texto problematico solo tumbe a su documento.
+                try {
+                    List<float[]> normalized = normalizeAll(ollama.embedMany(pending), pending.size());
+                    for (int i = 0; i < pending.size(); i++) {
+                        resolved.put(pending.get(i), normalized.get(i));
+                    }
+                } catch (Exception e) {
+                    results[item.index()] = BulkItemResult.failed(item.prepared().title(), e);
+                    continue;
+                }
+            }
+            List<float[]> own = new ArrayList<>(item.prepared().chunks().size());
+            for (RagService.PreparedChunkInput chunk : item.prepared().chunks()) {
+                own.add(resolved.get(chunk.text()));
+            }
+            embeddings.put(item.index(), own);
+        }
+        return embeddings;
+    }
+
+    private void embedRequest(List<String> texts, Map<String, float[]> resolved) {
+        List<float[]> normalized;
+        try {
+            normalized = normalizeAll(ollama.embedMany(List.copyOf(texts)), texts.size());
+        } catch (Exception e) {
+            log.debug("rag_bulk embed_request_fail chunks={} cause={}", texts.size(), e.getMessage());
+            return;
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            resolved.put(texts.get(i), normalized.get(i));
+        }
+    }
+
+    private static List<float[]> normalizeAll(List<float[]> raw, int expected) {
+        List<float[]> normalized = new ArrayList<>(expected);
+        for (int i = 0; i < expected; i++) {
+            // Igual que la ingesta unitaria: un embedding ausente o nulo deja el chunk sin vector.
+            normalized.add(raw != null && i < raw.size() ? VectorMath.normalize(raw.get(i)) : new float[0]);
+        }
+        return normalized;
+    }
+
+    /**
+     * `created` sale del writer y no de la comprobacion previa: si una ingesta concurrente deja el mismo contenido
+     * entre ambas, el writer devuelve la version existente y el resultado no debe contarla como nueva.
+     */
+    private static BulkItemResult succeeded(Item item, RagBulkIngestWriter.WrittenDocument written) {
+        return new BulkItemResult(
+                item.prepared().title(),
+                written.document(),
+                written.created(),
+                item.prepared().chunks().size(),
+                null
+        );
+    }
+
+    private void recordRun(BulkItemResult[] results, long elapsedNanos) {
+        long okDocuments = 0;
+        long okChunks = 0;
+        for (BulkItemResult result : results) {
+            if (!result.succeeded()) {
+                failedDocuments.increment();
+                continue;
+            }
+            okDocuments++;
+            okChunks += result.chunks();
+            if (result.created()) {
+                createdDocuments.increment();
+                embeddedChunks.increment(result.chunks());
+            } else {
+                unchangedDocuments.increment();
+                unchangedChunks.increment(result.chunks());
+            }
+        }
+        duration.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        double seconds = Math.max(elapsedNanos, 1L) / 1_000_000_000.0;
+        lastDocumentsPerSecond.set(okDocuments / seconds);
+        lastChunksPerSecond.set(okChunks / seconds);
+        log.info(
+                "rag_bulk done docs={} ok={} chunks={} elapsedMs={} docsPerSec={} chunksPerSec={}",
+                results.length,
+                okDocuments,
+                okChunks,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                Math.round(okDocuments / seconds),
+                Math.round(okChunks / seconds)
+        );
+    }
+
+    private record Item(int index, RagService.PreparedDocument prepared) {
+    }
+
+    /**
+     * Documento de entrada de la ingesta bulk; mismos campos que la ingesta estructurada uno a uno.
+     */
+    public record BulkDocument(String title,
+                               String content,
+                               String source,
+                               String tags,
+                               String referenceUrl,
+                               List<RagService.IncomingChunk> chunks) {
+    }
+
+    /**
+     * Resultado por documento: `document` si se ingirio (`created` indica version nueva), `error` si fallo.
+     */
+    public record BulkItemResult(String title, KnowledgeDocument document, boolean created, int chunks, String error) {
+
+        static BulkItemResult failed(String title, Exception e) {
+            String cause = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            return new BulkItemResult(title, null, false, 0, cause);
+        }
+
+        public boolean succeeded() {
+            return document != null;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.rag.util.SentenceSegmenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Escritura transaccional de un lote de la ingesta bulk.
+ *
+ * Importante:
+ * - Un lote entero va en una transaccion: documentos por JPA (son pocos y el archivado de versiones ya vive ahi),
+ *   chunks y vectores por `JdbcTemplate.batchUpdate`, que con `rewriteBatchedStatements` sale en pocos INSERT.
+ * - `chunks.chunk_id` es IDENTITY y Hibernate no agrupa esos INSERT; por eso los ids se releen en una consulta
+ *   por (doc_id, chunk_index), que es unico dentro de una version.
+ * - Un solo `indexBatch` y un solo bump de epoch por lote, y ninguno si todo el lote venia sin cambios.
+ */
+@Service
+public class RagBulkIngestWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(RagBulkIngestWriter.class);
+
+    private final RagService ragService;
+    private final KnowledgeDocumentRepository docRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final RagVectorIndexService vectorIndexService;
+    private final RagCorpusEpochService corpusEpochService;
+    private final RagOpsService ragOpsService;
+    private final RagChunkEmbeddingService chunkEmbeddings;
+
+    public RagBulkIngestWriter(RagService ragService,
+                               KnowledgeDocumentRepository docRepo,
+                               JdbcTemplate jdbcTemplate,
+                               RagVectorIndexService vectorIndexService,
+                               RagCorpusEpochService corpusEpochService,
+                               RagOpsService ragOpsService,
+                               RagChunkEmbeddingService chunkEmbeddings) {
+        this.ragService = ragService;
+        this.docRepo = docRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.vectorIndexService = vectorIndexService;
+        this.corpusEpochService = corpusEpochService;
+        this.ragOpsService = ragOpsService;
+        this.chunkEmbeddings = chunkEmbeddings;
+    }
+
+    /**
+     * Persiste el lote y devuelve el documento activo de cada entrada, en el mismo orden, y si es version nueva.
+     * Los titulos del lote son distintos entre si (lo garantiza quien arma el lote).
+     */
+    @Transactional
+    public List<WrittenDocument> write(String owner, List<PendingDocument> batch) {
+        if (batch == null || batch.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> titles = new LinkedHashSet<>();
+        for (PendingDocument pending : batch) {
+            titles.add(titleKey(pending.prepared().title()));
+        }
+        Map<String, KnowledgeDocument> activeByTitle = new HashMap<>();
+        for (KnowledgeDocument doc : docRepo.findActiveByOwnerAndLowerTitleIn(owner, titles)) {
+            activeByTitle.putIfAbsent(titleKey(doc.getTitle()), doc);
+        }
+
+        Instant now = Instant.now();
+        List<WrittenDocument> results = new ArrayList<>(batch.size());
+        List<Object[]> chunkRows = new ArrayList<>();
+        Map<Long, PendingDocument> createdByDocId = new HashMap<>();
+
+        for (PendingDocument pending : batch) {
+            RagService.PreparedDocument prepared = pending.prepared();
+            KnowledgeDocument activeDoc = activeByTitle.get(titleKey(prepared.title()));
+
+            if (activeDoc != null && prepared.fingerprint().equals(Objects.toString(activeDoc.getContentFingerprint(), "").trim())) {
+                // Mismo documento logico: solo refrescamos metadata estable si el origen cambio.
+                activeDoc.setSource(prepared.source());
+                activeDoc.setReferenceUrl(prepared.referenceUrl());
+                // Puede haberlo dejado igual otra ingesta concurrente tras la comprobacion previa del caller.
+                results.add(new WrittenDocument(docRepo.save(activeDoc), false));
+                continue;
+            }
+            if (pending.embeddings() == null) {
+                // Se dio por igual antes de embeber y otra ingesta lo cambio entretanto: que el caller reintente.
+                throw new IllegalStateException("El documento '" + prepared.title() + "' cambio durante la ingesta.");
+            }
+
+            KnowledgeDocument newDoc = new KnowledgeDocument();
+            newDoc.setOwner(prepared.owner());
+            newDoc.setTitle(prepared.title());
+            newDoc.setSource(prepared.source());
+            newDoc.setReferenceUrl(prepared.referenceUrl());
+            newDoc.setActive(true);
+            newDoc.setContentFingerprint(prepared.fingerprint());
+            newDoc = docRepo.save(newDoc);
+            if (activeDoc != null) {
+                ragService.archiveDocumentVersion(activeDoc, newDoc.getId());
+            }
+            results.add(new WrittenDocument(newDoc, true));
+            createdByDocId.put(newDoc.getId(), pending);
+
+            for (RagService.PreparedChunkInput chunk : prepared.chunks()) {
+                chunkRows.add(new Object[] {
+                        newDoc.getId(),
+                        chunk.chunkIndex(),
+                        chunk.text(),
+                        chunk.hash(),
+                        chunk.tokenCount(),
+                        Timestamp.from(now),
+                        chunk.source(),
+                        chunk.tags(),
+                        SentenceSegmenter.encode(SentenceSegmenter.segment(chunk.text()))
+                });
+            }
+        }
+
+        int vectorCount = persistChunksAndVectors(owner, createdByDocId, chunkRows, now);
+        if (!createdByDocId.isEmpty()) {
+            // Refrescar source/URL de versiones sin cambios no toca lo que ven los caches.
+            corpusEpochService.bump();
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            RagService.PreparedDocument prepared = batch.get(i).prepared();
+            WrittenDocument written = results.get(i);
+            ragOpsService.recordIngest(
+                    prepared.owner(),
+                    prepared.title(),
+                    written.document().getId(),
+                    prepared.chunks().size(),
+                    prepared.source(),
+                    written.created(),
+                    prepared.referenceUrl()
+            );
+        }
+        log.debug(
+                "RAG bulk write owner='{}' docs={} created={} chunks={} vectors={}",
+                owner,
+                batch.size(),
+                createdByDocId.size(),
+                chunkRows.size(),
+                vectorCount
+        );
+        return results;
+    }
+
+    private int persistChunksAndVectors(String owner,
+                                        Map<Long, PendingDocument> createdByDocId,
+                                        List<Object[]> chunkRows,
+                                        Instant now) {
+        if (chunkRows.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate("""
+                insert into chunks (doc_id, chunk_index, text, hash, token_count, created_at, source, tags, segment_offsets)
+                values (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """, chunkRows);
+
+        String embeddingModel = chunkEmbeddings.currentModel();
+        List<Long> docIds = new ArrayList<>(createdByDocId.keySet());
+        String placeholders = String.join(", ", Collections.nCopies(docIds.size(), "?"));
+        List<Object[]> vectorRows = new ArrayList<>(chunkRows.size());
+        List<RagVectorIndexService.IndexedVectorRecord> indexedVectors = new ArrayList<>(chunkRows.size());
+        jdbcTemplate.query(
+                "select chunk_id, doc_id, chunk_index from chunks where doc_id in (" + placeholders + ")",
+                rs -> {
+                    long chunkId = rs.getLong("chunk_id");
+                    PendingDocument pending = createdByDocId.get(rs.getLong("doc_id"));
+                    int chunkIndex = rs.getInt("chunk_index");
+                    if (pending == null || chunkIndex < 0 || chunkIndex >= pending.embeddings().size()) {
+                        return;
+                    }
+                    float[] embedding = pending.embeddings().get(chunkIndex);
+                    if (embedding == null || embedding.length == 0) {
+                        return;
+                    }
+                    vectorRows.add(new Object[] {
+                            chunkId,
+                            EmbeddingCodec.encode(embedding),
+                            embedding.length,
+                            embeddingModel.isEmpty() ? null : embeddingModel,
+                            Timestamp.from(now)
+                    });
+                    indexedVectors.add(new RagVectorIndexService.IndexedVectorRecord(
+                            chunkId,
+                            owner,
+                            embedding,
+                            now,
+                            pending.prepared().chunks().get(chunkIndex).text()
+                    ));
+                },
+                docIds.toArray()
+        );
+
+        // Primero el respaldo durable en `vectors` y solo despues el indice HNSW, como en la ingesta unitaria.
+        jdbcTemplate.batchUpdate("""
+                insert into vectors (chunk_id, embedding_bin, dimension, embedding_model, created_at)
+                values (?, ?, ?, ?, ?)
+                """, vectorRows);
+        vectorIndexService.indexBatch(indexedVectors);
+        return vectorRows.size();
+    }
+
+    static String titleKey(String title) {
+        return title == null ? "" : title.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Documento preparado con sus embeddings ya normalizados, uno por chunk en orden de `chunkIndex`.
+     * `embeddings` es null si al armar el lote el documento no habia cambiado.
+     */
+    record PendingDocument(RagService.PreparedDocument prepared, List<float[]> embeddings) {
+    }
+
+    /**
+     * Documento activo tras escribir una entrada; `created` indica si se escribio una version nueva.
+     */
+    public record WrittenDocument(KnowledgeDocument document, boolean created) {
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.rag.util.VectorMath;
+import com.example.apiasistente.shared.ai.OllamaClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resuelve los embeddings de los chunks a ingerir pagando a Ollama solo por texto nuevo.
+ *
+ * Flujo:
+ * 1. Busca vectores ya guardados por `chunks.hash` y modelo de embeddings, y confirma que el texto coincide.
+ * 2. Deduplica los textos identicos de la misma llamada.
+ * 3. Embebe en una sola peticion lo que falta.
+ *
+ * Importante:
+ * - Hay que llamarlo antes de archivar la version anterior: el archivado borra sus vectores.
+ * - Los vectores guardados ya estan normalizados; se copian tal cual al chunk nuevo.
+ * - Metricas: `apiasistente.rag.embedding.chunks{result=reused|deduplicated|embedded}` y la proporcion
+ *   acumulada de chunks que no pasaron por Ollama en `apiasistente.rag.embedding.reuse-ratio`.
+ */
+@Service
+public class RagChunkEmbeddingService {
+
+    private static final String NAME_CHUNKS = "apiasistente.rag.embedding.chunks";
+    private static final String NAME_REUSE_RATIO = "apiasistente.rag.embedding.reuse-ratio";
+    // Tope de hashes por consulta para no generar un IN gigante con documentos enormes.
+    private static final int LOOKUP_PAGE = 500;
+
+    private final KnowledgeVectorRepository vectorRepo;
+    private final OllamaClient ollama;
+    private final boolean enabled;
+    private final Counter reusedChunks;
+    private final Counter deduplicatedChunks;
+    private final Counter embeddedChunks;
+    private final AtomicLong totalChunks = new AtomicLong();
+    private final AtomicLong savedChunks = new AtomicLong();
+
+    public RagChunkEmbeddingService(KnowledgeVectorRepository vectorRepo,
+                                    OllamaClient ollama,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${rag.embedding-reuse.enabled:true}") boolean enabled) {
+        this.vectorRepo = vectorRepo;
+        this.ollama = ollama;
+        this.enabled = enabled;
+        this.reusedChunks = meterRegistry.counter(NAME_CHUNKS, "result", "reused");
+        this.deduplicatedChunks = meterRegistry.counter(NAME_CHUNKS, "result", "deduplicated");
+        this.embeddedChunks = meterRegistry.counter(NAME_CHUNKS, "result", "embedded");
+        Gauge.builder(NAME_REUSE_RATIO, this, RagChunkEmbeddingService::reuseRatio)
+                .description("Proporcion de chunks ingeridos sin llamar a Ollama")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Modelo con el que se etiquetan los vectores nuevos.
+     */
+    public String currentModel() {
+        return Objects.toString(ollama.embedModel(), "").trim();
+    }
+
+    /**
+     * Reutiliza, deduplica y embebe lo que falta. Devuelve un embedding normalizado por chunk, en el mismo orden;
+     * vacio si Ollama no devolvio nada para ese texto.
+     */
+    List<float[]> embed(List<RagService.PreparedChunkInput> chunks) {
+        if (chunks.isEmpty()) {
+            return List.of();
+        }
+        Map<String, float[]> resolved = new HashMap<>(findReusable(chunks));
+        Set<String> missing = new LinkedHashSet<>();
+        for (RagService.PreparedChunkInput chunk : chunks) {
+            if (!resolved.containsKey(chunk.text())) {
+                missing.add(chunk.text());
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<String> texts = List.copyOf(missing);
+            List<float[]> raw = ollama.embedMany(texts);
+            for (int i = 0; i < texts.size(); i++) {
+                resolved.put(texts.get(i), i < raw.size() ? VectorMath.normalize(raw.get(i)) : new float[0]);
+            }
+        }
+        recordUsage(chunks, missing);
+
+        List<float[]> embeddings = new ArrayList<>(chunks.size());
+        for (RagService.PreparedChunkInput chunk : chunks) {
+            embeddings.add(resolved.getOrDefault(chunk.text(), new float[0]));
+        }
+        return embeddings;
+    }
+
+    /**
+     * Embeddings ya guardados con el modelo vigente para estos chunks, por texto.
+     */
+    Map<String, float[]> findReusable(List<RagService.PreparedChunkInput> chunks) {
+        String model = currentModel();
+        if (!enabled || model.isEmpty() || chunks.isEmpty()) {
+            return Map.of();
+        }
+        Set<String> wantedTexts = new HashSet<>();
+        Set<String> hashes = new LinkedHashSet<>();
+        for (RagService.PreparedChunkInput chunk : chunks) {
+            wantedTexts.add(chunk.text());
+            hashes.add(chunk.hash());
+        }
+
+        Map<String, float[]> reusable = new HashMap<>();
+        List<String> hashList = List.copyOf(hashes);
+        for (int from = 0; from < hashList.size(); from += LOOKUP_PAGE) {
+            List<String> page = hashList.subList(from, Math.min(hashList.size(), from + LOOKUP_PAGE));
+            for (KnowledgeVectorRepository.ReusableVectorView view : vectorRepo.findReusableByHashes(page, model)) {
+                String text = view.getText();
+                if (text == null || !wantedTexts.contains(text) || reusable.containsKey(text)) {
+                    continue;
+                }
+                float[] embedding = EmbeddingCodec.decode(view.getEmbeddingBin());
+                if (embedding.length > 0) {
+                    reusable.put(text, embedding);
+                }
+            }
+        }
+        return reusable;
+    }
+
+    /**
+     * Cuenta cada chunk una vez: reutilizado de BD, duplicado de otro texto de la llamada, o embebido.
+     * `embeddedTexts` son los textos unicos que se mandaron a Ollama.
+     */
+    void recordUsage(List<RagService.PreparedChunkInput> chunks, Set<String> embeddedTexts) {
+        Set<String> seen = new HashSet<>();
+        long reused = 0;
+        long deduplicated = 0;
+        long embedded = 0;
+        for (RagService.PreparedChunkInput chunk : chunks) {
+            if (!embeddedTexts.contains(chunk.text())) {
+                reused++;
+            } else if (seen.add(chunk.text())) {
+                embedded++;
+            } else {
+                deduplicated++;
+            }
+        }
+        reusedChunks.increment(reused);
+        deduplicatedChunks.increment(deduplicated);
+        embeddedChunks.increment(embedded);
+        totalChunks.addAndGet(chunks.size());
+        savedChunks.addAndGet(reused + deduplicated);
+    }
+
+    private double reuseRatio() {
+        long total = totalChunks.get();
+        return total == 0 ? 0.0 : (double) savedChunks.get() / total;
+    }
+}
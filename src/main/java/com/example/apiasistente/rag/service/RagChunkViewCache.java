@@ -0,0 +1,153 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.dto.RetrievedChunkDto;
+import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
+import com.example.apiasistente.shared.cache.TinyLfuCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Cache de chunks calientes para la hidratacion del retrieval.
+ *
+ * Importante:
+ * - Guarda `RetrievedChunkDto` (proyeccion inmutable), nunca entidades: se puede compartir entre hilos y turnos.
+ * - Se acota en bytes por el texto del chunk (`rag.chunk-cache.max-bytes`) con admision TinyLFU: los chunks que
+ *   salen en muchas consultas se quedan y un barrido de consultas raras no los desplaza.
+ * - Se invalida entero cuando avanza el epoch del corpus; lo cargado mientras el epoch cambia no se guarda.
+ * - Aparte guarda los fragmentos ya tokenizados de cada chunk para la compresion del prompt. El texto de un
+ *   chunk_id no cambia nunca (chunks append-only), asi que ese cache no depende del epoch.
+ */
+@Service
+public class RagChunkViewCache {
+
+    private static final String CACHE_NAME = "rag-chunk-view";
+    private static final String FRAGMENT_CACHE_NAME = "rag-chunk-fragments";
+    // Record, strings de titulo/owner y entrada del cache: se suma al peso del texto.
+    private static final long ENTRY_OVERHEAD_BYTES = 160L;
+    // Record del fragmento, offsets y cabeceras de set/strings por cada fragmento.
+    private static final long FRAGMENT_OVERHEAD_BYTES = 96L;
+    private static final long TOKEN_OVERHEAD_BYTES = 64L;
+
+    private final KnowledgeChunkRepository chunkRepo;
+    private final RagCorpusEpochService corpusEpochService;
+    private final TinyLfuCache<Long, RetrievedChunkDto> cache;
+    private final TinyLfuCache<Long, RagService.PromptFragments> fragmentCache;
+    private volatile long cachedEpoch = Long.MIN_VALUE;
+
+    public RagChunkViewCache(KnowledgeChunkRepository chunkRepo,
+                             RagCorpusEpochService corpusEpochService,
+                             MeterRegistry meterRegistry,
+                             @Value("${rag.chunk-cache.max-bytes:33554432}") long maxBytes,
+                             @Value("${rag.chunk-cache.ttl-ms:3600000}") long ttlMs,
+                             @Value("${rag.chunk-cache.fragments-max-bytes:16777216}") long fragmentsMaxBytes) {
+        this.chunkRepo = chunkRepo;
+        this.corpusEpochService = corpusEpochService;
+        this.cache = new TinyLfuCache<>(
+                CACHE_NAME,
+                maxBytes,
+                Duration.ofMillis(Math.max(1_000L, ttlMs)),
+                RagChunkViewCache::weigh,
+                meterRegistry
+        );
+        this.fragmentCache = new TinyLfuCache<>(
+                FRAGMENT_CACHE_NAME,
+                fragmentsMaxBytes,
+                Duration.ofMillis(Math.max(1_000L, ttlMs)),
+                RagChunkViewCache::weighFragments,
+                meterRegistry
+        );
+    }
+
+    /**
+     * Devuelve los chunks activos pedidos indexados por id. Los que no estan en cache salen de una sola query.
+     */
+    public Map<Long, RetrievedChunkDto> findActive(List<Long> chunkIds) {
+        if (chunkIds == null || chunkIds.isEmpty()) {
+            return Map.of();
+        }
+        long epoch = corpusEpochService.current();
+        syncEpoch(epoch);
+
+        Map<Long, RetrievedChunkDto> out = new HashMap<>(chunkIds.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (Long chunkId : chunkIds) {
+            RetrievedChunkDto cached = chunkId == null ? null : cache.get(chunkId);
+            if (cached != null) {
+                out.put(chunkId, cached);
+            } else if (chunkId != null) {
+                missing.add(chunkId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return out;
+        }
+
+        List<RetrievedChunkDto> loaded = chunkRepo.findActiveViewsByIdIn(missing);
+        // Si el corpus cambio durante la query, lo leido puede ser de antes o de despues: se usa pero no se guarda.
+        boolean cacheable = corpusEpochService.current() == epoch;
+        for (RetrievedChunkDto view : loaded) {
+            out.put(view.chunkId(), view);
+            if (cacheable) {
+                cache.put(view.chunkId(), view);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Fragmentos tokenizados del chunk; `prepare` solo corre la primera vez que el chunk entra en un prompt.
+     */
+    public RagService.PromptFragments fragments(RetrievedChunkDto view,
+                                                Function<RetrievedChunkDto, RagService.PromptFragments> prepare) {
+        if (view.chunkId() == null) {
+            return prepare.apply(view);
+        }
+        RagService.PromptFragments cached = fragmentCache.get(view.chunkId());
+        if (cached != null) {
+            return cached;
+        }
+        RagService.PromptFragments prepared = prepare.apply(view);
+        fragmentCache.put(view.chunkId(), prepared);
+        return prepared;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private void syncEpoch(long epoch) {
+        if (epoch <= cachedEpoch) {
+            return;
+        }
+        synchronized (this) {
+            if (epoch > cachedEpoch) {
+                cache.invalidateAll();
+                cachedEpoch = epoch;
+            }
+        }
+    }
+
+    private static long weigh(Long chunkId, RetrievedChunkDto view) {
+        long chars = (long) view.text().length()
+                + (view.documentTitle() == null ? 0 : view.documentTitle().length())
+                + (view.owner() == null ? 0 : view.owner().length());
+        return chars * Character.BYTES + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private static long weighFragments(Long chunkId, RagService.PromptFragments prepared) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (RagService.PreparedFragment fragment : prepared.fragments()) {
+            bytes += FRAGMENT_OVERHEAD_BYTES + (long) fragment.normalized().length() * Character.BYTES;
+            bytes += (long) fragment.tokens().size() * TOKEN_OVERHEAD_BYTES;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.config.RagChunkingProperties;
+import com.example.apiasistente.rag.util.ContentDefinedChunker;
+import com.example.apiasistente.rag.util.TextChunker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Parte el cuerpo de un documento en chunks con la estrategia configurada para su `source`
+ * (`rag.chunking.sources`); lo usan la ingesta y la revision de estructura del mantenimiento.
+ *
+ * Importante:
+ * - Cambiar la estrategia de un source cambia la huella de sus documentos: la siguiente ingesta
+ *   de cada uno crea version nueva una vez, y desde ahi las ediciones pequenas reutilizan embeddings.
+ */
+@Service
+public class RagChunker {
+
+    private static final Logger log = LoggerFactory.getLogger(RagChunker.class);
+
+    public enum Strategy {
+        FIXED,
+        SENTENCE,
+        LINE
+    }
+
+    private final int chunkSize;
+    private final int overlap;
+    private final int minSize;
+    private final int maxSize;
+    private final Strategy defaultStrategy;
+    private final Map<String, Strategy> strategyBySource = new HashMap<>();
+
+    public RagChunker(RagChunkingProperties properties,
+                      @Value("${rag.chunk.size:900}") int chunkSize,
+                      @Value("${rag.chunk.overlap:150}") int overlap) {
+        this.chunkSize = Math.max(50, chunkSize);
+        this.overlap = Math.max(0, overlap);
+        this.minSize = Math.max(1, Math.min(properties.getMinSize(), this.chunkSize));
+        this.maxSize = Math.max(this.chunkSize, properties.getMaxSize());
+        this.defaultStrategy = parse(properties.getDefaultStrategy(), Strategy.FIXED);
+        properties.getSources().forEach((source, strategy) ->
+                strategyBySource.put(sourceKey(source), parse(strategy, defaultStrategy)));
+    }
+
+    public List<String> chunk(String body, String source) {
+        return switch (strategyFor(source)) {
+            case FIXED -> TextChunker.chunk(body, chunkSize, overlap);
+            case SENTENCE -> ContentDefinedChunker.chunk(body, minSize, chunkSize, maxSize, ContentDefinedChunker.Boundary.SENTENCE);
+            case LINE -> ContentDefinedChunker.chunk(body, minSize, chunkSize, maxSize, ContentDefinedChunker.Boundary.LINE);
+        };
+    }
+
+    /**
+     * Variante incremental de `chunk` para la ingesta en streaming: mismos chunks, memoria acotada por chunk.
+     */
+    public ChunkStream open(String source, Consumer<String> sink) {
+        Strategy strategy = strategyFor(source);
+        if (strategy == Strategy.FIXED) {
+            TextChunker.Incremental fixed = new TextChunker.Incremental(chunkSize, overlap, sink);
+            return new ChunkStream(fixed::append, fixed::finish);
+        }
+        ContentDefinedChunker.Incremental cdc = new ContentDefinedChunker.Incremental(
+                minSize,
+                chunkSize,
+                maxSize,
+                strategy == Strategy.LINE ? ContentDefinedChunker.Boundary.LINE : ContentDefinedChunker.Boundary.SENTENCE,
+                sink
+        );
+        return new ChunkStream(cdc::append, cdc::finish);
+    }
+
+    public Strategy strategyFor(String source) {
+        return strategyBySource.getOrDefault(sourceKey(source), defaultStrategy);
+    }
+
+    /**
+     * Texto entrante para el chunker de un documento; `finish` entrega el ultimo chunk.
+     */
+    public record ChunkStream(Consumer<CharSequence> append, Runnable finish) {
+    }
+
+    private static String sourceKey(String source) {
+        return source == null ? "" : source.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Strategy parse(String value, Strategy fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return Strategy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.warn("rag_chunking estrategia desconocida '{}'; se usa {}", value, fallback);
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.RagCorpusEpoch;
+import com.example.apiasistente.rag.repository.RagCorpusEpochRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Epoch monotono del corpus RAG: primitiva comun de invalidacion para caches que dependen del corpus.
+ *
+ * Importante:
+ * - `bump()` incrementa la fila de `rag_corpus_epoch` dentro de la transaccion del llamador: si el cambio hace
+ *   rollback, el epoch tampoco avanza. Conviene llamarlo como ultima escritura para retener poco el lock de fila.
+ * - El valor en memoria solo se publica tras el commit. Un retrieval que lea el epoch viejo mientras se confirma
+ *   el cambio queda invalidado en cuanto se publica el nuevo.
+ * - `current()` es O(1). Un refresco periodico recoge los avances hechos por otras instancias.
+ */
+@Service
+public class RagCorpusEpochService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagCorpusEpochService.class);
+
+    private final RagCorpusEpochRepository repository;
+    private final AtomicLong epoch = new AtomicLong();
+
+    public RagCorpusEpochService(RagCorpusEpochRepository repository, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        Gauge.builder("apiasistente.rag.corpus.epoch", epoch, AtomicLong::get)
+                .description("Epoch actual del corpus RAG")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        advanceTo(loadOrCreate());
+        log.info("Epoch del corpus RAG cargado epoch={}", epoch.get());
+    }
+
+    /**
+     * Epoch visible para esta instancia. Solo crece.
+     */
+    public long current() {
+        return epoch.get();
+    }
+
+    /**
+     * Avanza el epoch en la transaccion actual (o en una propia si no hay ninguna).
+     */
+    @Transactional
+    public void bump() {
+        if (repository.increment(RagCorpusEpoch.SINGLETON_ID, Instant.now()) == 0) {
+            // Fila ausente (tabla recreada a mano): se siembra por encima de lo ya visto.
+            repository.saveAndFlush(new RagCorpusEpoch(epoch.get() + 1));
+        }
+        long persisted = repository.findEpoch(RagCorpusEpoch.SINGLETON_ID).orElse(epoch.get() + 1);
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    advanceTo(persisted);
+                }
+            });
+            return;
+        }
+        advanceTo(persisted);
+    }
+
+    /**
+     * Recoge avances de otras instancias que comparten la BD.
+     */
+    @Scheduled(fixedDelayString = "${rag.corpus-epoch.refresh-ms:5000}", initialDelayString = "${rag.corpus-epoch.refresh-ms:5000}")
+    public void refresh() {
+        try {
+            repository.findEpoch(RagCorpusEpoch.SINGLETON_ID).ifPresent(this::advanceTo);
+        } catch (DataAccessException e) {
+            log.debug("No se pudo refrescar el epoch del corpus RAG", e);
+        }
+    }
+
+    private long loadOrCreate() {
+        Long stored = repository.findEpoch(RagCorpusEpoch.SINGLETON_ID).orElse(null);
+        if (stored != null) {
+            return stored;
+        }
+        try {
+            return repository.saveAndFlush(new RagCorpusEpoch(0L)).getEpoch();
+        } catch (DataIntegrityViolationException e) {
+            // Otra instancia sembro la fila a la vez.
+            return repository.findEpoch(RagCorpusEpoch.SINGLETON_ID).orElse(0L);
+        }
+    }
+
+    private void advanceTo(long value) {
+        epoch.accumulateAndGet(value, Math::max);
+    }
+}
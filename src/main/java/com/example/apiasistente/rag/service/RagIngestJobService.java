@@ -0,0 +1,325 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.dto.RagIngestJobDto;
+import com.example.apiasistente.rag.entity.RagIngestJob;
+import com.example.apiasistente.rag.entity.RagIngestJobItem;
+import com.example.apiasistente.rag.entity.RagIngestJobItemStatus;
+import com.example.apiasistente.rag.repository.RagIngestJobItemRepository;
+import com.example.apiasistente.rag.repository.RagIngestJobRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cola de jobs de ingesta asincrona (`/api/ext/rag/jobs`).
+ *
+ * Flujo:
+ * 1. `submit` valida, persiste el job con sus items y responde enseguida con el id.
+ * 2. Un pool fijo de workers procesa los jobs por tramos de items con `RagBulkIngestService`;
+ *    cada tramo guarda resultados y progreso antes de pasar al siguiente.
+ * 3. Cada job tiene un lease (id de instancia + caducidad) que un heartbeat renueva mientras la instancia lo tenga
+ *    en cola o en curso. Al arrancar y en cada heartbeat se adoptan los jobs sin terminar con el lease caducado;
+ *    solo se procesan sus items pendientes.
+ *
+ * Importante:
+ * - Un job vivo en otra instancia nunca se reprocesa: el worker reclama el lease antes de empezar y lo vuelve a
+ *   exigir al guardar cada tramo; si lo perdio, se detiene sin escribir.
+ * - Backpressure: como mucho `workers + max-queued` jobs en vuelo; por encima se responde 429.
+ * - Reprocesar un item tras un corte es seguro: la ingesta es idempotente por huella de contenido.
+ */
+@Service
+public class RagIngestJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagIngestJobService.class);
+    private static final String NAME_IN_FLIGHT = "apiasistente.rag.ingest-jobs.in-flight";
+    private static final String NAME_REJECTED = "apiasistente.rag.ingest-jobs.rejected";
+    private static final String NAME_FINISHED = "apiasistente.rag.ingest-jobs.finished";
+
+    private final RagIngestJobStore store;
+    private final RagIngestJobRepository jobRepo;
+    private final RagIngestJobItemRepository itemRepo;
+    private final RagBulkIngestService bulkIngestService;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService workers;
+    private final int capacity;
+    private final int maxDocuments;
+    private final int chunkDocuments;
+    private final Duration lease;
+    private final String instanceId = UUID.randomUUID().toString();
+    // Jobs de esta instancia en cola o en curso: son los que renueva el heartbeat.
+    private final Set<String> localJobs = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+
+    public RagIngestJobService(RagIngestJobStore store,
+                               RagIngestJobRepository jobRepo,
+                               RagIngestJobItemRepository itemRepo,
+                               RagBulkIngestService bulkIngestService,
+                               MeterRegistry meterRegistry,
+                               @Value("${rag.ingest-jobs.workers:2}") int workers,
+                               @Value("${rag.ingest-jobs.max-queued:20}") int maxQueued,
+                               @Value("${rag.ingest-jobs.max-documents:5000}") int maxDocuments,
+                               @Value("${rag.ingest-jobs.chunk-documents:100}") int chunkDocuments,
+                               @Value("${rag.ingest-jobs.lease-seconds:120}") long leaseSeconds) {
+        this.store = store;
+        this.jobRepo = jobRepo;
+        this.itemRepo = itemRepo;
+        this.bulkIngestService = bulkIngestService;
+        this.meterRegistry = meterRegistry;
+        int workerCount = Math.max(1, workers);
+        this.workers = Executors.newFixedThreadPool(workerCount, Thread.ofVirtual().name("rag-ingest-job-", 0).factory());
+        this.capacity = workerCount + Math.max(0, maxQueued);
+        this.maxDocuments = Math.max(1, maxDocuments);
+        this.chunkDocuments = Math.max(1, chunkDocuments);
+        this.lease = Duration.ofSeconds(Math.max(1, leaseSeconds));
+        this.rejected = meterRegistry.counter(NAME_REJECTED);
+        Gauge.builder(NAME_IN_FLIGHT, inFlight, AtomicInteger::get)
+                .description("Jobs de ingesta en cola o en proceso")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Acepta un lote para ingerir en segundo plano. Lanza 429 si la cola esta llena.
+     */
+    public RagIngestJobDto submit(String owner, String requestedBy, List<RagBulkIngestService.BulkDocument> documents) {
+        if (documents == null || documents.isEmpty()) {
+            throw new IllegalArgumentException("El job no tiene documentos.");
+        }
+        if (documents.size() > maxDocuments) {
+            throw new IllegalArgumentException("El job supera el maximo de " + maxDocuments + " documentos.");
+        }
+        List<String> titles = new ArrayList<>(documents.size());
+        List<String> payloads = new ArrayList<>(documents.size());
+        for (RagBulkIngestService.BulkDocument document : documents) {
+            titles.add(document.title());
+            payloads.add(writePayload(document));
+        }
+
+        if (inFlight.incrementAndGet() > capacity) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Cola de ingesta llena; reintenta mas tarde.");
+        }
+        RagIngestJob job;
+        try {
+            job = store.create(owner, requestedBy, titles, payloads, instanceId, leaseUntil());
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+        log.info("rag_ingest_job queued id={} docs={} requestedBy={}", job.getId(), documents.size(), requestedBy);
+        dispatch(job.getId());
+        return toDto(job, List.of());
+    }
+
+    /**
+     * Estado del job con el resultado de cada documento; solo lo ve quien lo envio.
+     */
+    public Optional<RagIngestJobDto> find(String jobId, String requestedBy) {
+        return jobRepo.findById(jobId)
+                .filter(job -> job.getRequestedBy().equals(requestedBy))
+                .map(job -> toDto(job, itemRepo.findStatusViewsByJobId(job.getId())));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        // Lo ya aceptado se reanuda aunque supere la capacidad: el limite solo aplica a altas nuevas.
+        adoptOrphans(false);
+    }
+
+    @Scheduled(fixedDelayString = "${rag.ingest-jobs.heartbeat-ms:30000}")
+    public void heartbeat() {
+        try {
+            store.renewLeases(instanceId, List.copyOf(localJobs), leaseUntil());
+            adoptOrphans(true);
+        } catch (Exception e) {
+            log.warn("rag_ingest_job heartbeat_failed cause={}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Los jobs a medio hacer quedan QUEUED/RUNNING en BD; los adopta otra instancia o este nodo al volver,
+        // en cuanto caduca su lease.
+        workers.shutdownNow();
+    }
+
+    /**
+     * Encola los jobs sin terminar cuyo lease caduco. El worker los reclama antes de procesarlos, asi que si dos
+     * instancias ven el mismo huerfano solo una lo procesa.
+     */
+    private void adoptOrphans(boolean respectCapacity) {
+        int adopted = 0;
+        for (String jobId : jobRepo.findClaimableIds(RagIngestJobStore.ACTIVE_STATUSES, Instant.now())) {
+            if (localJobs.contains(jobId)) {
+                continue;
+            }
+            if (respectCapacity && inFlight.get() >= capacity) {
+                break;
+            }
+            inFlight.incrementAndGet();
+            dispatch(jobId);
+            adopted++;
+        }
+        if (adopted > 0) {
+            log.info("rag_ingest_job adopted jobs={} instance={}", adopted, instanceId);
+        }
+    }
+
+    private void dispatch(String jobId) {
+        localJobs.add(jobId);
+        try {
+            workers.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            localJobs.remove(jobId);
+            inFlight.decrementAndGet();
+            log.warn("rag_ingest_job dispatch_rejected id={}; se adoptara cuando caduque su lease", jobId);
+        }
+    }
+
+    void run(String jobId) {
+        try {
+            Optional<RagIngestJob> claimed = store.claim(jobId, instanceId, leaseUntil());
+            if (claimed.isEmpty()) {
+                log.info("rag_ingest_job skipped id={}; terminado o en otra instancia", jobId);
+                return;
+            }
+            RagIngestJob job = claimed.get();
+            while (!Thread.currentThread().isInterrupted()) {
+                List<RagIngestJobItem> items = itemRepo.findByJobIdAndStatusOrderByItemIndexAsc(
+                        jobId,
+                        RagIngestJobItemStatus.PENDING,
+                        PageRequest.of(0, chunkDocuments)
+                );
+                if (items.isEmpty()) {
+                    store.finish(jobId, instanceId, null).ifPresent(this::recordFinished);
+                    return;
+                }
+                if (!store.recordOutcomes(jobId, instanceId, leaseUntil(), processItems(job.getOwner(), items))) {
+                    log.warn("rag_ingest_job lease_lost id={}; lo sigue otra instancia", jobId);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            log.warn("rag_ingest_job failed id={} cause={}", jobId, e.getMessage());
+            try {
+                store.finish(jobId, instanceId, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage())
+                        .ifPresent(this::recordFinished);
+            } catch (Exception finishError) {
+                log.warn("rag_ingest_job finish_failed id={} cause={}", jobId, finishError.getMessage());
+            }
+        } finally {
+            localJobs.remove(jobId);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private List<RagIngestJobStore.ItemOutcome> processItems(String owner, List<RagIngestJobItem> items) {
+        List<RagIngestJobStore.ItemOutcome> outcomes = new ArrayList<>(items.size());
+        List<RagIngestJobItem> readable = new ArrayList<>(items.size());
+        List<RagBulkIngestService.BulkDocument> documents = new ArrayList<>(items.size());
+        for (RagIngestJobItem item : items) {
+            try {
+                documents.add(objectMapper.readValue(item.getPayload(), RagBulkIngestService.BulkDocument.class));
+                readable.add(item);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                outcomes.add(new RagIngestJobStore.ItemOutcome(item, RagIngestJobItemStatus.FAILED, null, "Payload ilegible."));
+            }
+        }
+
+        List<RagBulkIngestService.BulkItemResult> results = bulkIngestService.upsertBatch(owner, documents);
+        for (int i = 0; i < readable.size(); i++) {
+            RagBulkIngestService.BulkItemResult result = results.get(i);
+            if (result.succeeded()) {
+                outcomes.add(new RagIngestJobStore.ItemOutcome(
+                        readable.get(i),
+                        result.created() ? RagIngestJobItemStatus.CREATED : RagIngestJobItemStatus.UNCHANGED,
+                        result.document().getId(),
+                        null
+                ));
+            } else {
+                outcomes.add(new RagIngestJobStore.ItemOutcome(readable.get(i), RagIngestJobItemStatus.FAILED, null, result.error()));
+            }
+        }
+        return outcomes;
+    }
+
+    private Instant leaseUntil() {
+        return Instant.now().plus(lease);
+    }
+
+    private void recordFinished(RagIngestJob job) {
+        meterRegistry.counter(NAME_FINISHED, "status", job.getStatus().name().toLowerCase(Locale.ROOT)).increment();
+        log.info(
+                "rag_ingest_job finished id={} status={} processed={} failed={}",
+                job.getId(),
+                job.getStatus(),
+                job.getProcessedDocuments(),
+                job.getFailedDocuments()
+        );
+    }
+
+    private String writePayload(RagBulkIngestService.BulkDocument document) {
+        try {
+            return objectMapper.writeValueAsString(document);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Documento no serializable: " + document.title(), e);
+        }
+    }
+
+    private static RagIngestJobDto toDto(RagIngestJob job, List<RagIngestJobItemRepository.ItemStatusView> items) {
+        int total = job.getTotalDocuments();
+        return new RagIngestJobDto(
+                job.getId(),
+                job.getStatus().name(),
+                total,
+                job.getProcessedDocuments(),
+                job.getFailedDocuments(),
+                total == 0 ? 1.0 : Math.min(1.0, (double) job.getProcessedDocuments() / total),
+                job.getLastError(),
+                job.getCreatedAt(),
+                job.getStartedAt(),
+                job.getFinishedAt(),
+                items.stream()
+                        .map(item -> new RagIngestJobDto.Document(
+                                item.getItemIndex(),
+                                item.getTitle(),
+                                item.getStatus().name(),
+                                item.getDocumentId(),
+                                item.getError()
+                        ))
+                        .toList()
+        );
+    }
+}
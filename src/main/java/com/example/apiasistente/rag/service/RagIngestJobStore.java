@@ -0,0 +1,175 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.RagIngestJob;
+import com.example.apiasistente.rag.entity.RagIngestJobItem;
+import com.example.apiasistente.rag.entity.RagIngestJobItemStatus;
+import com.example.apiasistente.rag.entity.RagIngestJobStatus;
+import com.example.apiasistente.rag.repository.RagIngestJobItemRepository;
+import com.example.apiasistente.rag.repository.RagIngestJobRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Transacciones de la cola de jobs de ingesta.
+ * Cada metodo deja el job en un estado coherente: un corte entre dos llamadas nunca pierde items ni resultados.
+ * Las escrituras de un job en curso exigen el lease: si otra instancia lo adopto, la que lo perdio no toca nada.
+ */
+@Service
+public class RagIngestJobStore {
+
+    private static final int MAX_ERROR_CHARS = 1000;
+    private static final int MAX_TITLE_CHARS = 200;
+    static final List<RagIngestJobStatus> ACTIVE_STATUSES = List.of(RagIngestJobStatus.QUEUED, RagIngestJobStatus.RUNNING);
+
+    private final RagIngestJobRepository jobRepo;
+    private final RagIngestJobItemRepository itemRepo;
+
+    public RagIngestJobStore(RagIngestJobRepository jobRepo, RagIngestJobItemRepository itemRepo) {
+        this.jobRepo = jobRepo;
+        this.itemRepo = itemRepo;
+    }
+
+    /**
+     * Crea el job en QUEUED con un item pendiente por documento (titulo y payload JSON en el orden recibido).
+     * Nace con el lease de la instancia que lo acepta, para que ninguna otra lo adopte mientras espera en su cola.
+     */
+    @Transactional
+    public RagIngestJob create(String owner,
+                               String requestedBy,
+                               List<String> titles,
+                               List<String> payloads,
+                               String leaseOwner,
+                               Instant leaseUntil) {
+        RagIngestJob job = new RagIngestJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setOwner(owner);
+        job.setRequestedBy(requestedBy);
+        job.setStatus(RagIngestJobStatus.QUEUED);
+        job.setTotalDocuments(payloads.size());
+        job.setLeaseOwner(leaseOwner);
+        job.setLeaseUntil(leaseUntil);
+        job = jobRepo.save(job);
+
+        List<RagIngestJobItem> items = new ArrayList<>(payloads.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            RagIngestJobItem item = new RagIngestJobItem();
+            item.setJobId(job.getId());
+            item.setItemIndex(i);
+            item.setTitle(truncate(titles.get(i), MAX_TITLE_CHARS));
+            item.setPayload(payloads.get(i));
+            items.add(item);
+        }
+        itemRepo.saveAll(items);
+        return job;
+    }
+
+    /**
+     * Toma el job para esta instancia y lo pasa a RUNNING. Vacio si ya termino o lo tiene otra instancia con lease vigente.
+     */
+    @Transactional
+    public Optional<RagIngestJob> claim(String jobId, String instanceId, Instant leaseUntil) {
+        if (!holdLease(jobId, instanceId, leaseUntil)) {
+            return Optional.empty();
+        }
+        RagIngestJob job = jobRepo.findById(jobId).orElseThrow();
+        job.setStatus(RagIngestJobStatus.RUNNING);
+        if (job.getStartedAt() == null) {
+            job.setStartedAt(Instant.now());
+        }
+        return Optional.of(jobRepo.save(job));
+    }
+
+    /**
+     * Guarda el resultado de un tramo de items y avanza los contadores del job en la misma transaccion.
+     * Devuelve false, sin guardar nada, si la instancia ya no tiene el lease.
+     */
+    @Transactional
+    public boolean recordOutcomes(String jobId, String instanceId, Instant leaseUntil, List<ItemOutcome> outcomes) {
+        if (!holdLease(jobId, instanceId, leaseUntil)) {
+            return false;
+        }
+        if (outcomes.isEmpty()) {
+            return true;
+        }
+        RagIngestJob job = jobRepo.findById(jobId).orElseThrow();
+        int failed = 0;
+        for (ItemOutcome outcome : outcomes) {
+            itemRepo.recordOutcome(
+                    jobId,
+                    outcome.item().getItemIndex(),
+                    outcome.status(),
+                    outcome.documentId(),
+                    truncate(outcome.error(), MAX_ERROR_CHARS)
+            );
+            if (outcome.status() == RagIngestJobItemStatus.FAILED) {
+                failed++;
+            }
+        }
+        job.setProcessedDocuments(job.getProcessedDocuments() + outcomes.size());
+        job.setFailedDocuments(job.getFailedDocuments() + failed);
+        jobRepo.save(job);
+        return true;
+    }
+
+    /**
+     * Cierra el job: FAILED si hubo un error general o fallaron todos, PARTIAL si fallo alguno, SUCCEEDED si no.
+     * Vacio si la instancia ya no tiene el lease: el cierre lo hara quien lo adopto.
+     */
+    @Transactional
+    public Optional<RagIngestJob> finish(String jobId, String instanceId, String error) {
+        if (!holdLease(jobId, instanceId, Instant.now())) {
+            return Optional.empty();
+        }
+        RagIngestJob job = jobRepo.findById(jobId).orElseThrow();
+        if (error != null) {
+            job.setStatus(RagIngestJobStatus.FAILED);
+            job.setLastError(truncate(error, MAX_ERROR_CHARS));
+        } else if (job.getFailedDocuments() == 0) {
+            job.setStatus(RagIngestJobStatus.SUCCEEDED);
+        } else if (job.getFailedDocuments() >= job.getTotalDocuments()) {
+            job.setStatus(RagIngestJobStatus.FAILED);
+        } else {
+            job.setStatus(RagIngestJobStatus.PARTIAL);
+        }
+        job.setFinishedAt(Instant.now());
+        job.setLeaseOwner(null);
+        job.setLeaseUntil(null);
+        return Optional.of(jobRepo.save(job));
+    }
+
+    /**
+     * Alarga el lease de los jobs que esta instancia tiene en cola o en curso.
+     */
+    @Transactional
+    public int renewLeases(String instanceId, Collection<String> jobIds, Instant leaseUntil) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return jobRepo.renewLeases(jobIds, instanceId, ACTIVE_STATUSES, leaseUntil);
+    }
+
+    /**
+     * UPDATE condicional sobre la fila del job: el bloqueo que toma dura hasta el commit, asi que otra instancia
+     * no puede adoptar el job entre esta comprobacion y las escrituras que la siguen.
+     */
+    private boolean holdLease(String jobId, String instanceId, Instant leaseUntil) {
+        return jobRepo.claim(jobId, instanceId, ACTIVE_STATUSES, Instant.now(), leaseUntil) > 0;
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text == null) {
+            return null;
+        }
+        return text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+
+    record ItemOutcome(RagIngestJobItem item, RagIngestJobItemStatus status, Long documentId, String error) {
+    }
+}
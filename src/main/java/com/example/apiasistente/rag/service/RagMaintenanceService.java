@@ -23,11 +23,9 @@ import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
 import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
 import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
 import com.example.apiasistente.rag.repository.RagMaintenanceCaseRepository;
-import com.example.apiasistente.rag.util.TextChunker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -96,8 +94,7 @@ public class RagMaintenanceService {
     private final MonitoringAlertService monitoringAlertService;
     private final RagService ragService;
     private final RagVectorIndexService vectorIndexService;
-    private final int ragChunkSize;
-    private final int ragChunkOverlap;
+    private final RagChunker chunker;
 
     private final Deque<RagMaintenanceEventDto> events = new ArrayDeque<>();
     private final AtomicBoolean paused = new AtomicBoolean(false);
@@ -123,8 +120,7 @@ public class RagMaintenanceService {
                                  MonitoringAlertService monitoringAlertService,
                                  RagVectorIndexService vectorIndexService,
                                  RagService ragService,
-                                 @Value("${rag.chunk.size:900}") int ragChunkSize,
-                                 @Value("${rag.chunk.overlap:150}") int ragChunkOverlap) {
+                                 RagChunker chunker) {
         this.properties = properties;
         this.docRepo = docRepo;
         this.chunkRepo = chunkRepo;
@@ -135,8 +131,7 @@ public class RagMaintenanceService {
         this.monitoringAlertService = monitoringAlertService;
         this.vectorIndexService = vectorIndexService;
         this.ragService = ragService;
-        this.ragChunkSize = ragChunkSize;
-        this.ragChunkOverlap = ragChunkOverlap;
+        this.chunker = chunker;
         this.dryRun.set(properties.isDryRun());
         this.intervalMs.set(clampIntervalMillis(properties.getIntervalMs()));
     }
@@ -1040,11 +1035,8 @@ public class RagMaintenanceService {
             return true;
         }
 
-        List<String> expectedChunks = TextChunker.chunk(
-                cleanedContent == null ? "" : cleanedContent,
-                Math.max(50, ragChunkSize),
-                Math.max(0, ragChunkOverlap)
-        );
+        // Misma estrategia que uso la ingesta para este source; si no, los documentos CDC saldrian "malformados".
+        List<String> expectedChunks = chunker.chunk(cleanedContent == null ? "" : cleanedContent, doc.getSource());
         int expectedCount = Math.max(1, expectedChunks.size());
 
         for (int i = 0; i < chunks.size(); i++) {
@@ -1,5 +1,6 @@
 package com.example.apiasistente.rag.service;
 
+import com.example.apiasistente.rag.dto.RagIndexRebuildStatusDto;
 import com.example.apiasistente.rag.dto.RagOpsEventDto;
 import com.example.apiasistente.rag.dto.RagOpsStatusDto;
 import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
@@ -42,6 +43,7 @@ public class RagOpsService {
     private final JdbcTemplate jdbc;
     private final ObjectProvider<RagVectorIndexService> vectorIndexServiceProvider;
     private final ObjectProvider<RagMaintenanceService> maintenanceServiceProvider;
+    private final RagCorpusEpochService corpusEpochService;
     private final int topK;
     private final int chunkSize;
     private final int chunkOverlap;
@@ -75,6 +77,7 @@ public class RagOpsService {
                          JdbcTemplate jdbc,
                          ObjectProvider<RagVectorIndexService> vectorIndexServiceProvider,
                          ObjectProvider<RagMaintenanceService> maintenanceServiceProvider,
+                         RagCorpusEpochService corpusEpochService,
                          @Value("${rag.top-k:10}") int topK,
                          @Value("${rag.chunk.size:900}") int chunkSize,
                          @Value("${rag.chunk.overlap:150}") int chunkOverlap,
@@ -88,6 +91,7 @@ public class RagOpsService {
         this.jdbc = jdbc;
         this.vectorIndexServiceProvider = vectorIndexServiceProvider;
         this.maintenanceServiceProvider = maintenanceServiceProvider;
+        this.corpusEpochService = corpusEpochService;
         this.topK = topK;
         this.chunkSize = chunkSize;
         this.chunkOverlap = chunkOverlap;
@@ -218,6 +222,20 @@ public class RagOpsService {
         );
     }
 
+    public void recordIndexCatchUp(String trigger, int upsertedVectors, int deletedVectors) {
+        lastIndexAt = Instant.now();
+        lastIndexSummary = "Catch-up incremental del indice: " + Math.max(0, upsertedVectors)
+                + " vectores aplicados y " + Math.max(0, deletedVectors) + " borrados.";
+        recordEvent(
+                "INFO",
+                "INDEX_CATCH_UP",
+                "Sincronizacion incremental HNSW",
+                "trigger=" + safe(trigger)
+                        + " upserts=" + Math.max(0, upsertedVectors)
+                        + " deletes=" + Math.max(0, deletedVectors)
+        );
+    }
+
     public void recordFailure(String stage, String detail, Throwable error) {
         failures.incrementAndGet();
         String cause = detail == null || detail.isBlank()
@@ -280,10 +298,28 @@ public class RagOpsService {
                 lastDeleteSummary,
                 lastIndexAt,
                 lastIndexSummary,
+                indexRebuildStatus(indexService),
                 recentEvents(20)
         );
     }
 
+    private static RagIndexRebuildStatusDto indexRebuildStatus(RagVectorIndexService indexService) {
+        RagVectorIndexService.RebuildProgress progress = indexService == null ? null : indexService.rebuildProgress();
+        if (progress == null) {
+            return new RagIndexRebuildStatusDto(false, null, "idle", null, null, 0L, 0L, 0.0);
+        }
+        return new RagIndexRebuildStatusDto(
+                progress.running(),
+                progress.trigger(),
+                progress.phase(),
+                progress.startedAt(),
+                progress.finishedAt(),
+                progress.totalVectors(),
+                progress.indexedVectors(),
+                progress.vectorsPerSecond()
+        );
+    }
+
     public RagOpsStatusDto rebuildIndex(String trigger) {
         RagVectorIndexService indexService = vectorIndexServiceProvider.getIfAvailable();
         if (indexService == null) {
@@ -338,11 +374,13 @@ public class RagOpsService {
             jdbc.execute((java.sql.Connection conn) -> {
                 try (var st = conn.createStatement()) {
                     st.execute("DELETE FROM vectors");
+                    st.execute("DELETE FROM vector_tombstones");
                     st.execute("DELETE FROM chunks");
                     st.execute("DELETE FROM documents");
                 }
                 return null;
             });
+            corpusEpochService.bump();
 
             // 3. Limpiar el índice HNSW.
             RagVectorIndexService indexService = vectorIndexServiceProvider.getIfAvailable();
@@ -413,6 +451,7 @@ public class RagOpsService {
             }
         }
 
+        corpusEpochService.bump();
         lastDeleteAt = Instant.now();
         lastDeleteSummary = "Purgados " + deletedDocCount + " documentos antiguos y " + deletedChunkCount + " chunks.";
         recordEvent(
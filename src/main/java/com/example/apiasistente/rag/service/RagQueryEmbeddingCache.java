@@ -0,0 +1,157 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.shared.cache.TinyLfuCache;
+import com.example.apiasistente.shared.config.OllamaProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cache de embeddings de queries (clave = query normalizada) sobre `TinyLfuCache`.
+ *
+ * Importante:
+ * - Guarda float32, la misma precision que el indice y que `OllamaClient.embedOne`.
+ * - Se acota en bytes (`rag.embedding-cache.max-bytes`), no en entradas: el coste real depende de la dimension.
+ * - Al parar se vuelca a disco (`rag.embedding-cache.snapshot-file`) de mas a menos popular y se recarga al
+ *   arrancar, asi las queries frecuentes siguen sin pasar por Ollama tras un despliegue. El volcado lleva el
+ *   modelo de embeddings: si cambia, se descarta entero.
+ */
+@Service
+public class RagQueryEmbeddingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RagQueryEmbeddingCache.class);
+    private static final String CACHE_NAME = "rag-query-embedding";
+    private static final int SNAPSHOT_MAGIC = 0x52514543; // "RQEC"
+    private static final int SNAPSHOT_VERSION = 1;
+    // Cabecera de objeto, arreglo y entrada del mapa/listas: se suma al peso de clave y floats.
+    private static final long ENTRY_OVERHEAD_BYTES = 96L;
+    // `writeUTF` admite 64 KiB codificados; una query mas larga no merece volcarse.
+    private static final int MAX_SNAPSHOT_KEY_CHARS = 16_384;
+
+    private final TinyLfuCache<String, float[]> cache;
+    private final Path snapshotFile;
+    private final String embedModel;
+
+    public RagQueryEmbeddingCache(MeterRegistry meterRegistry,
+                                  OllamaProperties ollamaProperties,
+                                  @Value("${rag.embedding-cache.max-bytes:16777216}") long maxBytes,
+                                  @Value("${rag.embedding-cache.ttl-ms:1800000}") long ttlMs,
+                                  @Value("${rag.embedding-cache.snapshot-file:data/rag-query-embeddings.bin}") String snapshotFile) {
+        this.cache = new TinyLfuCache<>(
+                CACHE_NAME,
+                maxBytes,
+                Duration.ofMillis(Math.max(1_000L, ttlMs)),
+                RagQueryEmbeddingCache::weigh,
+                meterRegistry
+        );
+        this.snapshotFile = snapshotFile == null || snapshotFile.isBlank()
+                ? null
+                : Path.of(snapshotFile.trim()).toAbsolutePath().normalize();
+        this.embedModel = Objects.toString(ollamaProperties.getEmbedModel(), "");
+    }
+
+    public float[] get(String key) {
+        return cache.get(key);
+    }
+
+    public void put(String key, float[] embedding) {
+        if (embedding == null || embedding.length == 0) {
+            return;
+        }
+        cache.put(key, embedding);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @PostConstruct
+    public void loadSnapshot() {
+        if (snapshotFile == null || !Files.isRegularFile(snapshotFile)) {
+            return;
+        }
+        int restored = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                log.info("Volcado del cache de embeddings con formato desconocido; se ignora.");
+                return;
+            }
+            String model = in.readUTF();
+            if (!model.equals(embedModel)) {
+                log.info("Volcado del cache de embeddings del modelo '{}' (actual '{}'); se ignora.", model, embedModel);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long expiresAt = in.readLong();
+                int frequency = in.readUnsignedByte();
+                byte[] payload = in.readNBytes(in.readInt());
+                float[] embedding = EmbeddingCodec.decode(payload);
+                if (embedding.length > 0
+                        && cache.restore(new TinyLfuCache.Entry<>(key, embedding, expiresAt, frequency))) {
+                    restored++;
+                }
+            }
+            log.info("Cache de embeddings de queries precargado entradas={} desde {}", restored, snapshotFile);
+        } catch (IOException e) {
+            log.warn("No se pudo leer el volcado del cache de embeddings {}; arranca en frio", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Se escribe en un temporal y se renombra: un corte a mitad nunca deja un volcado truncado.
+     */
+    @PreDestroy
+    public void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        List<TinyLfuCache.Entry<String, float[]>> entries = cache.hottest().stream()
+                .filter(entry -> entry.key().length() <= MAX_SNAPSHOT_KEY_CHARS)
+                .toList();
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeUTF(embedModel);
+                out.writeInt(entries.size());
+                for (TinyLfuCache.Entry<String, float[]> entry : entries) {
+                    byte[] payload = EmbeddingCodec.encode(entry.value());
+                    out.writeUTF(entry.key());
+                    out.writeLong(entry.expiresAtMillis());
+                    out.writeByte(entry.frequency());
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                }
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Cache de embeddings de queries volcado entradas={} en {}", entries.size(), snapshotFile);
+        } catch (IOException e) {
+            log.warn("No se pudo volcar el cache de embeddings en {}", snapshotFile, e);
+        }
+    }
+
+    private static long weigh(String key, float[] embedding) {
+        return (long) key.length() * Character.BYTES + (long) embedding.length * Float.BYTES + ENTRY_OVERHEAD_BYTES;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.util.VectorMath;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache semantico de `RetrievalResult`: reutiliza el resultado de una query previa cuando el embedding de la
+ * nueva queda a menos de `rag.semantic-cache.max-distance` (distancia coseno) del de aquella y ambas tienen
+ * el mismo conjunto de terminos.
+ *
+ * Importante:
+ * - La busqueda usa LSH por hiperplanos aleatorios (SimHash): cada vector cacheado cae en un bucket por su firma
+ *   de `lsh-bits` bits y la consulta revisa su bucket y los que difieren en un bit. El coseno exacto decide.
+ * - El resultado tambien depende de BM25 y de la compresion por terminos, que el embedding no ve: dos queries
+ *   con vectores casi iguales pero terminos distintos (`error 502` / `error 504`) nunca comparten entrada.
+ *   Los terminos forman parte de la clave de bucket, asi que solo se compara contra queries con los mismos.
+ * - Los resultados vacios no se guardan: suelen venir de un indice aun cargando o de un fallo pasajero, y
+ *   repetirlos es barato; cacheados fijarian el vacio durante todo el TTL.
+ * - Cada entrada lleva el epoch del corpus (`RagCorpusEpochService`) con el que se calculo. Si el epoch avanza
+ *   todo el cache se vacia; un resultado calculado con un epoch ya superado no se guarda.
+ * - Se acota por entradas con expulsion LRU y TTL: los chunks del resultado ocupan mas que el vector.
+ * - Publica aciertos/fallos, la tasa de acierto y la latencia de retrieval ahorrada en cada acierto.
+ */
+@Service
+public class RagSemanticResultCache {
+
+    private static final long LSH_SEED = 0x5EED_CAC4EL;
+
+    private final boolean enabled;
+    private final double minCosine;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final int lshBits;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer savedLatency;
+
+    // Orden de acceso para expulsar la entrada menos reciente cuando se supera `maxEntries`.
+    private final LinkedHashMap<Long, CachedResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<BucketKey, List<CachedResult>> buckets = new HashMap<>();
+    private float[][] hyperplanes;
+    private long corpusVersion = Long.MIN_VALUE;
+    private long nextId;
+
+    public RagSemanticResultCache(MeterRegistry meterRegistry,
+                                  @Value("${rag.semantic-cache.enabled:true}") boolean enabled,
+                                  @Value("${rag.semantic-cache.max-distance:0.03}") double maxDistance,
+                                  @Value("${rag.semantic-cache.max-entries:512}") int maxEntries,
+                                  @Value("${rag.semantic-cache.ttl-ms:600000}") long ttlMs,
+                                  @Value("${rag.semantic-cache.lsh-bits:10}") int lshBits) {
+        this.enabled = enabled;
+        this.minCosine = 1.0 - Math.max(0.0, Math.min(1.0, maxDistance));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMs = Math.max(1_000L, ttlMs);
+        this.lshBits = Math.max(1, Math.min(24, lshBits));
+        this.hits = Counter.builder("apiasistente.rag.semantic-cache.lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("apiasistente.rag.semantic-cache.lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.savedLatency = Timer.builder("apiasistente.rag.semantic-cache.saved")
+                .description("Latencia de retrieval evitada por aciertos del cache semantico")
+                .register(meterRegistry);
+        Gauge.builder("apiasistente.rag.semantic-cache.hit.ratio", this, RagSemanticResultCache::hitRatio)
+                .register(meterRegistry);
+        Gauge.builder("apiasistente.rag.semantic-cache.size", this, RagSemanticResultCache::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve el resultado cacheado mas parecido dentro del umbral o null.
+     *
+     * @param scope clave de alcance (owners filtrados); dos alcances distintos nunca comparten resultados
+     * @param queryTerms terminos normalizados de la query; solo casan entradas con el mismo conjunto
+     * @param queryEmbedding embedding de la query actual
+     * @param version epoch del corpus leido antes de empezar el retrieval
+     */
+    public RagService.RetrievalResult lookup(String scope, Set<String> queryTerms, float[] queryEmbedding, long version) {
+        if (!enabled || queryEmbedding == null || queryEmbedding.length == 0) {
+            return null;
+        }
+        float[] unit = VectorMath.normalize(queryEmbedding);
+        if (unit.length == 0) {
+            misses.increment();
+            return null;
+        }
+        CachedResult best = null;
+        synchronized (this) {
+            syncVersion(version);
+            if (hyperplanes != null && hyperplanes[0].length == unit.length) {
+                long now = System.currentTimeMillis();
+                int signature = signature(unit);
+                double bestCosine = minCosine;
+                for (int bit = -1; bit < lshBits; bit++) {
+                    int probe = bit < 0 ? signature : signature ^ (1 << bit);
+                    List<CachedResult> bucket = buckets.get(new BucketKey(scope, queryTerms, probe));
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (CachedResult candidate : bucket) {
+                        if (candidate.expiresAtMillis() <= now) {
+                            continue;
+                        }
+                        double cosine = VectorMath.dot(unit, candidate.vector());
+                        if (cosine >= bestCosine) {
+                            bestCosine = cosine;
+                            best = candidate;
+                        }
+                    }
+                }
+                if (best != null) {
+                    entries.get(best.id());
+                }
+            }
+        }
+        if (best == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        savedLatency.record(Math.round(best.retrievalMs() * 1_000.0), TimeUnit.MICROSECONDS);
+        return best.result();
+    }
+
+    /**
+     * Guarda el resultado de un retrieval completo. Los resultados sin chunks se ignoran.
+     *
+     * @param retrievalMs coste del retrieval sin contar el embedding; es lo que se ahorra en cada acierto
+     */
+    public void put(String scope,
+                    Set<String> queryTerms,
+                    float[] queryEmbedding,
+                    long version,
+                    RagService.RetrievalResult result,
+                    double retrievalMs) {
+        if (!enabled || result == null || result.retrievedChunks().isEmpty()
+                || queryEmbedding == null || queryEmbedding.length == 0) {
+            return;
+        }
+        float[] unit = VectorMath.normalize(queryEmbedding);
+        if (unit.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            syncVersion(version);
+            if (version != corpusVersion) {
+                // Calculado contra un corpus que ya cambio mientras corria el retrieval.
+                return;
+            }
+            if (hyperplanes == null || hyperplanes[0].length != unit.length) {
+                // Cambio de modelo de embeddings: las firmas previas no son comparables.
+                clearLocked();
+                hyperplanes = randomHyperplanes(lshBits, unit.length);
+            }
+            CachedResult entry = new CachedResult(
+                    nextId++,
+                    new BucketKey(scope, queryTerms, signature(unit)),
+                    unit,
+                    result,
+                    Math.max(0.0, retrievalMs),
+                    System.currentTimeMillis() + ttlMs
+            );
+            entries.put(entry.id(), entry);
+            buckets.computeIfAbsent(entry.bucket(), key -> new ArrayList<>(2)).add(entry);
+            evictLocked();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        clearLocked();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total <= 0.0 ? 0.0 : hits.count() / total;
+    }
+
+    private void syncVersion(long version) {
+        if (version > corpusVersion) {
+            clearLocked();
+            corpusVersion = version;
+        }
+    }
+
+    private void evictLocked() {
+        long now = System.currentTimeMillis();
+        Iterator<CachedResult> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CachedResult eldest = it.next();
+            if (entries.size() <= maxEntries && eldest.expiresAtMillis() > now) {
+                break;
+            }
+            it.remove();
+            List<CachedResult> bucket = buckets.get(eldest.bucket());
+            if (bucket != null) {
+                bucket.remove(eldest);
+                if (bucket.isEmpty()) {
+                    buckets.remove(eldest.bucket());
+                }
+            }
+        }
+    }
+
+    private void clearLocked() {
+        entries.clear();
+        buckets.clear();
+    }
+
+    private int signature(float[] unit) {
+        float[] projections = new float[hyperplanes.length];
+        VectorMath.dotAll(unit, hyperplanes, projections);
+        int signature = 0;
+        for (int bit = 0; bit < projections.length; bit++) {
+            if (projections[bit] >= 0f) {
+                signature |= 1 << bit;
+            }
+        }
+        return signature;
+    }
+
+    private static float[][] randomHyperplanes(int bits, int dimensions) {
+        // Semilla fija: misma query => misma firma entre reinicios y entre instancias.
+        Random random = new Random(LSH_SEED);
+        float[][] planes = new float[bits][dimensions];
+        for (float[] plane : planes) {
+            for (int i = 0; i < dimensions; i++) {
+                plane[i] = (float) random.nextGaussian();
+            }
+        }
+        return planes;
+    }
+
+    private record BucketKey(String scope, Set<String> terms, int signature) {
+    }
+
+    private record CachedResult(long id,
+                                BucketKey bucket,
+                                float[] vector,
+                                RagService.RetrievalResult result,
+                                double retrievalMs,
+                                long expiresAtMillis) {
+    }
+}
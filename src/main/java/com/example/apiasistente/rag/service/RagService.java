@@ -1,6 +1,7 @@
 package com.example.apiasistente.rag.service;
 
 import com.example.apiasistente.rag.dto.RagContextStatsDto;
+import com.example.apiasistente.rag.dto.RetrievedChunkDto;
 import com.example.apiasistente.rag.dto.SourceDto;
 import com.example.apiasistente.rag.entity.KnowledgeChunk;
 import com.example.apiasistente.rag.entity.KnowledgeDocument;
@@ -8,7 +9,8 @@ import com.example.apiasistente.rag.entity.KnowledgeVector;
 import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
 import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
 import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
-import com.example.apiasistente.rag.util.TextChunker;
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.rag.util.SentenceSegmenter;
 import com.example.apiasistente.rag.util.VectorMath;
 import com.example.apiasistente.shared.ai.OllamaClient;
 import org.slf4j.Logger;
@@ -17,21 +19,25 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.FloatBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.Normalizer;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -53,13 +59,10 @@ public class RagService {
     public static final String GLOBAL_OWNER = "global";
     private static final Logger log = LoggerFactory.getLogger(RagService.class);
 
-    // Cache de embeddings de queries: evita llamar a Ollama para la misma consulta repetida.
-    // TTL de 30 minutos es adecuado: las queries tipicas de chat se repiten dentro de una sesion.
-    private static final int EMBEDDING_CACHE_MAX = 500;
-    private static final long EMBEDDING_CACHE_TTL_MS = 1_800_000L; // 30 min
-    private record CachedEmbedding(double[] vec, long expiresAt) {}
-    private final ConcurrentHashMap<String, CachedEmbedding> embeddingCache = new ConcurrentHashMap<>();
-    private final ConcurrentLinkedDeque<String> embeddingCacheOrder = new ConcurrentLinkedDeque<>();
+    // La query BM25 corre en un hilo virtual mientras se calcula el embedding y se consulta HNSW.
+    private static final Executor LEXICAL_SEARCH = task -> Thread.ofVirtual().name("rag-bm25").start(task);
+    private static final String FUSION_RRF = "rrf";
+    static final String FINGERPRINT_SEPARATOR = "||";
 
     private static final Set<String> STOPWORDS = Set.of(
             "de", "la", "el", "los", "las", "y", "o", "u", "en", "por", "para", "con", "sin", "del", "al",
@@ -71,8 +74,17 @@ public class RagService {
     private final KnowledgeChunkRepository chunkRepo;
     private final KnowledgeVectorRepository vectorRepo;
     private final RagVectorIndexService vectorIndexService;
+    // Cache de embeddings de queries: evita llamar a Ollama para la misma consulta repetida.
+    private final RagQueryEmbeddingCache queryEmbeddingCache;
+    // Resultados completos de retrieval para queries casi identicas, invalidados por el epoch del corpus.
+    private final RagSemanticResultCache semanticResultCache;
     private final RagOpsService ragOpsService;
     private final OllamaClient ollama;
+    private final RagCorpusEpochService corpusEpochService;
+    // Proyecciones de chunks calientes para hidratar el retrieval sin entidades JPA.
+    private final RagChunkViewCache chunkViewCache;
+    private final RagChunkEmbeddingService chunkEmbeddings;
+    private final RagChunker chunker;
 
     @Value("${rag.top-k:10}")
     private int topK;
@@ -110,6 +122,12 @@ public class RagService {
     @Value("${rag.hybrid.exact-match-boost:0.12}")
     private double exactMatchBoost;
 
+    @Value("${rag.hybrid.fusion:weighted}")
+    private String hybridFusion;
+
+    @Value("${rag.hybrid.rrf-k:60}")
+    private int rrfK;
+
     @Value("${rag.owner.global-boost:0.03}")
     private double globalOwnerBoost;
 
@@ -121,11 +139,23 @@ public class RagService {
                       KnowledgeVectorRepository vectorRepo,
                       RagVectorIndexService vectorIndexService,
                       RagOpsService ragOpsService,
-                      OllamaClient ollama) {
+                      OllamaClient ollama,
+                      RagQueryEmbeddingCache queryEmbeddingCache,
+                      RagSemanticResultCache semanticResultCache,
+                      RagCorpusEpochService corpusEpochService,
+                      RagChunkViewCache chunkViewCache,
+                      RagChunkEmbeddingService chunkEmbeddings,
+                      RagChunker chunker) {
         this.docRepo = docRepo;
         this.chunkRepo = chunkRepo;
         this.vectorRepo = vectorRepo;
         this.vectorIndexService = vectorIndexService;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.semanticResultCache = semanticResultCache;
+        this.corpusEpochService = corpusEpochService;
+        this.chunkViewCache = chunkViewCache;
+        this.chunkEmbeddings = chunkEmbeddings;
+        this.chunker = chunker;
         this.ragOpsService = ragOpsService;
         this.ollama = ollama;
     }
@@ -177,19 +207,20 @@ public class RagService {
                                                               String tags,
                                                               String referenceUrl,
                                                               List<IncomingChunk> chunks) {
-        String normalizedOwner = normalizeOwner(owner);
-        String normalizedTitle = normalizeTitle(title);
-        String normalizedReferenceUrl = normalizeReferenceUrl(referenceUrl);
-        String normalizedSource = normalizeSource(source, normalizedReferenceUrl == null ? "api" : "scraper");
-        String normalizedTags = normalizeTags(tags);
-        List<PreparedChunkInput> preparedChunks = prepareChunks(chunks, content, normalizedSource, normalizedTags);
-        String documentFingerprint = computeDocumentFingerprint(preparedChunks);
+        PreparedDocument prepared = prepareDocument(owner, title, content, source, tags, referenceUrl, chunks);
+        String normalizedOwner = prepared.owner();
+        String normalizedTitle = prepared.title();
+        String normalizedReferenceUrl = prepared.referenceUrl();
+        String normalizedSource = prepared.source();
+        List<PreparedChunkInput> preparedChunks = prepared.chunks();
+        String documentFingerprint = prepared.fingerprint();
 
         KnowledgeDocument activeDoc = docRepo.findFirstByOwnerAndTitleIgnoreCaseAndActiveTrue(normalizedOwner, normalizedTitle)
                 .orElse(null);
 
         if (activeDoc != null && documentFingerprint.equals(trimToEmpty(activeDoc.getContentFingerprint()))) {
             // Mismo documento logico: solo refrescamos metadata estable si el origen cambio.
+            // Sin bump del epoch: chunks y vectores no cambian y las vistas hidratadas no llevan source ni URL.
             activeDoc.setSource(normalizedSource);
             activeDoc.setReferenceUrl(normalizedReferenceUrl);
             activeDoc.setContentFingerprint(documentFingerprint);
@@ -206,6 +237,9 @@ public class RagService {
             return saved;
         }
 
+        // Antes de archivar: la version activa aun conserva sus vectores y los chunks sin cambios los reutilizan.
+        List<float[]> embeddings = chunkEmbeddings.embed(preparedChunks);
+
         KnowledgeDocument newDoc = new KnowledgeDocument();
         newDoc.setOwner(normalizedOwner);
         newDoc.setTitle(normalizedTitle);
@@ -220,7 +254,8 @@ public class RagService {
         }
 
         List<KnowledgeChunk> persistedChunks = persistChunks(newDoc, preparedChunks);
-        persistVectorsAndIndex(newDoc.getOwner(), persistedChunks);
+        persistVectorsAndIndex(newDoc.getOwner(), persistedChunks, embeddings);
+        corpusEpochService.bump();
 
         log.debug(
                 "RAG ingest owner='{}' title='{}' docId={} chunks={} source='{}' referenceUrl='{}'",
@@ -243,6 +278,43 @@ public class RagService {
         return newDoc;
     }
 
+    /**
+     * Normaliza metadata, parte en chunks y calcula la huella sin tocar la BD.
+     * Es el primer paso comun de la ingesta unitaria y de la ingesta bulk.
+     */
+    PreparedDocument prepareDocument(String owner,
+                                     String title,
+                                     String content,
+                                     String source,
+                                     String tags,
+                                     String referenceUrl,
+                                     List<IncomingChunk> chunks) {
+        DocumentMetadata metadata = normalizeMetadata(owner, title, source, tags, referenceUrl);
+        List<PreparedChunkInput> preparedChunks = prepareChunks(chunks, content, metadata.source(), metadata.tags());
+        return new PreparedDocument(
+                metadata.owner(),
+                metadata.title(),
+                metadata.source(),
+                metadata.referenceUrl(),
+                preparedChunks,
+                computeDocumentFingerprint(preparedChunks)
+        );
+    }
+
+    /**
+     * Normalizacion de metadata comun a todas las ingestas, incluida la de streaming.
+     */
+    DocumentMetadata normalizeMetadata(String owner, String title, String source, String tags, String referenceUrl) {
+        String normalizedReferenceUrl = normalizeReferenceUrl(referenceUrl);
+        return new DocumentMetadata(
+                normalizeOwner(owner),
+                normalizeTitle(title),
+                normalizeSource(source, normalizedReferenceUrl == null ? "api" : "scraper"),
+                normalizeTags(tags),
+                normalizedReferenceUrl
+        );
+    }
+
     @Transactional
     public KnowledgeDocument storeMemory(String username, String title, String content) {
         String user = normalizeOwner(username);
@@ -274,6 +346,7 @@ public class RagService {
             chunkRepo.deleteByDocument_Id(documentId);
         }
         docRepo.delete(doc);
+        corpusEpochService.bump();
 
         log.debug("RAG delete owner='{}' title='{}' docId={} chunks={}",
                 normalizeOwner(doc.getOwner()),
@@ -314,6 +387,7 @@ public class RagService {
         vectorRepo.deleteByChunkIdIn(ids);
         vectorIndexService.deleteChunkIds(ids);
         chunkRepo.deleteAllByIdInBatch(ids);
+        corpusEpochService.bump();
 
         log.debug("RAG prune owner='{}' chunks={}", normalizedOwner, ids.size());
         ragOpsService.recordChunkPrune(normalizedOwner, ids.size());
@@ -392,72 +466,106 @@ public class RagService {
      * owners != null (legacy) => filtra por los owners indicados.
      */
     public RetrievalResult retrieveForOwners(String query, List<String> owners) {
-        long embeddingStartNanos = System.nanoTime();
-        double[] queryEmbedding = getCachedEmbedding(query);
-        double queryEmbeddingTimeMs = nanosToMillis(embeddingStartNanos);
         boolean noOwnerFilter = owners == null;
         List<String> ownersClean = noOwnerFilter ? List.of(GLOBAL_OWNER) : normalizeOwners(owners);
-        if (queryEmbedding.length == 0) {
+        int retrievalTopK = Math.max(1, topK);
+        // Factor 2 fijo para dar margen al rescoring hibrido y MMR. El filtro de owner se aplica dentro
+        // de la query kNN, asi que ya no hace falta inflar el pool por numero de owners.
+        int semanticCandidateLimit = Math.max(retrievalTopK, rerankCandidates) * 2;
+        if (query == null || query.isBlank()) {
             return finalizeRetrieval(
                     query,
                     ownersClean,
                     0,
                     0,
                     0L,
-                    RetrievalResult.empty(ownersClean, queryEmbeddingTimeMs, topK, evidenceThreshold)
+                    RetrievalResult.empty(ownersClean, 0.0, topK, evidenceThreshold)
             );
         }
 
-        int retrievalTopK = Math.max(1, topK);
-        // Sin filtro de propietario usamos factor 2 fijo; con filtro escalamos por numero de owners.
-        int semanticCandidateLimit = Math.max(retrievalTopK, rerankCandidates)
-                * (noOwnerFilter ? 2 : Math.max(2, ownersClean.size()));
-        long retrievalStartNanos = System.nanoTime();
+        long embeddingStartNanos = System.nanoTime();
+        float[] queryEmbedding = embedQueryOrEmpty(query);
+        double queryEmbeddingTimeMs = nanosToMillis(embeddingStartNanos);
+        // Sin embedding (Ollama caido) BM25 sigue respondiendo: se salta la kNN y el cache, que va por embedding.
+        boolean semanticSearch = queryEmbedding.length > 0;
 
-        // Fase 1: recuperamos candidatos semanticos baratos desde HNSW.
-        // null como owners => sin filtro de propietario => todos los documentos activos.
-        List<RagVectorIndexService.SearchHit> searchHits = vectorIndexService.search(
-                noOwnerFilter ? null : ownersClean,
-                queryEmbedding,
-                semanticCandidateLimit
-        );
-        if (searchHits.isEmpty()) {
+        long retrievalStartNanos = System.nanoTime();
+        // El epoch se lee antes de buscar: si cambia durante el retrieval, el cache descarta el resultado.
+        long version = corpusEpochService.current();
+        // Owners ordenados: el mismo alcance pedido en otro orden comparte entrada.
+        String cacheScope = noOwnerFilter ? "*" : ownersClean.stream().sorted().collect(Collectors.joining(","));
+        // BM25 y la compresion dependen de los terminos: el embedding solo no basta para reutilizar el resultado.
+        Set<String> cacheTerms = Set.copyOf(Arrays.asList(normalizeSearchText(query).split(" ")));
+        RetrievalResult cached = semanticSearch
+                ? semanticResultCache.lookup(cacheScope, cacheTerms, queryEmbedding, version)
+                : null;
+        if (cached != null) {
             return finalizeRetrieval(
                     query,
                     ownersClean,
                     0,
-                    0,
+                    cached.contextChunks().size(),
                     retrievalStartNanos,
-                    emptyResult(ownersClean, queryEmbeddingTimeMs, retrievalTopK)
+                    cached
             );
         }
 
-        List<Long> candidateIds = searchHits.stream()
-                .map(RagVectorIndexService.SearchHit::chunkId)
-                .distinct()
-                .toList();
+        // Fase 1: recuperamos candidatos semanticos baratos desde HNSW y los lexicos desde BM25.
+        // BM25 arranca tras el cache (un hit no paga la query lexica) y se solapa con la kNN.
+        // null como owners => sin filtro de propietario => todos los documentos activos.
+        CompletableFuture<List<RagVectorIndexService.SearchHit>> lexicalSearch = CompletableFuture.supplyAsync(
+                () -> vectorIndexService.searchText(noOwnerFilter ? null : ownersClean, query, semanticCandidateLimit),
+                LEXICAL_SEARCH
+        );
+        List<RagVectorIndexService.SearchHit> searchHits = semanticSearch
+                ? vectorIndexService.search(noOwnerFilter ? null : ownersClean, queryEmbedding, semanticCandidateLimit)
+                : List.of();
+        List<RagVectorIndexService.SearchHit> lexicalHits = awaitLexicalHits(lexicalSearch);
+        if (searchHits.isEmpty() && lexicalHits.isEmpty()) {
+            // Sin cachear: el cache descarta los vacios (indice cargando o fallo pasajero) para no fijarlos.
+            RetrievalResult empty = emptyResult(ownersClean, queryEmbeddingTimeMs, retrievalTopK);
+            return finalizeRetrieval(query, ownersClean, 0, 0, retrievalStartNanos, empty);
+        }
+
+        // Union de ambas listas: un chunk que solo casa por un identificador exacto entra aunque HNSW no lo vea.
+        // Los embeddings salen del store mapeado (o del propio hit si aun no esta listo): MMR no vuelve a
+        // `vectors` ni copia floats al heap.
+        Map<Long, RagVectorIndexService.SearchHit> hitByChunkId = new LinkedHashMap<>();
+        for (RagVectorIndexService.SearchHit hit : searchHits) {
+            hitByChunkId.putIfAbsent(hit.chunkId(), hit);
+        }
+        for (RagVectorIndexService.SearchHit hit : lexicalHits) {
+            hitByChunkId.putIfAbsent(hit.chunkId(), hit);
+        }
+        List<Long> candidateIds = List.copyOf(hitByChunkId.keySet());
 
-        Map<Long, KnowledgeChunk> chunkById = chunkRepo.findActiveWithDocumentByIdIn(candidateIds).stream()
-                .collect(Collectors.toMap(KnowledgeChunk::getId, chunk -> chunk));
-        Map<Long, double[]> embeddingByChunkId = vectorRepo.findPayloadByChunkIds(candidateIds).stream()
-                .collect(Collectors.toMap(
-                        KnowledgeVectorRepository.VectorPayloadView::getChunkId,
-                        view -> VectorMath.normalize(ollama.fromJson(view.getEmbeddingJson()))
-                ));
+        Map<Long, RetrievedChunkDto> chunkById = chunkViewCache.findActive(candidateIds);
 
         // Fase 2: reconstruimos el contexto minimo necesario para rescoring y MMR.
-        List<CandidateChunk> semanticCandidates = new ArrayList<>(searchHits.size());
+        Map<Long, Double> knnScoreByChunkId = new HashMap<>();
         for (RagVectorIndexService.SearchHit hit : searchHits) {
-            KnowledgeChunk chunk = chunkById.get(hit.chunkId());
-            if (chunk == null) {
+            knnScoreByChunkId.putIfAbsent(hit.chunkId(), normalizeSemanticScore(hit.score()));
+        }
+        List<CandidateChunk> semanticCandidates = new ArrayList<>(candidateIds.size());
+        for (Long chunkId : candidateIds) {
+            if (!chunkById.containsKey(chunkId)) {
                 continue;
             }
-            double[] embedding = embeddingByChunkId.getOrDefault(hit.chunkId(), new double[0]);
+            RagVectorIndexService.SearchHit hit = hitByChunkId.get(chunkId);
+            // Los vectores del indice ya estan normalizados al indexar.
+            FloatBuffer embedding = hit.embedding() != null
+                    ? hit.embedding()
+                    : vectorIndexService.vectorView(chunkId);
+            Double knnScore = knnScoreByChunkId.get(chunkId);
+            // Los que solo llegan por BM25 se puntuan con el mismo (1 + coseno) / 2 que devuelve HNSW.
+            double semantic = knnScore != null ? knnScore
+                    : !semanticSearch || embedding == null || embedding.limit() == 0 ? 0.0
+                    : clamp01((1.0 + safeCosineUnit(queryEmbedding, embedding)) / 2.0);
             semanticCandidates.add(new CandidateChunk(
-                    hit.chunkId(),
+                    chunkId,
                     hit.owner(),
-                    normalizeSemanticScore(hit.score()),
-                    normalizeSemanticScore(hit.score()),
+                    semantic,
+                    semantic,
                     embedding
             ));
         }
@@ -465,14 +573,14 @@ public class RagService {
             return finalizeRetrieval(
                     query,
                     ownersClean,
-                    searchHits.size(),
+                    candidateIds.size(),
                     0,
                     retrievalStartNanos,
                     emptyResult(ownersClean, queryEmbeddingTimeMs, retrievalTopK)
             );
         }
 
-        List<CandidateChunk> hybridCandidates = applyHybridScoring(query, semanticCandidates, chunkById);
+        List<CandidateChunk> hybridCandidates = applyHybridScoring(semanticCandidates, searchHits, lexicalHits);
         if (hybridCandidates.isEmpty()) {
             return finalizeRetrieval(
                     query,
@@ -508,13 +616,13 @@ public class RagService {
         double avgSimilarity = retrieved.stream().mapToDouble(ScoredChunk::score).average().orElse(0.0);
         List<Long> chunkIds = context.stream()
                 .map(ScoredChunk::chunk)
-                .filter(chunk -> chunk != null && chunk.getId() != null)
-                .map(KnowledgeChunk::getId)
+                .filter(chunk -> chunk != null && chunk.chunkId() != null)
+                .map(RetrievedChunkDto::chunkId)
                 .toList();
         List<String> sourceDocs = context.stream()
                 .map(ScoredChunk::chunk)
-                .filter(chunk -> chunk != null && chunk.getDocument() != null)
-                .map(chunk -> chunk.getDocument().getTitle())
+                .filter(chunk -> chunk != null && chunk.documentTitle() != null)
+                .map(RetrievedChunkDto::documentTitle)
                 .distinct()
                 .toList();
         int contextTokens = estimateTokens(context);
@@ -532,13 +640,7 @@ public class RagService {
             );
         }
 
-        return finalizeRetrieval(
-                query,
-                ownersClean,
-                semanticCandidates.size(),
-                evidence.size(),
-                retrievalStartNanos,
-                new RetrievalResult(
+        RetrievalResult result = new RetrievalResult(
                 retrieved,
                 context,
                 new RetrievalStats(
@@ -553,17 +655,26 @@ public class RagService {
                         chunkIds,
                         sourceDocs
                 )
-                )
+        );
+        if (semanticSearch) {
+            semanticResultCache.put(cacheScope, cacheTerms, queryEmbedding, version, result, nanosToMillis(retrievalStartNanos));
+        }
+        return finalizeRetrieval(
+                query,
+                ownersClean,
+                semanticCandidates.size(),
+                evidence.size(),
+                retrievalStartNanos,
+                result
         );
     }
 
     public List<SourceDto> toSourceDtos(List<ScoredChunk> scored) {
         return scored.stream().map(sc -> {
-            KnowledgeChunk c = sc.chunk();
-            KnowledgeDocument d = c.getDocument();
+            RetrievedChunkDto c = sc.chunk();
             String text = sc.effectiveText();
             String snippet = text.length() > 220 ? text.substring(0, 220) + "..." : text;
-            return new SourceDto(c.getId(), d.getId(), d.getTitle(), sc.score(), snippet);
+            return new SourceDto(c.chunkId(), c.documentId(), c.documentTitle(), sc.score(), snippet);
         }).toList();
     }
 
@@ -629,34 +740,36 @@ public class RagService {
             return List.of();
         }
 
+        // La query se normaliza una vez; cada chunk aporta sus fragmentos ya tokenizados.
+        String normalizedQuery = normalizeSearchText(query);
+        Set<String> queryTokens = tokenize(normalizedQuery);
         int maxChunks = Math.max(1, contextMaxChunks);
         List<ScoredChunk> compressed = new ArrayList<>(Math.min(maxChunks, evidence.size()));
         for (ScoredChunk chunk : evidence) {
             if (compressed.size() >= maxChunks) {
                 break;
             }
-            String promptText = compressChunkText(query, chunk.chunk().getText());
+            String promptText = compressChunkText(normalizedQuery, queryTokens, chunk.chunk());
             compressed.add(chunk.withPromptText(promptText));
         }
         return List.copyOf(compressed);
     }
 
-    private String compressChunkText(String query, String chunkText) {
+    /**
+     * Elige los fragmentos mas relevantes del chunk. Las fronteras vienen de la ingesta y la normalizacion y
+     * tokenizacion de cada fragmento se cachean por chunk: aqui solo se puntua y se copia lo seleccionado.
+     */
+    private String compressChunkText(String normalizedQuery, Set<String> queryTokens, RetrievedChunkDto chunk) {
+        String chunkText = chunk.text();
         if (!hasText(chunkText)) {
             return "";
         }
 
-        String normalizedQuery = normalizeSearchText(query);
-        Set<String> queryTokens = tokenize(normalizedQuery);
-        String[] rawFragments = chunkText.split("(?m)\\n\\s*\\n+|(?<=[.!?])\\s+");
-        List<FragmentCandidate> candidates = new ArrayList<>(rawFragments.length);
-
-        for (int i = 0; i < rawFragments.length; i++) {
-            String fragment = collapseSpaces(rawFragments[i]);
-            if (!hasText(fragment)) {
-                continue;
-            }
-            double fragmentScore = lexicalScore(normalizedQuery, queryTokens, fragment);
+        List<PreparedFragment> fragments = chunkViewCache.fragments(chunk, RagService::prepareFragments).fragments();
+        List<FragmentCandidate> candidates = new ArrayList<>(fragments.size());
+        for (int i = 0; i < fragments.size(); i++) {
+            PreparedFragment fragment = fragments.get(i);
+            double fragmentScore = lexicalScore(normalizedQuery, queryTokens, fragment.normalized(), fragment.tokens());
             candidates.add(new FragmentCandidate(i, fragment, fragmentScore));
         }
 
@@ -691,7 +804,7 @@ public class RagService {
             if (sb.length() > 0) {
                 sb.append("\n...\n");
             }
-            sb.append(fragment.text());
+            appendCollapsed(sb, chunkText, fragment.fragment().start(), fragment.fragment().end());
             if (sb.length() >= maxCharsPerChunk) {
                 break;
             }
@@ -710,15 +823,32 @@ public class RagService {
         return Math.max(0, chars / 4);
     }
 
-    private List<CandidateChunk> applyHybridScoring(String query,
-                                                    List<CandidateChunk> semanticCandidates,
-                                                    Map<Long, KnowledgeChunk> chunkById) {
-        if (semanticCandidates.isEmpty()) {
+    /**
+     * La busqueda lexica es un complemento: si falla, retrieval sigue solo con HNSW.
+     */
+    private List<RagVectorIndexService.SearchHit> awaitLexicalHits(
+            CompletableFuture<List<RagVectorIndexService.SearchHit>> lexicalSearch) {
+        try {
+            return lexicalSearch.join();
+        } catch (Exception e) {
+            log.warn("RAG BM25 no disponible, se continua solo con candidatos semanticos: {}", e.getMessage());
             return List.of();
         }
+    }
 
-        String normalizedQuery = normalizeSearchText(query);
-        Set<String> queryTokens = tokenize(normalizedQuery);
+    /**
+     * Fusiona la lista kNN y la BM25 segun `rag.hybrid.fusion`:
+     * - weighted: `semantic-weight * score semantico + lexical-weight * BM25 / max BM25 de la consulta`.
+     * - rrf: reciprocal-rank fusion ponderada con los mismos pesos, escalada a [0, 1] para que el
+     *   umbral de evidencia siga siendo comparable (1 = primero en ambas listas).
+     * Ambas suman el boost de owner.
+     */
+    private List<CandidateChunk> applyHybridScoring(List<CandidateChunk> candidates,
+                                                    List<RagVectorIndexService.SearchHit> semanticHits,
+                                                    List<RagVectorIndexService.SearchHit> lexicalHits) {
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
 
         double semWeight = Math.max(0.0, semanticWeight);
         double lexWeight = Math.max(0.0, lexicalWeight);
@@ -729,34 +859,49 @@ public class RagService {
         semWeight = semWeight / weightSum;
         lexWeight = lexWeight / weightSum;
 
-        List<CandidateChunk> rescored = new ArrayList<>(semanticCandidates.size());
-        for (CandidateChunk candidate : semanticCandidates) {
-            KnowledgeChunk chunk = chunkById.get(candidate.chunkId());
-            if (chunk == null) {
-                continue;
+        Map<Long, Integer> lexicalRank = ranks(lexicalHits);
+        Map<Long, Double> lexicalScore = new HashMap<>();
+        double maxLexical = lexicalHits.stream().mapToDouble(RagVectorIndexService.SearchHit::score).max().orElse(0.0);
+        for (RagVectorIndexService.SearchHit hit : lexicalHits) {
+            lexicalScore.putIfAbsent(hit.chunkId(), maxLexical > 0.0 ? hit.score() / maxLexical : 0.0);
+        }
+        boolean rrf = FUSION_RRF.equalsIgnoreCase(trimToEmpty(hybridFusion));
+        Map<Long, Integer> semanticRank = rrf ? ranks(semanticHits) : Map.of();
+        double k = Math.max(1, rrfK);
+
+        List<CandidateChunk> rescored = new ArrayList<>(candidates.size());
+        for (CandidateChunk candidate : candidates) {
+            double fused;
+            if (rrf) {
+                fused = (reciprocalRank(semanticRank.get(candidate.chunkId()), k) * semWeight
+                        + reciprocalRank(lexicalRank.get(candidate.chunkId()), k) * lexWeight) * (k + 1.0);
+            } else {
+                fused = semWeight * clamp01(candidate.semanticScore())
+                        + lexWeight * lexicalScore.getOrDefault(candidate.chunkId(), 0.0);
             }
-
-            double lexical = lexicalScore(normalizedQuery, queryTokens, chunk.getText());
-            double ownerBoost = ownerBoost(candidate.owner());
-            double finalScore = semWeight * clamp01(candidate.semanticScore()) + lexWeight * lexical + ownerBoost;
-            rescored.add(candidate.withScore(finalScore));
+            rescored.add(candidate.withScore(fused + ownerBoost(candidate.owner())));
         }
 
         return rescored;
     }
 
-    private double lexicalScore(String normalizedQuery, Set<String> queryTokens, String chunkText) {
-        if (queryTokens.isEmpty() || !hasText(chunkText)) {
-            return 0.0;
+    private static Map<Long, Integer> ranks(List<RagVectorIndexService.SearchHit> hits) {
+        Map<Long, Integer> ranks = new HashMap<>();
+        for (RagVectorIndexService.SearchHit hit : hits) {
+            ranks.putIfAbsent(hit.chunkId(), ranks.size() + 1);
         }
+        return ranks;
+    }
 
-        String normalizedChunk = normalizeSearchText(chunkText);
-        if (normalizedChunk.isBlank()) {
-            return 0.0;
-        }
+    private static double reciprocalRank(Integer rank, double k) {
+        return rank == null ? 0.0 : 1.0 / (k + rank);
+    }
 
-        Set<String> chunkTokens = tokenize(normalizedChunk);
-        if (chunkTokens.isEmpty()) {
+    private double lexicalScore(String normalizedQuery,
+                                Set<String> queryTokens,
+                                String normalizedChunk,
+                                Set<String> chunkTokens) {
+        if (queryTokens.isEmpty() || normalizedChunk.isBlank() || chunkTokens.isEmpty()) {
             return 0.0;
         }
 
@@ -784,37 +929,43 @@ public class RagService {
         List<CandidateChunk> selected = new ArrayList<>();
         Set<Long> selectedIds = new LinkedHashSet<>();
 
-        CandidateChunk first = candidates.get(0);
-        selected.add(first);
-        selectedIds.add(first.chunkId());
+        // La similitud maxima de cada candidato con lo ya elegido se mantiene incremental: por cada
+        // seleccion basta un lote de productos escalares del nuevo elegido contra todos los candidatos.
+        List<FloatBuffer> embeddings = candidates.stream().map(CandidateChunk::embedding).toList();
+        float[] similarity = new float[candidates.size()];
+        double[] diversity = new double[candidates.size()];
+        Arrays.fill(diversity, Double.NEGATIVE_INFINITY);
+
+        int lastSelected = 0;
+        selected.add(candidates.get(0));
+        selectedIds.add(candidates.get(0).chunkId());
 
         while (selected.size() < limit && selected.size() < candidates.size()) {
-            CandidateChunk best = null;
+            VectorMath.cosineUnitAll(embeddings.get(lastSelected), embeddings, similarity);
+            int best = -1;
             double bestScore = Double.NEGATIVE_INFINITY;
 
-            for (CandidateChunk candidate : candidates) {
+            for (int i = 0; i < candidates.size(); i++) {
+                CandidateChunk candidate = candidates.get(i);
                 if (selectedIds.contains(candidate.chunkId())) {
                     continue;
                 }
 
-                double diversity = selected.stream()
-                        .mapToDouble(chosen -> safeCosineUnit(candidate.embedding(), chosen.embedding()))
-                        .max()
-                        .orElse(0.0);
-
-                double mmrScore = lambdaClamped * candidate.score() - (1 - lambdaClamped) * diversity;
+                diversity[i] = Math.max(diversity[i], safeSimilarity(similarity[i]));
+                double mmrScore = lambdaClamped * candidate.score() - (1 - lambdaClamped) * diversity[i];
                 if (mmrScore > bestScore) {
                     bestScore = mmrScore;
-                    best = candidate;
+                    best = i;
                 }
             }
 
-            if (best == null) {
+            if (best < 0) {
                 break;
             }
 
-            selected.add(best);
-            selectedIds.add(best.chunkId());
+            lastSelected = best;
+            selected.add(candidates.get(best));
+            selectedIds.add(candidates.get(best).chunkId());
         }
 
         return selected;
@@ -822,7 +973,7 @@ public class RagService {
 
     // ----------------- PERSISTENCIA INTERNA -----------------
 
-    private void archiveDocumentVersion(KnowledgeDocument activeDoc, Long replacementDocumentId) {
+    void archiveDocumentVersion(KnowledgeDocument activeDoc, Long replacementDocumentId) {
         // La version vieja deja de estar activa y sus vectores salen del indice para que retrieval no mezcle corpus.
         List<Long> chunkIds = chunkRepo.findIdsByDocumentId(activeDoc.getId());
         if (!chunkIds.isEmpty()) {
@@ -834,7 +985,7 @@ public class RagService {
         docRepo.save(activeDoc);
     }
 
-    private List<KnowledgeChunk> persistChunks(KnowledgeDocument document, List<PreparedChunkInput> chunks) {
+    List<KnowledgeChunk> persistChunks(KnowledgeDocument document, List<PreparedChunkInput> chunks) {
         List<KnowledgeChunk> toPersist = new ArrayList<>(chunks.size());
         for (PreparedChunkInput input : chunks) {
             KnowledgeChunk chunk = new KnowledgeChunk();
@@ -845,46 +996,58 @@ public class RagService {
             chunk.setTokenCount(input.tokenCount());
             chunk.setSource(input.source());
             chunk.setTags(input.tags());
+            chunk.setSegmentOffsets(SentenceSegmenter.encode(SentenceSegmenter.segment(input.text())));
             toPersist.add(chunk);
         }
         return chunkRepo.saveAll(toPersist);
     }
 
-    private void persistVectorsAndIndex(String owner, List<KnowledgeChunk> chunks) {
+    /**
+     * `embeddings` ya viene normalizado y alineado con `chunks` (ver `RagChunkEmbeddingService`).
+     */
+    private void persistVectorsAndIndex(String owner, List<KnowledgeChunk> chunks, List<float[]> embeddings) {
+        // Primero persistimos el respaldo durable en `vectors` y solo despues reflejamos el cambio en HNSW.
+        vectorIndexService.indexBatch(persistVectors(owner, chunks, embeddings));
+    }
+
+    /**
+     * Guarda los vectores en `vectors` y devuelve los registros a indexar, sin tocar el indice.
+     */
+    List<RagVectorIndexService.IndexedVectorRecord> persistVectors(String owner,
+                                                                   List<KnowledgeChunk> chunks,
+                                                                   List<float[]> embeddings) {
         if (chunks.isEmpty()) {
-            return;
+            return List.of();
         }
-
-        // Primero persistimos el respaldo durable en `vectors` y solo despues reflejamos el cambio en HNSW.
-        List<String> texts = chunks.stream().map(KnowledgeChunk::getText).toList();
-        List<double[]> embeddings = ollama.embedMany(texts);
+        String embeddingModel = chunkEmbeddings.currentModel();
         List<KnowledgeVector> vectors = new ArrayList<>(chunks.size());
         List<RagVectorIndexService.IndexedVectorRecord> indexedVectors = new ArrayList<>(chunks.size());
 
         for (int i = 0; i < chunks.size(); i++) {
             KnowledgeChunk chunk = chunks.get(i);
-            double[] raw = i < embeddings.size() ? embeddings.get(i) : new double[0];
-            double[] normalized = VectorMath.normalize(raw);
-            if (normalized.length == 0) {
+            float[] embedding = i < embeddings.size() ? embeddings.get(i) : new float[0];
+            if (embedding.length == 0) {
                 continue;
             }
 
             KnowledgeVector vector = new KnowledgeVector();
             vector.setChunk(chunk);
-            vector.setEmbeddingJson(ollama.toJson(normalized));
-            vector.setDimension(normalized.length);
+            vector.setEmbeddingBin(EmbeddingCodec.encode(embedding));
+            vector.setDimension(embedding.length);
+            vector.setEmbeddingModel(embeddingModel.isEmpty() ? null : embeddingModel);
             vectors.add(vector);
 
             indexedVectors.add(new RagVectorIndexService.IndexedVectorRecord(
                     chunk.getId(),
                     owner,
-                    toFloatArray(normalized),
-                    Instant.now()
+                    embedding,
+                    Instant.now(),
+                    chunk.getText()
             ));
         }
 
         vectorRepo.saveAll(vectors);
-        vectorIndexService.indexBatch(indexedVectors);
+        return indexedVectors;
     }
 
     // ----------------- HELPERS -----------------
@@ -929,26 +1092,25 @@ public class RagService {
         }
 
         String body = normalizeBody(fallbackContent);
-        List<String> chunkTexts = TextChunker.chunk(body, chunkSize, overlap);
+        List<String> chunkTexts = chunker.chunk(body, documentSource);
         if (chunkTexts.isEmpty()) {
             throw new IllegalArgumentException("El contenido no genera chunks utiles.");
         }
 
         List<PreparedChunkInput> prepared = new ArrayList<>(chunkTexts.size());
         for (int i = 0; i < chunkTexts.size(); i++) {
-            String text = chunkTexts.get(i);
-            prepared.add(new PreparedChunkInput(
-                    i,
-                    text,
-                    sha256(text),
-                    estimateTokenCount(text),
-                    documentSource,
-                    documentTags
-            ));
+            prepared.add(chunkInput(i, chunkTexts.get(i), documentSource, documentTags));
         }
         return prepared;
     }
 
+    /**
+     * Chunk generado por el chunking interno (sin hash ni tokens del cliente).
+     */
+    static PreparedChunkInput chunkInput(int chunkIndex, String text, String source, String tags) {
+        return new PreparedChunkInput(chunkIndex, text, sha256(text), estimateTokenCount(text), source, tags);
+    }
+
     /**
      * La huella del documento incorpora texto y estructura de chunks.
      * Esto evita que un scraper pierda una actualizacion por tener el mismo cuerpo pero distinto particionado.
@@ -958,19 +1120,27 @@ public class RagService {
             return "";
         }
         String signature = chunks.stream()
-                .map(chunk -> chunk.chunkIndex()
-                        + "|"
-                        + fingerprint(chunk.text())
-                        + "|"
-                        + chunk.hash()
-                        + "|"
-                        + trimToEmpty(chunk.source())
-                        + "|"
-                        + trimToEmpty(chunk.tags()))
-                .collect(Collectors.joining("||"));
+                .map(RagService::fingerprintSignature)
+                .collect(Collectors.joining(FINGERPRINT_SEPARATOR));
         return sha256(signature);
     }
 
+    /**
+     * Aporte de un chunk a la huella del documento. La ingesta en streaming hashea estas mismas piezas
+     * una a una, asi que cualquier cambio aqui debe valer para ambos caminos.
+     */
+    static String fingerprintSignature(PreparedChunkInput chunk) {
+        return chunk.chunkIndex()
+                + "|"
+                + fingerprint(chunk.text())
+                + "|"
+                + chunk.hash()
+                + "|"
+                + trimToEmpty(chunk.source())
+                + "|"
+                + trimToEmpty(chunk.tags());
+    }
+
     /**
      * Reconstruye el texto logico de un documento desde su tabla append-only de chunks.
      * Este metodo es la referencia cuando mantenimiento o prompts necesiten ver el documento entero.
@@ -987,14 +1157,6 @@ public class RagService {
                 .trim();
     }
 
-    private static float[] toFloatArray(double[] vector) {
-        float[] out = new float[vector.length];
-        for (int i = 0; i < vector.length; i++) {
-            out[i] = (float) vector[i];
-        }
-        return out;
-    }
-
     private static double normalizeSemanticScore(double rawScore) {
         if (!Double.isFinite(rawScore)) {
             return 0.0;
@@ -1005,8 +1167,11 @@ public class RagService {
         return clamp01(rawScore);
     }
 
-    private static double safeCosineUnit(double[] a, double[] b) {
-        double v = VectorMath.cosineUnit(a, b);
+    private static double safeCosineUnit(float[] a, FloatBuffer b) {
+        return safeSimilarity(VectorMath.cosineUnit(a, b));
+    }
+
+    private static double safeSimilarity(double v) {
         return Double.isFinite(v) && v > -1.0 ? v : 0.0;
     }
 
@@ -1115,7 +1280,7 @@ public class RagService {
      * El fingerprint persistido del documento debe ser compacto y estable.
      * Guardamos hash del contenido normalizado para evitar desbordar la columna y para comparar versiones.
      */
-    private static String fingerprint(String text) {
+    static String fingerprint(String text) {
         String normalized = normalizeSearchText(text);
         if (normalized.isBlank()) {
             return "";
@@ -1123,6 +1288,44 @@ public class RagService {
         return sha256(normalized);
     }
 
+    /**
+     * Fragmentos de un chunk normalizados y tokenizados una sola vez. Usa los offsets guardados al ingerir;
+     * los chunks anteriores a esa columna se segmentan aqui (sin regex) y quedan cacheados igual.
+     */
+    static PromptFragments prepareFragments(RetrievedChunkDto chunk) {
+        String text = chunk.text();
+        int[] bounds = SentenceSegmenter.decode(chunk.segmentOffsets(), text.length());
+        if (bounds == null) {
+            bounds = SentenceSegmenter.segment(text);
+        }
+        List<PreparedFragment> fragments = new ArrayList<>(bounds.length / 2);
+        for (int i = 0; i + 1 < bounds.length; i += 2) {
+            String normalized = normalizeSearchText(text.substring(bounds[i], bounds[i + 1]));
+            fragments.add(new PreparedFragment(bounds[i], bounds[i + 1], normalized, tokenize(normalized)));
+        }
+        return new PromptFragments(List.copyOf(fragments));
+    }
+
+    /**
+     * Equivale a `collapseSpaces(text.substring(start, end))` sin la copia intermedia ni la regex.
+     * El rango ya viene recortado por `SentenceSegmenter`.
+     */
+    private static void appendCollapsed(StringBuilder sb, String text, int start, int end) {
+        boolean pendingSpace = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c);
+        }
+    }
+
     private static String collapseSpaces(String text) {
         if (text == null || text.isBlank()) {
             return "";
@@ -1149,34 +1352,38 @@ public class RagService {
         return Math.max(0, parts.length);
     }
 
+    /**
+     * Embedding de la query o vacio si Ollama falla: el retrieval degrada a solo BM25 en vez de abortar.
+     */
+    private float[] embedQueryOrEmpty(String query) {
+        try {
+            return getCachedEmbedding(query);
+        } catch (RuntimeException e) {
+            log.warn("RAG embedding de query no disponible, se continua solo con candidatos lexicos: {}", e.getMessage());
+            return new float[0];
+        }
+    }
+
     /**
      * Devuelve el embedding normalizado para la query dada, usando cache si esta disponible.
-     * El cache evita llamar a Ollama para la misma consulta dentro de la ventana de TTL.
+     * El cache evita llamar a Ollama para la misma consulta dentro de la ventana de TTL. El vector
+     * cacheado se comparte: nadie en el retrieval lo modifica.
      */
-    private double[] getCachedEmbedding(String query) {
+    private float[] getCachedEmbedding(String query) {
         if (query == null || query.isBlank()) {
-            return new double[0];
+            return new float[0];
         }
         String key = normalizeSearchText(query);
         if (key.isBlank()) {
             return VectorMath.normalize(ollama.embedOne(query));
         }
-        long now = System.currentTimeMillis();
-        CachedEmbedding cached = embeddingCache.get(key);
-        if (cached != null && cached.expiresAt() > now) {
-            return cached.vec();
+        float[] cached = queryEmbeddingCache.get(key);
+        if (cached != null) {
+            return cached;
         }
-        double[] fresh = VectorMath.normalize(ollama.embedOne(query));
+        float[] fresh = VectorMath.normalize(ollama.embedOne(query));
         if (fresh.length > 0) {
-            embeddingCache.put(key, new CachedEmbedding(fresh, now + EMBEDDING_CACHE_TTL_MS));
-            embeddingCacheOrder.addLast(key);
-            // Eviccion FIFO cuando se supera el maximo.
-            while (embeddingCacheOrder.size() > EMBEDDING_CACHE_MAX) {
-                String evicted = embeddingCacheOrder.pollFirst();
-                if (evicted != null) {
-                    embeddingCache.remove(evicted);
-                }
-            }
+            queryEmbeddingCache.put(key, fresh);
         }
         return fresh;
     }
@@ -1235,14 +1442,23 @@ public class RagService {
         }
     }
 
-    private record FragmentCandidate(int index, String text, double score) {
+    private record FragmentCandidate(int index, PreparedFragment fragment, double score) {
+    }
+
+    /**
+     * Fragmento `[start, end)` del texto del chunk con su forma normalizada y sus tokens para el scoring lexico.
+     */
+    record PreparedFragment(int start, int end, String normalized, Set<String> tokens) {
+    }
+
+    record PromptFragments(List<PreparedFragment> fragments) {
     }
 
     private record CandidateChunk(Long chunkId,
                                   String owner,
                                   double semanticScore,
                                   double score,
-                                  double[] embedding) {
+                                  FloatBuffer embedding) {
         private CandidateChunk withScore(double newScore) {
             return new CandidateChunk(chunkId, owner, semanticScore, newScore, embedding);
         }
@@ -1259,12 +1475,33 @@ public class RagService {
                                 String tags) {
     }
 
-    private record PreparedChunkInput(int chunkIndex,
-                                      String text,
-                                      String hash,
-                                      int tokenCount,
-                                      String source,
-                                      String tags) {
+    record PreparedChunkInput(int chunkIndex,
+                              String text,
+                              String hash,
+                              int tokenCount,
+                              String source,
+                              String tags) {
+    }
+
+    /**
+     * Metadata ya normalizada de un documento entrante.
+     */
+    record DocumentMetadata(String owner,
+                            String title,
+                            String source,
+                            String tags,
+                            String referenceUrl) {
+    }
+
+    /**
+     * Documento listo para persistir: metadata normalizada, chunks y huella de contenido.
+     */
+    record PreparedDocument(String owner,
+                            String title,
+                            String source,
+                            String referenceUrl,
+                            List<PreparedChunkInput> chunks,
+                            String fingerprint) {
     }
 
     /**
@@ -1345,9 +1582,9 @@ public class RagService {
     /**
      * Chunk recuperado junto con el texto final que entrara al prompt.
      */
-    public record ScoredChunk(KnowledgeChunk chunk, double score, String promptText) {
+    public record ScoredChunk(RetrievedChunkDto chunk, double score, String promptText) {
 
-        public ScoredChunk(KnowledgeChunk chunk, double score) {
+        public ScoredChunk(RetrievedChunkDto chunk, double score) {
             this(chunk, score, defaultPromptText(chunk));
         }
 
@@ -1363,8 +1600,8 @@ public class RagService {
             return new ScoredChunk(chunk, score, newPromptText);
         }
 
-        private static String defaultPromptText(KnowledgeChunk chunk) {
-            return chunk == null || chunk.getText() == null ? "" : chunk.getText();
+        private static String defaultPromptText(RetrievedChunkDto chunk) {
+            return chunk == null ? "" : chunk.text();
         }
     }
 }
@@ -0,0 +1,386 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingesta en streaming para documentos muy grandes (`/api/ext/rag/documents/stream`).
+ *
+ * Flujo:
+ * 1. Crea una version en staging (`RagStreamIngestWriter`) y va leyendo el cuerpo por trozos.
+ * 2. El chunker del source corta mientras lee; cada chunk suma a la huella (SHA-256 incremental) y a la ventana.
+ * 3. Cada ventana de `window-chunks` chunks se embebe (con reutilizacion por hash) y se persiste en un hilo aparte
+ *    mientras se lee la siguiente; como mucho hay una ventana en vuelo y otra llenandose.
+ * 4. Al terminar, `commit` compara la huella con la version activa: sin cambios descarta el staging, con cambios
+ *    activa la nueva version, archiva la anterior e indexa.
+ *
+ * Importante:
+ * - La memoria no depende del tamano del documento: buffer del chunker (<= max-size), dos ventanas y una linea NDJSON.
+ * - Mismos chunks y misma huella que la ingesta por JSON del mismo texto con el mismo source.
+ * - Si la lectura o una ventana fallan, se borra el staging; los staging huerfanos de un corte se purgan al arrancar.
+ */
+@Service
+public class RagStreamIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagStreamIngestService.class);
+    private static final String NAME_DOCUMENTS = "apiasistente.rag.stream.documents";
+    private static final String NAME_CHUNKS = "apiasistente.rag.stream.chunks";
+    private static final String NAME_DURATION = "apiasistente.rag.stream.duration";
+    private static final int READ_BUFFER_CHARS = 8192;
+
+    private final RagService ragService;
+    private final RagChunker chunker;
+    private final RagChunkEmbeddingService chunkEmbeddings;
+    private final RagStreamIngestWriter writer;
+    private final KnowledgeDocumentRepository docRepo;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService windowWriters = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("rag-stream-window-", 0).factory()
+    );
+    private final int windowChunks;
+    private final int maxLineChars;
+    private final Duration stagingTtl;
+
+    private final Counter createdDocuments;
+    private final Counter unchangedDocuments;
+    private final Counter failedDocuments;
+    private final Counter chunks;
+    private final Timer duration;
+
+    public RagStreamIngestService(RagService ragService,
+                                  RagChunker chunker,
+                                  RagChunkEmbeddingService chunkEmbeddings,
+                                  RagStreamIngestWriter writer,
+                                  KnowledgeDocumentRepository docRepo,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${rag.stream.window-chunks:64}") int windowChunks,
+                                  @Value("${rag.stream.max-line-chars:1000000}") int maxLineChars,
+                                  @Value("${rag.stream.staging-ttl-minutes:60}") long stagingTtlMinutes) {
+        this.ragService = ragService;
+        this.chunker = chunker;
+        this.chunkEmbeddings = chunkEmbeddings;
+        this.writer = writer;
+        this.docRepo = docRepo;
+        this.windowChunks = Math.max(1, windowChunks);
+        this.maxLineChars = Math.max(1, maxLineChars);
+        this.stagingTtl = Duration.ofMinutes(Math.max(1, stagingTtlMinutes));
+
+        this.createdDocuments = meterRegistry.counter(NAME_DOCUMENTS, "result", "created");
+        this.unchangedDocuments = meterRegistry.counter(NAME_DOCUMENTS, "result", "unchanged");
+        this.failedDocuments = meterRegistry.counter(NAME_DOCUMENTS, "result", "failed");
+        this.chunks = meterRegistry.counter(NAME_CHUNKS);
+        this.duration = Timer.builder(NAME_DURATION).register(meterRegistry);
+    }
+
+    /**
+     * Texto plano: el cuerpo entero es el contenido y la metadata llega aparte.
+     */
+    public KnowledgeDocument ingestText(String owner,
+                                       String title,
+                                       String source,
+                                       String tags,
+                                       String referenceUrl,
+                                       Reader body) {
+        RagService.DocumentMetadata metadata = ragService.normalizeMetadata(owner, title, source, tags, referenceUrl);
+        return ingest(metadata, session -> {
+            char[] buffer = new char[READ_BUFFER_CHARS];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                session.append(new String(buffer, 0, read));
+            }
+        });
+    }
+
+    /**
+     * NDJSON: la primera linea trae la metadata (`title` obligatorio; `source`, `tags`, `url` opcionales) y cada
+     * linea puede aportar un fragmento en `text`. Los fragmentos se concatenan tal cual, saltos de linea incluidos.
+     */
+    public KnowledgeDocument ingestNdjson(String owner, Reader body) {
+        LineReader lines = new LineReader(body);
+        JsonNode header = nextLine(lines);
+        if (header == null) {
+            throw new IllegalArgumentException("El stream no trae la linea de cabecera con el titulo.");
+        }
+        RagService.DocumentMetadata metadata = ragService.normalizeMetadata(
+                owner,
+                header.path("title").asText(null),
+                header.path("source").asText(null),
+                header.path("tags").asText(null),
+                header.path("url").asText(null)
+        );
+        return ingest(metadata, session -> {
+            JsonNode node = header;
+            while (node != null) {
+                String text = node.path("text").asText("");
+                if (!text.isEmpty()) {
+                    session.append(text);
+                }
+                node = nextLine(lines);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void purgeAbandonedStaging() {
+        // Solo los viejos: uno reciente puede ser una ingesta en curso de otra instancia.
+        List<KnowledgeDocument> abandoned = docRepo.findByActiveFalseAndContentFingerprintStartingWithAndCreatedAtBefore(
+                RagStreamIngestWriter.STAGING_PREFIX,
+                Instant.now().minus(stagingTtl)
+        );
+        for (KnowledgeDocument staging : abandoned) {
+            try {
+                writer.discard(staging.getId());
+            } catch (RuntimeException e) {
+                log.warn("rag_stream staging_purge_fail docId={} cause={}", staging.getId(), e.getMessage());
+            }
+        }
+        if (!abandoned.isEmpty()) {
+            log.info("rag_stream staging_purged docs={}", abandoned.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        windowWriters.shutdownNow();
+    }
+
+    private KnowledgeDocument ingest(RagService.DocumentMetadata metadata, Feed feed) {
+        long startedAt = System.nanoTime();
+        KnowledgeDocument staging = writer.createStaging(metadata);
+        Session session = new Session(metadata, staging.getId());
+        try {
+            feed.accept(session);
+            String fingerprint = session.finish();
+            if (session.chunkCount == 0) {
+                throw new IllegalArgumentException("El contenido no genera chunks utiles.");
+            }
+            RagStreamIngestWriter.Committed committed = writer.commit(staging.getId(), fingerprint, session.chunkCount);
+            (committed.created() ? createdDocuments : unchangedDocuments).increment();
+            chunks.increment(session.chunkCount);
+            log.info(
+                    "rag_stream done owner='{}' title='{}' docId={} created={} chunks={} chars={} elapsedMs={}",
+                    metadata.owner(),
+                    metadata.title(),
+                    committed.document().getId(),
+                    committed.created(),
+                    session.chunkCount,
+                    session.chars,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)
+            );
+            return committed.document();
+        } catch (IOException e) {
+            abort(session, staging.getId());
+            throw new UncheckedIOException("No se pudo leer el cuerpo del stream.", e);
+        } catch (RuntimeException e) {
+            abort(session, staging.getId());
+            throw e;
+        } finally {
+            duration.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void abort(Session session, Long stagingId) {
+        failedDocuments.increment();
+        session.awaitQuietly();
+        try {
+            writer.discard(stagingId);
+        } catch (RuntimeException discardError) {
+            // Queda huerfano hasta la purga del proximo arranque.
+            log.warn("rag_stream staging_discard_fail docId={} cause={}", stagingId, discardError.getMessage());
+        }
+    }
+
+    /**
+     * Siguiente linea NDJSON no vacia, o null al final del stream.
+     */
+    private JsonNode nextLine(LineReader lines) {
+        try {
+            String line;
+            while ((line = lines.next()) != null) {
+                if (!line.isBlank()) {
+                    return objectMapper.readTree(line);
+                }
+            }
+            return null;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Linea NDJSON invalida: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el cuerpo del stream.", e);
+        }
+    }
+
+    /**
+     * Parte el cuerpo en lineas leyendo por bloques: el `Reader` del controller no tiene buffer y un `read()` por
+     * caracter cuesta una llamada sincronizada por byte. A diferencia de `BufferedReader.readLine`, corta en
+     * `maxLineChars` sin acumular antes la linea entera.
+     */
+    private final class LineReader {
+
+        private final Reader body;
+        private final char[] buffer = new char[READ_BUFFER_CHARS];
+        private final StringBuilder line = new StringBuilder();
+        private int pos;
+        private int limit;
+
+        private LineReader(Reader body) {
+            this.body = body;
+        }
+
+        /**
+         * Siguiente linea sin el salto, o null al final del stream.
+         */
+        String next() throws IOException {
+            line.setLength(0);
+            while (true) {
+                if (pos == limit) {
+                    int read = body.read(buffer);
+                    if (read < 0) {
+                        return line.isEmpty() ? null : line.toString();
+                    }
+                    pos = 0;
+                    limit = read;
+                }
+                int start = pos;
+                while (pos < limit && buffer[pos] != '\n') {
+                    pos++;
+                }
+                if (line.length() + (pos - start) > maxLineChars) {
+                    throw new IllegalArgumentException("Linea NDJSON por encima de " + maxLineChars + " caracteres; parte el texto en mas lineas.");
+                }
+                line.append(buffer, start, pos - start);
+                if (pos < limit) {
+                    pos++;
+                    return line.toString();
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Feed {
+        void accept(Session session) throws IOException;
+    }
+
+    /**
+     * Estado de una ingesta: chunker, huella incremental y ventana en curso.
+     */
+    private final class Session {
+
+        private final RagService.DocumentMetadata metadata;
+        private final Long stagingId;
+        private final RagChunker.ChunkStream chunkStream;
+        private final MessageDigest digest;
+        private List<RagService.PreparedChunkInput> window = new ArrayList<>();
+        private Future<?> inFlight;
+        private int chunkCount;
+        private long chars;
+
+        private Session(RagService.DocumentMetadata metadata, Long stagingId) {
+            this.metadata = metadata;
+            this.stagingId = stagingId;
+            this.chunkStream = chunker.open(metadata.source(), this::acceptChunk);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 no disponible.", e);
+            }
+        }
+
+        void append(String text) {
+            chars += text.length();
+            chunkStream.append().accept(text);
+        }
+
+        /**
+         * Cierra el chunker, espera a que se persistan todas las ventanas y devuelve la huella del documento.
+         */
+        String finish() {
+            chunkStream.finish().run();
+            if (!window.isEmpty()) {
+                submitWindow();
+            }
+            await();
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        private void acceptChunk(String text) {
+            RagService.PreparedChunkInput chunk = RagService.chunkInput(chunkCount, text, metadata.source(), metadata.tags());
+            // Mismas piezas y separador que `RagService.computeDocumentFingerprint`, hasheadas sin juntarlas.
+            if (chunkCount > 0) {
+                digest.update(RagService.FINGERPRINT_SEPARATOR.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update(RagService.fingerprintSignature(chunk).getBytes(StandardCharsets.UTF_8));
+            chunkCount++;
+            window.add(chunk);
+            if (window.size() >= windowChunks) {
+                submitWindow();
+            }
+        }
+
+        private void submitWindow() {
+            // Backpressure: no se llena una tercera ventana mientras la anterior sigue en Ollama o en BD.
+            await();
+            List<RagService.PreparedChunkInput> batch = window;
+            window = new ArrayList<>(windowChunks);
+            inFlight = windowWriters.submit(() -> {
+                List<float[]> embeddings = chunkEmbeddings.embed(batch);
+                writer.appendWindow(stagingId, metadata.owner(), batch, embeddings);
+            });
+        }
+
+        private void await() {
+            if (inFlight == null) {
+                return;
+            }
+            try {
+                inFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ingesta en streaming interrumpida.", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+            } finally {
+                inFlight = null;
+            }
+        }
+
+        private void awaitQuietly() {
+            try {
+                await();
+            } catch (RuntimeException ignored) {
+                // El error original ya se propaga; aqui solo importa que la ventana no escriba tras el descarte.
+            }
+        }
+    }
+}
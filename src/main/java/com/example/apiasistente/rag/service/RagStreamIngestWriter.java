@@ -0,0 +1,160 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.KnowledgeChunk;
+import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
+import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Escrituras transaccionales de la ingesta en streaming (`RagStreamIngestService`).
+ *
+ * Importante:
+ * - Los chunks se escriben por ventanas bajo una version inactiva ("staging") con huella `STAGING_PREFIX`:
+ *   el retrieval solo hidrata documentos activos y el indice no la ve hasta `commit`.
+ * - `commit` decide con la huella completa: si coincide con la version activa se descarta el staging;
+ *   si no, se activa, se archiva la anterior y se indexa por paginas en una sola transaccion.
+ * - Al activar, los vectores del staging pasan a fecharse con el instante de activacion, el mismo con el que
+ *   se indexan. Si el proceso cae entre el commit de la BD y el del indice, el catch-up por `created_at`
+ *   los encuentra aunque sus ventanas se escribieran antes del ultimo commit del indice.
+ */
+@Service
+public class RagStreamIngestWriter {
+
+    static final String STAGING_PREFIX = "staging:";
+    private static final int INDEX_PAGE = 500;
+
+    private final RagService ragService;
+    private final KnowledgeDocumentRepository docRepo;
+    private final KnowledgeChunkRepository chunkRepo;
+    private final KnowledgeVectorRepository vectorRepo;
+    private final RagVectorIndexService vectorIndexService;
+    private final RagCorpusEpochService corpusEpochService;
+    private final RagOpsService ragOpsService;
+
+    public RagStreamIngestWriter(RagService ragService,
+                                 KnowledgeDocumentRepository docRepo,
+                                 KnowledgeChunkRepository chunkRepo,
+                                 KnowledgeVectorRepository vectorRepo,
+                                 RagVectorIndexService vectorIndexService,
+                                 RagCorpusEpochService corpusEpochService,
+                                 RagOpsService ragOpsService) {
+        this.ragService = ragService;
+        this.docRepo = docRepo;
+        this.chunkRepo = chunkRepo;
+        this.vectorRepo = vectorRepo;
+        this.vectorIndexService = vectorIndexService;
+        this.corpusEpochService = corpusEpochService;
+        this.ragOpsService = ragOpsService;
+    }
+
+    @Transactional
+    public KnowledgeDocument createStaging(RagService.DocumentMetadata metadata) {
+        KnowledgeDocument staging = new KnowledgeDocument();
+        staging.setOwner(metadata.owner());
+        staging.setTitle(metadata.title());
+        staging.setSource(metadata.source());
+        staging.setReferenceUrl(metadata.referenceUrl());
+        staging.setActive(false);
+        staging.setContentFingerprint(STAGING_PREFIX + UUID.randomUUID());
+        return docRepo.save(staging);
+    }
+
+    /**
+     * Persiste una ventana de chunks con sus embeddings ya normalizados, sin indexar.
+     */
+    @Transactional
+    public void appendWindow(Long stagingId, String owner, List<RagService.PreparedChunkInput> window, List<float[]> embeddings) {
+        KnowledgeDocument staging = docRepo.getReferenceById(stagingId);
+        List<KnowledgeChunk> chunks = ragService.persistChunks(staging, window);
+        ragService.persistVectors(owner, chunks, embeddings);
+    }
+
+    /**
+     * Cierra la ingesta: devuelve la version activa resultante y si es nueva.
+     */
+    @Transactional
+    public Committed commit(Long stagingId, String fingerprint, int chunkCount) {
+        KnowledgeDocument staging = docRepo.findById(stagingId)
+                .orElseThrow(() -> new IllegalStateException("La version en staging " + stagingId + " ya no existe."));
+        KnowledgeDocument activeDoc = docRepo.findFirstByOwnerAndTitleIgnoreCaseAndActiveTrue(staging.getOwner(), staging.getTitle())
+                .orElse(null);
+
+        if (activeDoc != null && fingerprint.equals(Objects.toString(activeDoc.getContentFingerprint(), "").trim())) {
+            // Mismo documento logico: se tira el staging y solo se refresca metadata estable.
+            // Sin bump del epoch: el staging nunca estuvo en el indice y la version activa no cambia.
+            deleteStaging(stagingId);
+            activeDoc.setSource(staging.getSource());
+            activeDoc.setReferenceUrl(staging.getReferenceUrl());
+            KnowledgeDocument saved = docRepo.save(activeDoc);
+            ragOpsService.recordIngest(saved.getOwner(), saved.getTitle(), saved.getId(), chunkCount, saved.getSource(), false, saved.getReferenceUrl());
+            return new Committed(saved, false);
+        }
+
+        Instant activatedAt = Instant.now();
+        staging.setActive(true);
+        staging.setContentFingerprint(fingerprint);
+        KnowledgeDocument saved = docRepo.save(staging);
+        if (activeDoc != null) {
+            ragService.archiveDocumentVersion(activeDoc, saved.getId());
+        }
+        vectorRepo.updateCreatedAtByDocumentId(saved.getId(), activatedAt);
+        indexDocument(saved.getId(), activatedAt);
+        corpusEpochService.bump();
+        ragOpsService.recordIngest(saved.getOwner(), saved.getTitle(), saved.getId(), chunkCount, saved.getSource(), true, saved.getReferenceUrl());
+        return new Committed(saved, true);
+    }
+
+    /**
+     * Borra una version en staging (ingesta fallida o abandonada). Nunca estuvo en el indice.
+     */
+    @Transactional
+    public void discard(Long stagingId) {
+        deleteStaging(stagingId);
+    }
+
+    private void deleteStaging(Long stagingId) {
+        vectorRepo.deleteAllByDocumentId(stagingId);
+        chunkRepo.deleteAllByDocumentId(stagingId);
+        docRepo.deleteById(stagingId);
+    }
+
+    private void indexDocument(Long documentId, Instant activatedAt) {
+        long afterChunkId = 0L;
+        while (true) {
+            List<KnowledgeVectorRepository.IndexedVectorView> page =
+                    vectorRepo.findIndexPageByDocumentId(documentId, afterChunkId, PageRequest.of(0, INDEX_PAGE));
+            if (page.isEmpty()) {
+                return;
+            }
+            List<RagVectorIndexService.IndexedVectorRecord> records = new ArrayList<>(page.size());
+            for (KnowledgeVectorRepository.IndexedVectorView view : page) {
+                records.add(new RagVectorIndexService.IndexedVectorRecord(
+                        view.getChunkId(),
+                        view.getOwner(),
+                        EmbeddingCodec.decode(view.getEmbeddingBin()),
+                        activatedAt,
+                        view.getText()
+                ));
+                afterChunkId = view.getChunkId();
+            }
+            vectorIndexService.indexBatch(records);
+        }
+    }
+
+    /**
+     * Version activa tras el commit; `created` indica si se escribio una version nueva.
+     */
+    public record Committed(KnowledgeDocument document, boolean created) {
+    }
+}
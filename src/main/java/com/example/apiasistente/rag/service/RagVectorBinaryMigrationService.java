@@ -0,0 +1,203 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.rag.util.VectorMath;
+import com.example.apiasistente.shared.ai.OllamaClient;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Migra `vectors.embedding_json` (JSON de doubles en LONGTEXT) a `vectors.embedding_bin`
+ * (float32 little-endian, ver `EmbeddingCodec`).
+ *
+ * Importante:
+ * - Corre en segundo plano por lotes de chunk_id; la ingesta y el retrieval siguen en marcha.
+ * - Es reanudable sin estado propio: solo toca filas con `embedding_bin` nulo, asi que tras un
+ *   reinicio continua donde lo dejo.
+ * - Al convertir una fila se vacia su JSON; el espacio lo recupera InnoDB al reorganizar la tabla
+ *   (`OPTIMIZE TABLE vectors`), que se deja como accion manual.
+ * - Las filas cuyo JSON no se puede parsear se dejan intactas y se cuentan como fallidas.
+ */
+@Service
+@DependsOn("entityManagerFactory")
+public class RagVectorBinaryMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagVectorBinaryMigrationService.class);
+    private static final String TABLE = "vectors";
+    private static final String JSON_COLUMN = "embedding_json";
+    private static final String BINARY_COLUMN = "embedding_bin";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OllamaClient ollamaClient;
+    private final ObjectProvider<RagOpsService> ragOpsServiceProvider;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pauseMs;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public RagVectorBinaryMigrationService(JdbcTemplate jdbcTemplate,
+                                           OllamaClient ollamaClient,
+                                           ObjectProvider<RagOpsService> ragOpsServiceProvider,
+                                           @Value("${rag.vector.binary-migration.enabled:true}") boolean enabled,
+                                           @Value("${rag.vector.binary-migration.batch-size:500}") int batchSize,
+                                           @Value("${rag.vector.binary-migration.pause-ms:50}") long pauseMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ollamaClient = ollamaClient;
+        this.ragOpsServiceProvider = ragOpsServiceProvider;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMs = Math.max(0L, pauseMs);
+    }
+
+    /**
+     * `ddl-auto=update` anade la columna binaria pero no relaja el NOT NULL historico del JSON.
+     * Se hace antes de que arranquen ingestas programadas, que ya solo escriben binario.
+     */
+    @PostConstruct
+    public void relaxJsonColumn() {
+        if (!"NO".equalsIgnoreCase(columnNullability(JSON_COLUMN))) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute("alter table " + TABLE + " modify column `" + JSON_COLUMN + "` longtext null");
+            log.info("Columna {}.{} ahora admite nulos para embeddings binarios.", TABLE, JSON_COLUMN);
+        } catch (Exception e) {
+            log.warn("No se pudo dejar nullable la columna {}.{}", TABLE, JSON_COLUMN, e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        if (!enabled || columnNullability(BINARY_COLUMN) == null || columnNullability(JSON_COLUMN) == null) {
+            return;
+        }
+        Thread.ofVirtual().name("rag-vector-binary-migration").start(this::migratePending);
+    }
+
+    /**
+     * Convierte todas las filas pendientes. Devuelve {convertidas, fallidas}.
+     */
+    public int[] migratePending() {
+        if (!running.compareAndSet(false, true)) {
+            return new int[] {0, 0};
+        }
+        long startedAt = System.nanoTime();
+        int migrated = 0;
+        int failed = 0;
+        try {
+            long bytesBefore = tableBytes();
+            long cursor = 0L;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList("""
+                        select chunk_id, embedding_json
+                        from vectors
+                        where embedding_bin is null
+                          and embedding_json is not null
+                          and chunk_id > ?
+                        order by chunk_id asc
+                        limit ?
+                        """, cursor, batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<Object[]> updates = new ArrayList<>(rows.size());
+                for (Map<String, Object> row : rows) {
+                    long chunkId = ((Number) row.get("chunk_id")).longValue();
+                    cursor = chunkId;
+                    float[] normalized = VectorMath.normalize(ollamaClient.fromJson(String.valueOf(row.get("embedding_json"))));
+                    if (normalized.length == 0) {
+                        failed++;
+                        continue;
+                    }
+                    updates.add(new Object[] {EmbeddingCodec.encode(normalized), chunkId});
+                }
+                if (!updates.isEmpty()) {
+                    // `embedding_bin is null` evita pisar una fila reescrita por la ingesta entre lectura y update.
+                    jdbcTemplate.batchUpdate(
+                            "update vectors set embedding_bin = ?, embedding_json = null where chunk_id = ? and embedding_bin is null",
+                            updates
+                    );
+                    migrated += updates.size();
+                }
+                if (pauseMs > 0) {
+                    Thread.sleep(pauseMs);
+                }
+            }
+            if (migrated > 0 || failed > 0) {
+                double seconds = Math.max(1e-9, (System.nanoTime() - startedAt) / 1_000_000_000.0);
+                log.info(
+                        "Migracion de embeddings a binario: convertidas={} fallidas={} filas/s={} bytes_tabla_antes={} bytes_tabla_despues={}",
+                        migrated,
+                        failed,
+                        String.format(Locale.US, "%.1f", migrated / seconds),
+                        bytesBefore,
+                        tableBytes()
+                );
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            RagOpsService ops = ragOpsServiceProvider.getIfAvailable();
+            if (ops != null) {
+                ops.recordFailure("rag-vector-binary-migration",
+                        "Migracion de embeddings a binario interrumpida tras " + migrated + " filas; se reanuda al reiniciar.", e);
+            } else {
+                log.warn("Migracion de embeddings a binario interrumpida tras {} filas", migrated, e);
+            }
+        } finally {
+            running.set(false);
+        }
+        return new int[] {migrated, failed};
+    }
+
+    /**
+     * `is_nullable` de la columna en `vectors`, o null si la tabla o la columna no existen.
+     */
+    private String columnNullability(String columnName) {
+        try {
+            List<String> values = jdbcTemplate.queryForList("""
+                    select is_nullable
+                    from information_schema.columns
+                    where table_schema = database()
+                      and lower(table_name) = lower(?)
+                      and lower(column_name) = lower(?)
+                    """, String.class, TABLE, columnName);
+            return values.isEmpty() ? null : values.get(0);
+        } catch (Exception e) {
+            log.debug("No se pudo verificar la columna {}.{}", TABLE, columnName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Datos + indices de `vectors` segun information_schema (estimacion de InnoDB).
+     */
+    private long tableBytes() {
+        try {
+            Long bytes = jdbcTemplate.queryForObject("""
+                    select coalesce(data_length, 0) + coalesce(index_length, 0)
+                    from information_schema.tables
+                    where table_schema = database()
+                      and lower(table_name) = lower(?)
+                    """, Long.class, TABLE);
+            return bytes == null ? -1L : bytes;
+        } catch (Exception e) {
+            log.debug("No se pudo medir el tamano de {}", TABLE, e);
+            return -1L;
+        }
+    }
+}
@@ -1,46 +1,108 @@
 package com.example.apiasistente.rag.service;
 
+import com.example.apiasistente.rag.config.RagVectorHnswProperties;
+import com.example.apiasistente.rag.config.RagVectorIndexProperties;
+import com.example.apiasistente.rag.entity.VectorTombstone;
 import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
+import com.example.apiasistente.rag.repository.VectorTombstoneRepository;
+import com.example.apiasistente.rag.util.EmbeddingCodec;
 import com.example.apiasistente.rag.util.VectorMath;
 import com.example.apiasistente.shared.ai.OllamaClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.es.SpanishAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.index.VectorSimilarityFunction;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Constants;
+import org.apache.lucene.util.QueryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectProvider;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 
 /**
  * Capa de indice vectorial HNSW.
@@ -49,147 +111,437 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * - El indice se mantiene fuera de MySQL para que retrieval no tenga que escanear embeddings fila a fila.
  * - El respaldo durable sigue en la tabla `vectors`, que permite reconstruir el indice al arrancar.
  * - El mapping minimo del indice es `chunk_id -> owner -> embedding`.
+ * - Las busquedas usan un `SearcherManager` near-real-time sobre el `IndexWriter`: el reader se comparte
+ *   por conteo de referencias y solo se reabre tras escrituras o en el tick de refresco, nunca por query.
+ * - En modo group-commit las escrituras son visibles al instante via NRT, pero el commit durable (fsync)
+ *   se agrupa por intervalo o por volumen pendiente. Lo no commiteado en un crash se recupera desde
+ *   `vectors`, que siempre se persiste antes de tocar el indice.
+ * - Cada commit guarda un watermark en el user-data de Lucene (instante, ultimo chunk_id, epoch del indice).
+ *   Al arrancar solo se aplican los vectores y borrados (`vector_tombstones`) posteriores a ese watermark;
+ *   el rebuild completo queda como accion explicita de operaciones o fallback si el indice no es fiable.
+ * - El rebuild completo nunca vacia el indice vivo: construye una generacion sombra en otro directorio
+ *   (lectura de BD, decodificacion e indexado en paralelo), la compacta y la intercambia atomicamente
+ *   por la activa. Las escrituras que llegan mientras tanto se aplican a ambas generaciones.
+ * - `rag.vector.codec.mode` elige float32 o cuantizacion escalar int8/int4 para el grafo; en modo
+ *   cuantizado los mejores candidatos se re-puntuan con los float32 originales (`rag.vector.codec.rescore`).
+ * - Cada documento lleva tambien el texto del chunk analizado en espanol e ingles, para que retrieval
+ *   pueda lanzar una query BM25 (`searchText`) junto a la kNN y fusionar ambas listas. Indexarlo dos
+ *   veces duplica postings y tiempo de analisis por chunk; a cambio no hay que detectar el idioma de
+ *   cada chunk ni de cada query, y un chunk mezclado (texto en espanol con codigo o logs en ingles) casa
+ *   con las dos raices.
+ * - La query kNN recorre los segmentos en paralelo sobre un pool acotado (`rag.vector.search.threads`).
+ *   Con `rag.vector.search.shard-by-owner` cada owner se busca como un shard logico propio y los top-k
+ *   se fusionan por score. Son kNN filtradas sobre este mismo indice, no un indice por owner: la ingesta
+ *   de un owner grande sigue compartiendo segmentos, merges y refresh con el resto.
+ * - Una copia de los embeddings vive en un fichero mapeado fuera del heap (`MappedVectorStore`,
+ *   `rag.vector.store.dir`) que se mantiene con cada escritura. Mientras esta listo, los hits no copian
+ *   floats y retrieval lee los vectores de rerank como vistas `FloatBuffer` (`vectorView`).
+ *   En Windows no se abre: vaciar o compactar el store borra o reemplaza un fichero aun mapeado.
  */
 @Service
 public class RagVectorIndexService {
 
     private static final Logger log = LoggerFactory.getLogger(RagVectorIndexService.class);
     private static final String CHUNK_ID_FIELD = "chunk_id";
+    // Solo en el esquema 1 (stored fields); el esquema 2 resuelve hits por doc values.
     private static final String CHUNK_ID_STORED_FIELD = "chunk_id_stored";
     private static final String OWNER_FIELD = "owner";
     private static final String CREATED_AT_FIELD = "created_at";
     private static final String VECTOR_FIELD = "embedding";
+    // Texto del chunk indexado (sin guardar) con stemming en cada idioma del corpus; ver el coste en la cabecera.
+    private static final String TEXT_ES_FIELD = "text_es";
+    private static final String TEXT_EN_FIELD = "text_en";
     private static final int REBUILD_PAGE_SIZE = 500;
+    // Esquema de documento: 1 = chunk_id/owner/created_at en stored fields; 2 = doc values sin stored fields;
+    // 3 = ademas texto del chunk para BM25.
+    private static final int LEGACY_SCHEMA_VERSION = 1;
+    private static final int DOC_VALUES_SCHEMA_VERSION = 2;
+    private static final int SCHEMA_VERSION = 3;
+    private static final String KEY_SCHEMA_VERSION = "rag.index.schema_version";
+    private static final String NAME_REFRESH_LAG = "apiasistente.rag.index.searcher.refresh.lag";
+    private static final String NAME_PENDING_LAG_GAUGE = "apiasistente.rag.index.searcher.pending.lag.ms";
+    private static final String NAME_COMMIT = "apiasistente.rag.index.commit";
+    private static final String NAME_PENDING_COMMIT_BYTES_GAUGE = "apiasistente.rag.index.commit.pending.bytes";
+    private static final String NAME_SEGMENTS_GAUGE = "apiasistente.rag.index.segments";
+    private static final String NAME_GRAPH_BYTES_GAUGE = "apiasistente.rag.index.graph.bytes";
+    private static final String NAME_OPTIMIZE = "apiasistente.rag.index.optimize";
+    private static final String NAME_STORE_BYTES_GAUGE = "apiasistente.rag.vector.store.bytes";
+    // Huecos minimos antes de compactar el store; por debajo no compensa reescribir el fichero.
+    private static final int STORE_COMPACT_MIN_DEAD = 4096;
+    // Extension de los ficheros del grafo HNSW (Lucene99HnswVectorsFormat).
+    private static final String GRAPH_FILE_EXTENSION = ".vex";
+    // Coste aproximado por documento/borrado ademas del vector, para el umbral de bytes pendientes.
+    private static final long DOC_OVERHEAD_BYTES = 64L;
+    private static final long DELETE_BYTES = 16L;
+    // Hit sin vector en el indice; capacidad 0, asi que compartirlo no expone nada mutable.
+    private static final FloatBuffer EMPTY_EMBEDDING = FloatBuffer.allocate(0);
+    private static final String STARTUP_MODE_REBUILD = "rebuild";
+    // Fichero en la raiz del indice con el nombre de la generacion activa; sin el, la raiz es la generacion.
+    private static final String ACTIVE_GENERATION_FILE = "active-generation";
+    private static final String GENERATION_PREFIX = "gen-";
+    // Marca de fin de cola para los hilos indexadores del rebuild (se compara por identidad).
+    private static final List<KnowledgeVectorRepository.IndexedVectorView> END_OF_PAGES = new ArrayList<>();
+    private static final long QUEUE_POLL_MS = 200L;
 
     private final KnowledgeVectorRepository vectorRepo;
+    private final VectorTombstoneRepository tombstoneRepo;
     private final OllamaClient ollamaClient;
-    private final Directory directory;
-    private final IndexWriter writer;
-    private final Path indexPath;
+    private final Path indexRoot;
     private final boolean rebuildOnStartup;
+    private final String startupMode;
+    private final Duration catchUpOverlap;
     private final ObjectProvider<RagOpsService> ragOpsServiceProvider;
-    // ReadWriteLock: multiples busquedas concurrentes (readLock), escrituras exclusivas (writeLock).
-    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final Timer refreshLagTimer;
+    private final Timer commitTimer;
+    private final boolean groupCommit;
+    private final long commitMaxPendingBytes;
+    private final int rebuildFetchThreads;
+    private final int rebuildIndexThreads;
+    private final RagVectorStorageMode storageMode;
+    private final RagVectorHnswProperties hnswProperties;
+    private final boolean mmapDirectory;
+    private final Timer optimizeTimer;
+    // Pool acotado para recorrer segmentos en paralelo dentro de una query; null = busqueda secuencial.
+    private final ExecutorService searchExecutor;
+    // Hilos de plataforma: el kNN es CPU puro, se acota a los nucleos en vez de usar hilos virtuales.
+    private final int searchThreads;
+    private final boolean shardByOwner;
+    // Hilos virtuales para los shards de owner, compartido por todas las busquedas; null sin shard-by-owner.
+    private final ExecutorService shardExecutor;
+    // Analyzer compartido por writers y queries: keyword para ids/owner, espanol/ingles para el texto.
+    private final Analyzer analyzer = newAnalyzer();
+    // Instante (nanoTime) de la ultima busqueda: aproxima el trafico de chat para el compactado en valle.
+    private final AtomicLong lastSearchNanos = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean optimizing = new AtomicBoolean();
+    // Null si `rag.vector.store.dir` esta vacio, en Windows o si el fichero no se pudo abrir.
+    private final MappedVectorStore vectorStore;
+    private final AtomicBoolean compactingStore = new AtomicBoolean();
+    // Borrados vistos mientras se repuebla el store desde el indice: no deben resucitar.
+    private final Set<Long> deletedWhileLoadingStore = ConcurrentHashMap.newKeySet();
+    private volatile boolean loadingStore;
+    // Un solo repoblado a la vez: el arranque y el final de un rebuild pueden pedirlo a la vez.
+    private final ReentrantLock storeLoadLock = new ReentrantLock();
+    // Factor de sobre-pedido para re-puntuar en float32 con modos cuantizados; 0 = sin re-puntuar.
+    private final int rescoreOversample;
+    // Las busquedas no toman lock: SearcherManager entrega readers con conteo de referencias.
+    // Este lock solo serializa escritores (ingesta, borrado, rebuild, reset) entre si.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Instante (nanoTime) de la escritura mas antigua aun no visible para las busquedas; 0 si no hay pendientes.
+    private final AtomicLong oldestPendingWriteNanos = new AtomicLong();
+    // Escritura pendiente que esta cubriendo el refresco en curso (capturada en beforeRefresh).
+    private final AtomicLong refreshingWriteNanos = new AtomicLong();
+    // Bytes aproximados aplicados al writer desde el ultimo commit durable.
+    private final AtomicLong pendingCommitBytes = new AtomicLong();
+    // Serializa commits (tick, umbral, rebuild, shutdown) para que el watermark avance en orden.
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // Mayor chunk_id aplicado al writer; viaja en el watermark como referencia operativa.
+    private final AtomicLong maxIndexedChunkId = new AtomicLong();
+    // Identidad del contenido del indice: cambia cuando se vacia (rebuild completo o reset).
+    private volatile String indexEpoch;
+    // Ultimo watermark durable conocido (leido al abrir o escrito por el ultimo commit).
+    private volatile IndexWatermark committedWatermark;
+    // Generacion que sirve busquedas y recibe escrituras; solo se sustituye bajo writeLock.
+    private volatile IndexGeneration active;
+    // Generacion sombra de un rebuild en curso; mientras exista, toda escritura se aplica tambien a ella.
+    private volatile ShadowBuild shadow;
+    private final AtomicBoolean rebuildRunning = new AtomicBoolean();
+    private final AtomicReference<RebuildProgress> rebuildProgress = new AtomicReference<>(RebuildProgress.idle());
 
     public RagVectorIndexService(KnowledgeVectorRepository vectorRepo,
+                                 VectorTombstoneRepository tombstoneRepo,
                                  OllamaClient ollamaClient,
                                  ObjectProvider<RagOpsService> ragOpsServiceProvider,
-                                 @Value("${rag.vector.index-dir:data/rag-hnsw}") String indexDir,
-                                 @Value("${rag.vector.rebuild-on-startup:true}") boolean rebuildOnStartup) throws IOException {
+                                 MeterRegistry meterRegistry,
+                                 RagVectorHnswProperties hnswProperties,
+                                 RagVectorIndexProperties properties) throws IOException {
         this.vectorRepo = vectorRepo;
+        this.tombstoneRepo = tombstoneRepo;
         this.ollamaClient = ollamaClient;
         this.ragOpsServiceProvider = ragOpsServiceProvider;
-        this.rebuildOnStartup = rebuildOnStartup;
+        this.rebuildOnStartup = properties.rebuildOnStartup();
+        this.startupMode = properties.startupMode() == null ? "" : properties.startupMode().trim();
+        this.catchUpOverlap = Duration.ofMillis(Math.max(0L, properties.catchUpOverlapMs()));
+        String commitMode = properties.commit().mode();
+        this.groupCommit = !"immediate".equalsIgnoreCase(commitMode == null ? "" : commitMode.trim());
+        this.commitMaxPendingBytes = Math.max(1L, properties.commit().maxPendingBytes());
+        this.rebuildFetchThreads = Math.max(1, properties.rebuild().fetchThreads());
+        // 0 = automatico: la mitad de los nucleos, dejando margen a las busquedas durante el rebuild.
+        this.rebuildIndexThreads = properties.rebuild().indexThreads() > 0
+                ? properties.rebuild().indexThreads()
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.storageMode = RagVectorStorageMode.parse(properties.codec().mode());
+        this.hnswProperties = hnswProperties;
+        this.mmapDirectory = useMmapDirectory(properties.directory(), Constants.WINDOWS);
+        this.rescoreOversample = storageMode.quantized() && properties.codec().rescore()
+                ? Math.max(1, properties.codec().rescoreOversample())
+                : 0;
+        // 0 = un hilo por nucleo; 1 = busqueda secuencial en el hilo llamante, sin pool.
+        int searchThreads = properties.search().threads();
+        this.searchThreads = searchThreads > 0 ? searchThreads : Runtime.getRuntime().availableProcessors();
+        this.searchExecutor = this.searchThreads > 1
+                ? Executors.newFixedThreadPool(this.searchThreads, Thread.ofPlatform().name("rag-knn-", 0).daemon(true).factory())
+                : null;
+        this.shardByOwner = properties.search().shardByOwner();
+        this.shardExecutor = shardByOwner ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        String vectorStoreDir = properties.store().dir();
+        this.vectorStore = useVectorStore(vectorStoreDir, Constants.WINDOWS) ? openVectorStore(vectorStoreDir) : null;
+        if (groupCommit && !rebuildOnStartup) {
+            log.warn("RAG HNSW en modo group-commit sin rebuild-on-startup: tras un crash el indice puede "
+                    + "perder escrituras recientes hasta un rebuild manual desde `vectors`.");
+        }
 
-        Path dir = Path.of(indexDir).toAbsolutePath().normalize();
-        Files.createDirectories(dir);
-        this.indexPath = dir;
-        // NIOFSDirectory en lugar de MMapDirectory/FSDirectory para evitar el crash 0xC0000005 en Windows.
-        // MMapDirectory mantiene handles de memoria mapeada que el JVM libera en shutdown y puede causar
-        // EXCEPTION_ACCESS_VIOLATION cuando los ficheros fueron eliminados o el proceso fue terminado bruscamente.
-        this.directory = openDirectory(dir);
-        this.writer = openIndexWriter(directory);
+        Path root = Path.of(properties.indexDir()).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        this.indexRoot = root;
+        Path activePath = resolveActiveGeneration(root);
+        Directory directory = openDirectory(activePath);
+        IndexWriter writer = openIndexWriter(directory);
+        this.committedWatermark = readCommittedWatermark(directory);
+        this.indexEpoch = committedWatermark == null ? newEpoch() : committedWatermark.indexEpoch();
+        this.maxIndexedChunkId.set(committedWatermark == null ? 0L : committedWatermark.lastChunkId());
+        this.active = new IndexGeneration(activePath, directory, writer, newSearcherManager(writer), readSchemaVersion(directory));
+        deleteStaleGenerations(activePath);
+        log.info("RAG HNSW abierto en {} directorio={} codec={} rescoreOversample={} m={} beamWidth={} mergeFactor={} "
+                        + "searchThreads={} shardByOwner={} vectorMath={}",
+                activePath, directory.getClass().getSimpleName(), storageMode, rescoreOversample,
+                hnswProperties.getM(), hnswProperties.getBeamWidth(), hnswProperties.getMergeFactor(),
+                this.searchThreads, shardByOwner, VectorMath.implementation());
+        this.refreshLagTimer = Timer.builder(NAME_REFRESH_LAG)
+                .description("Tiempo entre una escritura en el indice HNSW y su visibilidad para las busquedas")
+                .register(meterRegistry);
+        Gauge.builder(NAME_PENDING_LAG_GAUGE, this, RagVectorIndexService::pendingRefreshLagMillis)
+                .description("Antiguedad de la escritura mas vieja aun no visible para las busquedas")
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder(NAME_COMMIT)
+                .description("Duracion de los commits durables del indice HNSW")
+                .register(meterRegistry);
+        Gauge.builder(NAME_PENDING_COMMIT_BYTES_GAUGE, pendingCommitBytes, AtomicLong::get)
+                .description("Bytes aproximados aplicados al indice HNSW pendientes de commit durable")
+                .register(meterRegistry);
+        Gauge.builder(NAME_SEGMENTS_GAUGE, this, RagVectorIndexService::segmentCount)
+                .description("Segmentos Lucene visibles para las busquedas; cada uno recorre su propio grafo HNSW")
+                .register(meterRegistry);
+        Gauge.builder(NAME_GRAPH_BYTES_GAUGE, this, RagVectorIndexService::graphBytes)
+                .description("Bytes en disco de los grafos HNSW de la generacion activa")
+                .register(meterRegistry);
+        this.optimizeTimer = Timer.builder(NAME_OPTIMIZE)
+                .description("Duracion del compactado de segmentos del indice HNSW en horas valle")
+                .register(meterRegistry);
+        Gauge.builder(NAME_STORE_BYTES_GAUGE, this, service -> service.vectorStore == null ? 0.0 : service.vectorStore.fileBytes())
+                .description("Bytes del fichero mapeado de embeddings (fuera del heap)")
+                .register(meterRegistry);
     }
 
     /**
-     * El arranque lanza el rebuild en un hilo daemon para no bloquear el arranque ni las primeras
-     * peticiones. El indice queda vacio/parcial hasta que el rebuild termina: las busquedas devuelven
-     * resultados vacios (noRag) en ese intervalo, lo cual es preferible a bloquear indefinidamente.
+     * El arranque sincroniza el indice con `vectors` en un hilo virtual para no bloquear peticiones.
+     * Por defecto es un catch-up incremental: el indice commiteado ya sirve busquedas desde el primer
+     * momento y solo se aplica lo escrito tras su watermark. `rag.vector.startup-mode=rebuild` fuerza
+     * la reconstruccion completa de antes.
      */
     @EventListener(ApplicationReadyEvent.class)
-    public void rebuildOnStartup() {
+    public void syncOnStartup() {
+        if (active.schemaVersion() < SCHEMA_VERSION) {
+            // Lucene no admite anadir doc values a campos existentes y los documentos viejos no tienen texto:
+            // la migracion es un rebuild con sombra. Mientras tanto la generacion antigua sigue sirviendo.
+            log.info("RAG HNSW con esquema {} (< {}); se migra reindexando en una generacion nueva.",
+                    active.schemaVersion(), SCHEMA_VERSION);
+            Executors.newVirtualThreadPerTaskExecutor().execute(() -> rebuildFromDatabase("schema-migration"));
+            return;
+        }
         if (!rebuildOnStartup) {
+            Executors.newVirtualThreadPerTaskExecutor().execute(this::loadVectorStoreIfNeeded);
             return;
         }
-        Executors.newVirtualThreadPerTaskExecutor().execute(() -> rebuildFromDatabase("startup"));
-    }
-
-    public void rebuildFromDatabase() {
-        rebuildFromDatabase("system");
+        if (STARTUP_MODE_REBUILD.equalsIgnoreCase(startupMode)) {
+            Executors.newVirtualThreadPerTaskExecutor().execute(() -> rebuildFromDatabase("startup"));
+            return;
+        }
+        Executors.newVirtualThreadPerTaskExecutor().execute(() -> {
+            catchUpFromDatabase("startup");
+            loadVectorStoreIfNeeded();
+        });
     }
 
     /**
-     * Recorre `vectors` como fuente durable y recompone el HNSW completo.
-     * Se expone con trigger explicito para poder auditar si fue un arranque o una accion manual.
-     *
-     * Diseño de locking: el writeLock NO se sostiene durante el fetch de paginas de BD porque
-     * con corpus grandes (>100k vectores) el rebuild tarda minutos y bloquea todas las busquedas.
-     * En cambio: se borra todo en un unico lock, luego se indexa batch a batch (lock por batch),
-     * lo que permite que las busquedas vean datos parciales/vacios durante el rebuild en lugar de
-     * bloquearse indefinidamente.
+     * Repuebla el store mapeado desde la generacion activa cuando el ultimo cierre no fue limpio
+     * (o el fichero es nuevo). Se lee el indice y no `vectors`: ya trae los float32 decodificados y
+     * refleja los borrados aplicados. Las escrituras vivas siguen entrando al store mientras tanto;
+     * `putIfAbsent` y los borrados anotados evitan pisarlas o resucitar chunks borrados.
      */
-    public void rebuildFromDatabase(String trigger) {
-        // Paso 1: borrar el indice viejo bajo lock (operacion rapida).
-        indexLock.writeLock().lock();
-        try {
-            writer.deleteAll();
-            writer.commit();
-        } catch (Exception e) {
-            log.warn("No se pudo limpiar el indice HNSW del RAG antes de rebuild", e);
-            ragOps().ifPresent(ops -> ops.recordFailure("rag-index-rebuild", "No se pudo limpiar el indice HNSW.", e));
+    void loadVectorStoreIfNeeded() {
+        if (vectorStore == null || vectorStore.ready()) {
             return;
+        }
+        storeLoadLock.lock();
+        try {
+            // Quien esperaba el lock lo encuentra ya repoblado por el otro hilo.
+            if (!vectorStore.ready()) {
+                loadVectorStore();
+            }
         } finally {
-            indexLock.writeLock().unlock();
+            storeLoadLock.unlock();
         }
+    }
 
-        // Paso 2: paginar BD por cursor (chunk_id) y escribir en Lucene batch a batch.
-        // Paginacion por cursor evita el coste O(offset) de OFFSET en corpus grandes (>100k vectores).
-        // El fetch de BD ocurre SIN lock para no bloquear busquedas durante el rebuild.
-        Long afterChunkId = null;
-        int pages = 0;
-        int indexedVectors = 0;
+    private void loadVectorStore() {
+        long start = System.nanoTime();
+        deletedWhileLoadingStore.clear();
+        loadingStore = true;
+        LeasedSearcher lease = null;
         try {
-            while (true) {
-                var rows = vectorRepo.findActiveIndexPageCursor(
-                        afterChunkId,
-                        PageRequest.of(0, REBUILD_PAGE_SIZE)
-                );
-                if (rows.isEmpty()) {
-                    break;
+            lease = acquireSearcher();
+            if (lease.schemaVersion() < DOC_VALUES_SCHEMA_VERSION) {
+                return;
+            }
+            long loaded = 0L;
+            for (LeafReaderContext leaf : lease.searcher().getIndexReader().leaves()) {
+                FloatVectorValues values = leaf.reader().getFloatVectorValues(VECTOR_FIELD);
+                if (values == null) {
+                    continue;
                 }
-
-                List<IndexedVectorRecord> batch = new ArrayList<>(rows.size());
-                for (var view : rows) {
-                    double[] normalized = VectorMath.normalize(ollamaClient.fromJson(view.getEmbeddingJson()));
-                    if (normalized.length == 0) {
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                NumericDocValues chunkIds = DocValues.getNumeric(leaf.reader(), CHUNK_ID_FIELD);
+                for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                    if ((liveDocs != null && !liveDocs.get(doc)) || !chunkIds.advanceExact(doc)) {
                         continue;
                     }
-                    batch.add(new IndexedVectorRecord(
-                            view.getChunkId(),
-                            view.getOwner(),
-                            toFloatArray(normalized),
-                            Instant.now()
-                    ));
+                    long chunkId = chunkIds.longValue();
+                    if (!deletedWhileLoadingStore.contains(chunkId)) {
+                        vectorStore.putIfAbsent(chunkId, values.vectorValue());
+                        loaded++;
+                    }
                 }
+            }
+            vectorStore.markReady();
+            log.info("Store mapeado de embeddings repoblado desde el indice vectores={} en {}ms",
+                    loaded, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            ragOps().ifPresent(ops -> ops.recordFailure("rag-vector-store-load", "No se pudo repoblar el store mapeado de embeddings.", e));
+        } finally {
+            loadingStore = false;
+            deletedWhileLoadingStore.clear();
+            if (lease != null) {
+                releaseSearcher(lease);
+            }
+        }
+    }
 
-                afterChunkId = rows.get(rows.size() - 1).getChunkId();
+    /**
+     * Aplica al indice solo los cambios de `vectors` posteriores al watermark commiteado.
+     *
+     * Ventana: se relee desde `watermark - overlap` porque un vector puede crearse antes del commit y
+     * llegar al writer despues (transaccion en curso). Reaplicar es idempotente (`updateDocument` por chunk_id).
+     * Si no hay watermark o el recuento final no cuadra con la BD, cae al rebuild completo.
+     * El recuento se acota al mayor chunk_id leido al empezar: la ingesta viva puede seguir escribiendo
+     * durante el catch-up y esas filas nuevas no deben forzar un rebuild.
+     */
+    public void catchUpFromDatabase(String trigger) {
+        IndexWatermark watermark = committedWatermark;
+        if (watermark == null) {
+            log.info("RAG HNSW sin watermark commiteado; se reconstruye completo desde vectors.");
+            rebuildFromDatabase(trigger);
+            return;
+        }
 
-                if (!batch.isEmpty()) {
-                    indexLock.writeLock().lock();
-                    try {
-                        indexBatchInternal(batch);
-                        writer.commit();
-                    } finally {
-                        indexLock.writeLock().unlock();
-                    }
-                }
+        Instant since = watermark.committedAt().minus(catchUpOverlap);
+        try {
+            long snapshotChunkId = Objects.requireNonNullElse(vectorRepo.findMaxChunkId(), 0L);
+            int[] applied = applyDatabaseChangesSince(since);
+            commitNow();
 
-                indexedVectors += batch.size();
-                pages++;
-                if (rows.size() < REBUILD_PAGE_SIZE) {
-                    break;
-                }
+            long indexedDocs = indexedDocCountUpTo(snapshotChunkId);
+            long activeVectors = vectorRepo.countActiveUpTo(snapshotChunkId);
+            if (indexedDocs != activeVectors) {
+                log.warn("RAG HNSW catch-up descuadrado hastaChunk={} indexados={} activos={}; se reconstruye completo.",
+                        snapshotChunkId, indexedDocs, activeVectors);
+                rebuildFromDatabase(trigger + "-fallback");
+                return;
+            }
+
+            tombstoneRepo.deleteOlderThan(since);
+            log.info("RAG HNSW catch-up completado desde={} upserts={} deletes={}", since, applied[0], applied[1]);
+            ragOps().ifPresent(ops -> ops.recordIndexCatchUp(trigger, applied[0], applied[1]));
+        } catch (Exception e) {
+            log.warn("No se pudo aplicar el catch-up incremental del indice HNSW; se reconstruye completo", e);
+            ragOps().ifPresent(ops -> ops.recordFailure("rag-index-catch-up", "Fallo el catch-up incremental del indice HNSW.", e));
+            rebuildFromDatabase(trigger + "-fallback");
+        }
+    }
+
+    public void rebuildFromDatabase() {
+        rebuildFromDatabase("system");
+    }
+
+    /**
+     * Recorre `vectors` como fuente durable y recompone el HNSW completo en una generacion sombra.
+     * Se expone con trigger explicito para poder auditar si fue un arranque o una accion manual.
+     *
+     * Las busquedas siguen servidas por la generacion activa hasta el intercambio final, asi que nunca
+     * ven un indice vacio o a medias. Fases:
+     * 1. Se registra la sombra bajo writeLock: desde ahi cada escritura viva se aplica tambien a ella.
+     * 2. Varios lectores paginan `vectors` por tramos de chunk_id y varios indexadores decodifican e
+     *    indexan en paralelo sobre el writer sombra (IndexWriter admite escritores concurrentes).
+     * 3. Se compacta a `optimize-max-segments` segmentos (`forceMerge`) fuera del lock.
+     * 4. Bajo writeLock se reaplican los borrados vistos durante el rebuild y se intercambia la generacion.
+     * 5. Se reaplica la ventana de cambios desde el inicio del rebuild para cubrir transacciones en vuelo.
+     * Si algo falla, la generacion activa queda intacta y la sombra se descarta.
+     */
+    public void rebuildFromDatabase(String trigger) {
+        if (!rebuildRunning.compareAndSet(false, true)) {
+            log.info("RAG HNSW rebuild trigger={} ignorado: ya hay otro rebuild en curso.", trigger);
+            return;
+        }
+        Instant startedAt = Instant.now();
+        ShadowBuild build = null;
+        try {
+            build = openShadowBuild();
+            rebuildProgress.set(RebuildProgress.started(trigger, startedAt, vectorRepo.countActive()));
+            writeLock.lock();
+            try {
+                shadow = build;
+            } finally {
+                writeLock.unlock();
+            }
+
+            long indexedVectors = fillShadow(build);
+            updateProgress(progress -> progress.withPhase("merging"));
+            build.writer().forceMerge(Math.max(1, hnswProperties.getOptimizeMaxSegments()));
+
+            writeLock.lock();
+            try {
+                build.throwIfCancelled();
+                updateProgress(progress -> progress.withPhase("swapping"));
+                deleteInternal(build.writer(), build.drainDeletedChunkIds());
+                swapTo(build);
+            } finally {
+                writeLock.unlock();
             }
 
-            log.info("RAG HNSW rebuild completado pages={} vectors={}", pages, indexedVectors);
-            int finalIndexedVectors = indexedVectors;
-            ragOps().ifPresent(ops -> ops.recordIndexRebuild(trigger, finalIndexedVectors));
+            applyDatabaseChangesSince(startedAt.minus(catchUpOverlap));
+            commitNow();
+            updateProgress(progress -> progress.finished("done", indexedVectors));
+            log.info("RAG HNSW rebuild completado vectors={} generacion={}", indexedVectors, active.path());
+            ragOps().ifPresent(ops -> ops.recordIndexRebuild(trigger, (int) indexedVectors));
+            // Un store recien creado o invalidado (cambio de dimension) se repuebla desde la generacion nueva.
+            loadVectorStoreIfNeeded();
         } catch (Exception e) {
+            String phase = build != null && build.isCancelled() && !build.failed() ? "cancelled" : "failed";
+            updateProgress(progress -> progress.finished(phase, progress.indexedVectors()));
+            discardShadow(build);
             log.warn("No se pudo reconstruir el indice HNSW del RAG", e);
             ragOps().ifPresent(ops -> ops.recordFailure("rag-index-rebuild", "No se pudo reconstruir el indice HNSW.", e));
+        } finally {
+            rebuildRunning.set(false);
         }
     }
 
+    /**
+     * Progreso del ultimo rebuild (o del que esta en curso) para la consola de operaciones.
+     */
+    public RebuildProgress rebuildProgress() {
+        return rebuildProgress.get();
+    }
+
     /**
      * Inserta o actualiza vectores de chunks activos.
      * Siempre se borra primero por `chunk_id` para mantener idempotencia simple.
@@ -198,221 +550,1563 @@ public class RagVectorIndexService {
         if (vectors == null || vectors.isEmpty()) {
             return;
         }
-        indexLock.writeLock().lock();
+        writeLock.lock();
         try {
-            indexBatchInternal(vectors);
-            writer.commit();
+            // Primero el store: cuando el refresh NRT hace visible el documento, su vista ya existe.
+            storeVectors(vectors);
+            afterWrite(indexBatchInternal(active.writer(), active.schemaVersion(), vectors));
+            applyToShadow(build -> indexBatchInternal(build.writer(), SCHEMA_VERSION, vectors));
             ragOps().ifPresent(ops -> ops.recordIndexWrite(vectors.size()));
         } catch (IOException e) {
             ragOps().ifPresent(ops -> ops.recordFailure("rag-index-write", "No se pudieron indexar vectores RAG.", e));
             throw new IllegalStateException("No se pudieron indexar vectores RAG.", e);
         } finally {
-            indexLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
+    /**
+     * Borra vectores del indice y deja marca durable en `vector_tombstones`.
+     * Se invoca dentro de la transaccion que borra las filas de `vectors`, asi la marca y el borrado
+     * viajan juntos y el catch-up de arranque puede reaplicarlo si el commit del indice no llego a disco.
+     */
     public void deleteChunkIds(Collection<Long> chunkIds) {
         if (chunkIds == null || chunkIds.isEmpty()) {
             return;
         }
-        indexLock.writeLock().lock();
+        tombstoneRepo.saveAll(chunkIds.stream()
+                .filter(Objects::nonNull)
+                .map(VectorTombstone::new)
+                .toList());
+        writeLock.lock();
         try {
-            for (Long chunkId : chunkIds) {
-                if (chunkId == null) {
-                    continue;
-                }
-                writer.deleteDocuments(new Term(CHUNK_ID_FIELD, String.valueOf(chunkId)));
-            }
-            writer.commit();
+            afterWrite(deleteInternal(active.writer(), chunkIds));
+            // Un indexador del rebuild puede haber leido la fila antes del borrado: se recuerda para el swap.
+            applyToShadow(build -> {
+                build.rememberDeleted(chunkIds);
+                return deleteInternal(build.writer(), chunkIds);
+            });
+            forgetVectors(chunkIds);
             ragOps().ifPresent(ops -> ops.recordIndexDelete(chunkIds.size()));
         } catch (IOException e) {
             ragOps().ifPresent(ops -> ops.recordFailure("rag-index-delete", "No se pudieron borrar vectores del indice HNSW.", e));
             throw new IllegalStateException("No se pudieron borrar vectores del indice HNSW.", e);
         } finally {
-            indexLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     /**
      * Vacía el índice HNSW por completo sin tocar la BD.
      * Usado exclusivamente por el reset total del corpus RAG.
+     * Un rebuild en curso se cancela: su sombra pudo leer filas que el reset acaba de borrar.
      */
     public void clearIndex() {
-        indexLock.writeLock().lock();
+        writeLock.lock();
         try {
-            writer.deleteAll();
-            writer.commit();
+            ShadowBuild build = shadow;
+            if (build != null) {
+                build.cancel();
+            }
+            active.writer().deleteAll();
+            if (vectorStore != null) {
+                vectorStore.clear();
+            }
+            maxIndexedChunkId.set(0L);
+            indexEpoch = newEpoch();
+            // El reset es explicito y raro: se hace durable en el acto aunque el modo sea group-commit.
+            commitNow();
+            markPendingWrite();
+            refreshSearcher();
             log.info("RAG HNSW index vaciado (reset).");
         } catch (IOException e) {
             ragOps().ifPresent(ops -> ops.recordFailure("rag-index-clear", "No se pudo vaciar el indice HNSW en reset.", e));
             throw new IllegalStateException("No se pudo vaciar el indice HNSW.", e);
         } finally {
-            indexLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     /**
-     * Busca candidatos semanticos en HNSW y filtra owners al final.
-     * Usa readLock para permitir busquedas concurrentes sin bloquear entre si.
+     * Busca candidatos semanticos en HNSW restringidos a los owners indicados.
+     * El filtro de owner viaja dentro de la query kNN, asi HNSW solo puntua documentos elegibles
+     * y no hace falta sobre-pedir candidatos para descartarlos despues en Java.
+     * Toma prestado el searcher NRT vigente: no abre ficheros ni bloquea a otras busquedas o escrituras.
+     * Con varios owners y `shard-by-owner` activo, cada owner se busca por separado en paralelo.
      */
-    public List<SearchHit> search(List<String> owners, double[] queryVector, int limit) {
+    public List<SearchHit> search(List<String> owners, float[] queryVector, int limit) {
         if (queryVector == null || queryVector.length == 0 || limit <= 0) {
             return List.of();
         }
+        lastSearchNanos.set(System.nanoTime());
 
-        indexLock.readLock().lock();
+        LeasedSearcher lease;
         try {
-            if (!DirectoryReader.indexExists(directory)) {
+            lease = acquireSearcher();
+        } catch (Exception e) {
+            throw new IllegalStateException("Fallo buscando en el indice HNSW del RAG.", e);
+        }
+        try {
+            IndexSearcher searcher = lease.searcher();
+            if (searcher.getIndexReader().numDocs() <= 0) {
                 return List.of();
             }
-            try (DirectoryReader reader = DirectoryReader.open(directory)) {
-                if (reader.numDocs() <= 0) {
-                    return List.of();
-                }
 
-                Set<String> ownerFilter = new LinkedHashSet<>();
-                if (owners != null) {
-                    ownerFilter.addAll(owners);
-                }
-                // Sin filtro de owner (corpus global) usamos 4x para mejorar el recall antes del reranking.
-                // Con filtro escalamos segun el numero de owners como antes.
-                int ownerMultiplier = ownerFilter.isEmpty() ? 4 : Math.max(3, ownerFilter.size() * 3);
-                int fetchK = Math.max(limit, limit * ownerMultiplier);
-                IndexSearcher searcher = new IndexSearcher(reader);
-                var query = new KnnFloatVectorQuery(VECTOR_FIELD, toFloatArray(queryVector), fetchK);
-                ScoreDoc[] docs = searcher.search(query, fetchK).scoreDocs;
-
-                List<SearchHit> hits = new ArrayList<>(Math.min(limit, docs.length));
-                for (ScoreDoc scoreDoc : docs) {
-                    Document doc = searcher.doc(scoreDoc.doc);
-                    String owner = doc.get(OWNER_FIELD);
-                    if (!ownerFilter.isEmpty() && !ownerFilter.contains(owner)) {
-                        continue;
-                    }
-                    long chunkId = Long.parseLong(doc.get(CHUNK_ID_STORED_FIELD));
-                    hits.add(new SearchHit(chunkId, owner, scoreDoc.score));
-                    if (hits.size() >= limit) {
-                        break;
-                    }
-                }
-                return hits;
+            Query filter = ownerFilter(owners);
+            // Sin filtro (corpus global) ampliamos el haz 4x para mejorar el recall antes del reranking.
+            // Con filtro no hace falta: el pre-filtrado garantiza `limit` candidatos elegibles si existen.
+            int fetchK = filter == null ? Math.max(limit, limit * 4) : limit;
+            // Con vectores cuantizados el grafo ordena con distancias aproximadas: se sobre-pide y se
+            // re-puntua en float32 para que el orden final sea el mismo que en modo float32.
+            if (rescoreOversample > 0) {
+                fetchK *= rescoreOversample;
             }
+            List<String> shards = shardByOwner ? distinctOwners(owners) : List.of();
+            ScoreDoc[] docs = shards.size() > 1
+                    ? searchOwnerShards(searcher, queryVector, shards, fetchK)
+                    : searcher.search(new KnnFloatVectorQuery(VECTOR_FIELD, queryVector, fetchK, filter), fetchK).scoreDocs;
+            if (rescoreOversample > 0) {
+                docs = rescoreWithFullPrecision(searcher, queryVector, docs);
+            }
+
+            return resolveHits(lease, docs, limit, !storeServesEmbeddings());
         } catch (Exception e) {
             throw new IllegalStateException("Fallo buscando en el indice HNSW del RAG.", e);
         } finally {
-            indexLock.readLock().unlock();
+            releaseSearcher(lease);
         }
     }
 
-    public long estimateIndexBytes() {
+    /**
+     * Busqueda lexica BM25 sobre el texto de los chunks, con el mismo filtro de owner que la kNN.
+     * Encuentra identificadores o codigos de error exactos aunque el chunk quede lejos en el espacio
+     * semantico. El score es el BM25 crudo de Lucene (no acotado); la fusion lo normaliza.
+     */
+    public List<SearchHit> searchText(List<String> owners, String queryText, int limit) {
+        if (queryText == null || queryText.isBlank() || limit <= 0) {
+            return List.of();
+        }
+        Query textQuery = textQuery(queryText);
+        if (textQuery == null) {
+            return List.of();
+        }
+        lastSearchNanos.set(System.nanoTime());
+
+        LeasedSearcher lease;
         try {
-            if (!(directory instanceof FSDirectory fsDirectory)) {
-                return 0L;
+            lease = acquireSearcher();
+        } catch (Exception e) {
+            throw new IllegalStateException("Fallo buscando texto en el indice del RAG.", e);
+        }
+        try {
+            IndexSearcher searcher = lease.searcher();
+            Query filter = ownerFilter(owners);
+            Query query = textQuery;
+            if (filter != null) {
+                query = new BooleanQuery.Builder()
+                        .add(textQuery, BooleanClause.Occur.MUST)
+                        .add(filter, BooleanClause.Occur.FILTER)
+                        .build();
             }
-            try (var files = Files.walk(fsDirectory.getDirectory())) {
-                return files
-                        .filter(Files::isRegularFile)
-                        .mapToLong(path -> {
-                            try {
-                                return Files.size(path);
-                            } catch (IOException ignored) {
-                                return 0L;
-                            }
-                        })
-                        .sum();
+            ScoreDoc[] docs = searcher.search(query, limit).scoreDocs;
+            return resolveHits(lease, docs, limit, !storeServesEmbeddings());
+        } catch (Exception e) {
+            throw new IllegalStateException("Fallo buscando texto en el indice del RAG.", e);
+        } finally {
+            releaseSearcher(lease);
+        }
+    }
+
+    /**
+     * Query BM25 sobre ambos campos de texto: cada uno analiza la consulta con su idioma y basta con
+     * que coincida cualquier termino. Null si la consulta solo contiene stopwords.
+     */
+    Query textQuery(String queryText) {
+        QueryBuilder builder = new QueryBuilder(analyzer);
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        boolean any = false;
+        for (String field : List.of(TEXT_ES_FIELD, TEXT_EN_FIELD)) {
+            Query fieldQuery = builder.createBooleanQuery(field, queryText);
+            if (fieldQuery != null) {
+                query.add(fieldQuery, BooleanClause.Occur.SHOULD);
+                any = true;
             }
-        } catch (IOException e) {
-            log.debug("No se pudo estimar tamano del indice HNSW", e);
-            return 0L;
         }
+        return any ? query.build() : null;
+    }
+
+    private static List<SearchHit> resolveHits(LeasedSearcher lease,
+                                               ScoreDoc[] docs,
+                                               int limit,
+                                               boolean withEmbeddings) throws IOException {
+        if (lease.schemaVersion() >= DOC_VALUES_SCHEMA_VERSION) {
+            return resolveHitsFromDocValues(lease.searcher(), docs, limit, withEmbeddings);
+        }
+        return resolveHitsFromStoredFields(lease.searcher(), docs, limit);
     }
 
     /**
-     * Ruta del indice para inspeccion operativa desde la home y soporte manual.
+     * Un shard logico por owner: cada uno lanza su kNN filtrado en un hilo virtual y se quedan los
+     * `fetchK` mejores del conjunto. Un owner pequeno (privado) se resuelve por busqueda exacta sin
+     * competir en el grafo con el corpus global, y el owner grande no espera al pequeno.
+     * Todos los shards leen el mismo indice y el mismo searcher, asi que la fusion es un simple orden por score.
      */
-    public String indexLocation() {
-        return indexPath.toString();
+    private ScoreDoc[] searchOwnerShards(IndexSearcher searcher,
+                                         float[] queryVector,
+                                         List<String> owners,
+                                         int fetchK) throws IOException, InterruptedException {
+        List<ScoreDoc> merged = new ArrayList<>(fetchK * owners.size());
+        List<Future<ScoreDoc[]>> futures = new ArrayList<>(owners.size());
+        try {
+            for (String owner : owners) {
+                Query filter = ownerFilter(List.of(owner));
+                futures.add(shardExecutor.submit(() -> searcher.search(
+                        new KnnFloatVectorQuery(VECTOR_FIELD, queryVector, fetchK, filter), fetchK).scoreDocs));
+            }
+            for (Future<ScoreDoc[]> future : futures) {
+                merged.addAll(Arrays.asList(future.get()));
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException("Fallo buscando un shard de owner en el indice HNSW.", e.getCause());
+        }
+        merged.sort((left, right) -> Float.compare(right.score, left.score));
+        return merged.subList(0, Math.min(fetchK, merged.size())).toArray(ScoreDoc[]::new);
     }
 
     /**
-     * Abre el directorio Lucene usando NIOFSDirectory, que no usa memory-mapped files.
-     * Esto evita el crash 0xC0000005 en Windows que ocurre cuando MMapDirectory intenta
-     * liberar handles de memoria después de que los ficheros del índice fueron eliminados
-     * o el proceso fue terminado bruscamente.
+     * Resuelve chunk_id, owner y embedding por columnas (doc values y vectores), sin descomprimir
+     * stored fields. Sin `withEmbeddings` (el store mapeado los sirve) no se copia ningun vector.
+     * Los hits se visitan en orden de docId para que cada iterador solo avance hacia delante dentro
+     * de su segmento; el resultado conserva el orden por score.
      */
-    private static Directory openDirectory(Path dir) throws IOException {
-        return new NIOFSDirectory(dir);
+    private static List<SearchHit> resolveHitsFromDocValues(IndexSearcher searcher,
+                                                            ScoreDoc[] docs,
+                                                            int limit,
+                                                            boolean withEmbeddings) throws IOException {
+        int count = Math.min(limit, docs.length);
+        // docId en los 32 bits altos y posicion por score en los bajos: un solo sort de primitivos.
+        long[] byDoc = new long[count];
+        for (int i = 0; i < count; i++) {
+            byDoc[i] = ((long) docs[i].doc << 32) | i;
+        }
+        Arrays.sort(byDoc);
+
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        SearchHit[] resolved = new SearchHit[count];
+        EmbeddingSlab slab = withEmbeddings ? new EmbeddingSlab(count) : null;
+        int currentLeaf = -1;
+        LeafReaderContext leaf = null;
+        NumericDocValues chunkIds = null;
+        SortedDocValues owners = null;
+        FloatVectorValues vectors = null;
+        for (long packed : byDoc) {
+            int doc = (int) (packed >>> 32);
+            int position = (int) packed;
+            int leafIndex = ReaderUtil.subIndex(doc, leaves);
+            if (leafIndex != currentLeaf) {
+                currentLeaf = leafIndex;
+                leaf = leaves.get(leafIndex);
+                chunkIds = DocValues.getNumeric(leaf.reader(), CHUNK_ID_FIELD);
+                owners = DocValues.getSorted(leaf.reader(), OWNER_FIELD);
+                vectors = withEmbeddings ? leaf.reader().getFloatVectorValues(VECTOR_FIELD) : null;
+            }
+            int leafDoc = doc - leaf.docBase;
+            if (!chunkIds.advanceExact(leafDoc)) {
+                continue;
+            }
+            String owner = owners.advanceExact(leafDoc) ? owners.lookupOrd(owners.ordValue()).utf8ToString() : null;
+            FloatBuffer embedding = withEmbeddings ? vectorAt(vectors, leafDoc, slab) : null;
+            resolved[position] = new SearchHit(chunkIds.longValue(), owner, docs[position].score, embedding);
+        }
+
+        List<SearchHit> hits = new ArrayList<>(count);
+        for (SearchHit hit : resolved) {
+            if (hit != null) {
+                hits.add(hit);
+            }
+        }
+        return hits;
     }
 
     /**
-     * Abre el IndexWriter, limpiando el índice si está corrupto.
-     * Un índice corrupto ocurre cuando el proceso fue matado mientras escribía (Lucene deja
-     * el write.lock y segmentos a medias). En ese caso lo borramos y empezamos desde cero:
-     * el rebuild desde BD recupera el estado al arrancar.
+     * Resolucion del esquema 1 (stored fields). Solo se usa hasta que la migracion reindexa la generacion.
+     */
+    private static List<SearchHit> resolveHitsFromStoredFields(IndexSearcher searcher, ScoreDoc[] docs, int limit) throws IOException {
+        List<SearchHit> hits = new ArrayList<>(Math.min(limit, docs.length));
+        EmbeddingSlab slab = new EmbeddingSlab(Math.min(limit, docs.length));
+        StoredFields storedFields = searcher.storedFields();
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        for (ScoreDoc scoreDoc : docs) {
+            Document doc = storedFields.document(scoreDoc.doc);
+            String owner = doc.get(OWNER_FIELD);
+            long chunkId = Long.parseLong(doc.get(CHUNK_ID_STORED_FIELD));
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+            FloatBuffer embedding = vectorAt(leaf.reader().getFloatVectorValues(VECTOR_FIELD), scoreDoc.doc - leaf.docBase, slab);
+            hits.add(new SearchHit(chunkId, owner, scoreDoc.score, embedding));
+            if (hits.size() >= limit) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Copia el embedding float32 del documento en el slab de la resolucion (el iterador reutiliza su
+     * buffer). En modo cuantizado Lucene devuelve los float32 originales, no los cuantizados.
+     * Vacio si el documento no tiene vector.
+     */
+    private static FloatBuffer vectorAt(FloatVectorValues values, int leafDoc, EmbeddingSlab slab) throws IOException {
+        if (values == null || values.docID() > leafDoc) {
+            return EMPTY_EMBEDDING;
+        }
+        if (values.docID() < leafDoc && values.advance(leafDoc) != leafDoc) {
+            return EMPTY_EMBEDDING;
+        }
+        return slab.copy(values.vectorValue());
+    }
+
+    /**
+     * Un array por resolucion para los embeddings de todos sus hits, en vez de un clon por hit.
+     * Cada hit recibe una vista sobre su tramo; el array vive lo que vivan los hits. No se marca de solo
+     * lectura porque un buffer read-only oculta el array y `VectorMath` perderia el camino sin copias.
+     */
+    private static final class EmbeddingSlab {
+        private final int capacity;
+        private float[] floats;
+        private int used;
+
+        EmbeddingSlab(int capacity) {
+            this.capacity = capacity;
+        }
+
+        FloatBuffer copy(float[] vector) {
+            // Todos los vectores del campo tienen la misma dimension: se reserva con el primero.
+            if (floats == null) {
+                floats = new float[capacity * vector.length];
+            }
+            System.arraycopy(vector, 0, floats, used, vector.length);
+            FloatBuffer view = FloatBuffer.wrap(floats, used, vector.length).slice();
+            used += vector.length;
+            return view;
+        }
+    }
+
+    /**
+     * Re-puntua candidatos con los float32 originales que el formato cuantizado conserva en disco.
+     * Solo se leen los vectores de los candidatos, no los del segmento entero.
+     */
+    private static ScoreDoc[] rescoreWithFullPrecision(IndexSearcher searcher, float[] query, ScoreDoc[] docs) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        ScoreDoc[] rescored = new ScoreDoc[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            ScoreDoc scoreDoc = docs[i];
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+            FloatVectorValues values = leaf.reader().getFloatVectorValues(VECTOR_FIELD);
+            int leafDoc = scoreDoc.doc - leaf.docBase;
+            float score = scoreDoc.score;
+            if (values != null && values.advance(leafDoc) == leafDoc) {
+                score = VectorSimilarityFunction.DOT_PRODUCT.compare(query, values.vectorValue());
+            }
+            rescored[i] = new ScoreDoc(scoreDoc.doc, score);
+        }
+        Arrays.sort(rescored, (left, right) -> Float.compare(right.score, left.score));
+        return rescored;
+    }
+
+    /**
+     * Construye el filtro Lucene de elegibilidad para la query kNN.
+     * Devuelve null cuando no hay restriccion para que HNSW recorra el grafo sin bitset de aceptacion.
+     * Punto unico para sumar futuras restricciones (source, tags) combinandolas aqui.
+     */
+    static Query ownerFilter(Collection<String> owners) {
+        List<String> distinctOwners = distinctOwners(owners);
+        if (distinctOwners.isEmpty()) {
+            return null;
+        }
+        List<BytesRef> terms = new ArrayList<>(distinctOwners.size());
+        for (String owner : distinctOwners) {
+            terms.add(new BytesRef(owner));
+        }
+        return new TermInSetQuery(OWNER_FIELD, terms);
+    }
+
+    private static List<String> distinctOwners(Collection<String> owners) {
+        if (owners == null || owners.isEmpty()) {
+            return List.of();
+        }
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String owner : owners) {
+            if (owner != null && !owner.isBlank()) {
+                distinct.add(owner);
+            }
+        }
+        return List.copyOf(distinct);
+    }
+
+    /**
+     * Tick de group-commit: hace durable lo aplicado al writer desde el ultimo commit.
+     * No toma el lock de escritura, asi la ingesta sigue aplicando cambios mientras corre el fsync.
      */
-    private static IndexWriter openIndexWriter(Directory directory) throws IOException {
-        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+    @Scheduled(fixedDelayString = "${rag.vector.commit.interval-ms:5000}")
+    public void commitPending() {
+        IndexWriter writer = active.writer();
+        if (!groupCommit || !writer.isOpen() || !writer.hasUncommittedChanges()) {
+            return;
+        }
         try {
-            return new IndexWriter(directory, config);
+            commitNow();
         } catch (Exception e) {
-            log.warn("Indice HNSW corrupto o bloqueado, limpiando para rebuild desde BD: {}", e.getMessage());
-            // Borrar todos los ficheros del directorio y reabrir con índice vacío.
-            for (String file : directory.listAll()) {
-                try { directory.deleteFile(file); } catch (Exception ignored) {}
-            }
-            return new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()));
+            ragOps().ifPresent(ops -> ops.recordFailure("rag-index-commit", "No se pudo hacer commit del indice HNSW.", e));
         }
     }
 
-    @PreDestroy
-    public void shutdown() {
-        indexLock.writeLock().lock();
+    /**
+     * Tick de refresco NRT para escrituras que no refrescaron el searcher por si mismas.
+     * `maybeRefresh` no bloquea: si otro hilo ya esta refrescando, este tick se salta.
+     */
+    @Scheduled(fixedDelayString = "${rag.vector.refresh-interval-ms:1000}")
+    public void refreshOnInterval() {
+        if (oldestPendingWriteNanos.get() == 0L) {
+            return;
+        }
         try {
-            writer.close();
-            directory.close();
-        } catch (IOException e) {
-            log.debug("No se pudo cerrar el indice HNSW del RAG", e);
+            active.searcherManager().maybeRefresh();
+        } catch (Exception e) {
+            log.debug("No se pudo refrescar el searcher NRT del indice HNSW", e);
+        }
+    }
+
+    /**
+     * Compactado en horas valle: si no ha habido busquedas en `optimize-idle-ms` y la generacion activa
+     * acumula `optimize-min-segments` o mas, la fusiona hasta `optimize-max-segments` en un hilo aparte
+     * (el scheduler es compartido y el merge puede tardar). Las escrituras siguen durante el merge;
+     * no corre a la vez que un rebuild, que ya termina en un unico segmento.
+     */
+    @Scheduled(fixedDelayString = "${rag.vector.hnsw.optimize-interval-ms:60000}")
+    public void optimizeWhenIdle() {
+        if (!hnswProperties.isOptimizeEnabled() || rebuildRunning.get() || optimizing.get()) {
+            return;
+        }
+        long idleNanos = System.nanoTime() - lastSearchNanos.get();
+        if (idleNanos < TimeUnit.MILLISECONDS.toNanos(hnswProperties.getOptimizeIdleMs())) {
+            return;
+        }
+        compactVectorStoreIfNeeded();
+        int segments = (int) segmentCount();
+        if (segments < Math.max(2, hnswProperties.getOptimizeMinSegments())) {
+            return;
+        }
+        if (!optimizing.compareAndSet(false, true)) {
+            return;
+        }
+        Executors.newVirtualThreadPerTaskExecutor().execute(() -> optimizeSegments(segments));
+    }
+
+    private void optimizeSegments(int segmentsBefore) {
+        int target = Math.max(1, hnswProperties.getOptimizeMaxSegments());
+        long start = System.nanoTime();
+        try {
+            active.writer().forceMerge(target);
+            markPendingWrite();
+            refreshSearcher();
+            optimizeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.info("RAG HNSW compactado en valle segmentos={}->{} en {}ms",
+                    segmentsBefore, (int) segmentCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (AlreadyClosedException e) {
+            log.debug("Compactado HNSW interrumpido: la generacion se retiro durante el merge", e);
+        } catch (Exception e) {
+            ragOps().ifPresent(ops -> ops.recordFailure("rag-index-optimize", "No se pudo compactar el indice HNSW.", e));
         } finally {
-            indexLock.writeLock().unlock();
+            optimizing.set(false);
         }
     }
 
-    private void indexBatchInternal(List<IndexedVectorRecord> vectors) throws IOException {
-        for (IndexedVectorRecord vector : vectors) {
-            if (vector == null || vector.chunkId() == null || vector.owner() == null || vector.owner().isBlank()) {
-                continue;
-            }
-            if (vector.embedding() == null || vector.embedding().length == 0) {
-                continue;
+    /**
+     * El store mapeado se compacta en el mismo valle que los segmentos, cuando los huecos de
+     * upserts y borrados superan a los vectores vivos.
+     */
+    private void compactVectorStoreIfNeeded() {
+        if (vectorStore == null || !vectorStore.ready()) {
+            return;
+        }
+        if (vectorStore.deadSlots() < Math.max(STORE_COMPACT_MIN_DEAD, vectorStore.size())) {
+            return;
+        }
+        if (!compactingStore.compareAndSet(false, true)) {
+            return;
+        }
+        Executors.newVirtualThreadPerTaskExecutor().execute(() -> {
+            long bytesBefore = vectorStore.fileBytes();
+            try {
+                vectorStore.compact();
+                log.info("Store mapeado de embeddings compactado bytes={}->{}", bytesBefore, vectorStore.fileBytes());
+            } catch (Exception e) {
+                ragOps().ifPresent(ops -> ops.recordFailure("rag-vector-store-compact", "No se pudo compactar el store mapeado de embeddings.", e));
+            } finally {
+                compactingStore.set(false);
             }
+        });
+    }
 
-            Document doc = new Document();
-            doc.add(new StringField(CHUNK_ID_FIELD, String.valueOf(vector.chunkId()), org.apache.lucene.document.Field.Store.NO));
-            doc.add(new StoredField(CHUNK_ID_STORED_FIELD, vector.chunkId()));
-            doc.add(new StringField(OWNER_FIELD, vector.owner(), org.apache.lucene.document.Field.Store.YES));
-            doc.add(new StoredField(CREATED_AT_FIELD, vector.createdAt().toEpochMilli()));
-            // Los embeddings ya vienen normalizados; DOT_PRODUCT encaja bien con HNSW en este caso.
-            doc.add(new KnnFloatVectorField(VECTOR_FIELD, vector.embedding(), VectorSimilarityFunction.DOT_PRODUCT));
+    /**
+     * Vista de solo lectura del embedding del chunk en el store mapeado, o null si el store no esta
+     * listo o no lo tiene. No copia: sirve para rerank sin reservar un arreglo por candidato.
+     */
+    public FloatBuffer vectorView(long chunkId) {
+        return storeServesEmbeddings() ? vectorStore.view(chunkId) : null;
+    }
 
-            writer.updateDocument(new Term(CHUNK_ID_FIELD, String.valueOf(vector.chunkId())), doc);
+    private boolean storeServesEmbeddings() {
+        return vectorStore != null && vectorStore.ready();
+    }
+
+    /**
+     * El store mapeado se desactiva en Windows: alli no se puede borrar ni reemplazar un fichero mientras
+     * tenga un mapeo vivo, y el vaciado tras un cierre sucio, el cambio de dimension y el compactado lo hacen.
+     */
+    static boolean useVectorStore(String dir, boolean windows) {
+        if (dir == null || dir.isBlank()) {
+            return false;
         }
+        if (windows) {
+            log.info("Store mapeado de embeddings desactivado en Windows; los hits copiaran vectores del indice");
+            return false;
+        }
+        return true;
     }
 
-    private java.util.Optional<RagOpsService> ragOps() {
-        return java.util.Optional.ofNullable(ragOpsServiceProvider.getIfAvailable());
+    private MappedVectorStore openVectorStore(String dir) {
+        Path path = Path.of(dir.trim()).toAbsolutePath().normalize();
+        try {
+            MappedVectorStore store = MappedVectorStore.open(path);
+            log.info("Store mapeado de embeddings abierto en {} vectores={} listo={}", path, store.size(), store.ready());
+            return store;
+        } catch (IOException e) {
+            log.warn("No se pudo abrir el store mapeado de embeddings en {}; los hits copiaran vectores del indice", path, e);
+            return null;
+        }
     }
 
-    private static float[] toFloatArray(double[] vector) {
-        float[] out = new float[vector.length];
-        for (int i = 0; i < vector.length; i++) {
-            out[i] = (float) vector[i];
+    /**
+     * Replica en el store mapeado lo que se acaba de indexar. Se llama con writeLock tomado.
+     * Un fallo no tumba la escritura (el indice ya la tiene): el store queda pendiente de repoblar.
+     */
+    private void storeVectors(List<IndexedVectorRecord> vectors) {
+        if (vectorStore == null) {
+            return;
+        }
+        try {
+            for (IndexedVectorRecord vector : vectors) {
+                if (vector != null && vector.chunkId() != null) {
+                    vectorStore.put(vector.chunkId(), vector.embedding());
+                }
+            }
+        } catch (IOException e) {
+            vectorStore.invalidate();
+            ragOps().ifPresent(ops -> ops.recordFailure("rag-vector-store-write", "No se pudo escribir en el store mapeado de embeddings.", e));
         }
-        return out;
     }
 
-    public record SearchHit(long chunkId, String owner, float score) {
+    private void forgetVectors(Collection<Long> chunkIds) {
+        if (vectorStore == null) {
+            return;
+        }
+        if (loadingStore) {
+            deletedWhileLoadingStore.addAll(chunkIds);
+        }
+        vectorStore.delete(chunkIds);
+    }
+
+    public long estimateIndexBytes() {
+        try {
+            if (!(active.directory() instanceof FSDirectory fsDirectory)) {
+                return 0L;
+            }
+            // Profundidad 1: una generacion Lucene es plana y la raiz puede contener otras generaciones.
+            try (var files = Files.walk(fsDirectory.getDirectory(), 1)) {
+                return files
+                        .filter(Files::isRegularFile)
+                        .mapToLong(path -> {
+                            try {
+                                return Files.size(path);
+                            } catch (IOException ignored) {
+                                return 0L;
+                            }
+                        })
+                        .sum();
+            }
+        } catch (IOException e) {
+            log.debug("No se pudo estimar tamano del indice HNSW", e);
+            return 0L;
+        }
+    }
+
+    /**
+     * Ruta del indice para inspeccion operativa desde la home y soporte manual.
+     */
+    public String indexLocation() {
+        return active.path().toString();
+    }
+
+    /**
+     * Abre el directorio Lucene segun `rag.vector.directory`.
+     * MMapDirectory lee el grafo y los vectores directamente de memoria mapeada, sin una lectura
+     * posicional (syscall) por nodo visitado. En Windows se mantiene NIOFSDirectory: alli MMapDirectory
+     * provoca el crash 0xC0000005 cuando libera handles de ficheros ya eliminados o tras un cierre brusco.
+     */
+    private Directory openDirectory(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return mmapDirectory ? new MMapDirectory(dir) : new NIOFSDirectory(dir);
+    }
+
+    /**
+     * `auto` elige MMap salvo en Windows; `mmap` y `niofs` fuerzan la implementacion.
+     */
+    static boolean useMmapDirectory(String configured, boolean windows) {
+        String strategy = configured == null ? "" : configured.trim().toLowerCase(Locale.ROOT);
+        return switch (strategy) {
+            case "mmap" -> true;
+            case "niofs", "nio" -> false;
+            case "", "auto" -> !windows;
+            default -> throw new IllegalArgumentException(
+                    "rag.vector.directory desconocido: " + configured + " (esperado auto, mmap o niofs)");
+        };
+    }
+
+    /**
+     * Abre el IndexWriter, limpiando el índice si está corrupto.
+     * Un índice corrupto ocurre cuando el proceso fue matado mientras escribía (Lucene deja
+     * el write.lock y segmentos a medias). En ese caso lo borramos y empezamos desde cero:
+     * el rebuild desde BD recupera el estado al arrancar.
+     */
+    private IndexWriter openIndexWriter(Directory directory) throws IOException {
+        try {
+            return new IndexWriter(directory, newIndexWriterConfig());
+        } catch (Exception e) {
+            log.warn("Indice HNSW corrupto o bloqueado, limpiando para rebuild desde BD: {}", e.getMessage());
+            // Borrar todos los ficheros del directorio y reabrir con índice vacío.
+            for (String file : directory.listAll()) {
+                try { directory.deleteFile(file); } catch (Exception ignored) {}
+            }
+            return new IndexWriter(directory, newIndexWriterConfig());
+        }
+    }
+
+    /**
+     * Config del writer: codec del modo de almacenamiento vectorial (`rag.vector.codec.mode`) con los
+     * parametros del grafo, y politica de merge de `rag.vector.hnsw.*`.
+     * Sin ficheros compuestos: el grafo (.vex) y los vectores quedan en ficheros propios, que se
+     * pueden medir y que el page cache trata por separado del resto del segmento.
+     */
+    private IndexWriterConfig newIndexWriterConfig() {
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setSegmentsPerTier(Math.max(2, hnswProperties.getMergeFactor()));
+        mergePolicy.setMaxMergedSegmentMB(Math.max(1.0, hnswProperties.getMaxSegmentMb()));
+        mergePolicy.setNoCFSRatio(0.0);
+        return new IndexWriterConfig(analyzer)
+                .setCodec(storageMode.codec(hnswProperties.getM(), hnswProperties.getBeamWidth()))
+                .setMergePolicy(mergePolicy)
+                .setUseCompoundFile(false);
+    }
+
+    /**
+     * Ids y owner se indexan como un unico termino; el texto pasa por el analyzer de cada idioma
+     * (minusculas, stopwords y stemming) tanto al indexar como al construir la query BM25.
+     * Las stopwords son la union de ambos idiomas: el corpus mezcla los dos y "de" o "the" no
+     * deben puntuar en ningun campo.
+     */
+    private static Analyzer newAnalyzer() {
+        CharArraySet stopwords = CharArraySet.copy(SpanishAnalyzer.getDefaultStopSet());
+        stopwords.addAll(EnglishAnalyzer.getDefaultStopSet());
+        return new PerFieldAnalyzerWrapper(new KeywordAnalyzer(), Map.of(
+                TEXT_ES_FIELD, new SpanishAnalyzer(stopwords),
+                TEXT_EN_FIELD, new EnglishAnalyzer(stopwords)
+        ));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeLock.lock();
+        try {
+            // Un rebuild a medias no se conserva: la sombra se descarta y el siguiente arranque la limpia.
+            ShadowBuild build = shadow;
+            if (build != null) {
+                build.cancel();
+            }
+            IndexGeneration generation = active;
+            // Flush garantizado: nada aplicado al writer se queda sin commit al parar ordenadamente.
+            if (generation.writer().isOpen() && generation.writer().hasUncommittedChanges()) {
+                commitNow();
+            }
+            generation.searcherManager().close();
+            generation.writer().close();
+            generation.directory().close();
+        } catch (IOException e) {
+            log.debug("No se pudo cerrar el indice HNSW del RAG", e);
+        } finally {
+            writeLock.unlock();
+            if (searchExecutor != null) {
+                searchExecutor.shutdown();
+            }
+            if (shardExecutor != null) {
+                shardExecutor.shutdown();
+            }
+            analyzer.close();
+            closeVectorStore();
+        }
+    }
+
+    private void closeVectorStore() {
+        if (vectorStore == null) {
+            return;
+        }
+        try {
+            vectorStore.close();
+        } catch (IOException e) {
+            log.debug("No se pudo cerrar el store mapeado de embeddings", e);
+        }
+    }
+
+    /**
+     * Cierra una escritura: la hace visible via NRT y decide si toca commit durable.
+     * En modo immediate se commitea siempre; en group-commit solo al superar el umbral de bytes,
+     * el resto lo recoge el tick periodico.
+     */
+    private void afterWrite(long approxBytes) throws IOException {
+        markPendingWrite();
+        refreshSearcher();
+        if (!groupCommit) {
+            commitNow();
+            return;
+        }
+        long pending = pendingCommitBytes.addAndGet(Math.max(1L, approxBytes));
+        if (pending >= commitMaxPendingBytes) {
+            commitNow();
+        }
+    }
+
+    /**
+     * Commit durable con watermark. El instante se toma antes del commit: todo lo aplicado al writer
+     * antes de ese instante queda cubierto, y lo que llegue durante el commit lo recoge el solape del catch-up.
+     */
+    private void commitNow() throws IOException {
+        commitLock.lock();
+        try {
+            IndexWriter writer = active.writer();
+            IndexWatermark watermark = new IndexWatermark(Instant.now(), maxIndexedChunkId.get(), indexEpoch);
+            long covered = pendingCommitBytes.getAndSet(0L);
+            long start = System.nanoTime();
+            try {
+                writer.setLiveCommitData(commitData(watermark, active.schemaVersion()));
+                writer.commit();
+            } catch (IOException e) {
+                pendingCommitBytes.addAndGet(covered);
+                throw e;
+            }
+            committedWatermark = watermark;
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private static long deleteInternal(IndexWriter writer, Collection<Long> chunkIds) throws IOException {
+        long bytes = 0L;
+        for (Long chunkId : chunkIds) {
+            if (chunkId == null) {
+                continue;
+            }
+            writer.deleteDocuments(new Term(CHUNK_ID_FIELD, String.valueOf(chunkId)));
+            bytes += DELETE_BYTES;
+        }
+        return bytes;
+    }
+
+    private List<IndexedVectorRecord> toIndexedRecords(List<KnowledgeVectorRepository.IndexedVectorView> rows) {
+        List<IndexedVectorRecord> batch = new ArrayList<>(rows.size());
+        for (var view : rows) {
+            float[] embedding = decodeEmbedding(view);
+            if (embedding.length == 0) {
+                continue;
+            }
+            batch.add(new IndexedVectorRecord(
+                    view.getChunkId(),
+                    view.getOwner(),
+                    embedding,
+                    Instant.now(),
+                    view.getText()
+            ));
+        }
+        return batch;
+    }
+
+    /**
+     * Filas migradas: float32 binario ya normalizado al escribir, se copia tal cual al `float[]` del
+     * documento. Filas antiguas: JSON parseado y normalizado como antes de la migracion.
+     */
+    private float[] decodeEmbedding(KnowledgeVectorRepository.IndexedVectorView view) {
+        if (view.getEmbeddingBin() != null) {
+            return EmbeddingCodec.decode(view.getEmbeddingBin());
+        }
+        if (view.getEmbeddingJson() == null) {
+            return new float[0];
+        }
+        return VectorMath.normalize(ollamaClient.fromJson(view.getEmbeddingJson()));
+    }
+
+    /**
+     * Documentos vivos con chunk_id hasta el tope. El esquema 1 no tiene doc values de chunk_id: cuenta todos.
+     */
+    private long indexedDocCountUpTo(long maxChunkId) throws IOException {
+        refreshSearcher();
+        LeasedSearcher lease = acquireSearcher();
+        try {
+            if (lease.schemaVersion() < DOC_VALUES_SCHEMA_VERSION) {
+                return lease.searcher().getIndexReader().numDocs();
+            }
+            return lease.searcher().count(NumericDocValuesField.newSlowRangeQuery(CHUNK_ID_FIELD, Long.MIN_VALUE, maxChunkId));
+        } finally {
+            releaseSearcher(lease);
+        }
+    }
+
+    /**
+     * Lee el watermark del ultimo commit. Un indice sin commit o anterior a esta version devuelve null,
+     * lo que obliga a un rebuild completo en el siguiente arranque.
+     */
+    private static IndexWatermark readCommittedWatermark(Directory directory) {
+        try {
+            if (!DirectoryReader.indexExists(directory)) {
+                return null;
+            }
+            return IndexWatermark.fromCommitData(SegmentInfos.readLatestCommit(directory).getUserData());
+        } catch (Exception e) {
+            log.warn("No se pudo leer el watermark del indice HNSW: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * User-data de un commit: watermark de catch-up mas la version de esquema de la generacion.
+     */
+    private static Iterable<Map.Entry<String, String>> commitData(IndexWatermark watermark, int schemaVersion) {
+        Map<String, String> data = watermark.toCommitData();
+        data.put(KEY_SCHEMA_VERSION, String.valueOf(schemaVersion));
+        return data.entrySet();
+    }
+
+    /**
+     * Un indice vacio nace con el esquema actual; uno commiteado sin version es del esquema 1.
+     */
+    private static int readSchemaVersion(Directory directory) {
+        try {
+            if (!DirectoryReader.indexExists(directory)) {
+                return SCHEMA_VERSION;
+            }
+            String version = SegmentInfos.readLatestCommit(directory).getUserData().get(KEY_SCHEMA_VERSION);
+            return version == null ? LEGACY_SCHEMA_VERSION : Integer.parseInt(version);
+        } catch (Exception e) {
+            log.warn("No se pudo leer la version de esquema del indice HNSW: {}", e.getMessage());
+            return LEGACY_SCHEMA_VERSION;
+        }
+    }
+
+    private static String newEpoch() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Marca que hay escrituras aplicadas al writer que las busquedas aun no ven.
+     * Solo se guarda la primera: el lag se mide desde la escritura mas antigua pendiente.
+     */
+    private void markPendingWrite() {
+        oldestPendingWriteNanos.compareAndSet(0L, System.nanoTime());
+    }
+
+    /**
+     * Refresca el searcher tras una escritura para que la siguiente busqueda la vea.
+     * Si falla no se propaga: el dato ya esta en el writer y el tick periodico reintentara.
+     */
+    private void refreshSearcher() {
+        try {
+            active.searcherManager().maybeRefreshBlocking();
+        } catch (Exception e) {
+            log.debug("No se pudo refrescar el searcher NRT tras escribir en el indice HNSW", e);
+        }
+    }
+
+    /**
+     * Toma prestado el searcher de la generacion activa. Si un swap cierra esa generacion entre la
+     * lectura y el acquire, se reintenta sobre la nueva.
+     */
+    private LeasedSearcher acquireSearcher() throws IOException {
+        while (true) {
+            IndexGeneration generation = active;
+            try {
+                return new LeasedSearcher(
+                        generation.searcherManager(),
+                        generation.searcherManager().acquire(),
+                        generation.schemaVersion()
+                );
+            } catch (AlreadyClosedException e) {
+                if (generation == active) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void releaseSearcher(LeasedSearcher lease) {
+        try {
+            // Se devuelve al manager que lo presto aunque ya se haya retirado tras un swap.
+            lease.manager().release(lease.searcher());
+        } catch (IOException e) {
+            log.debug("No se pudo liberar el searcher del indice HNSW", e);
+        }
+    }
+
+    private double segmentCount() {
+        try {
+            LeasedSearcher lease = acquireSearcher();
+            try {
+                return lease.searcher().getIndexReader().leaves().size();
+            } finally {
+                releaseSearcher(lease);
+            }
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    private double graphBytes() {
+        try {
+            Directory directory = active.directory();
+            long bytes = 0L;
+            for (String file : directory.listAll()) {
+                if (file.endsWith(GRAPH_FILE_EXTENSION)) {
+                    bytes += directory.fileLength(file);
+                }
+            }
+            return bytes;
+        } catch (Exception e) {
+            // Un merge puede borrar un fichero entre listAll y fileLength; la siguiente lectura lo corrige.
+            return 0.0;
+        }
+    }
+
+    private double pendingRefreshLagMillis() {
+        long pendingSince = oldestPendingWriteNanos.get();
+        if (pendingSince == 0L) {
+            return 0.0;
+        }
+        return (System.nanoTime() - pendingSince) / 1_000_000.0;
+    }
+
+    /**
+     * Aplica los vectores al writer y devuelve los bytes aproximados escritos para el umbral de commit.
+     * El documento sigue el esquema de la generacion destino: Lucene rechaza mezclar esquemas en un indice.
+     */
+    private long indexBatchInternal(IndexWriter writer, int schemaVersion, List<IndexedVectorRecord> vectors) throws IOException {
+        long bytes = 0L;
+        for (IndexedVectorRecord vector : vectors) {
+            if (vector == null || vector.chunkId() == null || vector.owner() == null || vector.owner().isBlank()) {
+                continue;
+            }
+            if (vector.embedding() == null || vector.embedding().length == 0) {
+                continue;
+            }
+
+            Document doc = new Document();
+            // El termino de chunk_id se mantiene indexado: es la clave de updateDocument/deleteDocuments.
+            doc.add(new StringField(CHUNK_ID_FIELD, String.valueOf(vector.chunkId()), Field.Store.NO));
+            if (schemaVersion >= DOC_VALUES_SCHEMA_VERSION) {
+                doc.add(new NumericDocValuesField(CHUNK_ID_FIELD, vector.chunkId()));
+                doc.add(new StringField(OWNER_FIELD, vector.owner(), Field.Store.NO));
+                doc.add(new SortedDocValuesField(OWNER_FIELD, new BytesRef(vector.owner())));
+                doc.add(new NumericDocValuesField(CREATED_AT_FIELD, vector.createdAt().toEpochMilli()));
+            } else {
+                doc.add(new StoredField(CHUNK_ID_STORED_FIELD, vector.chunkId()));
+                doc.add(new StringField(OWNER_FIELD, vector.owner(), Field.Store.YES));
+                doc.add(new StoredField(CREATED_AT_FIELD, vector.createdAt().toEpochMilli()));
+            }
+            // Campos nuevos: admitidos en cualquier esquema; solo el 3 garantiza que todos los documentos los tengan.
+            if (vector.text() != null && !vector.text().isBlank()) {
+                doc.add(new TextField(TEXT_ES_FIELD, vector.text(), Field.Store.NO));
+                doc.add(new TextField(TEXT_EN_FIELD, vector.text(), Field.Store.NO));
+                bytes += vector.text().length();
+            }
+            // Los embeddings ya vienen normalizados; DOT_PRODUCT encaja bien con HNSW en este caso.
+            doc.add(new KnnFloatVectorField(VECTOR_FIELD, vector.embedding(), VectorSimilarityFunction.DOT_PRODUCT));
+
+            writer.updateDocument(new Term(CHUNK_ID_FIELD, String.valueOf(vector.chunkId())), doc);
+            maxIndexedChunkId.accumulateAndGet(vector.chunkId(), Math::max);
+            bytes += (long) vector.embedding().length * Float.BYTES + DOC_OVERHEAD_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Aplica los vectores creados y los borrados registrados desde `since` a la generacion activa
+     * (y a la sombra si hay un rebuild en curso). Devuelve {upserts, deletes}.
+     */
+    private int[] applyDatabaseChangesSince(Instant since) throws IOException {
+        int upserts = 0;
+        Long afterChunkId = null;
+        while (true) {
+            var rows = vectorRepo.findActiveIndexPageCreatedSince(
+                    since,
+                    afterChunkId,
+                    PageRequest.of(0, REBUILD_PAGE_SIZE)
+            );
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<IndexedVectorRecord> batch = toIndexedRecords(rows);
+            afterChunkId = rows.get(rows.size() - 1).getChunkId();
+            if (!batch.isEmpty()) {
+                writeLock.lock();
+                try {
+                    storeVectors(batch);
+                    afterWrite(indexBatchInternal(active.writer(), active.schemaVersion(), batch));
+                    applyToShadow(build -> indexBatchInternal(build.writer(), SCHEMA_VERSION, batch));
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+            upserts += batch.size();
+            if (rows.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+        }
+
+        List<Long> deletedChunkIds = tombstoneRepo.findChunkIdsDeletedSince(since);
+        if (!deletedChunkIds.isEmpty()) {
+            writeLock.lock();
+            try {
+                afterWrite(deleteInternal(active.writer(), deletedChunkIds));
+                applyToShadow(build -> {
+                    build.rememberDeleted(deletedChunkIds);
+                    return deleteInternal(build.writer(), deletedChunkIds);
+                });
+                forgetVectors(deletedChunkIds);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return new int[] {upserts, deletedChunkIds.size()};
+    }
+
+    /**
+     * Doble escritura hacia la sombra. Se llama con writeLock tomado, asi ninguna escritura puede
+     * colarse entre el registro de la sombra y el swap. Un fallo aqui invalida el rebuild, no la escritura viva.
+     */
+    private void applyToShadow(ShadowWrite write) {
+        ShadowBuild build = shadow;
+        if (build == null || build.isCancelled()) {
+            return;
+        }
+        try {
+            write.apply(build);
+        } catch (Exception e) {
+            build.fail(e);
+        }
+    }
+
+    /**
+     * Llena la sombra en paralelo: `rebuildFetchThreads` lectores paginan tramos disjuntos de chunk_id
+     * hacia una cola acotada y `rebuildIndexThreads` indexadores decodifican el JSON y escriben en el
+     * writer sombra. La cola acotada frena a los lectores si los indexadores no dan abasto.
+     */
+    private long fillShadow(ShadowBuild build) throws InterruptedException {
+        Long maxChunkId = vectorRepo.findMaxChunkId();
+        if (maxChunkId == null || maxChunkId <= 0L) {
+            return 0L;
+        }
+        BlockingQueue<List<KnowledgeVectorRepository.IndexedVectorView>> pages =
+                new ArrayBlockingQueue<>(rebuildIndexThreads * 2);
+        long step = maxChunkId / rebuildFetchThreads + 1;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> fetchers = new ArrayList<>();
+            for (int i = 0; i < rebuildFetchThreads; i++) {
+                long afterChunkId = i * step;
+                long upToChunkId = Math.min(maxChunkId, (i + 1) * step);
+                if (afterChunkId >= upToChunkId) {
+                    continue;
+                }
+                fetchers.add(executor.submit(() -> fetchRange(build, pages, afterChunkId, upToChunkId)));
+            }
+            for (int i = 0; i < rebuildIndexThreads; i++) {
+                executor.submit(() -> indexPages(build, pages));
+            }
+            try {
+                for (Future<?> fetcher : fetchers) {
+                    fetcher.get();
+                }
+            } catch (ExecutionException e) {
+                build.fail(e);
+            } finally {
+                for (int i = 0; i < rebuildIndexThreads; i++) {
+                    enqueue(build, pages, END_OF_PAGES);
+                }
+            }
+        }
+        build.throwIfCancelled();
+        return build.indexedVectors();
+    }
+
+    private void fetchRange(ShadowBuild build,
+                            BlockingQueue<List<KnowledgeVectorRepository.IndexedVectorView>> pages,
+                            long afterChunkId,
+                            long upToChunkId) {
+        try {
+            long cursor = afterChunkId;
+            while (!build.isCancelled()) {
+                var rows = vectorRepo.findActiveIndexPageInRange(cursor, upToChunkId, PageRequest.of(0, REBUILD_PAGE_SIZE));
+                if (rows.isEmpty()) {
+                    return;
+                }
+                cursor = rows.get(rows.size() - 1).getChunkId();
+                if (!enqueue(build, pages, rows) || rows.size() < REBUILD_PAGE_SIZE) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            build.fail(e);
+        }
+    }
+
+    private void indexPages(ShadowBuild build, BlockingQueue<List<KnowledgeVectorRepository.IndexedVectorView>> pages) {
+        try {
+            while (!build.isCancelled()) {
+                var rows = pages.poll(QUEUE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (rows == null) {
+                    continue;
+                }
+                if (rows == END_OF_PAGES) {
+                    return;
+                }
+                List<IndexedVectorRecord> batch = toIndexedRecords(rows);
+                indexBatchInternal(build.writer(), SCHEMA_VERSION, batch);
+                build.addIndexed(batch.size());
+                updateProgress(progress -> progress.advanced(batch.size()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            build.fail(e);
+        } catch (Exception e) {
+            build.fail(e);
+        }
+    }
+
+    /**
+     * Encola sin bloquear indefinidamente: si el rebuild se cancela, los lectores no se quedan colgados.
+     */
+    private static boolean enqueue(ShadowBuild build,
+                                   BlockingQueue<List<KnowledgeVectorRepository.IndexedVectorView>> pages,
+                                   List<KnowledgeVectorRepository.IndexedVectorView> page) {
+        try {
+            while (!build.isCancelled()) {
+                if (pages.offer(page, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            build.fail(e);
+            return false;
+        }
+    }
+
+    private ShadowBuild openShadowBuild() throws IOException {
+        Path path = indexRoot.resolve(GENERATION_PREFIX + System.currentTimeMillis());
+        Directory directory = openDirectory(path);
+        try {
+            return new ShadowBuild(path, directory, openIndexWriter(directory), newEpoch());
+        } catch (IOException e) {
+            directory.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Intercambia la generacion activa por la sombra. Se llama con writeLock tomado.
+     * Primero se hace durable la sombra y el puntero a ella; solo entonces se publica para las busquedas.
+     * Si algo falla antes de publicar, la generacion activa sigue intacta.
+     */
+    private void swapTo(ShadowBuild build) throws IOException {
+        IndexGeneration previous = active;
+        SearcherManager manager = null;
+        commitLock.lock();
+        try {
+            IndexWatermark watermark = new IndexWatermark(Instant.now(), maxIndexedChunkId.get(), build.epoch());
+            build.writer().setLiveCommitData(commitData(watermark, SCHEMA_VERSION));
+            build.writer().commit();
+            manager = newSearcherManager(build.writer());
+            writeActiveGeneration(build.path());
+
+            active = new IndexGeneration(build.path(), build.directory(), build.writer(), manager, SCHEMA_VERSION);
+            shadow = null;
+            indexEpoch = build.epoch();
+            committedWatermark = watermark;
+            pendingCommitBytes.set(0L);
+        } catch (IOException e) {
+            if (manager != null) {
+                manager.close();
+            }
+            throw e;
+        } finally {
+            commitLock.unlock();
+        }
+        retire(previous);
+    }
+
+    /**
+     * Cierra una generacion retirada. Las busquedas que aun tengan su searcher prestado terminan con
+     * el reader abierto; lo pendiente de commit se descarta porque la sombra ya lo recibio por doble escritura.
+     */
+    private void retire(IndexGeneration generation) {
+        try {
+            generation.searcherManager().close();
+            generation.writer().rollback();
+            generation.directory().close();
+        } catch (Exception e) {
+            log.debug("No se pudo cerrar la generacion retirada del indice HNSW {}", generation.path(), e);
+        }
+        deleteGeneration(generation.path());
+    }
+
+    private void discardShadow(ShadowBuild build) {
+        if (build == null || build.path().equals(active.path())) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (shadow == build) {
+                shadow = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            build.writer().rollback();
+            build.directory().close();
+        } catch (Exception e) {
+            log.debug("No se pudo cerrar la sombra del indice HNSW {}", build.path(), e);
+        }
+        deleteGeneration(build.path());
+    }
+
+    private void updateProgress(UnaryOperator<RebuildProgress> update) {
+        rebuildProgress.updateAndGet(update);
+    }
+
+    private SearcherManager newSearcherManager(IndexWriter writer) throws IOException {
+        // NRT: el searcher se abre sobre el writer y ve escrituras sin necesidad de commit a disco.
+        SearcherManager manager = new SearcherManager(writer, new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                // Con executor, KnnFloatVectorQuery recorre cada segmento en una tarea del pool.
+                return new IndexSearcher(reader, searchExecutor);
+            }
+        });
+        manager.addListener(new RefreshLagListener());
+        return manager;
+    }
+
+    /**
+     * Lee el puntero a la generacion activa. Sin puntero (indices anteriores al rebuild con sombra)
+     * la propia raiz es la generacion activa.
+     */
+    private static Path resolveActiveGeneration(Path root) throws IOException {
+        Path pointer = root.resolve(ACTIVE_GENERATION_FILE);
+        if (!Files.isRegularFile(pointer)) {
+            return root;
+        }
+        String name = Files.readString(pointer, StandardCharsets.UTF_8).trim();
+        Path generation = root.resolve(name).normalize();
+        if (name.isEmpty() || !generation.getParent().equals(root) || !Files.isDirectory(generation)) {
+            log.warn("Puntero de generacion HNSW invalido '{}'; se usa la raiz del indice.", name);
+            return root;
+        }
+        return generation;
+    }
+
+    /**
+     * Publica la generacion activa con escritura atomica (fichero temporal + rename).
+     */
+    private void writeActiveGeneration(Path generation) throws IOException {
+        Path pointer = indexRoot.resolve(ACTIVE_GENERATION_FILE);
+        Path tmp = indexRoot.resolve(ACTIVE_GENERATION_FILE + ".tmp");
+        Files.writeString(tmp, generation.getFileName().toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, pointer, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Limpia sombras de rebuilds interrumpidos y generaciones que no se pudieron borrar al retirarse
+     * (por ejemplo ficheros aun abiertos en Windows).
+     */
+    private void deleteStaleGenerations(Path activePath) {
+        if (!activePath.equals(indexRoot)) {
+            deleteGeneration(indexRoot);
+        }
+        try (var entries = Files.list(indexRoot)) {
+            entries.filter(Files::isDirectory)
+                    .filter(path -> path.getFileName().toString().startsWith(GENERATION_PREFIX))
+                    .filter(path -> !path.equals(activePath))
+                    .forEach(this::deleteGeneration);
+        } catch (IOException e) {
+            log.debug("No se pudieron listar generaciones antiguas del indice HNSW", e);
+        }
+    }
+
+    /**
+     * Borra una generacion. La raiz solo pierde sus ficheros Lucene: conserva el puntero y las subgeneraciones.
+     */
+    private void deleteGeneration(Path generation) {
+        boolean root = generation.equals(indexRoot);
+        try (var files = Files.walk(generation, root ? 1 : Integer.MAX_VALUE)) {
+            files.sorted(Comparator.reverseOrder())
+                    .filter(path -> !root || Files.isRegularFile(path))
+                    .filter(path -> !path.getFileName().toString().startsWith(ACTIVE_GENERATION_FILE))
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            log.debug("No se pudo borrar {} de una generacion retirada del indice HNSW", path, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.debug("No se pudo borrar la generacion del indice HNSW {}", generation, e);
+        }
+    }
+
+    private java.util.Optional<RagOpsService> ragOps() {
+        return java.util.Optional.ofNullable(ragOpsServiceProvider.getIfAvailable());
+    }
+
+    /**
+     * Mide cuanto tarda una escritura en ser visible: se captura la pendiente antes de reabrir
+     * y se registra en el timer solo si el reader realmente cambio.
+     */
+    private final class RefreshLagListener implements ReferenceManager.RefreshListener {
+
+        @Override
+        public void beforeRefresh() {
+            refreshingWriteNanos.set(oldestPendingWriteNanos.getAndSet(0L));
+        }
+
+        @Override
+        public void afterRefresh(boolean didRefresh) {
+            long pendingSince = refreshingWriteNanos.getAndSet(0L);
+            // Sin cambios que abrir significa que un refresco previo ya hizo visible la escritura.
+            if (pendingSince == 0L || !didRefresh) {
+                return;
+            }
+            refreshLagTimer.record(System.nanoTime() - pendingSince, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Watermark persistido en el user-data de cada commit Lucene.
+     */
+    record IndexWatermark(Instant committedAt, long lastChunkId, String indexEpoch) {
+
+        private static final String KEY_COMMITTED_AT = "rag.watermark.committed_at";
+        private static final String KEY_LAST_CHUNK_ID = "rag.watermark.last_chunk_id";
+        private static final String KEY_INDEX_EPOCH = "rag.watermark.index_epoch";
+
+        Map<String, String> toCommitData() {
+            Map<String, String> data = new LinkedHashMap<>();
+            data.put(KEY_COMMITTED_AT, String.valueOf(committedAt.toEpochMilli()));
+            data.put(KEY_LAST_CHUNK_ID, String.valueOf(lastChunkId));
+            data.put(KEY_INDEX_EPOCH, indexEpoch);
+            return data;
+        }
+
+        static IndexWatermark fromCommitData(Map<String, String> data) {
+            if (data == null || !data.containsKey(KEY_COMMITTED_AT) || !data.containsKey(KEY_INDEX_EPOCH)) {
+                return null;
+            }
+            try {
+                return new IndexWatermark(
+                        Instant.ofEpochMilli(Long.parseLong(data.get(KEY_COMMITTED_AT))),
+                        Long.parseLong(data.getOrDefault(KEY_LAST_CHUNK_ID, "0")),
+                        data.get(KEY_INDEX_EPOCH)
+                );
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Directorio Lucene con su writer y su searcher NRT; la unidad que se intercambia tras un rebuild.
+     */
+    private record IndexGeneration(Path path,
+                                   Directory directory,
+                                   IndexWriter writer,
+                                   SearcherManager searcherManager,
+                                   int schemaVersion) {
+    }
+
+    /**
+     * Searcher prestado junto al manager que lo entrego, para devolverlo al correcto tras un swap.
+     */
+    private record LeasedSearcher(SearcherManager manager, IndexSearcher searcher, int schemaVersion) {
+    }
+
+    @FunctionalInterface
+    private interface ShadowWrite {
+        long apply(ShadowBuild build) throws IOException;
+    }
+
+    /**
+     * Estado de una generacion sombra en construccion.
+     */
+    private static final class ShadowBuild {
+
+        private final Path path;
+        private final Directory directory;
+        private final IndexWriter writer;
+        private final String epoch;
+        // Borrados vivos durante el rebuild: se reaplican antes del swap por si un indexador leyo la fila antes.
+        private final Set<Long> deletedChunkIds = ConcurrentHashMap.newKeySet();
+        private final AtomicLong indexedVectors = new AtomicLong();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        private ShadowBuild(Path path, Directory directory, IndexWriter writer, String epoch) {
+            this.path = path;
+            this.directory = directory;
+            this.writer = writer;
+            this.epoch = epoch;
+        }
+
+        Path path() {
+            return path;
+        }
+
+        Directory directory() {
+            return directory;
+        }
+
+        IndexWriter writer() {
+            return writer;
+        }
+
+        String epoch() {
+            return epoch;
+        }
+
+        void rememberDeleted(Collection<Long> chunkIds) {
+            for (Long chunkId : chunkIds) {
+                if (chunkId != null) {
+                    deletedChunkIds.add(chunkId);
+                }
+            }
+        }
+
+        List<Long> drainDeletedChunkIds() {
+            return new ArrayList<>(deletedChunkIds);
+        }
+
+        void addIndexed(int count) {
+            indexedVectors.addAndGet(count);
+        }
+
+        long indexedVectors() {
+            return indexedVectors.get();
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        void fail(Exception error) {
+            failure.compareAndSet(null, error);
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        boolean failed() {
+            return failure.get() != null;
+        }
+
+        void throwIfCancelled() {
+            if (!cancelled) {
+                return;
+            }
+            Exception error = failure.get();
+            throw error == null
+                    ? new IllegalStateException("Rebuild del indice HNSW cancelado.")
+                    : new IllegalStateException("Rebuild del indice HNSW abortado.", error);
+        }
+    }
+
+    /**
+     * Progreso del rebuild con sombra para la consola de operaciones.
+     * `phase`: idle, indexing, merging, swapping, done, failed.
+     */
+    public record RebuildProgress(boolean running,
+                                  String trigger,
+                                  String phase,
+                                  Instant startedAt,
+                                  Instant finishedAt,
+                                  long totalVectors,
+                                  long indexedVectors) {
+
+        static RebuildProgress idle() {
+            return new RebuildProgress(false, null, "idle", null, null, 0L, 0L);
+        }
+
+        static RebuildProgress started(String trigger, Instant startedAt, long totalVectors) {
+            return new RebuildProgress(true, trigger, "indexing", startedAt, null, Math.max(0L, totalVectors), 0L);
+        }
+
+        RebuildProgress withPhase(String nextPhase) {
+            return new RebuildProgress(running, trigger, nextPhase, startedAt, finishedAt, totalVectors, indexedVectors);
+        }
+
+        RebuildProgress advanced(int count) {
+            return new RebuildProgress(running, trigger, phase, startedAt, finishedAt, totalVectors, indexedVectors + count);
+        }
+
+        RebuildProgress finished(String finalPhase, long finalIndexedVectors) {
+            return new RebuildProgress(false, trigger, finalPhase, startedAt, Instant.now(), totalVectors, finalIndexedVectors);
+        }
+
+        /**
+         * Throughput medio desde el inicio hasta ahora (o hasta el final si ya termino).
+         */
+        public double vectorsPerSecond() {
+            if (startedAt == null) {
+                return 0.0;
+            }
+            Instant end = finishedAt == null ? Instant.now() : finishedAt;
+            double seconds = Duration.between(startedAt, end).toMillis() / 1000.0;
+            return seconds <= 0.0 ? 0.0 : indexedVectors / seconds;
+        }
+    }
+
+    /**
+     * Hit de busqueda con el embedding float32 del chunk, para que MMR no tenga que ir a `vectors`.
+     * `embedding` es una vista sobre un array compartido por los hits de la busqueda: no se escribe.
+     * Null cuando el store mapeado sirve los vectores (`vectorView`).
+     */
+    public record SearchHit(long chunkId, String owner, float score, FloatBuffer embedding) {
     }
 
-    public record IndexedVectorRecord(Long chunkId, String owner, float[] embedding, Instant createdAt) {
+    public record IndexedVectorRecord(Long chunkId, String owner, float[] embedding, Instant createdAt, String text) {
     }
 }
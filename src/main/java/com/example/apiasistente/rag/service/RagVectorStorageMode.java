@@ -0,0 +1,78 @@
+package com.example.apiasistente.rag.service;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene912.Lucene912Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswScalarQuantizedVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+
+import java.util.Locale;
+
+/**
+ * Formato en disco de los vectores del indice HNSW del RAG.
+ *
+ * - FLOAT32: grafo y vectores en float32 (formato por defecto de Lucene).
+ * - INT8 / INT4: grafo recorrido sobre vectores cuantizados escalarmente (1 byte o medio byte por
+ *   dimension). Lucene conserva ademas los float32 originales en un fichero aparte que no necesita
+ *   estar en page cache para recorrer el grafo; se usan para merges y para re-puntuar candidatos.
+ *
+ * El formato se graba por segmento: cambiar de modo no invalida el indice, los segmentos nuevos
+ * usan el modo nuevo y un rebuild o un merge completo convierte el resto.
+ */
+public enum RagVectorStorageMode {
+    FLOAT32(0),
+    INT8(7),
+    INT4(4);
+
+    private final int bits;
+
+    RagVectorStorageMode(int bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Acepta `float32`, `int8` e `int4` (sin distinguir mayusculas). Vacio equivale a FLOAT32.
+     */
+    public static RagVectorStorageMode parse(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return FLOAT32;
+        }
+        try {
+            return valueOf(raw.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Modo de almacenamiento vectorial desconocido: " + raw
+                    + " (esperado float32, int8 o int4)", e);
+        }
+    }
+
+    public boolean quantized() {
+        return bits > 0;
+    }
+
+    /**
+     * Formato kNN para el campo de embeddings. int4 se empaqueta a dos dimensiones por byte.
+     */
+    public KnnVectorsFormat vectorsFormat(int maxConn, int beamWidth) {
+        if (!quantized()) {
+            return new Lucene99HnswVectorsFormat(maxConn, beamWidth);
+        }
+        return new Lucene99HnswScalarQuantizedVectorsFormat(maxConn, beamWidth, 1, bits, bits == 4, null, null);
+    }
+
+    /**
+     * Codec del indice con este formato para todos los campos vectoriales.
+     */
+    public Codec codec(int maxConn, int beamWidth) {
+        KnnVectorsFormat format = vectorsFormat(maxConn, beamWidth);
+        return new Lucene912Codec() {
+            @Override
+            public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                return format;
+            }
+        };
+    }
+
+    public Codec codec() {
+        return codec(Lucene99HnswVectorsFormat.DEFAULT_MAX_CONN, Lucene99HnswVectorsFormat.DEFAULT_BEAM_WIDTH);
+    }
+}
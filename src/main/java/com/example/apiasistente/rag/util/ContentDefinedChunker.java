@@ -0,0 +1,196 @@
+package com.example.apiasistente.rag.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Chunking por contenido (CDC): las fronteras las decide un hash rodante sobre el propio texto,
+ * no la posicion, asi que editar una frase solo cambia los chunks de alrededor.
+ *
+ * Como corta:
+ * - Gear hash por caracter; pasado `minSize`, un hash con los bits altos a cero "arma" el corte
+ *   (en media cada `targetSize - minSize` caracteres).
+ * - El corte armado espera a la siguiente frontera natural: fin de frase o parrafo (`SENTENCE`)
+ *   o fin de linea (`LINE`, para codigo y logs).
+ * - Al llegar a `maxSize` se corta en la ultima frontera, o en el ultimo espacio, pasado `minSize`.
+ *
+ * Importante:
+ * - Sin solape entre chunks: el solape copiaria texto del vecino y una edicion tocaria dos chunks.
+ * - El hash se reinicia en cada chunk, pero con `minSize >= 64` solo depende de los ultimos 64 caracteres:
+ *   tras una edicion las fronteras vuelven a coincidir en cuanto coincide un corte.
+ * - `Incremental` admite el texto por trozos y da los mismos chunks que `chunk` sobre el texto entero
+ *   (sin recortar: los blancos de los extremos no cuentan).
+ */
+public final class ContentDefinedChunker {
+
+    /**
+     * Frontera natural a la que se ajustan los cortes.
+     */
+    public enum Boundary {
+        SENTENCE,
+        LINE
+    }
+
+    // Ventana efectiva del gear hash: cada caracter sale del hash tras 64 desplazamientos.
+    private static final int HASH_WINDOW = 64;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // splitmix64 con semilla fija: la tabla (y por tanto los cortes) no depende de la JVM.
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private ContentDefinedChunker() {
+    }
+
+    public static List<String> chunk(String text, int minSize, int targetSize, int maxSize, Boundary boundary) {
+        List<String> out = new ArrayList<>();
+        String clean = text == null ? "" : text.trim();
+        if (clean.isEmpty()) {
+            return out;
+        }
+        Incremental incremental = new Incremental(minSize, targetSize, maxSize, boundary, out::add);
+        incremental.append(clean);
+        incremental.finish();
+        return out;
+    }
+
+    /**
+     * Chunker incremental: recibe el texto por trozos y entrega cada chunk en cuanto queda cerrado.
+     * Retiene el chunk en curso (menos de `maxSize` caracteres), los blancos finales pendientes y lo ya
+     * cortado del ultimo `append` hasta la siguiente compactacion. No es thread-safe.
+     */
+    public static final class Incremental {
+
+        private final int minSize;
+        private final int maxSize;
+        private final int shift;
+        private final Boundary boundary;
+        private final Consumer<String> sink;
+        private final StringBuilder buffer = new StringBuilder();
+
+        // Inicio del chunk en curso dentro de `buffer`; el resto de posiciones son relativas a el.
+        private int start;
+        private int scanned;
+        // Longitud hasta el ultimo caracter no blanco: los blancos finales esperan a saber si cierran el texto.
+        private int committed;
+        private long hash;
+        private boolean armed;
+        private int lastBoundary;
+        private int lastSpace;
+
+        public Incremental(int minSize, int targetSize, int maxSize, Boundary boundary, Consumer<String> sink) {
+            this.minSize = Math.max(HASH_WINDOW, minSize);
+            this.maxSize = Math.max(this.minSize + 1, maxSize);
+            int spread = Math.max(2, Math.min(targetSize, this.maxSize) - this.minSize);
+            // Bits altos a cero con probabilidad 1/2^bits: un corte armado cada ~spread caracteres.
+            int bits = Math.max(1, 31 - Integer.numberOfLeadingZeros(spread));
+            this.shift = 64 - bits;
+            this.boundary = boundary == null ? Boundary.SENTENCE : boundary;
+            this.sink = sink;
+        }
+
+        public void append(CharSequence text) {
+            if (text == null || text.isEmpty()) {
+                return;
+            }
+            int from = buffer.length();
+            buffer.append(text);
+            for (int i = buffer.length() - 1; i >= from; i--) {
+                if (!Character.isWhitespace(buffer.charAt(i))) {
+                    committed = i + 1 - start;
+                    break;
+                }
+            }
+            drain();
+        }
+
+        /**
+         * Entrega lo que quede pendiente como ultimo chunk.
+         */
+        public void finish() {
+            emit(committed);
+            buffer.setLength(0);
+            start = 0;
+        }
+
+        private void drain() {
+            while (scanned < committed) {
+                if (scanned == 0 && Character.isWhitespace(buffer.charAt(start))) {
+                    // Los chunks empiezan en texto: el espacio entre chunks no cuenta para los tamanos.
+                    start++;
+                    committed--;
+                    continue;
+                }
+                char c = buffer.charAt(start + scanned);
+                char previous = scanned == 0 ? '\0' : buffer.charAt(start + scanned - 1);
+                scanned++;
+                hash = (hash << 1) + GEAR[(c ^ (c >>> 8)) & 0xFF];
+
+                if (scanned < minSize) {
+                    continue;
+                }
+                if (!armed && (hash >>> shift) == 0) {
+                    armed = true;
+                }
+                if (Character.isWhitespace(c)) {
+                    lastSpace = scanned;
+                    if (isBoundary(previous, c)) {
+                        lastBoundary = scanned;
+                        if (armed) {
+                            emit(scanned);
+                            continue;
+                        }
+                    }
+                }
+                if (scanned >= maxSize) {
+                    emit(lastBoundary > 0 ? lastBoundary : lastSpace > 0 ? lastSpace : scanned);
+                }
+            }
+        }
+
+        private boolean isBoundary(char previous, char c) {
+            if (boundary == Boundary.LINE) {
+                return c == '\n';
+            }
+            return previous == '.' || previous == '!' || previous == '?' || (c == '\n' && previous == '\n');
+        }
+
+        /**
+         * Cierra el chunk en `end` y vuelve a escanear el resto con el estado reiniciado.
+         */
+        private void emit(int end) {
+            String piece = buffer.substring(start, start + end).trim();
+            if (!piece.isEmpty()) {
+                sink.accept(piece);
+            }
+            start += end;
+            committed = Math.max(0, committed - end);
+            compact();
+            scanned = 0;
+            hash = 0L;
+            armed = false;
+            lastBoundary = 0;
+            lastSpace = 0;
+        }
+
+        /**
+         * Suelta lo ya cortado solo cuando es al menos la mitad del buffer: borrar el prefijo en cada corte
+         * desplazaria el resto del texto cada vez y un documento entero en un `append` seria cuadratico.
+         */
+        private void compact() {
+            if (start >= maxSize && start >= buffer.length() - start) {
+                buffer.delete(0, start);
+                start = 0;
+            }
+        }
+    }
+}
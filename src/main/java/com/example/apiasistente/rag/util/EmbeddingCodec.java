@@ -0,0 +1,62 @@
+package com.example.apiasistente.rag.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Formato binario de embeddings para la columna `vectors.embedding_bin`.
+ *
+ * Layout little-endian: `[version:1 byte][dimension:int32][dimension x float32]`.
+ * Son 4 bytes por dimension frente a los ~18-20 del JSON de doubles, y se decodifica con una
+ * copia de memoria directa a `float[]`, sin parser ni `double[]`/`List<Double>` intermedios.
+ */
+public final class EmbeddingCodec {
+
+    public static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 1 + Integer.BYTES;
+
+    private EmbeddingCodec() {
+    }
+
+    public static byte[] encode(float[] vector) {
+        int dimension = vector == null ? 0 : vector.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(VERSION);
+        buffer.putInt(dimension);
+        if (dimension > 0) {
+            buffer.asFloatBuffer().put(vector);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Devuelve arreglo vacio si el payload es nulo, de otra version o esta truncado,
+     * igual que `OllamaClient.fromJson` con un JSON invalido.
+     */
+    public static float[] decode(byte[] payload) {
+        int dimension = dimension(payload);
+        if (dimension <= 0) {
+            return new float[0];
+        }
+        float[] vector = new float[dimension];
+        ByteBuffer.wrap(payload, HEADER_BYTES, dimension * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(vector);
+        return vector;
+    }
+
+    /**
+     * Dimension declarada en la cabecera, o -1 si el payload no es valido.
+     */
+    public static int dimension(byte[] payload) {
+        if (payload == null || payload.length < HEADER_BYTES || payload[0] != VERSION) {
+            return -1;
+        }
+        int dimension = ByteBuffer.wrap(payload, 1, Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (dimension < 0 || payload.length != HEADER_BYTES + (long) dimension * Float.BYTES) {
+            return -1;
+        }
+        return dimension;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.apiasistente.rag.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Fronteras de frase/parrafo de un chunk como offsets, para la compresion del prompt.
+ *
+ * Corta igual que el antiguo `split("(?m)\\n\\s*\\n+|(?<=[.!?])\\s+")`: en un tramo de espacios que sigue a
+ * `.`, `!` o `?`, o que contiene al menos dos saltos de linea. Cada fragmento se recorta y los vacios se omiten.
+ *
+ * Los offsets se calculan al ingerir y viajan con el chunk (`chunks.segment_offsets`) como varints:
+ * `[n][hueco desde el fin anterior][longitud]...`, normalmente 2-3 bytes por fragmento.
+ */
+public final class SentenceSegmenter {
+
+    public static final byte VERSION = 1;
+    private static final int[] EMPTY = new int[0];
+
+    private SentenceSegmenter() {
+    }
+
+    /**
+     * Devuelve pares `[inicio, fin)` sobre `text`, ya sin espacios en los bordes.
+     */
+    public static int[] segment(String text) {
+        if (text == null || text.isEmpty()) {
+            return EMPTY;
+        }
+        int length = text.length();
+        int[] bounds = new int[16];
+        int count = 0;
+        int fragmentStart = 0;
+        int i = 0;
+        while (i < length) {
+            if (!isSpace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int runStart = i;
+            int newlines = 0;
+            while (i < length && isSpace(text.charAt(i))) {
+                if (text.charAt(i) == '\n') {
+                    newlines++;
+                }
+                i++;
+            }
+            boolean afterPunctuation = runStart > 0 && isSentenceEnd(text.charAt(runStart - 1));
+            if (afterPunctuation || newlines >= 2) {
+                if (count + 2 > bounds.length) {
+                    bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                }
+                count = addTrimmed(text, fragmentStart, runStart, bounds, count);
+                fragmentStart = i;
+            }
+        }
+        if (count + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length + 2);
+        }
+        count = addTrimmed(text, fragmentStart, length, bounds, count);
+        return Arrays.copyOf(bounds, count);
+    }
+
+    public static byte[] encode(int[] bounds) {
+        int pairs = bounds == null ? 0 : bounds.length / 2;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + pairs * 3);
+        out.write(VERSION);
+        writeVarint(out, pairs);
+        int previousEnd = 0;
+        for (int p = 0; p < pairs; p++) {
+            int start = bounds[2 * p];
+            int end = bounds[2 * p + 1];
+            writeVarint(out, start - previousEnd);
+            writeVarint(out, end - start);
+            previousEnd = end;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Devuelve null si el payload falta, es de otra version o esta corrupto: el llamador segmenta en caliente.
+     */
+    public static int[] decode(byte[] payload, int textLength) {
+        if (payload == null || payload.length < 2 || payload[0] != VERSION) {
+            return null;
+        }
+        int[] cursor = {1};
+        int pairs = readVarint(payload, cursor);
+        if (pairs < 0 || pairs > textLength) {
+            return null;
+        }
+        int[] bounds = new int[pairs * 2];
+        int previousEnd = 0;
+        for (int p = 0; p < pairs; p++) {
+            int gap = readVarint(payload, cursor);
+            int span = readVarint(payload, cursor);
+            if (gap < 0 || span < 0) {
+                return null;
+            }
+            int start = previousEnd + gap;
+            int end = start + span;
+            if (end > textLength) {
+                return null;
+            }
+            bounds[2 * p] = start;
+            bounds[2 * p + 1] = end;
+            previousEnd = end;
+        }
+        return bounds;
+    }
+
+    private static int addTrimmed(String text, int start, int end, int[] bounds, int count) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start >= end) {
+            return count;
+        }
+        bounds[count] = start;
+        bounds[count + 1] = end;
+        return count + 2;
+    }
+
+    // Mismo conjunto que `\s` en java.util.regex sin UNICODE_CHARACTER_CLASS.
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '!' || c == '?';
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(byte[] payload, int[] cursor) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (cursor[0] >= payload.length) {
+                return -1;
+            }
+            byte b = payload[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -2,6 +2,7 @@ package com.example.apiasistente.rag.util;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Utilidad para Text Chunker.
@@ -33,5 +34,64 @@ public class TextChunker {
         }
         return out;
     }
-}
 
+    /**
+     * Misma ventana que `chunk` pero con el texto llegando por trozos: da los mismos chunks que
+     * `chunk` sobre el texto concatenado y retiene como mucho `chunkSize` caracteres mas los blancos pendientes.
+     */
+    public static final class Incremental {
+
+        private final int chunkSize;
+        private final int step;
+        private final Consumer<String> sink;
+        private final StringBuilder buffer = new StringBuilder();
+        // Longitud hasta el ultimo caracter no blanco: los blancos finales no cuentan hasta saber si cierran el texto.
+        private int committed;
+
+        public Incremental(int chunkSize, int overlap, Consumer<String> sink) {
+            this.chunkSize = chunkSize;
+            int safeOverlap = Math.max(0, overlap);
+            if (safeOverlap >= chunkSize) {
+                safeOverlap = Math.max(0, chunkSize - 1);
+            }
+            this.step = chunkSize - safeOverlap;
+            this.sink = sink;
+        }
+
+        public void append(CharSequence text) {
+            if (text == null || chunkSize <= 0) {
+                return;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                boolean blank = Character.isWhitespace(c);
+                if (buffer.isEmpty() && blank) {
+                    continue;
+                }
+                buffer.append(c);
+                if (!blank) {
+                    committed = buffer.length();
+                }
+                while (committed > chunkSize) {
+                    emit(buffer.substring(0, chunkSize));
+                    buffer.delete(0, step);
+                    committed -= step;
+                }
+            }
+        }
+
+        public void finish() {
+            buffer.setLength(committed);
+            emit(buffer.toString());
+            buffer.setLength(0);
+            committed = 0;
+        }
+
+        private void emit(String window) {
+            String piece = window.trim();
+            if (!piece.isEmpty()) {
+                sink.accept(piece);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.apiasistente.rag.util;
+
+/**
+ * Primitivas float32 sobre tramos de arreglos que `VectorMath` delega en la implementacion disponible.
+ */
+interface VectorKernel {
+
+    String name();
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+}
@@ -1,47 +1,86 @@
 package com.example.apiasistente.rag.util;
 
+import java.nio.FloatBuffer;
+import java.util.List;
+
 /**
- * Utilidad para Vector Math.
+ * Utilidad para Vector Math sobre embeddings float32.
+ *
+ * Importante:
+ * - Todo opera en float32, la precision de Ollama y del indice: no hay copias a `double[]` por el camino.
+ * - El producto escalar usa la Vector API (SIMD) si la JVM arranca con `--add-modules jdk.incubator.vector`
+ *   y un bucle escalar si no. `-Dapiasistente.vector.simd=false` fuerza el escalar.
+ * - Las vistas `FloatBuffer` del store mapeado se leen por bloques a un buffer del hilo, sin mover su posicion.
  */
 public class VectorMath {
 
+    private static final int BLOCK = 256;
+    // Vive en el source set `vector`, el unico que se compila con el modulo de incubadora.
+    private static final String PANAMA_KERNEL = "com.example.apiasistente.rag.util.PanamaVectorKernel";
+    private static final VectorKernel KERNEL = loadKernel();
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[2][BLOCK]);
+
     private VectorMath() {
     }
 
-    public static double cosine(double[] a, double[] b) {
-        if (a == null || b == null || a.length != b.length || a.length == 0) return -1.0;
+    /**
+     * Implementacion activa ("panama-256", "scalar"...), para logs y metricas.
+     */
+    public static String implementation() {
+        return KERNEL.name();
+    }
 
-        double dot = 0.0, na = 0.0, nb = 0.0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            na += a[i] * a[i];
-            nb += b[i] * b[i];
+    /**
+     * Producto escalar crudo. Ambos vectores deben tener la misma dimension.
+     */
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Dimensiones distintas: " + a.length + " != " + b.length);
         }
+        return KERNEL.dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * Producto escalar de `query` contra cada vector de `vectors`; el resultado i-esimo va a `out[i]`.
+     */
+    public static void dotAll(float[] query, float[][] vectors, float[] out) {
+        if (out.length < vectors.length) {
+            throw new IllegalArgumentException("Salida mas corta que el lote: " + out.length + " < " + vectors.length);
+        }
+        for (int i = 0; i < vectors.length; i++) {
+            out[i] = dot(query, vectors[i]);
+        }
+    }
+
+    public static double cosine(float[] a, float[] b) {
+        if (a == null || b == null || a.length != b.length || a.length == 0) return -1.0;
+
+        double dot = KERNEL.dot(a, 0, b, 0, a.length);
+        double na = KERNEL.dot(a, 0, a, 0, a.length);
+        double nb = KERNEL.dot(b, 0, b, 0, b.length);
         if (na == 0 || nb == 0) return -1.0;
-        return dot / (Math.sqrt(na) * Math.sqrt(nb));
+        double cosine = dot / (Math.sqrt(na) * Math.sqrt(nb));
+        return Double.isFinite(cosine) ? cosine : -1.0;
     }
 
     /**
      * Normaliza el vector a norma 1 (unit vector).
      * Si no se puede normalizar, devuelve arreglo vacio.
      */
-    public static double[] normalize(double[] vector) {
+    public static float[] normalize(float[] vector) {
         if (vector == null || vector.length == 0) {
-            return new double[0];
+            return new float[0];
         }
 
-        double normSquared = 0.0;
-        for (double v : vector) {
-            normSquared += v * v;
-        }
+        double normSquared = KERNEL.dot(vector, 0, vector, 0, vector.length);
         if (normSquared <= 0.0 || !Double.isFinite(normSquared)) {
-            return new double[0];
+            return new float[0];
         }
 
-        double norm = Math.sqrt(normSquared);
-        double[] normalized = new double[vector.length];
+        float inv = (float) (1.0 / Math.sqrt(normSquared));
+        float[] normalized = new float[vector.length];
         for (int i = 0; i < vector.length; i++) {
-            normalized[i] = vector[i] / norm;
+            normalized[i] = vector[i] * inv;
         }
         return normalized;
     }
@@ -50,16 +89,94 @@ public class VectorMath {
      * Similaridad para vectores unitarios.
      * Equivale al coseno y evita recalcular norma por candidato.
      */
-    public static double cosineUnit(double[] a, double[] b) {
+    public static double cosineUnit(float[] a, float[] b) {
         if (a == null || b == null || a.length == 0 || a.length != b.length) {
             return -1.0;
         }
+        return finiteOrMinusOne(KERNEL.dot(a, 0, b, 0, a.length));
+    }
+
+    /**
+     * Variante sobre vistas `FloatBuffer` (p. ej. del store mapeado): lee por indice absoluto,
+     * sin mover la posicion de las vistas.
+     */
+    public static double cosineUnit(FloatBuffer a, FloatBuffer b) {
+        if (a == null || b == null || a.limit() == 0 || a.limit() != b.limit()) {
+            return -1.0;
+        }
+        return finiteOrMinusOne(dot(a, b, a.limit()));
+    }
 
-        double dot = 0.0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
+    public static double cosineUnit(float[] a, FloatBuffer b) {
+        if (a == null || b == null || a.length == 0 || a.length != b.limit()) {
+            return -1.0;
+        }
+        if (b.hasArray()) {
+            return finiteOrMinusOne(KERNEL.dot(a, 0, b.array(), b.arrayOffset(), a.length));
+        }
+        float[] block = SCRATCH.get()[1];
+        float sum = 0f;
+        for (int from = 0; from < a.length; from += BLOCK) {
+            int length = Math.min(BLOCK, a.length - from);
+            b.get(from, block, 0, length);
+            sum += KERNEL.dot(a, from, block, 0, length);
         }
-        return Double.isFinite(dot) ? dot : -1.0;
+        return finiteOrMinusOne(sum);
     }
-}
 
+    /**
+     * `cosineUnit` de `query` contra un lote de vistas; las nulas o de otra dimension dan -1.
+     */
+    public static void cosineUnitAll(FloatBuffer query, List<FloatBuffer> vectors, float[] out) {
+        if (out.length < vectors.size()) {
+            throw new IllegalArgumentException("Salida mas corta que el lote: " + out.length + " < " + vectors.size());
+        }
+        for (int i = 0; i < vectors.size(); i++) {
+            out[i] = (float) cosineUnit(query, vectors.get(i));
+        }
+    }
+
+    private static float dot(FloatBuffer a, FloatBuffer b, int length) {
+        if (a.hasArray() && b.hasArray()) {
+            return KERNEL.dot(a.array(), a.arrayOffset(), b.array(), b.arrayOffset(), length);
+        }
+        float[][] scratch = SCRATCH.get();
+        float sum = 0f;
+        for (int from = 0; from < length; from += BLOCK) {
+            int blockLength = Math.min(BLOCK, length - from);
+            float[] left = a.hasArray() ? a.array() : scratch[0];
+            int leftOffset = a.hasArray() ? a.arrayOffset() + from : 0;
+            if (!a.hasArray()) {
+                a.get(from, left, 0, blockLength);
+            }
+            float[] right = b.hasArray() ? b.array() : scratch[1];
+            int rightOffset = b.hasArray() ? b.arrayOffset() + from : 0;
+            if (!b.hasArray()) {
+                b.get(from, right, 0, blockLength);
+            }
+            sum += KERNEL.dot(left, leftOffset, right, rightOffset, blockLength);
+        }
+        return sum;
+    }
+
+    private static double finiteOrMinusOne(float dot) {
+        return Float.isFinite(dot) ? dot : -1.0;
+    }
+
+    private static VectorKernel loadKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("apiasistente.vector.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarVectorKernel.INSTANCE;
+        }
+        try {
+            Class<?> kernel = Class.forName(PANAMA_KERNEL);
+            if (!(boolean) kernel.getDeclaredMethod("isSupported").invoke(null)) {
+                return ScalarVectorKernel.INSTANCE;
+            }
+            return (VectorKernel) kernel.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Sin el source set `vector` en el classpath o con un modulo que no enlaza.
+            return ScalarVectorKernel.INSTANCE;
+        }
+    }
+}
@@ -93,30 +93,37 @@ public class OllamaClient {
     /**
      * Retrieval usa un solo embedding por consulta; se alinea con el endpoint actual `/embed`.
      */
-    public double[] embedOne(String text) {
+    public float[] embedOne(String text) {
         EmbedRequest req = new EmbedRequest(requireEmbedModel(), text);
         EmbedResponse res = postForJson("/embed", req, EmbedResponse.class, "Ollama embed");
 
         if (res == null || res.embeddings == null || res.embeddings.isEmpty()) {
-            return new double[0];
+            return new float[0];
         }
 
-        List<Double> firstEmbedding = res.embeddings.get(0);
-        if (firstEmbedding == null || firstEmbedding.isEmpty()) {
-            return new double[0];
-        }
-        return toPrimitive(firstEmbedding);
+        float[] firstEmbedding = res.embeddings.get(0);
+        return firstEmbedding == null ? new float[0] : firstEmbedding;
     }
 
-    public List<double[]> embedMany(List<String> texts) {
+    /**
+     * Jackson lee cada embedding directo a `float[]`: sin `List<Double>` intermedia ni copia posterior.
+     */
+    public List<float[]> embedMany(List<String> texts) {
         EmbedRequest req = new EmbedRequest(requireEmbedModel(), texts);
         EmbedResponse res = postForJson("/embed", req, EmbedResponse.class, "Ollama embed");
 
         if (res == null || res.embeddings == null) return List.of();
-        return res.embeddings.stream().map(this::toPrimitive).toList();
+        return res.embeddings.stream().map(embedding -> embedding == null ? new float[0] : embedding).toList();
     }
 
-    public String toJson(double[] v) {
+    /**
+     * Modelo de embeddings vigente (el del setup si lo hay). Los vectores lo guardan para saber si se pueden reutilizar.
+     */
+    public String embedModel() {
+        return resolveConfiguredEmbedModel();
+    }
+
+    public String toJson(float[] v) {
         try {
             return mapper.writeValueAsString(v);
         } catch (Exception e) {
@@ -124,20 +131,14 @@ public class OllamaClient {
         }
     }
 
-    public double[] fromJson(String json) {
+    public float[] fromJson(String json) {
         try {
-            return mapper.readValue(json, double[].class);
+            return mapper.readValue(json, float[].class);
         } catch (Exception e) {
-            return new double[0];
+            return new float[0];
         }
     }
 
-    private double[] toPrimitive(List<Double> list) {
-        double[] out = new double[list.size()];
-        for (int i = 0; i < list.size(); i++) out[i] = list.get(i);
-        return out;
-    }
-
     public record Message(String role, String content, List<String> images) {
         public Message(String role, String content) {
             this(role, content, List.of());
@@ -409,5 +410,5 @@ public class OllamaClient {
     public record EmbedRequest(String model, Object input) {}
 
     @JsonIgnoreProperties(ignoreUnknown = true)
-    public record EmbedResponse(String model, List<List<Double>> embeddings) {}
+    public record EmbedResponse(String model, List<float[]> embeddings) {}
 }
@@ -0,0 +1,566 @@
+package com.example.apiasistente.shared.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache acotado en bytes con admision por frecuencia al estilo W-TinyLFU.
+ *
+ * Estructura:
+ * - Ventana LRU (~1% del peso): absorbe rafagas de claves nuevas sin contaminar la zona principal.
+ * - Zona principal SLRU: `probation` (recien admitidos) y `protected` (~80%, leidos mas de una vez).
+ * - Sketch Count-Min de contadores de 4 bits (tope 15) con envejecimiento: al salir de la ventana un
+ *   candidato solo desplaza a la victima LRU de `probation` si su frecuencia estimada es mayor.
+ *
+ * Cada entrada caduca a los `ttl` de escribirse; las caducadas se descartan al leerlas y en un barrido
+ * periodico que dispara la propia escritura. Con `MeterRegistry` publica aciertos, fallos, expulsiones
+ * (por tamano o caducidad), entradas y peso bajo `apiasistente.cache.*` con el tag `cache`.
+ *
+ * El volumen esperado (cientos o pocos miles de entradas por cache) no justifica buffers de lectura
+ * concurrentes: un unico lock mantiene listas, sketch y pesos coherentes.
+ */
+public final class TinyLfuCache<K, V> {
+
+    private static final String NAME_GETS = "apiasistente.cache.gets";
+    private static final String NAME_EVICTIONS = "apiasistente.cache.evictions";
+    private static final String NAME_SIZE = "apiasistente.cache.size";
+    private static final String NAME_WEIGHT = "apiasistente.cache.weight.bytes";
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final long MIN_SWEEP_INTERVAL_MS = 1_000L;
+
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long protectedMaxWeight;
+    private final long ttlMs;
+    private final Weigher<K, V> weigher;
+    private final LongSupplier clockMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, Node<K, V>> data = new HashMap<>();
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedQueue = new AccessOrder<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+    private long nextSweepAt;
+
+    public TinyLfuCache(String name,
+                        long maxWeightBytes,
+                        Duration ttl,
+                        Weigher<K, V> weigher,
+                        MeterRegistry meterRegistry) {
+        this(name, maxWeightBytes, ttl, weigher, meterRegistry, System::currentTimeMillis);
+    }
+
+    /**
+     * `clockMillis` es reloj de pared: las caducidades sobreviven a un volcado y recarga del cache.
+     */
+    public TinyLfuCache(String name,
+                        long maxWeightBytes,
+                        Duration ttl,
+                        Weigher<K, V> weigher,
+                        MeterRegistry meterRegistry,
+                        LongSupplier clockMillis) {
+        this.maxWeight = Math.max(1L, maxWeightBytes);
+        this.windowMaxWeight = Math.max(1L, maxWeight * WINDOW_PERCENT / 100);
+        this.protectedMaxWeight = (maxWeight - windowMaxWeight) * PROTECTED_PERCENT / 100;
+        this.ttlMs = Math.max(1L, ttl == null ? Long.MAX_VALUE : ttl.toMillis());
+        this.weigher = weigher;
+        this.clockMillis = clockMillis;
+        this.nextSweepAt = clockMillis.getAsLong() + sweepIntervalMs();
+        if (meterRegistry == null) {
+            this.hits = null;
+            this.misses = null;
+            this.sizeEvictions = null;
+            this.expiredEvictions = null;
+            return;
+        }
+        this.hits = meterRegistry.counter(NAME_GETS, "cache", name, "result", "hit");
+        this.misses = meterRegistry.counter(NAME_GETS, "cache", name, "result", "miss");
+        this.sizeEvictions = meterRegistry.counter(NAME_EVICTIONS, "cache", name, "cause", "size");
+        this.expiredEvictions = meterRegistry.counter(NAME_EVICTIONS, "cache", name, "cause", "expired");
+        Gauge.builder(NAME_SIZE, this, TinyLfuCache::size)
+                .description("Entradas vivas en el cache")
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder(NAME_WEIGHT, this, TinyLfuCache::weightedSize)
+                .description("Peso estimado en bytes de las entradas del cache")
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Valor vigente o null. Toda consulta, acierte o no, cuenta como acceso para el sketch.
+     */
+    public V get(K key) {
+        if (key == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Node<K, V> node = data.get(key);
+            if (node != null && node.expiresAt <= clockMillis.getAsLong()) {
+                remove(node);
+                increment(expiredEvictions);
+                node = null;
+            }
+            if (node == null) {
+                increment(misses);
+                return null;
+            }
+            onHit(node);
+            increment(hits);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserta o reemplaza. Una entrada mas pesada que el cache entero no se guarda.
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        long weight = Math.max(1L, weigher.weigh(key, value));
+        lock.lock();
+        try {
+            long now = clockMillis.getAsLong();
+            sweepIfDue(now);
+            Node<K, V> existing = data.get(key);
+            if (existing != null) {
+                remove(existing);
+            }
+            if (weight > maxWeight) {
+                return;
+            }
+            sketch.increment(key);
+            Node<K, V> node = new Node<>(key, value, weight, expiresAt(now));
+            data.put(key, node);
+            sketch.ensureCapacity(data.size());
+            window.addLast(node, Node.WINDOW);
+            windowWeight += weight;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            windowWeight = 0L;
+            probationWeight = 0L;
+            protectedWeight = 0L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Barre las entradas caducadas. Devuelve cuantas se quitaron.
+     */
+    public int cleanUp() {
+        lock.lock();
+        try {
+            return sweep(clockMillis.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return data.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long weightedSize() {
+        lock.lock();
+        try {
+            return windowWeight + probationWeight + protectedWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Entradas vigentes de mas a menos valiosas: por frecuencia estimada y, a igualdad, `protected`,
+     * `probation` y ventana, cada zona de la mas reciente a la mas antigua. Es el orden en que conviene
+     * volcarlas para un arranque en caliente.
+     */
+    public List<Entry<K, V>> hottest() {
+        lock.lock();
+        try {
+            long now = clockMillis.getAsLong();
+            List<Entry<K, V>> entries = new ArrayList<>(data.size());
+            for (AccessOrder<K, V> queue : List.of(protectedQueue, probation, window)) {
+                for (Node<K, V> node = queue.last(); node != null; node = node.prev) {
+                    if (node.expiresAt > now) {
+                        entries.add(new Entry<>(node.key, node.value, node.expiresAt, sketch.frequency(node.key)));
+                    }
+                }
+            }
+            entries.sort(Comparator.comparingInt((Entry<K, V> entry) -> entry.frequency()).reversed());
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recarga una entrada volcada con `hottest()`, respetando su caducidad y frecuencia. Entra por el
+     * extremo frio de `probation`, asi que recargar en el orden de `hottest()` deja las mas valiosas
+     * como las mas recientes. No expulsa nada: si no cabe, se descarta y devuelve false.
+     */
+    public boolean restore(Entry<K, V> entry) {
+        if (entry == null || entry.key() == null || entry.value() == null) {
+            return false;
+        }
+        long weight = Math.max(1L, weigher.weigh(entry.key(), entry.value()));
+        lock.lock();
+        try {
+            if (entry.expiresAtMillis() <= clockMillis.getAsLong() || data.containsKey(entry.key())) {
+                return false;
+            }
+            if (windowWeight + probationWeight + protectedWeight + weight > maxWeight) {
+                return false;
+            }
+            Node<K, V> node = new Node<>(entry.key(), entry.value(), weight, entry.expiresAtMillis());
+            data.put(entry.key(), node);
+            sketch.ensureCapacity(data.size());
+            for (int i = 0; i < Math.min(FrequencySketch.MAX_COUNT, Math.max(1, entry.frequency())); i++) {
+                sketch.increment(entry.key());
+            }
+            probation.addFirst(node, Node.PROBATION);
+            probationWeight += weight;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.queue) {
+            case Node.WINDOW -> window.moveToLast(node);
+            case Node.PROTECTED -> protectedQueue.moveToLast(node);
+            default -> {
+                // Segundo acceso en `probation`: sube a `protected` y, si desborda, baja su LRU.
+                probation.remove(node);
+                probationWeight -= node.weight;
+                protectedQueue.addLast(node, Node.PROTECTED);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaxWeight) {
+                    Node<K, V> demoted = protectedQueue.first();
+                    if (demoted == null || demoted == node) {
+                        break;
+                    }
+                    protectedQueue.remove(demoted);
+                    protectedWeight -= demoted.weight;
+                    probation.addLast(demoted, Node.PROBATION);
+                    probationWeight += demoted.weight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Los que desbordan la ventana pasan a `probation` como candidatos y compiten con su LRU.
+     * Los candidatos quedan contiguos al final de `probation`, en orden de llegada.
+     */
+    private void evict() {
+        Node<K, V> candidate = null;
+        while (windowWeight > windowMaxWeight) {
+            Node<K, V> node = window.first();
+            window.remove(node);
+            windowWeight -= node.weight;
+            probation.addLast(node, Node.PROBATION);
+            probationWeight += node.weight;
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+
+        while (windowWeight + probationWeight + protectedWeight > maxWeight) {
+            Node<K, V> victim = probation.first();
+            if (victim == null) {
+                victim = protectedQueue.first() != null ? protectedQueue.first() : window.first();
+            } else if (candidate != null && candidate != victim) {
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    evictForSize(victim);
+                    continue;
+                }
+                victim = candidate;
+            }
+            if (victim == candidate) {
+                candidate = candidate.next;
+            }
+            evictForSize(victim);
+        }
+    }
+
+    private void evictForSize(Node<K, V> node) {
+        remove(node);
+        increment(sizeEvictions);
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key);
+        switch (node.queue) {
+            case Node.WINDOW -> {
+                window.remove(node);
+                windowWeight -= node.weight;
+            }
+            case Node.PROTECTED -> {
+                protectedQueue.remove(node);
+                protectedWeight -= node.weight;
+            }
+            default -> {
+                probation.remove(node);
+                probationWeight -= node.weight;
+            }
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        if (now >= nextSweepAt) {
+            sweep(now);
+        }
+    }
+
+    private int sweep(long now) {
+        nextSweepAt = now + sweepIntervalMs();
+        int removed = 0;
+        Iterator<Node<K, V>> iterator = new ArrayList<>(data.values()).iterator();
+        while (iterator.hasNext()) {
+            Node<K, V> node = iterator.next();
+            if (node.expiresAt <= now) {
+                remove(node);
+                increment(expiredEvictions);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private long sweepIntervalMs() {
+        return Math.max(MIN_SWEEP_INTERVAL_MS, ttlMs / 4);
+    }
+
+    private long expiresAt(long now) {
+        return ttlMs >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttlMs;
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Peso aproximado en bytes de una entrada (clave + valor), el que acota el cache.
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
+
+    /**
+     * Entrada exportable: caducidad en reloj de pared y frecuencia estimada (0-15) en el momento del volcado.
+     */
+    public record Entry<K, V>(K key, V value, long expiresAtMillis, int frequency) {
+    }
+
+    private static final class Node<K, V> {
+
+        private static final int WINDOW = 0;
+        private static final int PROBATION = 1;
+        private static final int PROTECTED = 2;
+
+        private final K key;
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+        private int queue;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value, long weight, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Lista doblemente enlazada intrusiva: mover un nodo al final es O(1) y no reserva memoria.
+     * `first` es el menos reciente.
+     */
+    private static final class AccessOrder<K, V> {
+
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        private Node<K, V> first() {
+            return head;
+        }
+
+        private Node<K, V> last() {
+            return tail;
+        }
+
+        private void addLast(Node<K, V> node, int queue) {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        private void addFirst(Node<K, V> node, int queue) {
+            node.queue = queue;
+            node.prev = null;
+            node.next = head;
+            if (head == null) {
+                tail = node;
+            } else {
+                head.prev = node;
+            }
+            head = node;
+        }
+
+        private void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node, node.queue);
+            }
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        private void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+
+    /**
+     * Count-Min con 4 filas de contadores saturados en 15. Cada `10 x ancho` incrementos todos los
+     * contadores se dividen a la mitad: la popularidad antigua se olvida y las claves nuevas pueden entrar.
+     * Se redimensiona (y reinicia) cuando el numero de entradas supera el ancho.
+     */
+    private static final class FrequencySketch {
+
+        private static final int MAX_COUNT = 15;
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = {0x97CB3127, 0x0BA1F3E5, 0x7F4A7C15, 0x3C6EF372};
+
+        private byte[] table = new byte[DEPTH * 64];
+        private int width = 64;
+        private int additions;
+
+        private void ensureCapacity(int entries) {
+            if (entries <= width) {
+                return;
+            }
+            int newWidth = Integer.highestOneBit(Math.max(64, entries - 1)) << 1;
+            table = new byte[DEPTH * newWidth];
+            width = newWidth;
+            additions = 0;
+        }
+
+        private void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = row * width + indexOf(hash, row);
+                if (table[index] < MAX_COUNT) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= 10 * width) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (byte) (table[i] >>> 1);
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int min = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, table[row * width + indexOf(hash, row)]);
+            }
+            return min;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (width - 1);
+        }
+
+        private static int spread(int hash) {
+            int h = hash * 0x45D9F3B;
+            return h ^ (h >>> 16);
+        }
+    }
+}
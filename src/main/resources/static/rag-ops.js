@@ -19,6 +19,7 @@ const ragOpsIngestSummaryEl = document.getElementById('ragOpsIngestSummary');
 const ragOpsRetrievalSummaryEl = document.getElementById('ragOpsRetrievalSummary');
 const ragOpsDeleteSummaryEl = document.getElementById('ragOpsDeleteSummary');
 const ragOpsIndexSummaryEl = document.getElementById('ragOpsIndexSummary');
+const ragOpsIndexRebuildProgressEl = document.getElementById('ragOpsIndexRebuildProgress');
 const ragOpsIngestCountEl = document.getElementById('ragOpsIngestCount');
 const ragOpsRetrievalCountEl = document.getElementById('ragOpsRetrievalCount');
 const ragOpsDeletedCountEl = document.getElementById('ragOpsDeletedCount');
@@ -77,6 +78,15 @@ if (ragOpsArchitectureEl) {
     return num.toFixed(2);
   }
 
+  function formatRebuildProgress(rebuild) {
+    if (!rebuild || rebuild.phase === 'idle') return 'sin rebuilds en esta ejecucion';
+    const indexed = Number(rebuild.indexedVectors ?? 0);
+    const total = Number(rebuild.totalVectors ?? 0);
+    const percent = total > 0 ? ` (${Math.min(100, Math.round((indexed / total) * 100))}%)` : '';
+    const state = rebuild.running ? `en curso: ${rebuild.phase}` : rebuild.phase;
+    return `${state} ${indexed}/${total}${percent} a ${formatDecimal(rebuild.vectorsPerSecond)} vectores/s`;
+  }
+
   function setBusy(nextBusy) {
     ragOpsBusy = nextBusy;
     [ragOpsRefreshBtn, ragOpsRebuildBtn, ragOpsClearBtn, ragOpsPurgeOldestBtn].forEach(btn => {
@@ -153,6 +163,7 @@ if (ragOpsArchitectureEl) {
     if (ragOpsRetrievalSummaryEl) ragOpsRetrievalSummaryEl.textContent = data?.lastRetrievalSummary || '-';
     if (ragOpsDeleteSummaryEl) ragOpsDeleteSummaryEl.textContent = data?.lastDeleteSummary || '-';
     if (ragOpsIndexSummaryEl) ragOpsIndexSummaryEl.textContent = data?.lastIndexSummary || '-';
+    if (ragOpsIndexRebuildProgressEl) ragOpsIndexRebuildProgressEl.textContent = formatRebuildProgress(data?.indexRebuild);
     if (ragOpsIngestCountEl) ragOpsIngestCountEl.textContent = String(data?.ingestOperations ?? 0);
     if (ragOpsRetrievalCountEl) ragOpsRetrievalCountEl.textContent = String(data?.retrievalOperations ?? 0);
     if (ragOpsDeletedCountEl) ragOpsDeletedCountEl.textContent = String(data?.deletedDocuments ?? 0);
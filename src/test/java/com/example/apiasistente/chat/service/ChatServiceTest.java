@@ -29,10 +29,12 @@ import com.example.apiasistente.chat.service.flow.ChatSourceSnapshotService;
 import com.example.apiasistente.chat.service.flow.ChatTurnContextFactory;
 import com.example.apiasistente.chat.service.flow.ChatTurnService;
 import com.example.apiasistente.chat.service.flow.ChatImageGenerationService;
+import com.example.apiasistente.rag.service.RagCorpusEpochService;
 import com.example.apiasistente.rag.service.RagService;
 import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
 import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
 import com.example.apiasistente.shared.ai.OllamaClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -96,6 +98,9 @@ class ChatServiceTest {
     @Mock
     private ChatImageGenerationService imageGenerationService;
 
+    @Mock
+    private RagCorpusEpochService corpusEpochService;
+
     private ChatService service;
 
     @BeforeEach
@@ -117,9 +122,9 @@ class ChatServiceTest {
         ChatPromptBuilder promptBuilder = new ChatPromptBuilder(modelSelector);
         ChatMediaService mediaService = new ChatMediaService(ollama, modelSelector);
         ChatGroundingService groundingService = new ChatGroundingService(ollama, modelSelector);
-        ChatRagDecisionEngine decisionEngine = new ChatRagDecisionEngine(ollama, modelSelector);
+        ChatRagDecisionEngine decisionEngine = new ChatRagDecisionEngine(ollama, modelSelector, new SimpleMeterRegistry(), 3_600_000L, 0L, 0);
         ChatRagTelemetryService ragTelemetryService = new ChatRagTelemetryService();
-        ChatRagGateService ragGateService = new ChatRagGateService(documentRepository, chunkRepository, decisionEngine);
+        ChatRagGateService ragGateService = new ChatRagGateService(documentRepository, chunkRepository, decisionEngine, corpusEpochService);
         ChatSourceSnapshotService sourceSnapshotService = new ChatSourceSnapshotService(messageRepo, sourceRepo);
         ChatTurnContextFactory contextFactory = new ChatTurnContextFactory(
                 sessionService,
@@ -5,6 +5,7 @@ import com.example.apiasistente.chat.service.ChatPromptSignals;
 import com.example.apiasistente.chat.service.ChatTurnPlanner;
 import com.example.apiasistente.shared.ai.OllamaClient;
 import com.example.apiasistente.shared.config.OllamaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -14,6 +15,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyList;
@@ -36,7 +38,7 @@ class ChatRagDecisionEngineTest {
         properties.setChatModel("chat-model");
         properties.setFastChatModel("fast-model");
         ChatModelSelector modelSelector = new ChatModelSelector(properties);
-        service = new ChatRagDecisionEngine(ollama, modelSelector);
+        service = new ChatRagDecisionEngine(ollama, modelSelector, new SimpleMeterRegistry(), 60_000L, 65_536L, 0);
         ReflectionTestUtils.setField(service, "decisionEnabled", true);
         ReflectionTestUtils.setField(service, "llmAssessmentEnabled", true);
         ReflectionTestUtils.setField(service, "verifyNoRagAnswers", true);
@@ -45,8 +47,13 @@ class ChatRagDecisionEngineTest {
         ReflectionTestUtils.setField(service, "technicalConfidenceThreshold", 0.80);
         ReflectionTestUtils.setField(service, "verifyAnswerConfidenceThreshold", 0.74);
         ReflectionTestUtils.setField(service, "minAnswerChars", 50);
-        ReflectionTestUtils.setField(service, "cacheTtlMs", 60_000L);
-        ReflectionTestUtils.setField(service, "maxCacheEntries", 64);
+    }
+
+    @Test
+    void cacheMaxBytesFallsBackToLegacyMaxCacheEntries() {
+        assertEquals(65_536L, ChatRagDecisionEngine.resolveCacheMaxBytes(65_536L, 500));
+        assertEquals(500L * 2_048L, ChatRagDecisionEngine.resolveCacheMaxBytes(0L, 500));
+        assertEquals(1_048_576L, ChatRagDecisionEngine.resolveCacheMaxBytes(0L, 0));
     }
 
     @Test
@@ -4,9 +4,8 @@ import com.example.apiasistente.chat.entity.ChatMessage;
 import com.example.apiasistente.chat.entity.ChatSession;
 import com.example.apiasistente.chat.service.ChatPromptSignals;
 import com.example.apiasistente.chat.service.ChatTurnPlanner;
-import com.example.apiasistente.rag.entity.KnowledgeChunk;
-import com.example.apiasistente.rag.entity.KnowledgeDocument;
 import com.example.apiasistente.prompt.entity.SystemPrompt;
+import com.example.apiasistente.rag.dto.RetrievedChunkDto;
 import com.example.apiasistente.rag.service.RagService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -310,17 +309,7 @@ class ChatRagFlowServiceTest {
     }
 
     private RagService.RetrievalResult retrievalWithEvidence(String title, String chunkText, double score) {
-        KnowledgeDocument document = new KnowledgeDocument();
-        document.setTitle(title);
-        document.setOwner("global");
-        document.setSource("test");
-
-        KnowledgeChunk chunk = new KnowledgeChunk();
-        chunk.setDocument(document);
-        chunk.setChunkIndex(0);
-        chunk.setText(chunkText);
-        chunk.setHash("hash-test");
-        chunk.setTokenCount(12);
+        RetrievedChunkDto chunk = new RetrievedChunkDto(1L, 10L, title, "global", 0, chunkText);
 
         RagService.ScoredChunk scored = new RagService.ScoredChunk(chunk, score, chunkText);
         return new RagService.RetrievalResult(
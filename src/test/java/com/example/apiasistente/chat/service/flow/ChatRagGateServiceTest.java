@@ -4,6 +4,7 @@ import com.example.apiasistente.chat.service.ChatPromptSignals;
 import com.example.apiasistente.chat.service.ChatTurnPlanner;
 import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
 import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import com.example.apiasistente.rag.service.RagCorpusEpochService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,6 +19,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,11 +35,14 @@ class ChatRagGateServiceTest {
     @Mock
     private ChatRagDecisionEngine decisionEngine;
 
+    @Mock
+    private RagCorpusEpochService corpusEpochService;
+
     private ChatRagGateService service;
 
     @BeforeEach
     void setUp() {
-        service = new ChatRagGateService(documentRepository, chunkRepository, decisionEngine);
+        service = new ChatRagGateService(documentRepository, chunkRepository, decisionEngine, corpusEpochService);
         ReflectionTestUtils.setField(service, "gateEnabled", true);
         ReflectionTestUtils.setField(service, "minPreferredQueryChars", 18);
         ReflectionTestUtils.setField(service, "minPreferredQueryTokens", 2);
@@ -160,4 +166,41 @@ class ChatRagGateServiceTest {
         assertFalse(decision.attemptRag());
         assertTrue(decision.forceNoEvidence());
     }
+
+    @Test
+    void corpusCountsAreReusedUntilTheCorpusEpochChanges() {
+        when(documentRepository.countByActiveTrue()).thenReturn(0L);
+        when(chunkRepository.countActive()).thenReturn(0L);
+        when(corpusEpochService.current()).thenReturn(4L, 4L, 5L);
+        when(decisionEngine.assessQuery(anyString(), any(ChatTurnPlanner.TurnPlan.class), eq(false)))
+                .thenReturn(new ChatRagDecisionEngine.DecisionAssessment(
+                        ChatRagDecisionEngine.QueryType.PERSONAL,
+                        true,
+                        true,
+                        0.95,
+                        0.95,
+                        false,
+                        false,
+                        false,
+                        "heuristic",
+                        "contexto-propio"
+                ));
+        ChatPromptSignals.RagDecision required = ChatPromptSignals.RagDecision.required("Contexto propio", List.of("contexto-propio"));
+        ChatTurnPlanner.TurnPlan plan = new ChatTurnPlanner.TurnPlan(
+                ChatPromptSignals.IntentRoute.FACTUAL_TECH,
+                true,
+                ChatTurnPlanner.ReasoningLevel.MEDIUM,
+                false,
+                false,
+                0.95,
+                required
+        );
+
+        for (int i = 0; i < 3; i++) {
+            service.evaluate(plan, required, "Que paso en nuestro endpoint interno?", "user", null, false);
+        }
+
+        verify(documentRepository, times(2)).countByActiveTrue();
+        verify(chunkRepository, times(2)).countActive();
+    }
 }
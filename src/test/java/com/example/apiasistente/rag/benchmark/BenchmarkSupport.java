@@ -0,0 +1,91 @@
+package com.example.apiasistente.rag.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Utilidades compartidas por los benchmarks del RAG.
+ *
+ * Los benchmarks se etiquetan con `benchmark`: quedan fuera de `./gradlew test`
+ * y se lanzan con `./gradlew benchmark`. Imprimen resultados por stdout para poder
+ * pegarlos en la descripcion del cambio.
+ */
+final class BenchmarkSupport {
+
+    static final String TAG = "benchmark";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Vector unitario pseudoaleatorio reproducible (misma semilla => mismo corpus).
+     */
+    static float[] randomUnitVector(Random random, int dims) {
+        float[] vector = new float[dims];
+        double norm = 0.0;
+        for (int i = 0; i < dims; i++) {
+            float value = (float) random.nextGaussian();
+            vector[i] = value;
+            norm += value * value;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < dims; i++) {
+            vector[i] *= inv;
+        }
+        return vector;
+    }
+
+    static double[] toDoubleArray(float[] vector) {
+        double[] out = new double[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            out[i] = vector[i];
+        }
+        return out;
+    }
+
+    static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Fraccion de la verdad exacta (fuerza bruta) que aparece en el resultado aproximado.
+     */
+    static double recall(Set<Long> exact, List<Long> approximate) {
+        if (exact.isEmpty()) {
+            return 1.0;
+        }
+        long found = approximate.stream().filter(exact::contains).count();
+        return found / (double) exact.size();
+    }
+
+    static double percentileMillis(long[] nanos, double percentile) {
+        if (nanos.length == 0) {
+            return 0.0;
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        index = Math.max(0, Math.min(sorted.length - 1, index));
+        return sorted[index] / 1_000_000.0;
+    }
+
+    static void report(String benchmark, String variant, double recall, long[] nanos) {
+        System.out.println(String.format(
+                Locale.US,
+                "[%s] %-22s recall=%.3f p50=%.3fms p99=%.3fms n=%d",
+                benchmark,
+                variant,
+                recall,
+                percentileMillis(nanos, 50),
+                percentileMillis(nanos, 99),
+                nanos.length
+        ));
+    }
+}
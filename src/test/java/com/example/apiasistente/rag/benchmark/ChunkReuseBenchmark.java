@@ -0,0 +1,141 @@
+package com.example.apiasistente.rag.benchmark;
+
+import com.example.apiasistente.rag.util.ContentDefinedChunker;
+import com.example.apiasistente.rag.util.TextChunker;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Volumen a re-embeber tras editar un documento: ventanas fijas (`TextChunker`) frente a
+ * chunking por contenido (`ContentDefinedChunker`).
+ *
+ * Un chunk se re-embebe si su texto no estaba en la version anterior (la reutilizacion va por hash).
+ * Reporta chunks y caracteres nuevos sobre el total de la version editada, por tipo de edicion.
+ */
+@Tag(BenchmarkSupport.TAG)
+class ChunkReuseBenchmark {
+
+    private static final int SIZE = 700;
+    private static final int OVERLAP = 120;
+    private static final int MIN_SIZE = 350;
+    private static final int MAX_SIZE = 1400;
+    private static final int DOCUMENTS = 50;
+    private static final String[] WORDS = (
+            "el la los datos indice vector consulta servidor cliente respuesta modelo usuario sesion "
+                    + "documento chunk cache latencia memoria disco red error registro version config"
+    ).split(" ");
+
+    @Test
+    void reembedVolumeAfterEdits() {
+        Function<String, List<String>> fixed = text -> TextChunker.chunk(text, SIZE, OVERLAP);
+        Function<String, List<String>> prose = text -> ContentDefinedChunker.chunk(
+                text, MIN_SIZE, SIZE, MAX_SIZE, ContentDefinedChunker.Boundary.SENTENCE);
+        Function<String, List<String>> lines = text -> ContentDefinedChunker.chunk(
+                text, MIN_SIZE, SIZE, MAX_SIZE, ContentDefinedChunker.Boundary.LINE);
+
+        for (Edit edit : Edit.values()) {
+            run("fixed", edit, fixed, false);
+            run("cdc-sentence", edit, prose, false);
+            run("fixed-logs", edit, fixed, true);
+            run("cdc-line-logs", edit, lines, true);
+        }
+    }
+
+    private static void run(String variant, Edit edit, Function<String, List<String>> chunker, boolean logs) {
+        Random random = new Random(42);
+        long totalChunks = 0;
+        long newChunks = 0;
+        long totalChars = 0;
+        long newChars = 0;
+        for (int d = 0; d < DOCUMENTS; d++) {
+            String original = logs ? logs(random, 600) : prose(random, 400);
+            String edited = edit.apply(original, random, logs);
+            Set<String> known = new HashSet<>(chunker.apply(original));
+            for (String chunk : chunker.apply(edited)) {
+                totalChunks++;
+                totalChars += chunk.length();
+                if (!known.contains(chunk)) {
+                    newChunks++;
+                    newChars += chunk.length();
+                }
+            }
+        }
+        System.out.println(String.format(
+                Locale.US,
+                "[chunk-reuse] %-14s edit=%-14s chunks/doc=%.1f reembed=%.1f%% chunks %.1f%% chars",
+                variant,
+                edit.name().toLowerCase(Locale.ROOT),
+                totalChunks / (double) DOCUMENTS,
+                100.0 * newChunks / Math.max(1, totalChunks),
+                100.0 * newChars / Math.max(1, totalChars)
+        ));
+    }
+
+    private static String prose(Random random, int sentences) {
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < sentences; s++) {
+            text.append(sentence(random));
+            text.append(s % 6 == 5 ? "\n\n" : " ");
+        }
+        return text.toString().trim();
+    }
+
+    private static String logs(Random random, int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int l = 0; l < lines; l++) {
+            text.append(String.format(Locale.ROOT, "2024-05-%02d %s ", 1 + random.nextInt(28), random.nextBoolean() ? "INFO" : "WARN"));
+            text.append(sentence(random)).append('\n');
+        }
+        return text.toString().trim();
+    }
+
+    private static String sentence(Random random) {
+        StringBuilder sentence = new StringBuilder();
+        int words = 6 + random.nextInt(14);
+        for (int w = 0; w < words; w++) {
+            sentence.append(WORDS[random.nextInt(WORDS.length)]).append(w == words - 1 ? "." : " ");
+        }
+        return sentence.toString();
+    }
+
+    private enum Edit {
+        INSERT_TOP {
+            @Override
+            String apply(String text, Random random, boolean logs) {
+                int at = nextBreak(text, text.length() / 20, logs);
+                return text.substring(0, at) + sentence(random) + (logs ? "\n" : " ") + text.substring(at);
+            }
+        },
+        REPLACE_MIDDLE {
+            @Override
+            String apply(String text, Random random, boolean logs) {
+                int at = nextBreak(text, text.length() / 2, logs);
+                int end = nextBreak(text, at + 1, logs);
+                return text.substring(0, at) + sentence(random) + (logs ? "\n" : " ") + text.substring(end);
+            }
+        },
+        APPEND_END {
+            @Override
+            String apply(String text, Random random, boolean logs) {
+                return text + (logs ? "\n" : " ") + sentence(random);
+            }
+        };
+
+        abstract String apply(String text, Random random, boolean logs);
+
+        /**
+         * Inicio de la siguiente frase o linea a partir de `from`, para editar unidades completas.
+         */
+        private static int nextBreak(String text, int from, boolean logs) {
+            int at = text.indexOf(logs ? "\n" : ". ", from);
+            return at < 0 ? text.length() : at + (logs ? 1 : 2);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.apiasistente.rag.benchmark;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * Latencia de busqueda kNN bajo carga concurrente con MMapDirectory frente a NIOFSDirectory
+ * sobre el mismo indice (mismo contenido, mismos segmentos).
+ *
+ * Cada hilo lanza su tanda de queries contra un searcher compartido, como hace el
+ * `SearcherManager` del servicio. Se reporta latencia por query y throughput agregado.
+ */
+@Tag(BenchmarkSupport.TAG)
+class DirectoryConcurrentSearchBenchmark {
+
+    private static final int DIMS = 1024;
+    private static final int CORPUS = 30_000;
+    private static final int THREADS = 8;
+    private static final int QUERIES_PER_THREAD = 200;
+    private static final int LIMIT = 40;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void mmapVersusNiofsUnderConcurrentLoad() throws Exception {
+        Random random = new Random(42);
+        try (Directory directory = new NIOFSDirectory(tempDir);
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+            for (long id = 0; id < CORPUS; id++) {
+                Document doc = new Document();
+                doc.add(new StoredField("chunk_id_stored", id));
+                doc.add(new KnnFloatVectorField("embedding", BenchmarkSupport.randomUnitVector(random, DIMS), VectorSimilarityFunction.DOT_PRODUCT));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+            writer.commit();
+        }
+
+        List<float[]> queries = IntStream.range(0, THREADS * QUERIES_PER_THREAD)
+                .mapToObj(i -> BenchmarkSupport.randomUnitVector(random, DIMS))
+                .toList();
+
+        try (Directory nio = new NIOFSDirectory(tempDir)) {
+            run("niofs", nio, queries);
+        }
+        try (Directory mmap = new MMapDirectory(tempDir)) {
+            run("mmap", mmap, queries);
+        }
+    }
+
+    private static void run(String variant, Directory directory, List<float[]> queries) throws Exception {
+        try (DirectoryReader reader = DirectoryReader.open(directory);
+             ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            // Calentamiento: JIT y page cache en el mismo estado para ambas variantes.
+            for (float[] query : queries.subList(0, QUERIES_PER_THREAD)) {
+                searcher.search(new KnnFloatVectorQuery("embedding", query, LIMIT), LIMIT);
+            }
+
+            long[] nanos = new long[queries.size()];
+            List<Future<?>> futures = new ArrayList<>(THREADS);
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t * QUERIES_PER_THREAD;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + QUERIES_PER_THREAD; i++) {
+                        long queryStart = System.nanoTime();
+                        searcher.search(new KnnFloatVectorQuery("embedding", queries.get(i), LIMIT), LIMIT);
+                        nanos[i] = System.nanoTime() - queryStart;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            BenchmarkSupport.report("directory", variant + " x" + THREADS, 1.0, nanos);
+            System.out.println(String.format(Locale.US, "[directory] %-22s throughput=%.1f qps", variant + " x" + THREADS, queries.size() / seconds));
+        }
+    }
+}
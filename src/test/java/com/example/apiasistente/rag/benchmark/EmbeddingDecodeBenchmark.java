@@ -0,0 +1,90 @@
+package com.example.apiasistente.rag.benchmark;
+
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.rag.util.VectorMath;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Coste de decodificar las filas de `vectors` durante el rebuild: JSON (Jackson + normalizacion,
+ * el camino de las filas antiguas) frente al float32 binario de `EmbeddingCodec`.
+ *
+ * Reporta bytes por fila (tamano de la columna) y filas/s de decodificacion; la latencia por
+ * pagina equivale a una pagina de rebuild (`REBUILD_PAGE_SIZE` = 500 filas).
+ */
+@Tag(BenchmarkSupport.TAG)
+class EmbeddingDecodeBenchmark {
+
+    private static final int DIMS = 1024;
+    private static final int ROWS = 20_000;
+    private static final int PAGE = 500;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void jsonVersusBinaryDecode() throws Exception {
+        Random random = new Random(42);
+        List<String> json = new ArrayList<>(ROWS);
+        List<byte[]> binary = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            float[] vector = BenchmarkSupport.randomUnitVector(random, DIMS);
+            // Las filas antiguas guardaban los doubles que devolvia Ollama.
+            json.add(MAPPER.writeValueAsString(BenchmarkSupport.toDoubleArray(vector)));
+            binary.add(EmbeddingCodec.encode(vector));
+        }
+        long jsonBytes = json.stream().mapToLong(value -> value.getBytes(StandardCharsets.UTF_8).length).sum();
+        long binaryBytes = binary.stream().mapToLong(value -> value.length).sum();
+        System.out.println(String.format(
+                Locale.US,
+                "[embedding-decode] dims=%d json=%.0fB/fila binary=%.0fB/fila ratio=%.1fx",
+                DIMS,
+                jsonBytes / (double) ROWS,
+                binaryBytes / (double) ROWS,
+                jsonBytes / (double) binaryBytes
+        ));
+
+        run("json", offset -> {
+            float checksum = 0f;
+            for (int i = offset; i < offset + PAGE; i++) {
+                checksum += VectorMath.normalize(MAPPER.readValue(json.get(i), float[].class))[0];
+            }
+            return checksum;
+        }, json.size());
+        run("binary", offset -> {
+            float checksum = 0f;
+            for (int i = offset; i < offset + PAGE; i++) {
+                checksum += EmbeddingCodec.decode(binary.get(i))[0];
+            }
+            return checksum;
+        }, binary.size());
+    }
+
+    private static void run(String variant, Page page, int rows) throws Exception {
+        // Calentamiento: que el JIT compile ambos caminos antes de medir.
+        int pages = rows / PAGE;
+        for (int i = 0; i < 20; i++) {
+            page.decode((i % pages) * PAGE);
+        }
+        long[] nanos = new long[pages];
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++) {
+            long pageStart = System.nanoTime();
+            page.decode(i * PAGE);
+            nanos[i] = System.nanoTime() - pageStart;
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        BenchmarkSupport.report("embedding-decode", variant + " page=" + PAGE, 1.0, nanos);
+        System.out.println(String.format(Locale.US, "[embedding-decode] %-22s throughput=%.0f filas/s", variant, pages * PAGE / seconds));
+    }
+
+    @FunctionalInterface
+    private interface Page {
+        float decode(int offset) throws Exception;
+    }
+}
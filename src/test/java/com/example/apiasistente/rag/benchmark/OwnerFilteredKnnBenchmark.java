@@ -0,0 +1,150 @@
+package com.example.apiasistente.rag.benchmark;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Compara el filtrado de owner dentro de la query kNN contra el post-filtrado historico
+ * (sobre-pedir 3x y descartar en Java) para un owner pequeno dentro de un corpus grande.
+ *
+ * Recall medido contra la verdad exacta por fuerza bruta sobre los vectores del owner.
+ */
+@Tag(BenchmarkSupport.TAG)
+class OwnerFilteredKnnBenchmark {
+
+    private static final int DIMS = 128;
+    private static final int CORPUS = 50_000;
+    private static final int SMALL_OWNER_DOCS = 250;
+    private static final int QUERIES = 200;
+    private static final int LIMIT = 24;
+    private static final String SMALL_OWNER = "ana";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void preFilterVersusPostFilter() throws Exception {
+        Random random = new Random(42);
+        List<float[]> ownerVectors = new ArrayList<>(SMALL_OWNER_DOCS);
+        List<Long> ownerIds = new ArrayList<>(SMALL_OWNER_DOCS);
+
+        try (Directory directory = new NIOFSDirectory(tempDir);
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+            for (long id = 0; id < CORPUS; id++) {
+                boolean small = id % (CORPUS / SMALL_OWNER_DOCS) == 0;
+                float[] vector = BenchmarkSupport.randomUnitVector(random, DIMS);
+                Document doc = new Document();
+                doc.add(new StoredField("chunk_id_stored", id));
+                doc.add(new StringField("owner", small ? SMALL_OWNER : "global", Field.Store.YES));
+                doc.add(new KnnFloatVectorField("embedding", vector, VectorSimilarityFunction.DOT_PRODUCT));
+                writer.addDocument(doc);
+                if (small) {
+                    ownerVectors.add(vector);
+                    ownerIds.add(id);
+                }
+            }
+            writer.forceMerge(1);
+            writer.commit();
+
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                List<float[]> queries = IntStream.range(0, QUERIES)
+                        .mapToObj(i -> BenchmarkSupport.randomUnitVector(random, DIMS))
+                        .toList();
+
+                // Calentamiento para que JIT y page cache no sesguen la primera variante.
+                for (float[] query : queries) {
+                    postFilter(searcher, query);
+                    preFilter(searcher, query);
+                }
+
+                long[] postNanos = new long[QUERIES];
+                long[] preNanos = new long[QUERIES];
+                double postRecall = 0.0;
+                double preRecall = 0.0;
+                for (int i = 0; i < QUERIES; i++) {
+                    float[] query = queries.get(i);
+                    Set<Long> exact = exactTopK(query, ownerVectors, ownerIds);
+
+                    long start = System.nanoTime();
+                    List<Long> post = postFilter(searcher, query);
+                    postNanos[i] = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    List<Long> pre = preFilter(searcher, query);
+                    preNanos[i] = System.nanoTime() - start;
+
+                    postRecall += BenchmarkSupport.recall(exact, post);
+                    preRecall += BenchmarkSupport.recall(exact, pre);
+                }
+
+                BenchmarkSupport.report("owner-filter", "post-filter (3x)", postRecall / QUERIES, postNanos);
+                BenchmarkSupport.report("owner-filter", "pre-filter (kNN)", preRecall / QUERIES, preNanos);
+            }
+        }
+    }
+
+    private static List<Long> postFilter(IndexSearcher searcher, float[] query) throws Exception {
+        int fetchK = LIMIT * 3;
+        ScoreDoc[] docs = searcher.search(new KnnFloatVectorQuery("embedding", query, fetchK), fetchK).scoreDocs;
+        List<Long> hits = new ArrayList<>(LIMIT);
+        for (ScoreDoc scoreDoc : docs) {
+            Document doc = searcher.doc(scoreDoc.doc);
+            if (!SMALL_OWNER.equals(doc.get("owner"))) {
+                continue;
+            }
+            hits.add(doc.getField("chunk_id_stored").numericValue().longValue());
+            if (hits.size() >= LIMIT) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    private static List<Long> preFilter(IndexSearcher searcher, float[] query) throws Exception {
+        var filter = new TermQuery(new Term("owner", SMALL_OWNER));
+        ScoreDoc[] docs = searcher.search(new KnnFloatVectorQuery("embedding", query, LIMIT, filter), LIMIT).scoreDocs;
+        List<Long> hits = new ArrayList<>(docs.length);
+        for (ScoreDoc scoreDoc : docs) {
+            hits.add(searcher.doc(scoreDoc.doc).getField("chunk_id_stored").numericValue().longValue());
+        }
+        return hits;
+    }
+
+    private static Set<Long> exactTopK(float[] query, List<float[]> vectors, List<Long> ids) {
+        List<Integer> order = new ArrayList<>(IntStream.range(0, vectors.size()).boxed().toList());
+        order.sort(Comparator.comparingDouble((Integer i) -> BenchmarkSupport.dot(query, vectors.get(i))).reversed());
+        Set<Long> exact = new LinkedHashSet<>();
+        for (int i = 0; i < Math.min(LIMIT, order.size()); i++) {
+            exact.add(ids.get(order.get(i)));
+        }
+        return exact;
+    }
+}
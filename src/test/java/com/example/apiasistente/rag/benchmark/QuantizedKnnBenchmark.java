@@ -0,0 +1,230 @@
+package com.example.apiasistente.rag.benchmark;
+
+import com.example.apiasistente.rag.service.RagVectorStorageMode;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Compara recall@k, latencia y tamano en disco del indice HNSW en float32 frente a int8/int4,
+ * con y sin re-puntuacion en float32 de los candidatos.
+ *
+ * Corpus: por defecto vectores sinteticos con la forma de bge-m3 (1024 dims). Con
+ * `-Dbenchmark.corpus.dir=<generacion del indice>` se usan los embeddings reales del indice local
+ * (por ejemplo `data/rag-hnsw/gen-...`), y las queries son vectores del corpus con ruido.
+ */
+@Tag(BenchmarkSupport.TAG)
+class QuantizedKnnBenchmark {
+
+    private static final int SYNTHETIC_DIMS = 1024;
+    private static final int SYNTHETIC_CORPUS = 20_000;
+    private static final int MAX_CORPUS = 100_000;
+    private static final int QUERIES = 200;
+    private static final int LIMIT = 10;
+    private static final int OVERSAMPLE = 3;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void float32VersusScalarQuantized() throws Exception {
+        Random random = new Random(42);
+        List<float[]> corpus = loadCorpus(random);
+        List<float[]> queries = IntStream.range(0, QUERIES)
+                .mapToObj(i -> noisy(corpus.get(random.nextInt(corpus.size())), random))
+                .toList();
+        List<Set<Long>> exact = queries.stream().map(query -> exactTopK(query, corpus)).toList();
+        System.out.println(String.format(Locale.US, "[quantized-knn] corpus=%d dims=%d", corpus.size(), corpus.get(0).length));
+
+        for (RagVectorStorageMode mode : RagVectorStorageMode.values()) {
+            Path dir = tempDir.resolve(mode.name().toLowerCase(Locale.ROOT));
+            try (Directory directory = new NIOFSDirectory(dir)) {
+                buildIndex(directory, mode, corpus);
+                // .vec = float32 originales, .veq = vectores cuantizados, .vex = grafo. La busqueda recorre
+                // .vex + .veq (o .vec en float32); es lo que tiene que caber en page cache.
+                System.out.println(String.format(
+                        Locale.US,
+                        "[quantized-knn] %-8s total=%.1fMB vec=%.1fMB veq=%.1fMB vex=%.1fMB",
+                        mode,
+                        directoryBytes(dir, "") / 1_048_576.0,
+                        directoryBytes(dir, ".vec") / 1_048_576.0,
+                        directoryBytes(dir, ".veq") / 1_048_576.0,
+                        directoryBytes(dir, ".vex") / 1_048_576.0
+                ));
+                try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                    IndexSearcher searcher = new IndexSearcher(reader);
+                    run(searcher, mode.name(), queries, exact, 1);
+                    if (mode.quantized()) {
+                        run(searcher, mode.name() + "+rescore", queries, exact, OVERSAMPLE);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void run(IndexSearcher searcher,
+                            String variant,
+                            List<float[]> queries,
+                            List<Set<Long>> exact,
+                            int oversample) throws IOException {
+        // Calentamiento para que JIT y page cache no sesguen la medicion.
+        for (float[] query : queries) {
+            search(searcher, query, oversample);
+        }
+        long[] nanos = new long[queries.size()];
+        double recall = 0.0;
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            List<Long> hits = search(searcher, queries.get(i), oversample);
+            nanos[i] = System.nanoTime() - start;
+            recall += BenchmarkSupport.recall(exact.get(i), hits);
+        }
+        BenchmarkSupport.report("quantized-knn", variant, recall / queries.size(), nanos);
+    }
+
+    private static List<Long> search(IndexSearcher searcher, float[] query, int oversample) throws IOException {
+        int fetchK = LIMIT * oversample;
+        ScoreDoc[] docs = searcher.search(new KnnFloatVectorQuery("embedding", query, fetchK), fetchK).scoreDocs;
+        if (oversample > 1) {
+            docs = rescore(searcher, query, docs);
+        }
+        List<Long> hits = new ArrayList<>(LIMIT);
+        for (int i = 0; i < Math.min(LIMIT, docs.length); i++) {
+            hits.add(searcher.storedFields().document(docs[i].doc).getField("chunk_id_stored").numericValue().longValue());
+        }
+        return hits;
+    }
+
+    /**
+     * Misma re-puntuacion que `RagVectorIndexService`: float32 originales solo de los candidatos.
+     */
+    private static ScoreDoc[] rescore(IndexSearcher searcher, float[] query, ScoreDoc[] docs) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        ScoreDoc[] rescored = new ScoreDoc[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docs[i].doc, leaves));
+            FloatVectorValues values = leaf.reader().getFloatVectorValues("embedding");
+            int leafDoc = docs[i].doc - leaf.docBase;
+            float score = docs[i].score;
+            if (values != null && values.advance(leafDoc) == leafDoc) {
+                score = VectorSimilarityFunction.DOT_PRODUCT.compare(query, values.vectorValue());
+            }
+            rescored[i] = new ScoreDoc(docs[i].doc, score);
+        }
+        Arrays.sort(rescored, (left, right) -> Float.compare(right.score, left.score));
+        return rescored;
+    }
+
+    private static void buildIndex(Directory directory, RagVectorStorageMode mode, List<float[]> corpus) throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer()).setCodec(mode.codec());
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int id = 0; id < corpus.size(); id++) {
+                Document doc = new Document();
+                doc.add(new StoredField("chunk_id_stored", (long) id));
+                doc.add(new KnnFloatVectorField("embedding", corpus.get(id), VectorSimilarityFunction.DOT_PRODUCT));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+            writer.commit();
+        }
+    }
+
+    private static List<float[]> loadCorpus(Random random) throws IOException {
+        String corpusDir = System.getProperty("benchmark.corpus.dir");
+        if (corpusDir == null || corpusDir.isBlank()) {
+            return IntStream.range(0, SYNTHETIC_CORPUS)
+                    .mapToObj(i -> BenchmarkSupport.randomUnitVector(random, SYNTHETIC_DIMS))
+                    .toList();
+        }
+        List<float[]> vectors = new ArrayList<>();
+        try (Directory directory = new NIOFSDirectory(Path.of(corpusDir));
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                FloatVectorValues values = leaf.reader().getFloatVectorValues("embedding");
+                if (values == null) {
+                    continue;
+                }
+                while (values.nextDoc() != DocIdSetIterator.NO_MORE_DOCS && vectors.size() < MAX_CORPUS) {
+                    vectors.add(values.vectorValue().clone());
+                }
+            }
+        }
+        if (vectors.isEmpty()) {
+            throw new IllegalStateException("El indice " + corpusDir + " no contiene embeddings");
+        }
+        return vectors;
+    }
+
+    /**
+     * Query cercana a un vector del corpus pero no identica, renormalizada para DOT_PRODUCT.
+     */
+    private static float[] noisy(float[] base, Random random) {
+        float[] noise = BenchmarkSupport.randomUnitVector(random, base.length);
+        float[] query = new float[base.length];
+        double norm = 0.0;
+        for (int i = 0; i < base.length; i++) {
+            query[i] = base[i] + 0.3f * noise[i];
+            norm += query[i] * query[i];
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < query.length; i++) {
+            query[i] *= inv;
+        }
+        return query;
+    }
+
+    private static Set<Long> exactTopK(float[] query, List<float[]> corpus) {
+        List<Integer> order = new ArrayList<>(IntStream.range(0, corpus.size()).boxed().toList());
+        order.sort(Comparator.comparingDouble((Integer i) -> BenchmarkSupport.dot(query, corpus.get(i))).reversed());
+        Set<Long> exact = new LinkedHashSet<>();
+        for (int i = 0; i < Math.min(LIMIT, order.size()); i++) {
+            exact.add(order.get(i).longValue());
+        }
+        return exact;
+    }
+
+    private static long directoryBytes(Path dir, String extension) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(extension))
+                    .mapToLong(path -> {
+                        try {
+                            return Files.size(path);
+                        } catch (IOException e) {
+                            return 0L;
+                        }
+                    })
+                    .sum();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.apiasistente.rag.benchmark;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * Latencia p50/p99 de una query kNN filtrada por owners (global + privado) en tres modos:
+ *
+ * - single: un hilo recorre todos los segmentos (comportamiento anterior).
+ * - segment-parallel: `IndexSearcher` con pool acotado, una tarea por segmento.
+ * - sharded: un kNN filtrado por owner en hilos virtuales sobre el mismo searcher paralelo y fusion top-k
+ *   por score. Es lo que hace `rag.vector.search.shard-by-owner`: shards logicos sobre un unico indice.
+ * - per-owner-index: un indice Lucene fisico por owner, cada uno con su searcher paralelo, y la misma
+ *   fusion. La app no tiene este layout; se mide para saber cuanto ganaria separar indices de verdad.
+ *
+ * Al final imprime p50/p99 de cada modo relativos a `single`.
+ * El indice se deja en varios segmentos a proposito: con un unico segmento no hay nada que paralelizar.
+ */
+@Tag(BenchmarkSupport.TAG)
+class SegmentParallelSearchBenchmark {
+
+    private static final int DIMS = 256;
+    private static final int CORPUS = 60_000;
+    private static final int SEGMENTS = 8;
+    private static final int QUERIES = 300;
+    private static final int LIMIT = 24;
+    private static final List<String> QUERY_OWNERS = List.of("global", "ana");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void singleVersusSegmentParallelVersusOwnerShards() throws Exception {
+        Random random = new Random(42);
+        List<float[]> corpus = new ArrayList<>(CORPUS);
+        List<String> owners = new ArrayList<>(CORPUS);
+        Path sharedPath = tempDir.resolve("shared");
+        try (Directory directory = new MMapDirectory(sharedPath);
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+            for (int id = 0; id < CORPUS; id++) {
+                // 70% global, 29% de otro owner grande (filtrado fuera) y 1% privado del usuario.
+                int bucket = id % 100;
+                String owner = bucket == 0 ? "ana" : bucket < 30 ? "code-learning" : "global";
+                float[] vector = BenchmarkSupport.randomUnitVector(random, DIMS);
+                writer.addDocument(document(id, owner, vector));
+                corpus.add(vector);
+                owners.add(owner);
+            }
+            writer.forceMerge(SEGMENTS);
+            writer.commit();
+        }
+        // Mismo corpus repartido en un indice por owner consultado, con el mismo numero de segmentos cada uno.
+        for (String owner : QUERY_OWNERS) {
+            try (Directory directory = new MMapDirectory(tempDir.resolve("owner-" + owner));
+                 IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+                for (int id = 0; id < CORPUS; id++) {
+                    if (owners.get(id).equals(owner)) {
+                        writer.addDocument(document(id, owner, corpus.get(id)));
+                    }
+                }
+                writer.forceMerge(SEGMENTS);
+                writer.commit();
+            }
+        }
+
+        List<float[]> queries = IntStream.range(0, QUERIES)
+                .mapToObj(i -> BenchmarkSupport.randomUnitVector(random, DIMS))
+                .toList();
+        List<Set<Long>> exact = queries.stream().map(query -> exactTopK(query, corpus, owners)).toList();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        Map<String, long[]> latencies = new LinkedHashMap<>();
+        try (Directory directory = new MMapDirectory(sharedPath);
+             DirectoryReader reader = DirectoryReader.open(directory);
+             Directory globalDirectory = new MMapDirectory(tempDir.resolve("owner-global"));
+             DirectoryReader globalReader = DirectoryReader.open(globalDirectory);
+             Directory privateDirectory = new MMapDirectory(tempDir.resolve("owner-ana"));
+             DirectoryReader privateReader = DirectoryReader.open(privateDirectory);
+             ExecutorService pool = Executors.newFixedThreadPool(threads);
+             // Uno para todas las queries, como el pool de shards del servicio.
+             ExecutorService shards = Executors.newVirtualThreadPerTaskExecutor()) {
+            System.out.println("[segment-parallel] segments=" + reader.leaves().size() + " threads=" + threads);
+            IndexSearcher single = new IndexSearcher(reader);
+            IndexSearcher parallel = new IndexSearcher(reader, pool);
+            List<IndexSearcher> ownerIndexes = List.of(new IndexSearcher(globalReader, pool), new IndexSearcher(privateReader, pool));
+            latencies.put("single", run("single", queries, exact, query -> search(single, query, QUERY_OWNERS)));
+            latencies.put("segment-parallel", run("segment-parallel", queries, exact, query -> search(parallel, query, QUERY_OWNERS)));
+            latencies.put("sharded", run("sharded", queries, exact, query -> searchShards(shards, parallel, query)));
+            latencies.put("per-owner-index", run("per-owner-index", queries, exact, query -> searchOwnerIndexes(shards, ownerIndexes, query)));
+        }
+        reportAgainstSingle(latencies);
+    }
+
+    private static Document document(long id, String owner, float[] vector) {
+        Document doc = new Document();
+        doc.add(new NumericDocValuesField("chunk_id", id));
+        doc.add(new StringField("owner", owner, Field.Store.NO));
+        doc.add(new KnnFloatVectorField("embedding", vector, VectorSimilarityFunction.DOT_PRODUCT));
+        return doc;
+    }
+
+    /**
+     * p50/p99 de cada modo frente a `single`: por debajo de 1.0x es mas rapido.
+     */
+    private static void reportAgainstSingle(Map<String, long[]> latencies) {
+        long[] baseline = latencies.get("single");
+        double baseP50 = BenchmarkSupport.percentileMillis(baseline, 50);
+        double baseP99 = BenchmarkSupport.percentileMillis(baseline, 99);
+        latencies.forEach((variant, nanos) -> System.out.println(String.format(
+                Locale.US,
+                "[segment-parallel] %-22s p50=%.3fms (%.2fx) p99=%.3fms (%.2fx) vs single",
+                variant,
+                BenchmarkSupport.percentileMillis(nanos, 50),
+                BenchmarkSupport.percentileMillis(nanos, 50) / baseP50,
+                BenchmarkSupport.percentileMillis(nanos, 99),
+                BenchmarkSupport.percentileMillis(nanos, 99) / baseP99
+        )));
+    }
+
+    private static long[] run(String variant, List<float[]> queries, List<Set<Long>> exact, Search search) throws Exception {
+        // Calentamiento: JIT y page cache en el mismo estado para los tres modos.
+        for (float[] query : queries) {
+            search.run(query);
+        }
+        long[] nanos = new long[queries.size()];
+        double recall = 0.0;
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            List<Long> hits = search.run(queries.get(i));
+            nanos[i] = System.nanoTime() - start;
+            recall += BenchmarkSupport.recall(exact.get(i), hits);
+        }
+        BenchmarkSupport.report("segment-parallel", variant, recall / queries.size(), nanos);
+        return nanos;
+    }
+
+    private static List<Long> search(IndexSearcher searcher, float[] query, List<String> owners) throws IOException {
+        return chunkIds(searcher, knn(searcher, query, owners));
+    }
+
+    private static List<Long> searchShards(ExecutorService shards, IndexSearcher searcher, float[] query) throws Exception {
+        List<ScoreDoc> merged = new ArrayList<>();
+        List<Future<ScoreDoc[]>> futures = new ArrayList<>();
+        for (String owner : QUERY_OWNERS) {
+            futures.add(shards.submit(() -> knn(searcher, query, List.of(owner))));
+        }
+        for (Future<ScoreDoc[]> future : futures) {
+            merged.addAll(Arrays.asList(future.get()));
+        }
+        merged.sort((left, right) -> Float.compare(right.score, left.score));
+        return chunkIds(searcher, merged.subList(0, Math.min(LIMIT, merged.size())).toArray(ScoreDoc[]::new));
+    }
+
+    /**
+     * Un kNN sin filtro por indice de owner; los docIds no se comparten entre indices, asi que cada shard
+     * resuelve sus chunk_id antes de fusionar por score.
+     */
+    private static List<Long> searchOwnerIndexes(ExecutorService shards, List<IndexSearcher> indexes, float[] query) throws Exception {
+        List<Future<List<ScoredChunk>>> futures = new ArrayList<>(indexes.size());
+        for (IndexSearcher index : indexes) {
+            futures.add(shards.submit(() -> {
+                ScoreDoc[] docs = index.search(new KnnFloatVectorQuery("embedding", query, LIMIT), LIMIT).scoreDocs;
+                List<Long> ids = chunkIds(index, docs);
+                List<ScoredChunk> scored = new ArrayList<>(ids.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    scored.add(new ScoredChunk(ids.get(i), docs[i].score));
+                }
+                return scored;
+            }));
+        }
+        List<ScoredChunk> merged = new ArrayList<>();
+        for (Future<List<ScoredChunk>> future : futures) {
+            merged.addAll(future.get());
+        }
+        merged.sort((left, right) -> Float.compare(right.score(), left.score()));
+        return merged.subList(0, Math.min(LIMIT, merged.size())).stream().map(ScoredChunk::chunkId).toList();
+    }
+
+    private static ScoreDoc[] knn(IndexSearcher searcher, float[] query, List<String> owners) throws IOException {
+        List<BytesRef> terms = owners.stream().map(BytesRef::new).toList();
+        var knn = new KnnFloatVectorQuery("embedding", query, LIMIT, new TermInSetQuery("owner", terms));
+        return searcher.search(knn, LIMIT).scoreDocs;
+    }
+
+    private static List<Long> chunkIds(IndexSearcher searcher, ScoreDoc[] docs) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        List<Long> ids = new ArrayList<>(docs.length);
+        for (ScoreDoc doc : docs) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc.doc, leaves));
+            NumericDocValues values = leaf.reader().getNumericDocValues("chunk_id");
+            if (values != null && values.advanceExact(doc.doc - leaf.docBase)) {
+                ids.add(values.longValue());
+            }
+        }
+        return ids;
+    }
+
+    private static Set<Long> exactTopK(float[] query, List<float[]> corpus, List<String> owners) {
+        List<Integer> eligible = new ArrayList<>(IntStream.range(0, corpus.size())
+                .filter(i -> QUERY_OWNERS.contains(owners.get(i)))
+                .boxed()
+                .toList());
+        eligible.sort(Comparator.comparingDouble((Integer i) -> BenchmarkSupport.dot(query, corpus.get(i))).reversed());
+        Set<Long> exact = new LinkedHashSet<>();
+        for (int i = 0; i < Math.min(LIMIT, eligible.size()); i++) {
+            exact.add(eligible.get(i).longValue());
+        }
+        return exact;
+    }
+
+    private record ScoredChunk(long chunkId, float score) {
+    }
+
+    @FunctionalInterface
+    private interface Search {
+        List<Long> run(float[] query) throws Exception;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.apiasistente.rag.benchmark;
+
+import com.example.apiasistente.rag.util.VectorMath;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Producto escalar de una query contra un lote de embeddings (rescoring/MMR) a 384, 768 y 1024 dims.
+ *
+ * Variantes:
+ * - `double`: el camino antiguo, query en `double[]` y acumulacion en double.
+ * - `scalar-float`: bucle float32 sin SIMD.
+ * - `VectorMath` con el kernel activo (`panama-*` si el test arranca con `jdk.incubator.vector`).
+ * - `VectorMath mapped`: lo mismo sobre vistas directas como las del store mapeado.
+ */
+@Tag(BenchmarkSupport.TAG)
+class VectorMathBenchmark {
+
+    private static final int[] DIMS = {384, 768, 1024};
+    private static final int BATCH = 20_000;
+    private static final int ROUNDS = 60;
+
+    @Test
+    void batchDotAcrossDimensions() {
+        System.out.println("[vector-math] kernel=" + VectorMath.implementation());
+        for (int dims : DIMS) {
+            Random random = new Random(42);
+            float[] query = BenchmarkSupport.randomUnitVector(random, dims);
+            double[] queryDouble = BenchmarkSupport.toDoubleArray(query);
+            float[][] vectors = new float[BATCH][];
+            List<FloatBuffer> views = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                vectors[i] = BenchmarkSupport.randomUnitVector(random, dims);
+                views.add(ByteBuffer.allocateDirect(dims * Float.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer()
+                        .put(vectors[i])
+                        .flip()
+                        .asReadOnlyBuffer());
+            }
+            float[] out = new float[BATCH];
+
+            long[] baseline = run(dims, "double", () -> {
+                float checksum = 0f;
+                for (float[] vector : vectors) {
+                    double sum = 0.0;
+                    for (int d = 0; d < vector.length; d++) {
+                        sum += queryDouble[d] * vector[d];
+                    }
+                    checksum += (float) sum;
+                }
+                return checksum;
+            });
+            long[] scalar = run(dims, "scalar-float", () -> {
+                float checksum = 0f;
+                for (float[] vector : vectors) {
+                    checksum += BenchmarkSupport.dot(query, vector);
+                }
+                return checksum;
+            });
+            long[] active = run(dims, "VectorMath", () -> {
+                VectorMath.dotAll(query, vectors, out);
+                return out[0] + out[BATCH - 1];
+            });
+            long[] mapped = run(dims, "VectorMath mapped", () -> {
+                VectorMath.cosineUnitAll(FloatBuffer.wrap(query), views, out);
+                return out[0] + out[BATCH - 1];
+            });
+
+            double base = BenchmarkSupport.percentileMillis(baseline, 50);
+            System.out.println(String.format(
+                    Locale.US,
+                    "[vector-math] dims=%d speedup vs double: scalar-float=%.2fx VectorMath=%.2fx mapped=%.2fx",
+                    dims,
+                    base / BenchmarkSupport.percentileMillis(scalar, 50),
+                    base / BenchmarkSupport.percentileMillis(active, 50),
+                    base / BenchmarkSupport.percentileMillis(mapped, 50)
+            ));
+        }
+    }
+
+    private static long[] run(int dims, String variant, Batch batch) {
+        // Calentamiento: que el JIT compile (y vectorice) cada variante antes de medir.
+        float sink = 0f;
+        for (int i = 0; i < 20; i++) {
+            sink += batch.run();
+        }
+        long[] nanos = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += batch.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        BenchmarkSupport.report("vector-math", variant + " dims=" + dims, 1.0, nanos);
+        if (Float.isNaN(sink)) {
+            System.out.println("[vector-math] checksum=" + sink);
+        }
+        return nanos;
+    }
+
+    @FunctionalInterface
+    private interface Batch {
+        float run();
+    }
+}
@@ -1,20 +1,35 @@
 package com.example.apiasistente.rag.controller;
 
+import com.example.apiasistente.rag.dto.RagIngestJobDto;
 import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.service.RagBulkIngestService;
+import com.example.apiasistente.rag.service.RagIngestJobService;
 import com.example.apiasistente.rag.service.RagService;
+import com.example.apiasistente.rag.service.RagStreamIngestService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -31,6 +46,15 @@ class ExternalRagControllerTest {
     @MockitoBean
     private RagService ragService;
 
+    @MockitoBean
+    private RagBulkIngestService bulkIngestService;
+
+    @MockitoBean
+    private RagIngestJobService ingestJobService;
+
+    @MockitoBean
+    private RagStreamIngestService streamIngestService;
+
     @Test
     void ragDocumentsEndpointStoresGlobalContext() throws Exception {
         KnowledgeDocument doc = new KnowledgeDocument();
@@ -103,4 +127,107 @@ class ExternalRagControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.title").value("Doc scrapeado"));
     }
+
+    @Test
+    void externalBatchUsesBulkIngestAndKeepsLegacyDefaults() throws Exception {
+        KnowledgeDocument doc = new KnowledgeDocument();
+        doc.setOwner(RagService.GLOBAL_OWNER);
+        doc.setTitle("Doc lote");
+        when(bulkIngestService.upsertBatch(
+                eq(RagService.GLOBAL_OWNER),
+                argThat(docs -> docs.size() == 2
+                        && docs.get(0).source() == null
+                        && docs.get(1).chunks().size() == 1)
+        )).thenReturn(List.of(
+                new RagBulkIngestService.BulkItemResult("Doc lote", doc, true, 1, null),
+                new RagBulkIngestService.BulkItemResult("Doc roto", null, false, 0, "sin chunks")
+        ));
+
+        mockMvc.perform(post("/api/ext/rag/documents/batch")
+                        .principal(() -> "ext-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [
+                                  {"title":"Doc lote","content":"Contenido lote"},
+                                  {"title":"Doc roto","content":"x","chunks":[{"chunkIndex":0,"text":"Chunk"}]}
+                                ]
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].title").value("Doc lote"));
+    }
+
+    @Test
+    void streamEndpointRoutesPlainTextAndNdjsonToStreamingIngest() throws Exception {
+        KnowledgeDocument doc = new KnowledgeDocument();
+        doc.setOwner(RagService.GLOBAL_OWNER);
+        doc.setTitle("Manual grande");
+        when(streamIngestService.ingestText(
+                eq(RagService.GLOBAL_OWNER), eq("Manual grande"), eq("scraper"), isNull(), isNull(), any()
+        )).thenReturn(doc);
+        when(streamIngestService.ingestNdjson(eq(RagService.GLOBAL_OWNER), any())).thenReturn(doc);
+
+        mockMvc.perform(post("/api/ext/rag/documents/stream")
+                        .principal(() -> "ext-user")
+                        .param("title", "Manual grande")
+                        .param("source", "scraper")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("Capitulo 1. Texto largo."))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Manual grande"));
+
+        mockMvc.perform(post("/api/ext/rag/documents/stream")
+                        .principal(() -> "ext-user")
+                        .contentType("application/x-ndjson")
+                        .content("""
+                                {"title":"Manual grande"}
+                                {"text":"Capitulo 1. Texto largo."}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Manual grande"));
+
+        verify(streamIngestService).ingestNdjson(eq(RagService.GLOBAL_OWNER), any());
+    }
+
+    @Test
+    void jobSubmitAnswersAcceptedWithLocationAndStatusIsPollable() throws Exception {
+        RagIngestJobDto queued = new RagIngestJobDto(
+                "job-1", "QUEUED", 1, 0, 0, 0.0, null, Instant.parse("2026-10-01T10:00:00Z"), null, null, List.of()
+        );
+        when(ingestJobService.submit(eq(RagService.GLOBAL_OWNER), eq("ext-user"), anyList())).thenReturn(queued);
+        RagIngestJobDto done = new RagIngestJobDto(
+                "job-1", "SUCCEEDED", 1, 1, 0, 1.0, null, Instant.parse("2026-10-01T10:00:00Z"), null, null,
+                List.of(new RagIngestJobDto.Document(0, "Doc job", "CREATED", 42L, null))
+        );
+        when(ingestJobService.find("job-1", "ext-user")).thenReturn(Optional.of(done));
+
+        mockMvc.perform(post("/api/ext/rag/jobs")
+                        .principal(() -> "ext-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"title":"Doc job","content":"Contenido job"}]
+                                """))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/ext/rag/jobs/job-1"))
+                .andExpect(jsonPath("$.status").value("QUEUED"));
+
+        mockMvc.perform(get("/api/ext/rag/jobs/job-1").principal(() -> "ext-user"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.progress").value(1.0))
+                .andExpect(jsonPath("$.documents[0].documentId").value(42));
+    }
+
+    @Test
+    void jobSubmitAnswers429WhenQueueIsFull() throws Exception {
+        when(ingestJobService.submit(eq(RagService.GLOBAL_OWNER), eq("ext-user"), anyList()))
+                .thenThrow(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Cola de ingesta llena"));
+
+        mockMvc.perform(post("/api/ext/rag/jobs")
+                        .principal(() -> "ext-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"title":"Doc job","content":"Contenido job"}]
+                                """))
+                .andExpect(status().isTooManyRequests());
+    }
 }
@@ -2,6 +2,7 @@ package com.example.apiasistente.rag.controller;
 
 import com.example.apiasistente.rag.dto.RagContextStatsDto;
 import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.service.RagBulkIngestService;
 import com.example.apiasistente.rag.service.RagService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +16,7 @@ import java.time.Instant;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -35,6 +37,9 @@ class RagApiControllerTest {
     @MockitoBean
     private RagService ragService;
 
+    @MockitoBean
+    private RagBulkIngestService bulkIngestService;
+
     @Test
     void statsReturnsAggregatedContext() throws Exception {
         RagContextStatsDto stats = new RagContextStatsDto(
@@ -156,24 +161,17 @@ class RagApiControllerTest {
         first.setTitle("Doc 1");
         KnowledgeDocument second = new KnowledgeDocument();
         second.setTitle("Doc 2");
-        when(ragService.upsertStructuredDocumentForOwner(
+        when(bulkIngestService.upsertBatch(
                 eq(RagService.GLOBAL_OWNER),
-                eq("Doc 1"),
-                eq("Contenido 1"),
-                eq("manual"),
-                eq(null),
-                eq(null),
-                anyList()
-        )).thenReturn(first);
-        when(ragService.upsertStructuredDocumentForOwner(
-                eq(RagService.GLOBAL_OWNER),
-                eq("Doc 2"),
-                eq("Contenido 2"),
-                eq("manual"),
-                eq(null),
-                eq(null),
-                anyList()
-        )).thenReturn(second);
+                argThat(docs -> docs.size() == 2
+                        && docs.get(0).title().equals("Doc 1")
+                        && docs.get(0).content().equals("Contenido 1")
+                        && docs.get(0).source().equals("manual")
+                        && docs.get(1).title().equals("Doc 2"))
+        )).thenReturn(List.of(
+                new RagBulkIngestService.BulkItemResult("Doc 1", first, true, 1, null),
+                new RagBulkIngestService.BulkItemResult("Doc 2", second, true, 1, null)
+        ));
 
         mockMvc.perform(post("/api/rag/documents/batch")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -189,29 +187,13 @@ class RagApiControllerTest {
     }
 
     @Test
-    void userScopedBatchUpsertAllowsSamePrincipal() throws Exception {
-        KnowledgeDocument first = new KnowledgeDocument();
-        first.setTitle("Doc 1");
+    void userScopedBatchUpsertAllowsSamePrincipalAndOmitsFailedItems() throws Exception {
         KnowledgeDocument second = new KnowledgeDocument();
         second.setTitle("Doc 2");
-        when(ragService.upsertStructuredDocumentForOwner(
-                eq(RagService.GLOBAL_OWNER),
-                eq("Doc 1"),
-                eq("Contenido 1"),
-                eq("manual"),
-                eq(null),
-                eq(null),
-                anyList()
-        )).thenReturn(first);
-        when(ragService.upsertStructuredDocumentForOwner(
-                eq(RagService.GLOBAL_OWNER),
-                eq("Doc 2"),
-                eq("Contenido 2"),
-                eq("manual"),
-                eq(null),
-                eq(null),
-                anyList()
-        )).thenReturn(second);
+        when(bulkIngestService.upsertBatch(eq(RagService.GLOBAL_OWNER), anyList())).thenReturn(List.of(
+                new RagBulkIngestService.BulkItemResult("Doc 1", null, false, 0, "Ollama caido"),
+                new RagBulkIngestService.BulkItemResult("Doc 2", second, true, 1, null)
+        ));
 
         mockMvc.perform(post("/api/rag/users/user-a/documents/batch")
                         .principal(() -> "user-a")
@@ -223,8 +205,8 @@ class RagApiControllerTest {
                                 ]
                                 """))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].title").value("Doc 1"))
-                .andExpect(jsonPath("$[1].title").value("Doc 2"));
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].title").value("Doc 2"));
     }
 
     @Test
@@ -1,5 +1,6 @@
 package com.example.apiasistente.rag.controller;
 
+import com.example.apiasistente.rag.dto.RagIndexRebuildStatusDto;
 import com.example.apiasistente.rag.dto.RagOpsEventDto;
 import com.example.apiasistente.rag.dto.RagOpsStatusDto;
 import com.example.apiasistente.rag.service.RagOpsService;
@@ -109,6 +110,16 @@ class RagOpsControllerTest {
                 "Doc 55 eliminado desde maintenance.",
                 Instant.parse("2026-03-03T12:01:00Z"),
                 "Reconstruccion completa del indice desde vectors: 44 vectores.",
+                new RagIndexRebuildStatusDto(
+                        false,
+                        "manual-ui",
+                        "done",
+                        Instant.parse("2026-03-03T12:00:30Z"),
+                        Instant.parse("2026-03-03T12:01:00Z"),
+                        44,
+                        44,
+                        1.47
+                ),
                 List.of(
                         new RagOpsEventDto(
                                 Instant.parse("2026-03-03T12:01:00Z"),
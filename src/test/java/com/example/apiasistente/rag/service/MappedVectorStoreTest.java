@@ -0,0 +1,113 @@
+package com.example.apiasistente.rag.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void upsertsAppendAndLeaveTheOldSlotAsTombstone() throws Exception {
+        try (MappedVectorStore store = MappedVectorStore.open(tempDir)) {
+            store.markReady();
+            store.put(1L, new float[] {1f, 0f});
+            store.put(2L, new float[] {0f, 1f});
+            store.put(1L, new float[] {0.6f, 0.8f});
+
+            assertEquals(2, store.size());
+            assertEquals(1, store.deadSlots());
+            assertEquals(0.8f, store.view(1L).get(1));
+            assertNull(store.view(3L));
+        }
+    }
+
+    @Test
+    void viewsAreReadOnlyAndSurviveDeletesAndCompaction() throws Exception {
+        try (MappedVectorStore store = MappedVectorStore.open(tempDir)) {
+            store.markReady();
+            store.put(1L, new float[] {1f, 2f, 3f});
+            store.put(2L, new float[] {4f, 5f, 6f});
+            FloatBuffer before = store.view(1L);
+
+            store.delete(List.of(1L));
+            store.compact();
+
+            assertNull(store.view(1L));
+            assertEquals(0, store.deadSlots());
+            assertEquals(3f, before.get(2));
+            assertEquals(6f, store.view(2L).get(2));
+            assertThrows(java.nio.ReadOnlyBufferException.class, () -> store.view(2L).put(0, 9f));
+        }
+    }
+
+    @Test
+    void cleanCloseIsReusedButCrashLeavesTheStoreNotReady() throws Exception {
+        try (MappedVectorStore store = MappedVectorStore.open(tempDir)) {
+            store.markReady();
+            store.put(7L, new float[] {0.5f, 0.5f});
+            store.put(8L, new float[] {0.1f, 0.9f});
+            store.delete(List.of(8L));
+        }
+        MappedVectorStore reopened = MappedVectorStore.open(tempDir);
+        assertTrue(reopened.ready());
+        assertEquals(1, reopened.size());
+        assertEquals(0.5f, reopened.view(7L).get(1));
+        assertNull(reopened.view(8L));
+        // Sin close(): la marca de cierre limpio queda a 0, como tras un kill.
+
+        try (MappedVectorStore afterCrash = MappedVectorStore.open(tempDir)) {
+            assertFalse(afterCrash.ready());
+            assertEquals(0, afterCrash.size());
+        }
+        assertTrue(Files.exists(tempDir.resolve(MappedVectorStore.FILE_NAME)));
+    }
+
+    @Test
+    void dimensionChangeEmptiesTheStoreAndRequiresReload() throws Exception {
+        try (MappedVectorStore store = MappedVectorStore.open(tempDir)) {
+            store.markReady();
+            store.put(1L, new float[] {1f, 0f});
+
+            store.put(2L, new float[] {1f, 0f, 0f});
+
+            assertFalse(store.ready());
+            assertEquals(3, store.dimensions());
+            assertNull(store.view(1L));
+            assertEquals(1f, store.view(2L).get(0));
+        }
+    }
+
+    @Test
+    void growsAcrossManyRecordsWithoutLosingEntries() throws Exception {
+        try (MappedVectorStore store = MappedVectorStore.open(tempDir)) {
+            store.markReady();
+            float[] vector = new float[1024];
+            for (long id = 1; id <= 20_000; id++) {
+                vector[0] = id;
+                store.put(id, vector);
+            }
+            for (long id = 1; id <= 20_000; id += 2) {
+                store.delete(List.of(id));
+            }
+            store.compact();
+
+            assertEquals(10_000, store.size());
+            assertEquals(20_000f, store.view(20_000L).get(0));
+            assertEquals(2f, store.view(2L).get(0));
+            assertNull(store.view(19_999L));
+        }
+    }
+}
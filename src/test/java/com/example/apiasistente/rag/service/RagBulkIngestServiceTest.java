@@ -0,0 +1,211 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import com.example.apiasistente.shared.ai.OllamaClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RagBulkIngestServiceTest {
+
+    @Mock
+    private RagService ragService;
+
+    @Mock
+    private KnowledgeDocumentRepository docRepo;
+
+    @Mock
+    private RagBulkIngestWriter writer;
+
+    @Mock
+    private OllamaClient ollama;
+
+    @Mock
+    private RagChunkEmbeddingService chunkEmbeddings;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RagBulkIngestService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new RagBulkIngestService(ragService, docRepo, writer, ollama, chunkEmbeddings, meterRegistry, 256, 64, 120_000);
+    }
+
+    @Test
+    void packsChangedDocumentsIntoOneEmbeddingRequestAndSkipsUnchanged() {
+        stubPrepared("Doc A", "fp-a", "a1", "a2");
+        stubPrepared("Doc B", "fp-b", "b1");
+        stubPrepared("Doc C", "fp-c", "c1");
+        when(docRepo.findActiveByOwnerAndLowerTitleIn(eq("global"), anyCollection()))
+                .thenReturn(List.of(activeDoc("Doc B", "fp-b")));
+        when(ollama.embedMany(List.of("a1", "a2", "c1")))
+                .thenReturn(List.of(new float[] {3f, 4f}, new float[] {1f, 0f}, new float[] {0f, 2f}));
+        KnowledgeDocument a = doc("Doc A");
+        KnowledgeDocument b = doc("Doc B");
+        KnowledgeDocument c = doc("Doc C");
+        when(writer.write(eq("global"), anyList())).thenReturn(List.of(created(a), unchanged(b), created(c)));
+
+        List<RagBulkIngestService.BulkItemResult> results = service.upsertBatch("global", List.of(
+                bulk("Doc A"), bulk("Doc B"), bulk("Doc C")
+        ));
+
+        verify(ollama, times(1)).embedMany(anyList());
+        verify(writer).write(eq("global"), argThat(batch -> batch.size() == 3
+                && batch.get(0).embeddings().size() == 2
+                && Math.abs(batch.get(0).embeddings().get(0)[0] - 0.6f) < 1e-6
+                && batch.get(1).embeddings() == null
+                && batch.get(2).embeddings().size() == 1));
+        assertSame(a, results.get(0).document());
+        assertTrue(results.get(0).created());
+        assertFalse(results.get(1).created());
+        assertEquals(2.0, meterRegistry.counter("apiasistente.rag.bulk.documents", "result", "created").count());
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.bulk.documents", "result", "unchanged").count());
+        assertEquals(3.0, meterRegistry.counter("apiasistente.rag.bulk.chunks", "result", "embedded").count());
+    }
+
+    @Test
+    void sharedEmbeddingFailureIsRetriedPerDocumentAndOnlyFailsTheBrokenOne() {
+        stubPrepared("Doc A", "fp-a", "a1");
+        stubPrepared("Doc B", "fp-b", "b1");
+        when(docRepo.findActiveByOwnerAndLowerTitleIn(eq("global"), anyCollection())).thenReturn(List.of());
+        when(ollama.embedMany(List.of("a1", "b1"))).thenThrow(new IllegalStateException("lote rechazado"));
+        when(ollama.embedMany(List.of("a1"))).thenReturn(List.of(new float[] {1f, 0f}));
+        when(ollama.embedMany(List.of("b1"))).thenThrow(new IllegalStateException("texto invalido"));
+        KnowledgeDocument a = doc("Doc A");
+        when(writer.write(eq("global"), argThat(batch -> batch.size() == 1))).thenReturn(List.of(created(a)));
+
+        List<RagBulkIngestService.BulkItemResult> results = service.upsertBatch("global", List.of(bulk("Doc A"), bulk("Doc B")));
+
+        assertSame(a, results.get(0).document());
+        assertFalse(results.get(1).succeeded());
+        assertEquals("texto invalido", results.get(1).error());
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.bulk.documents", "result", "failed").count());
+    }
+
+    @Test
+    void batchWriteFailureFallsBackToOneWritePerDocument() {
+        stubPrepared("Doc A", "fp-a", "a1");
+        stubPrepared("Doc B", "fp-b", "b1");
+        when(docRepo.findActiveByOwnerAndLowerTitleIn(eq("global"), anyCollection())).thenReturn(List.of());
+        when(ollama.embedMany(anyList())).thenReturn(List.of(new float[] {1f, 0f}, new float[] {0f, 1f}));
+        KnowledgeDocument b = doc("Doc B");
+        when(writer.write(eq("global"), anyList())).thenAnswer(invocation -> {
+            List<RagBulkIngestWriter.PendingDocument> batch = invocation.getArgument(1);
+            if (batch.size() > 1 || batch.get(0).prepared().title().equals("Doc A")) {
+                throw new IllegalStateException("duplicado");
+            }
+            return List.of(created(b));
+        });
+
+        List<RagBulkIngestService.BulkItemResult> results = service.upsertBatch("global", List.of(bulk("Doc A"), bulk("Doc B")));
+
+        verify(writer, times(3)).write(eq("global"), anyList());
+        assertNull(results.get(0).document());
+        assertSame(b, results.get(1).document());
+    }
+
+    @Test
+    void repeatedTitleStartsANewBatchSoTheSecondVersionSeesTheFirst() {
+        stubPrepared("Doc A", "fp-a", "a1");
+        when(docRepo.findActiveByOwnerAndLowerTitleIn(eq("global"), anyCollection())).thenReturn(List.of());
+        when(ollama.embedMany(anyList())).thenReturn(List.of(new float[] {1f, 0f}));
+        when(writer.write(eq("global"), anyList())).thenReturn(List.of(created(doc("Doc A"))));
+
+        service.upsertBatch("global", List.of(bulk("Doc A"), bulk("Doc A")));
+
+        verify(writer, times(2)).write(eq("global"), argThat(batch -> batch.size() == 1));
+    }
+
+    @Test
+    void reusesStoredEmbeddingsAndEmbedsRepeatedTextsOnce() {
+        stubPrepared("Doc A", "fp-a", "comun", "a1");
+        stubPrepared("Doc B", "fp-b", "comun", "guardado");
+        when(docRepo.findActiveByOwnerAndLowerTitleIn(eq("global"), anyCollection())).thenReturn(List.of());
+        when(chunkEmbeddings.findReusable(anyList())).thenReturn(Map.of("guardado", new float[] {0f, 1f}));
+        when(ollama.embedMany(List.of("comun", "a1"))).thenReturn(List.of(new float[] {1f, 0f}, new float[] {0f, 2f}));
+        when(writer.write(eq("global"), anyList())).thenReturn(List.of(created(doc("Doc A")), created(doc("Doc B"))));
+
+        service.upsertBatch("global", List.of(bulk("Doc A"), bulk("Doc B")));
+
+        verify(ollama, times(1)).embedMany(anyList());
+        verify(chunkEmbeddings).recordUsage(argThat(chunks -> chunks.size() == 4), eq(Set.of("comun", "a1")));
+        verify(writer).write(eq("global"), argThat(batch -> batch.get(1).embeddings().get(0)[0] == 1f
+                && batch.get(1).embeddings().get(1)[1] == 1f));
+    }
+
+    @Test
+    void documentLandedConcurrentlyWithSameContentIsReportedUnchanged() {
+        stubPrepared("Doc A", "fp-a", "a1");
+        when(docRepo.findActiveByOwnerAndLowerTitleIn(eq("global"), anyCollection())).thenReturn(List.of());
+        when(ollama.embedMany(anyList())).thenReturn(List.of(new float[] {1f, 0f}));
+        // El writer ya ve la version que escribio otra ingesta con la misma huella.
+        KnowledgeDocument existing = activeDoc("Doc A", "fp-a");
+        when(writer.write(eq("global"), anyList())).thenReturn(List.of(unchanged(existing)));
+
+        List<RagBulkIngestService.BulkItemResult> results = service.upsertBatch("global", List.of(bulk("Doc A")));
+
+        assertSame(existing, results.get(0).document());
+        assertFalse(results.get(0).created());
+        assertEquals(0.0, meterRegistry.counter("apiasistente.rag.bulk.documents", "result", "created").count());
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.bulk.documents", "result", "unchanged").count());
+    }
+
+    private void stubPrepared(String title, String fingerprint, String... texts) {
+        List<RagService.PreparedChunkInput> chunks = new ArrayList<>();
+        for (int i = 0; i < texts.length; i++) {
+            chunks.add(new RagService.PreparedChunkInput(i, texts[i], "h-" + texts[i], 2, "api", null));
+        }
+        when(ragService.prepareDocument(eq("global"), eq(title), any(), any(), any(), any(), any()))
+                .thenReturn(new RagService.PreparedDocument("global", title, "api", null, chunks, fingerprint));
+    }
+
+    private static RagBulkIngestService.BulkDocument bulk(String title) {
+        return new RagBulkIngestService.BulkDocument(title, "contenido", null, null, null, List.of());
+    }
+
+    private static RagBulkIngestWriter.WrittenDocument created(KnowledgeDocument doc) {
+        return new RagBulkIngestWriter.WrittenDocument(doc, true);
+    }
+
+    private static RagBulkIngestWriter.WrittenDocument unchanged(KnowledgeDocument doc) {
+        return new RagBulkIngestWriter.WrittenDocument(doc, false);
+    }
+
+    private static KnowledgeDocument activeDoc(String title, String fingerprint) {
+        KnowledgeDocument doc = doc(title);
+        doc.setContentFingerprint(fingerprint);
+        return doc;
+    }
+
+    private static KnowledgeDocument doc(String title) {
+        KnowledgeDocument doc = new KnowledgeDocument();
+        doc.setOwner("global");
+        doc.setTitle(title);
+        return doc;
+    }
+}
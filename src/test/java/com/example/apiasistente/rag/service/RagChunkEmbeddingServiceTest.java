@@ -0,0 +1,105 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.shared.ai.OllamaClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RagChunkEmbeddingServiceTest {
+
+    @Mock
+    private KnowledgeVectorRepository vectorRepo;
+
+    @Mock
+    private OllamaClient ollama;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RagChunkEmbeddingService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new RagChunkEmbeddingService(vectorRepo, ollama, meterRegistry, true);
+    }
+
+    @Test
+    void reusesStoredVectorsAndEmbedsRepeatedTextsOnce() {
+        when(ollama.embedModel()).thenReturn("nomic-embed-text");
+        when(vectorRepo.findReusableByHashes(anyCollection(), eq("nomic-embed-text")))
+                .thenReturn(List.of(view("h-viejo", "viejo", new float[] {0f, 1f})));
+        when(ollama.embedMany(List.of("nuevo"))).thenReturn(List.of(new float[] {3f, 4f}));
+
+        List<float[]> embeddings = service.embed(List.of(chunk(0, "viejo"), chunk(1, "nuevo"), chunk(2, "nuevo")));
+
+        assertArrayEquals(new float[] {0f, 1f}, embeddings.get(0));
+        assertArrayEquals(new float[] {0.6f, 0.8f}, embeddings.get(1), 1e-6f);
+        assertArrayEquals(embeddings.get(1), embeddings.get(2));
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.embedding.chunks", "result", "reused").count());
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.embedding.chunks", "result", "deduplicated").count());
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.embedding.chunks", "result", "embedded").count());
+        assertEquals(2.0 / 3.0, meterRegistry.get("apiasistente.rag.embedding.reuse-ratio").gauge().value(), 1e-9);
+    }
+
+    @Test
+    void storedVectorWithSameHashButDifferentTextIsNotReused() {
+        when(ollama.embedModel()).thenReturn("nomic-embed-text");
+        when(vectorRepo.findReusableByHashes(anyCollection(), eq("nomic-embed-text")))
+                .thenReturn(List.of(view("h-texto", "otro texto", new float[] {0f, 1f})));
+        when(ollama.embedMany(List.of("texto"))).thenReturn(List.of(new float[] {1f, 0f}));
+
+        List<float[]> embeddings = service.embed(List.of(chunk(0, "texto")));
+
+        assertArrayEquals(new float[] {1f, 0f}, embeddings.get(0));
+        verify(ollama).embedMany(List.of("texto"));
+    }
+
+    @Test
+    void withoutConfiguredModelNothingIsLookedUp() {
+        when(ollama.embedModel()).thenReturn(" ");
+        when(ollama.embedMany(List.of("texto"))).thenReturn(List.of(new float[] {1f, 0f}));
+
+        service.embed(List.of(chunk(0, "texto")));
+
+        verifyNoInteractions(vectorRepo);
+    }
+
+    private static RagService.PreparedChunkInput chunk(int index, String text) {
+        return new RagService.PreparedChunkInput(index, text, "h-" + text, 2, "api", null);
+    }
+
+    private static KnowledgeVectorRepository.ReusableVectorView view(String hash, String text, float[] embedding) {
+        byte[] bin = EmbeddingCodec.encode(embedding);
+        return new KnowledgeVectorRepository.ReusableVectorView() {
+            @Override
+            public String getHash() {
+                return hash;
+            }
+
+            @Override
+            public String getText() {
+                return text;
+            }
+
+            @Override
+            public byte[] getEmbeddingBin() {
+                return bin;
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.dto.RetrievedChunkDto;
+import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RagChunkViewCacheTest {
+
+    @Mock
+    private KnowledgeChunkRepository chunkRepo;
+
+    @Mock
+    private RagCorpusEpochService corpusEpochService;
+
+    private RagChunkViewCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RagChunkViewCache(chunkRepo, corpusEpochService, new SimpleMeterRegistry(), 1L << 20, 60_000L, 1L << 20);
+    }
+
+    @Test
+    void onlyMissingChunksGoToTheDatabase() {
+        when(corpusEpochService.current()).thenReturn(3L);
+        when(chunkRepo.findActiveViewsByIdIn(List.of(1L, 2L))).thenReturn(List.of(view(1L), view(2L)));
+        when(chunkRepo.findActiveViewsByIdIn(List.of(3L))).thenReturn(List.of(view(3L)));
+
+        cache.findActive(List.of(1L, 2L));
+        Map<Long, RetrievedChunkDto> second = cache.findActive(List.of(1L, 2L, 3L));
+
+        assertEquals(3, second.size());
+        assertEquals("texto 3", second.get(3L).text());
+        verify(chunkRepo).findActiveViewsByIdIn(List.of(3L));
+    }
+
+    @Test
+    void corpusEpochChangeDropsCachedChunks() {
+        when(corpusEpochService.current()).thenReturn(3L, 3L, 4L, 4L);
+        when(chunkRepo.findActiveViewsByIdIn(List.of(1L))).thenReturn(List.of(view(1L)));
+
+        cache.findActive(List.of(1L));
+        cache.findActive(List.of(1L));
+
+        verify(chunkRepo, times(2)).findActiveViewsByIdIn(List.of(1L));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void fragmentsArePreparedOncePerChunk() {
+        AtomicInteger prepared = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            cache.fragments(view(5L), view -> {
+                prepared.incrementAndGet();
+                return RagService.prepareFragments(view);
+            });
+        }
+
+        assertEquals(1, prepared.get());
+    }
+
+    private static RetrievedChunkDto view(long chunkId) {
+        return new RetrievedChunkDto(chunkId, 10L, "Doc", "global", (int) chunkId, "texto " + chunkId);
+    }
+}
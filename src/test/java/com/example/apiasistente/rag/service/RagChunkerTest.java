@@ -0,0 +1,30 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.config.RagChunkingProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RagChunkerTest {
+
+    @Test
+    void strategyIsResolvedPerSourceWithFallbackToDefault() {
+        RagChunkingProperties properties = new RagChunkingProperties();
+        properties.setSources(Map.of("scraper", "sentence", "App-Log", "LINE", "api", "desconocida"));
+        RagChunker chunker = new RagChunker(properties, 700, 120);
+
+        assertEquals(RagChunker.Strategy.SENTENCE, chunker.strategyFor("scraper"));
+        assertEquals(RagChunker.Strategy.LINE, chunker.strategyFor("app-log"));
+        assertEquals(RagChunker.Strategy.FIXED, chunker.strategyFor("api"));
+        assertEquals(RagChunker.Strategy.FIXED, chunker.strategyFor(null));
+    }
+
+    @Test
+    void fixedStrategyKeepsTheLegacyWindows() {
+        RagChunker chunker = new RagChunker(new RagChunkingProperties(), 60, 10);
+
+        assertEquals(2, chunker.chunk("a".repeat(100), "api").size());
+    }
+}
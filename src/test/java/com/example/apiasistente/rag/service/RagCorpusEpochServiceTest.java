@@ -0,0 +1,60 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.RagCorpusEpoch;
+import com.example.apiasistente.rag.repository.RagCorpusEpochRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RagCorpusEpochServiceTest {
+
+    @Mock
+    private RagCorpusEpochRepository repository;
+
+    private RagCorpusEpochService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new RagCorpusEpochService(repository, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void startsFromThePersistedEpochAndBumpsThroughTheDatabase() {
+        when(repository.findEpoch(RagCorpusEpoch.SINGLETON_ID)).thenReturn(Optional.of(41L), Optional.of(42L));
+        when(repository.increment(eq(RagCorpusEpoch.SINGLETON_ID), any(Instant.class))).thenReturn(1);
+
+        service.init();
+        assertEquals(41L, service.current());
+
+        service.bump();
+        assertEquals(42L, service.current());
+    }
+
+    @Test
+    void seedsTheRowWhenMissingAndNeverMovesBackwards() {
+        when(repository.findEpoch(RagCorpusEpoch.SINGLETON_ID)).thenReturn(Optional.empty(), Optional.of(9L), Optional.of(3L));
+        when(repository.saveAndFlush(any(RagCorpusEpoch.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.init();
+        assertEquals(0L, service.current());
+        verify(repository).saveAndFlush(any(RagCorpusEpoch.class));
+
+        service.refresh();
+        assertEquals(9L, service.current());
+        service.refresh();
+        assertEquals(9L, service.current());
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.entity.RagIngestJob;
+import com.example.apiasistente.rag.entity.RagIngestJobItem;
+import com.example.apiasistente.rag.entity.RagIngestJobItemStatus;
+import com.example.apiasistente.rag.entity.RagIngestJobStatus;
+import com.example.apiasistente.rag.repository.RagIngestJobItemRepository;
+import com.example.apiasistente.rag.repository.RagIngestJobRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RagIngestJobServiceTest {
+
+    @Mock
+    private RagIngestJobStore store;
+
+    @Mock
+    private RagIngestJobRepository jobRepo;
+
+    @Mock
+    private RagIngestJobItemRepository itemRepo;
+
+    @Mock
+    private RagBulkIngestService bulkIngestService;
+
+    private RagIngestJobService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new RagIngestJobService(store, jobRepo, itemRepo, bulkIngestService, new SimpleMeterRegistry(), 1, 0, 100, 2, 120);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void runIngestsPendingItemsAndRecordsPerDocumentOutcomes() throws Exception {
+        when(store.claim(eq("job-1"), anyString(), any())).thenReturn(Optional.of(job("job-1", RagIngestJobStatus.RUNNING)));
+        RagIngestJobItem readable = item(0, new ObjectMapper().writeValueAsString(
+                new RagBulkIngestService.BulkDocument("Doc A", "contenido", null, null, null, List.of())
+        ));
+        RagIngestJobItem broken = item(1, "{roto");
+        when(itemRepo.findByJobIdAndStatusOrderByItemIndexAsc(eq("job-1"), eq(RagIngestJobItemStatus.PENDING), any()))
+                .thenReturn(List.of(readable, broken), List.of());
+        KnowledgeDocument doc = new KnowledgeDocument();
+        ReflectionTestUtils.setField(doc, "id", 7L);
+        when(bulkIngestService.upsertBatch(eq("global"), argThat(docs -> docs.size() == 1 && docs.get(0).title().equals("Doc A"))))
+                .thenReturn(List.of(new RagBulkIngestService.BulkItemResult("Doc A", doc, true, 1, null)));
+        when(store.recordOutcomes(eq("job-1"), anyString(), any(), anyList())).thenReturn(true);
+        when(store.finish(eq("job-1"), anyString(), eq(null))).thenReturn(Optional.of(job("job-1", RagIngestJobStatus.PARTIAL)));
+
+        service.run("job-1");
+
+        verify(store).recordOutcomes(eq("job-1"), anyString(), any(), argThat(outcomes -> outcomes.size() == 2
+                && outcomes.stream().anyMatch(o -> o.item() == broken && o.status() == RagIngestJobItemStatus.FAILED)
+                && outcomes.stream().anyMatch(o -> o.item() == readable
+                && o.status() == RagIngestJobItemStatus.CREATED
+                && o.documentId() == 7L)));
+        verify(store).finish(eq("job-1"), anyString(), eq(null));
+    }
+
+    @Test
+    void runSkipsJobLeasedByAnotherInstance() {
+        when(store.claim(eq("job-1"), anyString(), any())).thenReturn(Optional.empty());
+
+        service.run("job-1");
+
+        verify(itemRepo, never()).findByJobIdAndStatusOrderByItemIndexAsc(any(), any(), any());
+        verify(bulkIngestService, never()).upsertBatch(any(), anyList());
+        verify(store, never()).finish(any(), any(), any());
+    }
+
+    @Test
+    void runStopsWithoutFinishingWhenLeaseIsLostMidJob() throws Exception {
+        when(store.claim(eq("job-1"), anyString(), any())).thenReturn(Optional.of(job("job-1", RagIngestJobStatus.RUNNING)));
+        RagIngestJobItem readable = item(0, new ObjectMapper().writeValueAsString(
+                new RagBulkIngestService.BulkDocument("Doc A", "contenido", null, null, null, List.of())
+        ));
+        when(itemRepo.findByJobIdAndStatusOrderByItemIndexAsc(eq("job-1"), eq(RagIngestJobItemStatus.PENDING), any()))
+                .thenReturn(List.of(readable));
+        KnowledgeDocument doc = new KnowledgeDocument();
+        ReflectionTestUtils.setField(doc, "id", 7L);
+        when(bulkIngestService.upsertBatch(eq("global"), anyList()))
+                .thenReturn(List.of(new RagBulkIngestService.BulkItemResult("Doc A", doc, true, 1, null)));
+        when(store.recordOutcomes(eq("job-1"), anyString(), any(), anyList())).thenReturn(false);
+
+        service.run("job-1");
+
+        verify(bulkIngestService).upsertBatch(eq("global"), anyList());
+        verify(store, never()).finish(any(), any(), any());
+    }
+
+    @Test
+    void submitAnswers429WhenWorkersAndQueueAreFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(store.create(eq("global"), eq("etl"), anyList(), anyList(), anyString(), any()))
+                .thenReturn(job("job-1", RagIngestJobStatus.QUEUED));
+        when(store.claim(eq("job-1"), anyString(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            throw new IllegalStateException("BD no disponible");
+        });
+        when(store.finish(eq("job-1"), anyString(), any())).thenReturn(Optional.of(job("job-1", RagIngestJobStatus.FAILED)));
+        List<RagBulkIngestService.BulkDocument> docs = List.of(
+                new RagBulkIngestService.BulkDocument("Doc A", "contenido", null, null, null, List.of())
+        );
+
+        assertEquals("job-1", service.submit("global", "etl", docs).id());
+        ResponseStatusException rejected = assertThrows(ResponseStatusException.class, () -> service.submit("global", "etl", docs));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getStatusCode());
+
+        release.countDown();
+        verify(store, timeout(2000)).finish(eq("job-1"), anyString(), eq("BD no disponible"));
+    }
+
+    private static RagIngestJob job(String id, RagIngestJobStatus status) {
+        RagIngestJob job = new RagIngestJob();
+        job.setId(id);
+        job.setOwner("global");
+        job.setRequestedBy("etl");
+        job.setStatus(status);
+        job.setTotalDocuments(2);
+        return job;
+    }
+
+    private static RagIngestJobItem item(int index, String payload) {
+        RagIngestJobItem item = new RagIngestJobItem();
+        item.setJobId("job-1");
+        item.setItemIndex(index);
+        item.setPayload(payload);
+        return item;
+    }
+}
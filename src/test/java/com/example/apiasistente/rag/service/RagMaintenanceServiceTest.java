@@ -3,6 +3,7 @@ package com.example.apiasistente.rag.service;
 import com.example.apiasistente.chat.repository.ChatMessageSourceRepository;
 import com.example.apiasistente.monitoring.dto.MonitoringAlertStateDto;
 import com.example.apiasistente.monitoring.service.MonitoringAlertService;
+import com.example.apiasistente.rag.config.RagChunkingProperties;
 import com.example.apiasistente.rag.config.RagMaintenanceProperties;
 import com.example.apiasistente.rag.dto.RagMaintenanceCaseDecisionRequest;
 import com.example.apiasistente.rag.entity.KnowledgeChunk;
@@ -100,8 +101,7 @@ class RagMaintenanceServiceTest {
                 monitoringAlertService,
                 vectorIndexService,
                 ragService,
-                700,
-                120
+                new RagChunker(new RagChunkingProperties(), 700, 120)
         );
 
         lenient().when(caseRepo.save(any(RagMaintenanceCase.class))).thenAnswer(invocation -> {
@@ -49,6 +49,9 @@ class RagOpsServiceTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Mock
+    private RagCorpusEpochService corpusEpochService;
+
     private RagOpsService service;
 
     @BeforeEach
@@ -60,6 +63,7 @@ class RagOpsServiceTest {
                 jdbcTemplate,
                 vectorIndexProvider,
                 maintenanceServiceProvider,
+                corpusEpochService,
                 10,
                 700,
                 120,
@@ -101,6 +105,15 @@ class RagOpsServiceTest {
         service.recordIndexWrite(3);
         service.recordIndexDelete(2);
         service.recordIndexRebuild("manual-ui", 40);
+        when(vectorIndexService.rebuildProgress()).thenReturn(new RagVectorIndexService.RebuildProgress(
+                false,
+                "manual-ui",
+                "done",
+                Instant.parse("2026-03-03T12:00:00Z"),
+                Instant.parse("2026-03-03T12:00:20Z"),
+                40L,
+                40L
+        ));
 
         RagOpsStatusDto status = service.status();
 
@@ -118,6 +131,8 @@ class RagOpsServiceTest {
         assertEquals(2L, status.indexDeletes());
         assertEquals(1L, status.indexRebuilds());
         assertTrue(status.lastRetrievalSummary().contains("owners=global, ana"));
+        assertEquals("done", status.indexRebuild().phase());
+        assertEquals(2.0, status.indexRebuild().vectorsPerSecond(), 1e-9);
         assertFalse(status.recentEvents().isEmpty());
     }
 
@@ -158,6 +173,7 @@ class RagOpsServiceTest {
         verify(chunkRepo).deleteByDocument_Id(11L);
         verify(docRepo).delete(first);
         verify(docRepo).delete(second);
+        verify(corpusEpochService).bump();
         assertEquals(2L, status.deletedDocuments());
         assertTrue(status.lastDeleteSummary().contains("2 documentos antiguos"));
     }
@@ -0,0 +1,57 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.shared.config.OllamaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RagQueryEmbeddingCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void snapshotOnShutdownWarmsTheNextInstance() {
+        RagQueryEmbeddingCache first = newCache("nomic-embed-text");
+        first.put("timeout gateway", new float[] {0.6f, 0.8f});
+        first.put("rotar certificados", new float[] {1f, 0f});
+        first.saveSnapshot();
+
+        RagQueryEmbeddingCache second = newCache("nomic-embed-text");
+        second.loadSnapshot();
+
+        assertEquals(2, second.size());
+        assertArrayEquals(new float[] {0.6f, 0.8f}, second.get("timeout gateway"));
+    }
+
+    @Test
+    void snapshotFromAnotherEmbeddingModelIsIgnored() {
+        RagQueryEmbeddingCache first = newCache("nomic-embed-text");
+        first.put("timeout gateway", new float[] {0.6f, 0.8f});
+        first.saveSnapshot();
+
+        RagQueryEmbeddingCache second = newCache("bge-m3");
+        second.loadSnapshot();
+
+        assertEquals(0, second.size());
+        assertNull(second.get("timeout gateway"));
+    }
+
+    private RagQueryEmbeddingCache newCache(String embedModel) {
+        OllamaProperties properties = new OllamaProperties();
+        properties.setEmbedModel(embedModel);
+        return new RagQueryEmbeddingCache(
+                new SimpleMeterRegistry(),
+                properties,
+                1L << 20,
+                60_000L,
+                tempDir.resolve("query-embeddings.bin").toString()
+        );
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.dto.RetrievedChunkDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RagSemanticResultCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private static final Set<String> TERMS = Set.of("timeout", "gateway");
+
+    private final RagSemanticResultCache cache = new RagSemanticResultCache(meterRegistry, true, 0.03, 8, 60_000L, 10);
+
+    @Test
+    void nearIdenticalQueryReusesResultAndReportsSavedLatency() {
+        RagService.RetrievalResult result = result();
+        cache.put("*", TERMS, new float[] {1.0f, 0.0f, 0.2f}, 0L, result, 40.0);
+
+        assertSame(result, cache.lookup("*", TERMS, new float[] {1.0f, 0.01f, 0.2f}, 0L));
+        assertNull(cache.lookup("*", TERMS, new float[] {0.0f, 1.0f, 0.0f}, 0L));
+
+        assertEquals(0.5, cache.hitRatio(), 1e-9);
+        assertEquals(40.0, meterRegistry.get("apiasistente.rag.semantic-cache.saved").timer()
+                .totalTime(java.util.concurrent.TimeUnit.MILLISECONDS), 1e-6);
+    }
+
+    @Test
+    void corpusVersionChangeDropsEveryEntryAndRejectsStaleResults() {
+        cache.put("*", TERMS, new float[] {1.0f, 0.0f}, 0L, result(), 10.0);
+
+        assertNull(cache.lookup("*", TERMS, new float[] {1.0f, 0.0f}, 1L));
+        assertEquals(0, cache.size());
+
+        // Retrieval que empezo con la version 0 y termino despues del cambio.
+        cache.put("*", TERMS, new float[] {1.0f, 0.0f}, 0L, result(), 10.0);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void scopesAreIsolatedAndSizeIsBounded() {
+        cache.put("global", TERMS, new float[] {1.0f, 0.0f}, 0L, result(), 10.0);
+        assertNull(cache.lookup("ana", TERMS, new float[] {1.0f, 0.0f}, 0L));
+
+        for (int i = 0; i < 20; i++) {
+            cache.put("scope-" + i, TERMS, new float[] {1.0f, i}, 0L, result(), 10.0);
+        }
+        assertEquals(8, cache.size());
+    }
+
+    @Test
+    void sameEmbeddingWithDifferentTermsMisses() {
+        cache.put("*", Set.of("error", "502"), new float[] {1.0f, 0.0f}, 0L, result(), 10.0);
+
+        assertNull(cache.lookup("*", Set.of("error", "504"), new float[] {1.0f, 0.0f}, 0L));
+        assertNotNull(cache.lookup("*", Set.of("502", "error"), new float[] {1.0f, 0.0f}, 0L));
+    }
+
+    @Test
+    void emptyResultsAreNotCached() {
+        cache.put("*", TERMS, new float[] {1.0f, 0.0f}, 0L, RagService.RetrievalResult.empty(List.of("global"), 1.0, 10, 0.45), 10.0);
+
+        assertEquals(0, cache.size());
+    }
+
+    private static RagService.RetrievalResult result() {
+        RagService.ScoredChunk chunk = new RagService.ScoredChunk(
+                new RetrievedChunkDto(1L, 10L, "Doc", "global", 0, "Reinicia el gateway."), 0.8);
+        return new RagService.RetrievalResult(
+                List.of(chunk),
+                List.of(chunk),
+                RagService.RetrievalStats.empty(List.of("global"), 1.0, 10, 0.45)
+        );
+    }
+}
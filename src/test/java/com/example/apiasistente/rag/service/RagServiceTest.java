@@ -1,10 +1,12 @@
 package com.example.apiasistente.rag.service;
 
+import com.example.apiasistente.rag.dto.RetrievedChunkDto;
 import com.example.apiasistente.rag.entity.KnowledgeChunk;
 import com.example.apiasistente.rag.entity.KnowledgeDocument;
 import com.example.apiasistente.rag.repository.KnowledgeChunkRepository;
 import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
 import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
+import com.example.apiasistente.rag.util.SentenceSegmenter;
 import com.example.apiasistente.shared.ai.OllamaClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,10 +16,20 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -42,6 +54,24 @@ class RagServiceTest {
     @Mock
     private OllamaClient ollama;
 
+    @Mock
+    private RagQueryEmbeddingCache queryEmbeddingCache;
+
+    @Mock
+    private RagSemanticResultCache semanticResultCache;
+
+    @Mock
+    private RagCorpusEpochService corpusEpochService;
+
+    @Mock
+    private RagChunkViewCache chunkViewCache;
+
+    @Mock
+    private RagChunkEmbeddingService chunkEmbeddings;
+
+    @Mock
+    private RagChunker chunker;
+
     private RagService service;
 
     @BeforeEach
@@ -52,7 +82,13 @@ class RagServiceTest {
                 vectorRepo,
                 vectorIndexService,
                 ragOpsService,
-                ollama
+                ollama,
+                queryEmbeddingCache,
+                semanticResultCache,
+                corpusEpochService,
+                chunkViewCache,
+                chunkEmbeddings,
+                chunker
         );
     }
 
@@ -73,6 +109,7 @@ class RagServiceTest {
         verify(chunkRepo).deleteByDocument_Id(30L);
         verify(docRepo).delete(doc);
         verify(ragOpsService).recordDocumentDelete("global", "Doc roto", 30L, 2, "rag-service");
+        verify(corpusEpochService).bump();
     }
 
     @Test
@@ -97,5 +134,82 @@ class RagServiceTest {
         verify(vectorIndexService).deleteChunkIds(List.of(501L, 502L));
         verify(chunkRepo).deleteAllByIdInBatch(List.of(501L, 502L));
         verify(ragOpsService).recordChunkPrune("global", 2);
+        verify(corpusEpochService).bump();
+    }
+
+    @Test
+    void unchangedReingestRefreshesMetadataWithoutBumpingCorpusEpoch() {
+        List<RagService.IncomingChunk> chunks = List.of(
+                new RagService.IncomingChunk(0, "Texto estable de la pagina.", null, null, null, null)
+        );
+        String fingerprint = service.prepareDocument(
+                RagService.GLOBAL_OWNER, "Pagina", null, "scraper", "web", "https://externo.test/a", chunks
+        ).fingerprint();
+
+        KnowledgeDocument active = new KnowledgeDocument();
+        ReflectionTestUtils.setField(active, "id", 40L);
+        active.setOwner(RagService.GLOBAL_OWNER);
+        active.setTitle("Pagina");
+        active.setActive(true);
+        active.setContentFingerprint(fingerprint);
+        when(docRepo.findFirstByOwnerAndTitleIgnoreCaseAndActiveTrue(RagService.GLOBAL_OWNER, "Pagina"))
+                .thenReturn(Optional.of(active));
+        when(docRepo.save(active)).thenReturn(active);
+
+        KnowledgeDocument result = service.upsertStructuredDocumentForOwner(
+                RagService.GLOBAL_OWNER, "Pagina", null, "scraper", "web", "https://externo.test/b", chunks
+        );
+
+        assertSame(active, result);
+        assertEquals("https://externo.test/b", active.getReferenceUrl());
+        verify(chunkEmbeddings, never()).embed(any());
+        verify(corpusEpochService, never()).bump();
+    }
+
+    @Test
+    void semanticCacheHitSkipsVectorSearch() {
+        RagService.RetrievalResult cached = RagService.RetrievalResult.empty(List.of("global"), 0.0, 10, 0.45);
+        when(queryEmbeddingCache.get("timeout gateway")).thenReturn(new float[] {0.6f, 0.8f});
+        when(corpusEpochService.current()).thenReturn(7L);
+        when(semanticResultCache.lookup(eq("*"), eq(Set.of("timeout", "gateway")), any(float[].class), eq(7L))).thenReturn(cached);
+
+        RagService.RetrievalResult result = service.retrieveShared("Timeout gateway");
+
+        assertSame(cached, result);
+        verify(vectorIndexService, never()).search(any(), any(float[].class), anyInt());
+        verify(vectorIndexService, never()).searchText(any(), any(), anyInt());
+        verify(semanticResultCache, never()).put(any(), any(), any(), anyLong(), any(), anyDouble());
+    }
+
+    @Test
+    void embeddingFailureFallsBackToLexicalHits() {
+        when(ollama.embedOne("Timeout gateway")).thenThrow(new IllegalStateException("ollama caido"));
+        when(vectorIndexService.searchText(isNull(), eq("Timeout gateway"), anyInt()))
+                .thenReturn(List.of(new RagVectorIndexService.SearchHit(5L, "global", 3.2f, null)));
+        when(chunkViewCache.findActive(List.of(5L)))
+                .thenReturn(Map.of(5L, new RetrievedChunkDto(5L, 10L, "Doc", "global", 0, "Reinicia el gateway tras un timeout.")));
+
+        RagService.RetrievalResult result = service.retrieveShared("Timeout gateway");
+
+        assertEquals(List.of(5L), result.retrievedChunks().stream().map(sc -> sc.chunk().chunkId()).toList());
+        verify(vectorIndexService, never()).search(any(), any(float[].class), anyInt());
+        verify(semanticResultCache, never()).lookup(any(), any(), any(), anyLong());
+        verify(semanticResultCache, never()).put(any(), any(), any(), anyLong(), any(), anyDouble());
+    }
+
+    @Test
+    void promptFragmentsUseIngestOffsetsAndSegmentOldChunksOnTheFly() {
+        String text = "Reinicia el gateway. Revisa los logs de timeout.";
+        byte[] offsets = SentenceSegmenter.encode(SentenceSegmenter.segment(text));
+
+        RagService.PromptFragments stored = RagService.prepareFragments(
+                new RetrievedChunkDto(1L, 10L, "Doc", "global", 0, text, offsets));
+        RagService.PromptFragments legacy = RagService.prepareFragments(
+                new RetrievedChunkDto(2L, 10L, "Doc", "global", 0, text));
+
+        assertEquals(stored, legacy);
+        assertEquals(2, stored.fragments().size());
+        assertEquals("revisa los logs de timeout", stored.fragments().get(1).normalized());
+        assertTrue(stored.fragments().get(1).tokens().contains("timeout"));
     }
 }
@@ -0,0 +1,160 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.config.RagChunkingProperties;
+import com.example.apiasistente.rag.entity.KnowledgeDocument;
+import com.example.apiasistente.rag.repository.KnowledgeDocumentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RagStreamIngestServiceTest {
+
+    private static final String SOURCE = "api";
+    private static final String TAGS = "manual";
+
+    @Mock
+    private RagService ragService;
+
+    @Mock
+    private RagChunkEmbeddingService chunkEmbeddings;
+
+    @Mock
+    private RagStreamIngestWriter writer;
+
+    @Mock
+    private KnowledgeDocumentRepository docRepo;
+
+    @Captor
+    private ArgumentCaptor<List<RagService.PreparedChunkInput>> windows;
+
+    private final RagChunker chunker = new RagChunker(new RagChunkingProperties(), 100, 20);
+    private SimpleMeterRegistry meterRegistry;
+    private RagStreamIngestService service;
+    private KnowledgeDocument staging;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new RagStreamIngestService(
+                ragService, chunker, chunkEmbeddings, writer, docRepo, meterRegistry, 2, 200, 60
+        );
+        staging = new KnowledgeDocument();
+        ReflectionTestUtils.setField(staging, "id", 7L);
+        when(ragService.normalizeMetadata(any(), any(), any(), any(), any()))
+                .thenReturn(new RagService.DocumentMetadata(RagService.GLOBAL_OWNER, "Manual", SOURCE, TAGS, null));
+        when(writer.createStaging(any())).thenReturn(staging);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void ndjsonStreamPersistsWindowsAndCommitsSameFingerprintAsBatchPath() throws Exception {
+        String body = "Primera parte del manual con bastante texto para varios chunks. ".repeat(6)
+                + "Segunda parte, que llega en otra linea del stream. ".repeat(5);
+        when(chunkEmbeddings.embed(anyList())).thenAnswer(invocation -> {
+            List<?> window = invocation.getArgument(0);
+            List<float[]> embeddings = new ArrayList<>();
+            window.forEach(chunk -> embeddings.add(new float[] {1f, 0f}));
+            return embeddings;
+        });
+        when(writer.commit(eq(7L), anyString(), anyInt())).thenReturn(new RagStreamIngestWriter.Committed(staging, true));
+
+        String ndjson = "{\"title\":\"Manual\",\"source\":\"api\",\"tags\":\"manual\"}\n"
+                + "{\"text\":" + json(body.substring(0, 250)) + "}\n"
+                + "\n"
+                + "{\"text\":" + json(body.substring(250)) + "}\n";
+        KnowledgeDocument result = service.ingestNdjson(RagService.GLOBAL_OWNER, new StringReader(ndjson));
+
+        List<String> expected = chunker.chunk(body, SOURCE);
+        verify(writer, times((expected.size() + 1) / 2)).appendWindow(eq(7L), eq(RagService.GLOBAL_OWNER), windows.capture(), anyList());
+        List<String> streamed = windows.getAllValues().stream()
+                .flatMap(List::stream)
+                .map(RagService.PreparedChunkInput::text)
+                .toList();
+        assertEquals(expected, streamed);
+        verify(writer).commit(7L, batchFingerprint(expected), expected.size());
+        assertSame(staging, result);
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.stream.documents", "result", "created").count());
+        assertEquals(expected.size(), meterRegistry.counter("apiasistente.rag.stream.chunks").count());
+    }
+
+    @Test
+    void failedWindowDiscardsStagingAndNeverCommits() {
+        when(chunkEmbeddings.embed(anyList())).thenThrow(new IllegalStateException("Ollama no disponible"));
+
+        String body = "Texto del documento que no llega a indexarse porque falla el embedding. ".repeat(4);
+        IllegalStateException error = assertThrows(
+                IllegalStateException.class,
+                () -> service.ingestText(RagService.GLOBAL_OWNER, "Manual", SOURCE, TAGS, null, new StringReader(body))
+        );
+
+        assertEquals("Ollama no disponible", error.getMessage());
+        verify(writer).discard(7L);
+        verify(writer, never()).commit(any(), any(), anyInt());
+        assertEquals(1.0, meterRegistry.counter("apiasistente.rag.stream.documents", "result", "failed").count());
+    }
+
+    @Test
+    void oversizedNdjsonLineIsRejectedAndStagingDiscarded() {
+        String ndjson = "{\"title\":\"Manual\"}\n{\"text\":\"" + "x".repeat(300) + "\"}\n";
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> service.ingestNdjson(RagService.GLOBAL_OWNER, new StringReader(ndjson))
+        );
+
+        verify(writer).discard(7L);
+        verify(writer, never()).appendWindow(any(), any(), anyList(), anyList());
+    }
+
+    /**
+     * Huella que calcularia `RagService` para los mismos chunks en la ingesta por JSON.
+     */
+    private static String batchFingerprint(List<String> texts) throws Exception {
+        List<RagService.PreparedChunkInput> chunks = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            chunks.add(RagService.chunkInput(i, texts.get(i), SOURCE, TAGS));
+        }
+        String signature = chunks.stream()
+                .map(RagService::fingerprintSignature)
+                .collect(Collectors.joining(RagService.FINGERPRINT_SEPARATOR));
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(signature.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String json(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,534 @@
+package com.example.apiasistente.rag.service;
+
+import com.example.apiasistente.rag.config.RagVectorHnswProperties;
+import com.example.apiasistente.rag.config.RagVectorIndexProperties;
+import com.example.apiasistente.rag.repository.KnowledgeVectorRepository;
+import com.example.apiasistente.rag.repository.VectorTombstoneRepository;
+import com.example.apiasistente.rag.util.EmbeddingCodec;
+import com.example.apiasistente.shared.ai.OllamaClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RagVectorIndexServiceTest {
+
+    @Mock
+    private KnowledgeVectorRepository vectorRepo;
+
+    @Mock
+    private VectorTombstoneRepository tombstoneRepo;
+
+    @Mock
+    private OllamaClient ollamaClient;
+
+    @Mock
+    private ObjectProvider<RagOpsService> ragOpsProvider;
+
+    @TempDir
+    Path tempDir;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RagVectorHnswProperties hnswProperties;
+    private RagVectorIndexService service;
+    private boolean shardByOwner;
+    private String vectorStoreDir = "";
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        hnswProperties = new RagVectorHnswProperties();
+        service = newService();
+    }
+
+    private RagVectorIndexService newService() throws Exception {
+        return newService("float32");
+    }
+
+    private RagVectorIndexService newService(String codecMode) throws Exception {
+        return new RagVectorIndexService(
+                vectorRepo,
+                tombstoneRepo,
+                ollamaClient,
+                ragOpsProvider,
+                meterRegistry,
+                hnswProperties,
+                new RagVectorIndexProperties(
+                        tempDir.resolve("hnsw").toString(),
+                        "auto",
+                        false,
+                        "catch-up",
+                        0L,
+                        new RagVectorIndexProperties.Commit("group", 1L << 30),
+                        new RagVectorIndexProperties.Rebuild(2, 2),
+                        new RagVectorIndexProperties.Codec(codecMode, true, 3),
+                        new RagVectorIndexProperties.Search(2, shardByOwner),
+                        new RagVectorIndexProperties.Store(vectorStoreDir)
+                )
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void searchSeesWritesAndDeletesThroughNrtSearcher() {
+        service.indexBatch(List.of(
+                vector(1L, "global", 1f, 0f, 0f),
+                vector(2L, "global", 0f, 1f, 0f)
+        ));
+
+        List<RagVectorIndexService.SearchHit> hits = service.search(null, new float[] {1, 0, 0}, 2);
+        assertEquals(1L, hits.get(0).chunkId());
+
+        service.deleteChunkIds(List.of(1L));
+
+        List<RagVectorIndexService.SearchHit> afterDelete = service.search(null, new float[] {1, 0, 0}, 2);
+        assertEquals(List.of(2L), afterDelete.stream().map(RagVectorIndexService.SearchHit::chunkId).toList());
+    }
+
+    @Test
+    void hitsCarryFullPrecisionEmbeddingsFromTheIndex() throws Exception {
+        service.shutdown();
+        service = newService("int8");
+        service.indexBatch(List.of(
+                textVector(1L, "global", "Guia de timeouts del gateway", 0.6f, 0.8f, 0f),
+                textVector(2L, "global", "Rotacion de certificados", 0f, 0f, 1f)
+        ));
+
+        List<RagVectorIndexService.SearchHit> knnHits = service.search(null, new float[] {0.6f, 0.8f, 0}, 2);
+        assertArrayEquals(new float[] {0.6f, 0.8f, 0f}, floats(knnHits.get(0).embedding()));
+        assertArrayEquals(new float[] {0f, 0f, 1f}, floats(knnHits.get(1).embedding()));
+        // Un solo array por busqueda, visible para VectorMath sin copias.
+        assertSame(knnHits.get(0).embedding().array(), knnHits.get(1).embedding().array());
+
+        List<RagVectorIndexService.SearchHit> textHits = service.searchText(null, "certificados", 2);
+        assertEquals(1, textHits.size());
+        assertArrayEquals(new float[] {0f, 0f, 1f}, floats(textHits.get(0).embedding()));
+    }
+
+    @Test
+    void mappedStoreServesRerankVectorsOnceLoadedAndFollowsDeletes() throws Exception {
+        service.shutdown();
+        vectorStoreDir = tempDir.resolve("vectors").toString();
+        service = newService();
+        service.indexBatch(List.of(
+                vector(1L, "global", 0.6f, 0.8f, 0f),
+                vector(2L, "global", 0f, 0f, 1f)
+        ));
+        // Fichero nuevo: hasta repoblarlo desde el indice los hits siguen trayendo su copia.
+        assertArrayEquals(new float[] {0.6f, 0.8f, 0f}, floats(service.search(null, new float[] {0.6f, 0.8f, 0}, 1).get(0).embedding()));
+
+        service.loadVectorStoreIfNeeded();
+
+        RagVectorIndexService.SearchHit hit = service.search(null, new float[] {0.6f, 0.8f, 0}, 1).get(0);
+        assertEquals(1L, hit.chunkId());
+        assertNull(hit.embedding());
+        var view = service.vectorView(1L);
+        assertEquals(0.8f, view.get(1));
+
+        service.deleteChunkIds(List.of(1L));
+        assertNull(service.vectorView(1L));
+        assertEquals(1.0f, service.vectorView(2L).get(2));
+
+        // Cierre limpio: al reabrir el store esta listo sin repoblar.
+        service.shutdown();
+        service = newService();
+        assertEquals(1.0f, service.vectorView(2L).get(2));
+    }
+
+    @Test
+    void refreshLagIsRecordedAndNoWriteStaysPendingAfterIndexing() {
+        service.indexBatch(List.of(vector(7L, "global", 0f, 0f, 1f)));
+
+        assertTrue(meterRegistry.get("apiasistente.rag.index.searcher.refresh.lag").timer().count() >= 1);
+        assertEquals(0.0, meterRegistry.get("apiasistente.rag.index.searcher.pending.lag.ms").gauge().value());
+    }
+
+    @Test
+    void ownerFilterReturnsOnlyEligibleHitsEvenWhenOtherOwnersAreCloser() {
+        List<RagVectorIndexService.IndexedVectorRecord> batch = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            batch.add(vector(id, "global", 1f, 0f, 0f));
+        }
+        batch.add(vector(500L, "ana", 0f, 1f, 0f));
+        batch.add(vector(501L, "ana", 0f, 0f, 1f));
+        service.indexBatch(batch);
+
+        List<RagVectorIndexService.SearchHit> hits = service.search(List.of("ana"), new float[] {1, 0, 0}, 5);
+
+        assertEquals(2, hits.size());
+        assertTrue(hits.stream().allMatch(hit -> "ana".equals(hit.owner())));
+    }
+
+    @Test
+    void ownerShardsAreSearchedSeparatelyAndMergedByScore() throws Exception {
+        service.shutdown();
+        shardByOwner = true;
+        service = newService();
+        List<RagVectorIndexService.IndexedVectorRecord> batch = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            batch.add(vector(id, "global", 0f, 1f, 0f));
+        }
+        batch.add(vector(100L, "global", 1f, 0f, 0f));
+        batch.add(vector(500L, "ana", 0.8f, 0.6f, 0f));
+        batch.add(vector(501L, "ana", 0f, 0f, 1f));
+        batch.add(vector(900L, "otro", 1f, 0f, 0f));
+        service.indexBatch(batch);
+
+        List<RagVectorIndexService.SearchHit> hits = service.search(List.of("global", "ana"), new float[] {1, 0, 0}, 3);
+
+        assertEquals(List.of(100L, 500L), hits.stream().limit(2).map(RagVectorIndexService.SearchHit::chunkId).toList());
+        assertEquals(3, hits.size());
+        assertTrue(hits.stream().noneMatch(hit -> "otro".equals(hit.owner())));
+    }
+
+    @Test
+    void textSearchFindsExactIdentifiersAndStemmedWordsWithinOwners() {
+        service.indexBatch(List.of(
+                textVector(1L, "global", "El despliegue fallo con el codigo ERR_CONN_4021 al conectar.", 1f, 0f, 0f),
+                textVector(2L, "global", "Las conexiones del pool se reciclan cada minuto.", 0f, 1f, 0f),
+                textVector(3L, "ana", "Nota privada: ERR_CONN_4021 tambien aparece en staging.", 0f, 0f, 1f),
+                textVector(4L, "global", "Retrying failed deployments with exponential backoff.", 0f, 1f, 0f)
+        ));
+
+        assertEquals(List.of(1L), service.searchText(List.of("global"), "err_conn_4021", 5).stream()
+                .map(RagVectorIndexService.SearchHit::chunkId)
+                .toList());
+        assertEquals(Set.of(1L, 3L), service.searchText(null, "ERR_CONN_4021", 5).stream()
+                .map(RagVectorIndexService.SearchHit::chunkId)
+                .collect(Collectors.toSet()));
+        // Stemming: "conexion" casa con "conexiones" y "deployment" con "deployments".
+        assertEquals(2L, service.searchText(List.of("global"), "conexion", 5).get(0).chunkId());
+        assertEquals(4L, service.searchText(List.of("global"), "deployment retry", 5).get(0).chunkId());
+        assertTrue(service.searchText(List.of("global"), "de la el", 5).isEmpty());
+    }
+
+    @Test
+    void groupCommitKeepsWritesSearchableButDefersDurabilityUntilTick() throws Exception {
+        service.indexBatch(List.of(
+                vector(1L, "global", 1f, 0f, 0f),
+                vector(2L, "global", 0f, 1f, 0f)
+        ));
+
+        assertEquals(2, service.search(null, new float[] {1, 0, 0}, 5).size());
+        assertEquals(0, committedDocs());
+
+        service.commitPending();
+
+        assertEquals(2, committedDocs());
+    }
+
+    @Test
+    void startupCatchUpAppliesOnlyChangesAfterCommittedWatermark() throws Exception {
+        service.indexBatch(List.of(
+                vector(1L, "global", 1f, 0f, 0f),
+                vector(2L, "global", 0f, 1f, 0f)
+        ));
+        service.commitPending();
+        service.shutdown();
+
+        service = newService();
+        when(vectorRepo.findActiveIndexPageCreatedSince(any(Instant.class), isNull(), any(Pageable.class)))
+                .thenReturn(List.of(new IndexedRow(3L, "global", "[0,0,1]")));
+        when(ollamaClient.fromJson("[0,0,1]")).thenReturn(new float[] {0, 0, 1});
+        when(tombstoneRepo.findChunkIdsDeletedSince(any(Instant.class))).thenReturn(List.of(1L));
+        when(vectorRepo.findMaxChunkId()).thenReturn(3L);
+        when(vectorRepo.countActiveUpTo(3L)).thenReturn(2L);
+
+        service.catchUpFromDatabase("startup");
+
+        List<Long> ids = service.search(null, new float[] {0.6f, 0.6f, 0.529f}, 5).stream()
+                .map(RagVectorIndexService.SearchHit::chunkId)
+                .sorted()
+                .toList();
+        assertEquals(List.of(2L, 3L), ids);
+        verify(vectorRepo, never()).findActiveIndexPageInRange(anyLong(), anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    void catchUpCountCheckIgnoresWritesNewerThanItsSnapshot() throws Exception {
+        service.indexBatch(List.of(vector(1L, "global", 1f, 0f, 0f)));
+        service.commitPending();
+        service.shutdown();
+
+        service = newService();
+        // Al empezar el catch-up el mayor chunk es 2; el 3 lo commitea una ingesta viva mientras corre.
+        when(vectorRepo.findMaxChunkId()).thenReturn(2L);
+        when(vectorRepo.findActiveIndexPageCreatedSince(any(Instant.class), isNull(), any(Pageable.class)))
+                .thenReturn(List.of(new IndexedRow(2L, "global", "[0,1,0]"), new IndexedRow(3L, "global", "[0,0,1]")));
+        when(ollamaClient.fromJson("[0,1,0]")).thenReturn(new float[] {0, 1, 0});
+        when(ollamaClient.fromJson("[0,0,1]")).thenReturn(new float[] {0, 0, 1});
+        when(tombstoneRepo.findChunkIdsDeletedSince(any(Instant.class))).thenReturn(List.of());
+        when(vectorRepo.countActiveUpTo(2L)).thenReturn(2L);
+
+        service.catchUpFromDatabase("startup");
+
+        assertEquals(List.of(1L, 2L, 3L), searchIds());
+        verify(vectorRepo, never()).countActive();
+        verify(vectorRepo, never()).findActiveIndexPageInRange(anyLong(), anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    void rebuildFillsShadowGenerationAndSwapsItInAtomically() throws Exception {
+        service.indexBatch(List.of(
+                vector(1L, "global", 1f, 0f, 0f),
+                vector(2L, "global", 0f, 1f, 0f)
+        ));
+        String previousLocation = service.indexLocation();
+        // Una fila aun en JSON y otra ya migrada a binario: el rebuild lee ambos formatos.
+        List<IndexedRow> rows = List.of(
+                new IndexedRow(2L, "global", "[0,1,0]"),
+                new IndexedRow(3L, "global", null, EmbeddingCodec.encode(new float[] {0f, 0f, 1f}))
+        );
+        when(vectorRepo.countActive()).thenReturn(2L);
+        when(vectorRepo.findMaxChunkId()).thenReturn(3L);
+        when(vectorRepo.findActiveIndexPageInRange(anyLong(), anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            long upTo = invocation.getArgument(1);
+            return rows.stream()
+                    .filter(row -> row.chunkId() > after && row.chunkId() <= upTo)
+                    .<KnowledgeVectorRepository.IndexedVectorView>map(row -> row)
+                    .toList();
+        });
+        when(ollamaClient.fromJson("[0,1,0]")).thenReturn(new float[] {0, 1, 0});
+
+        service.rebuildFromDatabase("manual-ui");
+        verify(ollamaClient, never()).fromJson(isNull());
+
+        assertEquals(List.of(2L, 3L), searchIds());
+        assertNotEquals(previousLocation, service.indexLocation());
+        RagVectorIndexService.RebuildProgress progress = service.rebuildProgress();
+        assertFalse(progress.running());
+        assertEquals("done", progress.phase());
+        assertEquals(2L, progress.indexedVectors());
+
+        // El puntero a la generacion activa sobrevive al reinicio.
+        String rebuiltLocation = service.indexLocation();
+        service.shutdown();
+        service = newService();
+        assertEquals(rebuiltLocation, service.indexLocation());
+        assertEquals(List.of(2L, 3L), searchIds());
+    }
+
+    @Test
+    void int8ModeRescoresCandidatesWithFullPrecisionVectors() throws Exception {
+        service.shutdown();
+        service = newService("int8");
+        List<RagVectorIndexService.IndexedVectorRecord> batch = new ArrayList<>();
+        batch.add(vector(1L, "global", 0.8f, 0.6f, 0f));
+        batch.add(vector(2L, "global", 0.6f, 0.8f, 0f));
+        batch.add(vector(3L, "global", 0f, 0f, 1f));
+        service.indexBatch(batch);
+
+        List<RagVectorIndexService.SearchHit> hits = service.search(null, new float[] {0.8f, 0.6f, 0}, 2);
+
+        assertEquals(List.of(1L, 2L), hits.stream().map(RagVectorIndexService.SearchHit::chunkId).toList());
+        // El score sale de los float32: coincide con el de DOT_PRODUCT exacto ((1 + dot) / 2).
+        assertEquals(1.0f, hits.get(0).score(), 1e-4f);
+    }
+
+    @Test
+    void idleOptimizerMergesSmallSegmentsAndGaugesTrackTheGraph() throws Exception {
+        hnswProperties.setOptimizeIdleMs(0);
+        hnswProperties.setOptimizeMinSegments(2);
+        service.indexBatch(List.of(vector(1L, "global", 1f, 0f, 0f)));
+        service.indexBatch(List.of(vector(2L, "global", 0f, 1f, 0f)));
+        service.indexBatch(List.of(vector(3L, "global", 0f, 0f, 1f)));
+        assertTrue(segmentsGauge() >= 2);
+        assertTrue(meterRegistry.get("apiasistente.rag.index.graph.bytes").gauge().value() > 0);
+
+        service.optimizeWhenIdle();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (segmentsGauge() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1.0, segmentsGauge());
+        assertEquals(3, service.search(null, new float[] {1, 0, 0}, 5).size());
+    }
+
+    @Test
+    void directoryStrategyPrefersMmapExceptOnWindowsUnlessOverridden() {
+        assertTrue(RagVectorIndexService.useMmapDirectory("auto", false));
+        assertFalse(RagVectorIndexService.useMmapDirectory("auto", true));
+        assertTrue(RagVectorIndexService.useMmapDirectory("mmap", true));
+        assertFalse(RagVectorIndexService.useMmapDirectory("NIOFS", false));
+        assertThrows(IllegalArgumentException.class, () -> RagVectorIndexService.useMmapDirectory("ramdisk", false));
+    }
+
+    @Test
+    void mappedVectorStoreIsDisabledOnWindowsAndWhenDirIsBlank() {
+        assertTrue(RagVectorIndexService.useVectorStore("data/rag-vectors", false));
+        assertFalse(RagVectorIndexService.useVectorStore("data/rag-vectors", true));
+        assertFalse(RagVectorIndexService.useVectorStore(" ", false));
+    }
+
+    @Test
+    void legacyStoredFieldIndexKeepsServingAndMigratesToDocValuesOnRebuild() throws Exception {
+        service.shutdown();
+        try (Directory directory = new NIOFSDirectory(tempDir.resolve("hnsw"));
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE))) {
+            Document doc = new Document();
+            doc.add(new StringField("chunk_id", "1", Field.Store.NO));
+            doc.add(new StoredField("chunk_id_stored", 1L));
+            doc.add(new StringField("owner", "global", Field.Store.YES));
+            doc.add(new StoredField("created_at", 0L));
+            doc.add(new KnnFloatVectorField("embedding", new float[] {1f, 0f, 0f}, VectorSimilarityFunction.DOT_PRODUCT));
+            writer.addDocument(doc);
+            writer.commit();
+        }
+        service = newService();
+
+        // Esquema 1: sigue sirviendo y acepta escrituras en su propio formato.
+        service.indexBatch(List.of(vector(2L, "global", 0f, 1f, 0f)));
+        assertEquals(List.of(1L, 2L), searchIds());
+
+        List<IndexedRow> rows = List.of(
+                new IndexedRow(1L, "global", "[1,0,0]"),
+                new IndexedRow(2L, "global", "[0,1,0]")
+        );
+        when(vectorRepo.findMaxChunkId()).thenReturn(2L);
+        when(vectorRepo.findActiveIndexPageInRange(anyLong(), anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            long upTo = invocation.getArgument(1);
+            return rows.stream()
+                    .filter(row -> row.chunkId() > after && row.chunkId() <= upTo)
+                    .<KnowledgeVectorRepository.IndexedVectorView>map(row -> row)
+                    .toList();
+        });
+        when(ollamaClient.fromJson("[1,0,0]")).thenReturn(new float[] {1, 0, 0});
+        when(ollamaClient.fromJson("[0,1,0]")).thenReturn(new float[] {0, 1, 0});
+
+        service.rebuildFromDatabase("schema-migration");
+
+        List<RagVectorIndexService.SearchHit> hits = service.search(List.of("global"), new float[] {1, 0, 0}, 5);
+        assertEquals(List.of(1L, 2L), hits.stream().map(RagVectorIndexService.SearchHit::chunkId).toList());
+        assertTrue(hits.stream().allMatch(hit -> "global".equals(hit.owner())));
+        try (Directory directory = new NIOFSDirectory(Path.of(service.indexLocation()));
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals("3", reader.getIndexCommit().getUserData().get("rag.index.schema_version"));
+            // Esquema 3: el documento no guarda stored fields, todo se lee por doc values.
+            assertTrue(reader.storedFields().document(0).getFields().isEmpty());
+        }
+    }
+
+    @Test
+    void searchOnEmptyIndexReturnsNoHits() {
+        assertTrue(service.search(null, new float[] {1, 0, 0}, 5).isEmpty());
+    }
+
+    private double segmentsGauge() {
+        return meterRegistry.get("apiasistente.rag.index.segments").gauge().value();
+    }
+
+    private List<Long> searchIds() {
+        return service.search(null, new float[] {0.6f, 0.6f, 0.529f}, 5).stream()
+                .map(RagVectorIndexService.SearchHit::chunkId)
+                .sorted()
+                .toList();
+    }
+
+    private int committedDocs() throws Exception {
+        try (Directory directory = new NIOFSDirectory(tempDir.resolve("hnsw"))) {
+            if (!DirectoryReader.indexExists(directory)) {
+                return 0;
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                return reader.numDocs();
+            }
+        }
+    }
+
+    private record IndexedRow(Long chunkId, String owner, String embeddingJson, byte[] embeddingBin)
+            implements KnowledgeVectorRepository.IndexedVectorView {
+
+        private IndexedRow(Long chunkId, String owner, String embeddingJson) {
+            this(chunkId, owner, embeddingJson, null);
+        }
+
+        @Override
+        public Long getChunkId() {
+            return chunkId;
+        }
+
+        @Override
+        public String getOwner() {
+            return owner;
+        }
+
+        @Override
+        public String getEmbeddingJson() {
+            return embeddingJson;
+        }
+
+        @Override
+        public byte[] getEmbeddingBin() {
+            return embeddingBin;
+        }
+
+        @Override
+        public String getText() {
+            return "chunk " + chunkId;
+        }
+    }
+
+    private static RagVectorIndexService.IndexedVectorRecord vector(long chunkId, String owner, float... embedding) {
+        return textVector(chunkId, owner, null, embedding);
+    }
+
+    private static RagVectorIndexService.IndexedVectorRecord textVector(long chunkId, String owner, String text, float... embedding) {
+        return new RagVectorIndexService.IndexedVectorRecord(chunkId, owner, embedding, Instant.now(), text);
+    }
+
+    private static float[] floats(FloatBuffer view) {
+        float[] copy = new float[view.remaining()];
+        view.duplicate().get(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.apiasistente.rag.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Pruebas para Content Defined Chunker.
+ */
+class ContentDefinedChunkerTest {
+
+    private static final String[] WORDS = "red cache vector indice consulta modelo frase texto documento chunk".split(" ");
+
+    @Test
+    void chunksRespectSizeBoundsAndEndOnSentences() {
+        List<String> chunks = ContentDefinedChunker.chunk(prose(42, 60), 200, 400, 800, ContentDefinedChunker.Boundary.SENTENCE);
+
+        assertThat(chunks).hasSizeGreaterThan(3);
+        for (String chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertThat(chunk.length()).isBetween(200, 800);
+            assertThat(chunk).endsWith(".");
+        }
+    }
+
+    @Test
+    void insertingASentenceOnlyChangesTheChunksAroundTheEdit() {
+        String original = prose(7, 80);
+        String edited = original.substring(0, 500) + " Frase nueva en medio del texto. " + original.substring(500);
+
+        List<String> before = ContentDefinedChunker.chunk(original, 200, 400, 800, ContentDefinedChunker.Boundary.SENTENCE);
+        List<String> after = ContentDefinedChunker.chunk(edited, 200, 400, 800, ContentDefinedChunker.Boundary.SENTENCE);
+
+        Set<String> known = new HashSet<>(before);
+        long changed = after.stream().filter(chunk -> !known.contains(chunk)).count();
+        assertThat(changed).isLessThanOrEqualTo(2);
+        assertThat(after.get(after.size() - 1)).isEqualTo(before.get(before.size() - 1));
+    }
+
+    @Test
+    void incrementalInputProducesTheSameChunks() {
+        String text = prose(3, 40);
+        List<String> streamed = new ArrayList<>();
+        ContentDefinedChunker.Incremental incremental =
+                new ContentDefinedChunker.Incremental(200, 400, 800, ContentDefinedChunker.Boundary.SENTENCE, streamed::add);
+        for (int i = 0; i < text.length(); i += 13) {
+            incremental.append(text.substring(i, Math.min(text.length(), i + 13)));
+        }
+        incremental.finish();
+
+        assertThat(streamed).isEqualTo(ContentDefinedChunker.chunk(text, 200, 400, 800, ContentDefinedChunker.Boundary.SENTENCE));
+    }
+
+    @Test
+    @Timeout(10)
+    void largeDocumentChunksInLinearTimeAndMatchesSlicedInput() {
+        // 16M caracteres: con un borrado del prefijo por corte esto tardaba decenas de segundos.
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 16_000_000) {
+            text.append(prose(text.length(), 50)).append("\n\n");
+        }
+        String document = text.toString();
+
+        List<String> whole = ContentDefinedChunker.chunk(document, 350, 900, 1400, ContentDefinedChunker.Boundary.SENTENCE);
+        List<String> sliced = new ArrayList<>();
+        ContentDefinedChunker.Incremental incremental =
+                new ContentDefinedChunker.Incremental(350, 900, 1400, ContentDefinedChunker.Boundary.SENTENCE, sliced::add);
+        for (int i = 0; i < document.length(); i += 8192) {
+            incremental.append(document.substring(i, Math.min(document.length(), i + 8192)));
+        }
+        incremental.finish();
+
+        assertThat(whole).hasSizeGreaterThan(10_000);
+        assertThat(sliced).isEqualTo(whole);
+    }
+
+    @Test
+    void lineBoundaryCutsAtLineEndsAndLongLinesAreSplitAtMaxSize() {
+        String logs = "INFO arranque correcto del servicio de ingesta\n".repeat(40) + "x".repeat(900);
+
+        List<String> chunks = ContentDefinedChunker.chunk(logs, 100, 200, 400, ContentDefinedChunker.Boundary.LINE);
+
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.length()).isLessThanOrEqualTo(400));
+        assertThat(chunks.get(0)).endsWith("ingesta");
+    }
+
+    private static String prose(long seed, int sentences) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < sentences; s++) {
+            int words = 6 + random.nextInt(12);
+            for (int w = 0; w < words; w++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(w == words - 1 ? ". " : " ");
+            }
+            if (s % 5 == 4) {
+                text.append("\n\n");
+            }
+        }
+        return text.toString().trim();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.apiasistente.rag.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas para Embedding Codec.
+ */
+class EmbeddingCodecTest {
+
+    @Test
+    void roundTripKeepsFloatValuesAndDeclaresDimension() {
+        float[] vector = {0.6f, -0.8f, 0f, 1e-7f};
+
+        byte[] payload = EmbeddingCodec.encode(vector);
+
+        assertThat(payload).hasSize(5 + 4 * Float.BYTES);
+        assertThat(EmbeddingCodec.dimension(payload)).isEqualTo(4);
+        assertThat(EmbeddingCodec.decode(payload)).containsExactly(vector);
+    }
+
+    @Test
+    void layoutIsLittleEndianWithVersionHeader() {
+        byte[] payload = EmbeddingCodec.encode(new float[] {1.0f});
+
+        // 1.0f = 0x3F800000 -> en little-endian los bytes van invertidos.
+        assertThat(payload).containsExactly(EmbeddingCodec.VERSION, 1, 0, 0, 0, 0x00, 0x00, (byte) 0x80, 0x3F);
+    }
+
+    @Test
+    void invalidPayloadsDecodeToEmptyVector() {
+        byte[] valid = EmbeddingCodec.encode(new float[] {1f, 2f});
+        byte[] truncated = Arrays.copyOf(valid, valid.length - 1);
+        byte[] otherVersion = valid.clone();
+        otherVersion[0] = 9;
+
+        assertThat(EmbeddingCodec.decode(null)).isEmpty();
+        assertThat(EmbeddingCodec.decode(truncated)).isEmpty();
+        assertThat(EmbeddingCodec.decode(otherVersion)).isEmpty();
+        assertThat(EmbeddingCodec.dimension(truncated)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.apiasistente.rag.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas para Sentence Segmenter.
+ */
+class SentenceSegmenterTest {
+
+    @Test
+    void cutsLikeTheLegacySentenceAndParagraphRegex() {
+        String text = "  Primera frase. Segunda!  Tercera?\tCuarta sin punto\n\n\nParrafo nuevo\ncon salto simple.\n \n";
+
+        assertThat(fragments(text, SentenceSegmenter.segment(text))).containsExactlyElementsOf(legacy(text));
+        assertThat(fragments(text, SentenceSegmenter.segment(text))).containsExactly(
+                "Primera frase.", "Segunda!", "Tercera?", "Cuarta sin punto", "Parrafo nuevo\ncon salto simple.");
+    }
+
+    @Test
+    void offsetsRoundTripCompactly() {
+        String text = "Uno. Dos. Tres.";
+        int[] bounds = SentenceSegmenter.segment(text);
+
+        byte[] payload = SentenceSegmenter.encode(bounds);
+
+        assertThat(payload).hasSize(2 + 3 * 2);
+        assertThat(SentenceSegmenter.decode(payload, text.length())).containsExactly(bounds);
+    }
+
+    @Test
+    void corruptOrForeignPayloadsAreRejected() {
+        byte[] payload = SentenceSegmenter.encode(SentenceSegmenter.segment("Uno. Dos."));
+
+        assertThat(SentenceSegmenter.decode(payload, 3)).isNull();
+        assertThat(SentenceSegmenter.decode(new byte[] {9, 0}, 10)).isNull();
+        assertThat(SentenceSegmenter.decode(null, 10)).isNull();
+        assertThat(SentenceSegmenter.segment("   \n\n  ")).isEmpty();
+    }
+
+    private static List<String> fragments(String text, int[] bounds) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < bounds.length; i += 2) {
+            out.add(text.substring(bounds[i], bounds[i + 1]));
+        }
+        return out;
+    }
+
+    private static List<String> legacy(String text) {
+        List<String> out = new ArrayList<>();
+        for (String raw : text.split("(?m)\\n\\s*\\n+|(?<=[.!?])\\s+")) {
+            if (!raw.trim().isEmpty()) {
+                out.add(raw.trim());
+            }
+        }
+        return out;
+    }
+}
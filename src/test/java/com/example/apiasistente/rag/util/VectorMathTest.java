@@ -1,8 +1,15 @@
 package com.example.apiasistente.rag.util;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.within;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
 /**
@@ -13,7 +20,7 @@ class VectorMathTest {
     @Test
     void cosineReturnsExpectedSimilarity() {
         // Colinear vectors should produce a similarity close to 1.0.
-        double similarity = VectorMath.cosine(new double[] {1, 0}, new double[] {0.5, 0});
+        double similarity = VectorMath.cosine(new float[] {1, 0}, new float[] {0.5f, 0});
 
         assertThat(similarity).isCloseTo(1.0, within(0.0001));
     }
@@ -21,26 +28,107 @@ class VectorMathTest {
     @Test
     void cosineReturnsMinusOneOnInvalidInput() {
         // Empty vectors are treated as invalid input.
-        double similarity = VectorMath.cosine(new double[] {}, new double[] {});
+        double similarity = VectorMath.cosine(new float[] {}, new float[] {});
 
         assertThat(similarity).isEqualTo(-1.0);
     }
 
     @Test
     void normalizeReturnsUnitVector() {
-        double[] normalized = VectorMath.normalize(new double[] {3, 4});
+        float[] normalized = VectorMath.normalize(new float[] {3, 4});
 
-        assertThat(normalized[0]).isCloseTo(0.6, within(0.0001));
-        assertThat(normalized[1]).isCloseTo(0.8, within(0.0001));
+        assertThat(normalized[0]).isCloseTo(0.6f, within(0.0001f));
+        assertThat(normalized[1]).isCloseTo(0.8f, within(0.0001f));
+        assertThat(VectorMath.normalize(new float[] {0, 0})).isEmpty();
     }
 
     @Test
     void cosineUnitUsesDotProductForUnitVectors() {
-        double[] v1 = VectorMath.normalize(new double[] {1, 1});
-        double[] v2 = VectorMath.normalize(new double[] {1, 0});
+        float[] v1 = VectorMath.normalize(new float[] {1, 1});
+        float[] v2 = VectorMath.normalize(new float[] {1, 0});
 
         double similarity = VectorMath.cosineUnit(v1, v2);
 
         assertThat(similarity).isCloseTo(0.7071, within(0.0001));
     }
+
+    @Test
+    void cosineUnitOverFloatBuffersMatchesArraysAndKeepsPositions() {
+        FloatBuffer v1 = FloatBuffer.wrap(new float[] {0.6f, 0.8f});
+        FloatBuffer v2 = FloatBuffer.wrap(new float[] {1f, 0f});
+
+        assertThat(VectorMath.cosineUnit(v1, v2)).isCloseTo(0.6, within(0.0001));
+        assertThat(VectorMath.cosineUnit(new float[] {0.6f, 0.8f}, v1)).isCloseTo(1.0, within(0.0001));
+        assertThat(VectorMath.cosineUnit(v1, FloatBuffer.wrap(new float[] {1f}))).isEqualTo(-1.0);
+        assertThat(v1.position()).isZero();
+    }
+
+    @Test
+    void activeKernelMatchesScalarReferenceOnEveryLength() {
+        // Longitudes que no llenan un vector SIMD ni el desenrollado: la cola debe sumarse igual.
+        Random random = new Random(7);
+        for (int dims : new int[] {1, 3, 7, 8, 17, 33, 255, 384, 769, 1024}) {
+            float[] a = VectorMath.normalize(randomVector(random, dims));
+            float[] b = VectorMath.normalize(randomVector(random, dims));
+
+            double expected = 0.0;
+            for (int i = 0; i < dims; i++) {
+                expected += (double) a[i] * b[i];
+            }
+
+            assertThat((double) VectorMath.dot(a, b)).as("dims=%d", dims).isCloseTo(expected, within(1e-5));
+            assertThat((double) ScalarVectorKernel.INSTANCE.dot(a, 0, b, 0, dims)).isCloseTo(expected, within(1e-5));
+        }
+    }
+
+    @Test
+    void mappedViewsAreReadInBlocksWithoutMovingPosition() {
+        Random random = new Random(11);
+        float[] query = VectorMath.normalize(randomVector(random, 1000));
+        float[] stored = VectorMath.normalize(randomVector(random, 1000));
+        FloatBuffer direct = ByteBuffer.allocateDirect(stored.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .put(stored)
+                .flip()
+                .asReadOnlyBuffer();
+
+        double expected = VectorMath.cosineUnit(query, stored);
+
+        assertThat(VectorMath.cosineUnit(query, direct)).isCloseTo(expected, within(1e-5));
+        assertThat(VectorMath.cosineUnit(FloatBuffer.wrap(query), direct)).isCloseTo(expected, within(1e-5));
+        assertThat(direct.position()).isZero();
+    }
+
+    @Test
+    void batchDotMatchesSingleCallsAndMarksInvalidViews() {
+        Random random = new Random(3);
+        float[] query = randomVector(random, 64);
+        float[][] vectors = {randomVector(random, 64), randomVector(random, 64), randomVector(random, 64)};
+        float[] out = new float[3];
+
+        VectorMath.dotAll(query, vectors, out);
+
+        for (int i = 0; i < vectors.length; i++) {
+            assertThat(out[i]).isEqualTo(VectorMath.dot(query, vectors[i]));
+        }
+        assertThatThrownBy(() -> VectorMath.dotAll(query, vectors, new float[2]))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        float[] similarities = new float[3];
+        VectorMath.cosineUnitAll(
+                FloatBuffer.wrap(query),
+                Arrays.asList(FloatBuffer.wrap(vectors[0]), null, FloatBuffer.wrap(new float[] {1f})),
+                similarities
+        );
+        assertThat(similarities).containsExactly(VectorMath.dot(query, vectors[0]), -1f, -1f);
+    }
+
+    private static float[] randomVector(Random random, int dims) {
+        float[] vector = new float[dims];
+        for (int i = 0; i < dims; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
 }
@@ -55,12 +55,12 @@ class OllamaClientTest {
                 props
         );
 
-        double[] embedding = client.embedOne("hola mundo");
+        float[] embedding = client.embedOne("hola mundo");
 
         assertEquals("/api/embed", pathRef.get());
         assertTrue(bodyRef.get().contains("\"model\":\"test-embed\""));
         assertTrue(bodyRef.get().contains("\"input\":\"hola mundo\""));
-        assertArrayEquals(new double[]{0.1d, 0.2d, 0.3d}, embedding);
+        assertArrayEquals(new float[]{0.1f, 0.2f, 0.3f}, embedding);
     }
 
     @Test
@@ -112,9 +112,9 @@ class OllamaClientTest {
                 props
         );
 
-        double[] embedding = client.embedOne("octet stream");
+        float[] embedding = client.embedOne("octet stream");
 
-        assertArrayEquals(new double[]{0.4d, 0.5d}, embedding);
+        assertArrayEquals(new float[]{0.4f, 0.5f}, embedding);
     }
 
     @Test
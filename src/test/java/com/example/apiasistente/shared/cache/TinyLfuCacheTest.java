@@ -0,0 +1,111 @@
+package com.example.apiasistente.shared.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pruebas para Tiny Lfu Cache.
+ */
+class TinyLfuCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void frequentKeysSurviveAScanOfOneHitKeys() {
+        TinyLfuCache<String, String> cache = newCache(100, Duration.ofHours(1));
+        for (int i = 0; i < 50; i++) {
+            cache.put("hot-" + i, "v");
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot-" + i);
+            }
+        }
+
+        // Un barrido de claves vistas una sola vez expulsaria todo en un LRU puro.
+        for (int i = 0; i < 1_000; i++) {
+            cache.put("scan-" + i, "v");
+        }
+
+        long hotKept = java.util.stream.IntStream.range(0, 50).filter(i -> cache.get("hot-" + i) != null).count();
+        assertThat(hotKept).isGreaterThanOrEqualTo(45);
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void entriesExpireAfterTtlAndAreCountedAsExpiredEvictions() {
+        TinyLfuCache<String, String> cache = newCache(100, Duration.ofSeconds(10));
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        clock.addAndGet(10_001L);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.cleanUp()).isEqualTo(1);
+        assertThat(cache.size()).isZero();
+        assertThat(meterRegistry.get("apiasistente.cache.evictions").tag("cause", "expired").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void weightBoundIsInBytesAndOversizedValuesAreNotStored() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(
+                "test", 1_000, Duration.ofHours(1), (key, value) -> value.length(), meterRegistry, clock::get);
+
+        cache.put("big", "x".repeat(1_001));
+        for (int i = 0; i < 30; i++) {
+            cache.put("k" + i, "x".repeat(100));
+        }
+
+        assertThat(cache.get("big")).isNull();
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(1_000);
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void hitsAndMissesArePublished() {
+        TinyLfuCache<String, String> cache = newCache(100, Duration.ofHours(1));
+        cache.put("a", "1");
+
+        cache.get("a");
+        cache.get("a");
+        cache.get("missing");
+
+        assertThat(meterRegistry.get("apiasistente.cache.gets").tag("result", "hit").counter().count()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("apiasistente.cache.gets").tag("result", "miss").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("apiasistente.cache.size").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void hottestAndRestoreKeepPopularEntriesAcrossInstances() {
+        TinyLfuCache<String, String> cache = newCache(100, Duration.ofHours(1));
+        cache.put("cold", "c");
+        cache.put("warm", "w");
+        for (int i = 0; i < 3; i++) {
+            cache.get("warm");
+        }
+
+        List<TinyLfuCache.Entry<String, String>> snapshot = cache.hottest();
+        assertThat(snapshot).extracting(TinyLfuCache.Entry::key).containsExactly("warm", "cold");
+        assertThat(snapshot.get(0).frequency()).isGreaterThan(snapshot.get(1).frequency());
+
+        TinyLfuCache<String, String> restored = new TinyLfuCache<>(
+                "restored", 100, Duration.ofHours(1), (key, value) -> 1L, null, clock::get);
+        snapshot.forEach(restored::restore);
+
+        assertThat(restored.get("warm")).isEqualTo("w");
+        assertThat(restored.get("cold")).isEqualTo("c");
+        clock.addAndGet(Duration.ofHours(2).toMillis());
+        assertThat(restored.restore(new TinyLfuCache.Entry<>("late", "l", clock.get() - 1, 3))).isFalse();
+    }
+
+    private TinyLfuCache<String, String> newCache(long maxEntries, Duration ttl) {
+        return new TinyLfuCache<>("test", maxEntries, ttl, (key, value) -> 1L, meterRegistry, clock::get);
+    }
+}
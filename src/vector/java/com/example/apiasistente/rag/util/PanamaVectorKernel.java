@@ -0,0 +1,64 @@
+package com.example.apiasistente.rag.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementacion SIMD con la Vector API (`jdk.incubator.vector`).
+ *
+ * Importante:
+ * - Usa el ancho preferido de la CPU (AVX2 = 8 lanes, AVX-512 = 16) con dos acumuladores FMA;
+ *   la cola que no llena un vector se suma en escalar.
+ * - Solo se instancia si el modulo esta cargado (`--add-modules jdk.incubator.vector`) y `isSupported()`;
+ *   si no, `VectorMath` se queda con el escalar.
+ * - Esta en el source set `vector` para que solo su compilacion emita el aviso de modulo en incubadora;
+ *   `VectorMath` la carga por nombre.
+ */
+final class PanamaVectorKernel implements VectorKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    PanamaVectorKernel() {
+    }
+
+    /**
+     * Con menos de 128 bits (p. ej. sin C2) la Vector API cae a bucles interpretados: mejor el escalar.
+     */
+    static boolean isSupported() {
+        return FloatVector.SPECIES_PREFERRED.vectorBitSize() >= 128;
+    }
+
+    @Override
+    public String name() {
+        return "panama-" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int lanes = SPECIES.length();
+        int i = 0;
+        float sum = 0f;
+        int bound = SPECIES.loopBound(length);
+        if (bound > 0) {
+            FloatVector acc0 = FloatVector.zero(SPECIES);
+            FloatVector acc1 = FloatVector.zero(SPECIES);
+            int unrolledBound = bound - lanes;
+            for (; i < unrolledBound; i += 2 * lanes) {
+                acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                        .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc0);
+                acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i + lanes)
+                        .fma(FloatVector.fromArray(SPECIES, b, bOffset + i + lanes), acc1);
+            }
+            for (; i < bound; i += lanes) {
+                acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                        .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc0);
+            }
+            sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}